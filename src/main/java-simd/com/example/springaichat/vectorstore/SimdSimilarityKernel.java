@@ -0,0 +1,193 @@
+package com.example.springaichat.vectorstore;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于JDK Vector API（jdk.incubator.vector）的SIMD实现
+ * 使用本机最宽的浮点向量，主循环用两个累加器减少依赖链，尾部按标量计算；乘加分开计算，不依赖硬件FMA。
+ * 需要以 --add-modules jdk.incubator.vector 启动JVM，只能由Vectors在确认模块可用后通过反射创建；
+ * 本机或当前JDK不支持的操作（int8编码要求字节向量形状可用，堆外向量要求ByteBuffer加载方法存在）退回标量实现
+ */
+final class SimdSimilarityKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    /** 与浮点向量通道数相同的字节向量，本机没有对应形状时为null */
+    private final VectorSpecies<Byte> byteSpecies;
+    private final boolean byteBufferLoads;
+
+    SimdSimilarityKernel() {
+        VectorSpecies<Byte> bytes;
+        try {
+            bytes = VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * Byte.SIZE));
+            ByteVector.zero(bytes).convertShape(VectorOperators.B2F, SPECIES, 0);
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            bytes = null;
+        }
+        this.byteSpecies = bytes;
+        boolean loads;
+        try {
+            FloatVector.fromByteBuffer(SPECIES, ByteBuffer.allocateDirect(LANES * Float.BYTES), 0, ORDER);
+            loads = true;
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // 较新的JDK移除了基于ByteBuffer的加载方法
+            loads = false;
+        }
+        this.byteBufferLoads = loads;
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+
+    /** 浮点向量通道数 */
+    static int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int i = 0;
+        float sum = 0f;
+        if (length >= LANES) {
+            FloatVector acc1 = FloatVector.zero(SPECIES);
+            FloatVector acc2 = FloatVector.zero(SPECIES);
+            int unrolled = length - length % (2 * LANES);
+            for (; i < unrolled; i += 2 * LANES) {
+                acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .mul(FloatVector.fromArray(SPECIES, b, bOffset + i)).add(acc1);
+                acc2 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .mul(FloatVector.fromArray(SPECIES, b, bOffset + i + LANES)).add(acc2);
+            }
+            int bound = length - length % LANES;
+            for (; i < bound; i += LANES) {
+                acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .mul(FloatVector.fromArray(SPECIES, b, bOffset + i)).add(acc1);
+            }
+            sum = acc1.add(acc2).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int i = 0;
+        float sum = 0f;
+        if (length >= LANES) {
+            FloatVector acc1 = FloatVector.zero(SPECIES);
+            FloatVector acc2 = FloatVector.zero(SPECIES);
+            int unrolled = length - length % (2 * LANES);
+            for (; i < unrolled; i += 2 * LANES) {
+                FloatVector diff1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+                FloatVector diff2 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i + LANES));
+                acc1 = diff1.mul(diff1).add(acc1);
+                acc2 = diff2.mul(diff2).add(acc2);
+            }
+            int bound = length - length % LANES;
+            for (; i < bound; i += LANES) {
+                FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+                acc1 = diff.mul(diff).add(acc1);
+            }
+            sum = acc1.add(acc2).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        int i = 0;
+        float dot = 0f;
+        float normA = 0f;
+        float normB = 0f;
+        int length = a.length;
+        if (length >= LANES) {
+            FloatVector dotAcc = FloatVector.zero(SPECIES);
+            FloatVector normAAcc = FloatVector.zero(SPECIES);
+            FloatVector normBAcc = FloatVector.zero(SPECIES);
+            int bound = length - length % LANES;
+            for (; i < bound; i += LANES) {
+                FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+                FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+                dotAcc = va.mul(vb).add(dotAcc);
+                normAAcc = va.mul(va).add(normAAcc);
+                normBAcc = vb.mul(vb).add(normBAcc);
+            }
+            dot = dotAcc.reduceLanes(VectorOperators.ADD);
+            normA = normAAcc.reduceLanes(VectorOperators.ADD);
+            normB = normBAcc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0f || normB == 0f ? 0f : (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    @Override
+    public float dot(float[] query, byte[] codes, int offset) {
+        if (byteSpecies == null) {
+            return ScalarSimilarityKernel.INSTANCE.dot(query, codes, offset);
+        }
+        int i = 0;
+        float sum = 0f;
+        int length = query.length;
+        if (length >= LANES) {
+            FloatVector acc = FloatVector.zero(SPECIES);
+            int bound = length - length % LANES;
+            for (; i < bound; i += LANES) {
+                FloatVector code = (FloatVector) ByteVector.fromArray(byteSpecies, codes, offset + i)
+                    .convertShape(VectorOperators.B2F, SPECIES, 0);
+                acc = FloatVector.fromArray(SPECIES, query, i).mul(code).add(acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += query[i] * codes[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] query, ByteBuffer vectors, int byteOffset) {
+        if (!byteBufferLoads) {
+            return ScalarSimilarityKernel.INSTANCE.dot(query, vectors, byteOffset);
+        }
+        int i = 0;
+        float sum = 0f;
+        int length = query.length;
+        if (length >= LANES) {
+            FloatVector acc = FloatVector.zero(SPECIES);
+            int bound = length - length % LANES;
+            for (; i < bound; i += LANES) {
+                acc = FloatVector.fromArray(SPECIES, query, i)
+                    .mul(FloatVector.fromByteBuffer(SPECIES, vectors, byteOffset + i * Float.BYTES, ORDER)).add(acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += query[i] * vectors.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return sum;
+    }
+}
@@ -1,11 +1,19 @@
 package com.example.springaichat.config;
 
 import com.example.springaichat.constants.SystemConstants;
+import com.example.springaichat.embedding.CachingEmbeddingModel;
+import com.example.springaichat.embedding.EmbeddingCache;
+import com.example.springaichat.embedding.EmbeddingPipeline;
 import com.example.springaichat.model.AlibabaOpenAiChatModel;
 import com.example.springaichat.tools.CourseTools;
+import com.example.springaichat.vectorstore.HnswVectorStore;
+import com.example.springaichat.vectorstore.QuantizedVectorIndex;
+import com.example.springaichat.vectorstore.QuantizedVectorStore;
 import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
 import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
@@ -13,15 +21,18 @@ import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.observation.ChatModelObservationConvention;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.model.SimpleApiKey;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.support.RetryTemplate;
@@ -31,17 +42,96 @@ import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 
 
+@Slf4j
 @Configuration
+@EnableConfigurationProperties({PdfProperties.class, VectorStoreProperties.class, EmbeddingProperties.class})
 public class CommonConfiguration {
 
 
-    // 使用本地向量库，配置一个向量库的bean SimpleVectorStore
+    /**
+     * 向量生成流水线：分块按token数分批、多批并发生成向量，限流时退避重试
+     * 只供向量库使用，不作为EmbeddingModel注入其他组件；关闭应用时停止其线程池
+     * @return 流水线，embedding.pipeline.enabled=false时为null
+     */
+    @Bean(destroyMethod = "close", autowireCandidate = false)
+    public EmbeddingPipeline embeddingPipeline(OpenAiEmbeddingModel embeddingModel,
+                                               EmbeddingProperties embeddingProperties) {
+        EmbeddingProperties.Pipeline pipeline = embeddingProperties.getPipeline();
+        if (!pipeline.isEnabled()) {
+            return null;
+        }
+        return EmbeddingPipeline.builder(embeddingModel)
+                .maxBatchTokens(pipeline.getMaxBatchTokens())
+                .maxBatchSize(pipeline.getMaxBatchSize())
+                .maxInFlight(pipeline.getMaxInFlight())
+                .maxRetries(pipeline.getMaxRetries())
+                .backoff(pipeline.getInitialBackoffMs(), pipeline.getMaxBackoffMs())
+                .build();
+    }
+
+    /**
+     * 向量缓存：文本未变化的文档再次入库时直接使用缓存的向量，不再调用向量模型
+     * 关闭应用时刷盘并关闭缓存文件
+     * @return 缓存，embedding.cache.enabled=false或缓存文件打不开时为null
+     */
+    @Bean(destroyMethod = "close")
+    public EmbeddingCache embeddingCache(EmbeddingProperties embeddingProperties) {
+        EmbeddingProperties.Cache cache = embeddingProperties.getCache();
+        if (!cache.isEnabled()) {
+            return null;
+        }
+        try {
+            return EmbeddingCache.open(Paths.get(cache.getFile()));
+        } catch (IOException e) {
+            log.warn("打开向量缓存失败，不使用缓存: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // 使用本地向量库，默认为HNSW近似最近邻索引；vector-store.type=simple时使用逐个比较的SimpleVectorStore，
+    // quantized时使用int8/乘积量化压缩编码粗排、原始向量重排的QuantizedVectorStore
     @Bean
-    public VectorStore vectorStore(OpenAiEmbeddingModel embeddingModel){
-        return SimpleVectorStore.builder(embeddingModel).build();
+    public VectorStore vectorStore(OpenAiEmbeddingModel embeddingModel,
+                                   VectorStoreProperties vectorStoreProperties,
+                                   EmbeddingProperties embeddingProperties,
+                                   OpenAiEmbeddingProperties openAiEmbeddingProperties){
+        EmbeddingModel storeEmbeddingModel = embeddingModel;
+        // 通过配置类代理取得单例，流水线和缓存由容器在向量库之后关闭
+        EmbeddingPipeline pipeline = embeddingPipeline(embeddingModel, embeddingProperties);
+        if (pipeline != null) {
+            storeEmbeddingModel = pipeline;
+        }
+        EmbeddingCache cache = embeddingCache(embeddingProperties);
+        if (cache != null) {
+            // 缓存按模型名称和维度区分
+            OpenAiEmbeddingOptions options = openAiEmbeddingProperties.getOptions();
+            int dimensions = options.getDimensions() == null ? 0 : options.getDimensions();
+            storeEmbeddingModel = new CachingEmbeddingModel(storeEmbeddingModel, cache, options.getModel(), dimensions);
+        }
+        String type = vectorStoreProperties.getType();
+        if ("simple".equalsIgnoreCase(type)) {
+            return SimpleVectorStore.builder(storeEmbeddingModel).build();
+        }
+        if ("quantized".equalsIgnoreCase(type)) {
+            VectorStoreProperties.Quantization quantization = vectorStoreProperties.getQuantization();
+            return QuantizedVectorStore.builder(storeEmbeddingModel)
+                    .quantization(QuantizedVectorIndex.Quantization.parse(quantization.getType()))
+                    .pqSubspaces(quantization.getPqSubspaces())
+                    .rerankFactor(quantization.getRerankFactor())
+                    .trainingSize(quantization.getTrainingSize())
+                    .build();
+        }
+        VectorStoreProperties.Hnsw hnsw = vectorStoreProperties.getHnsw();
+        return HnswVectorStore.builder(storeEmbeddingModel)
+                .m(hnsw.getM())
+                .efConstruction(hnsw.getEfConstruction())
+                .efSearch(hnsw.getEfSearch())
+                .build();
     }
 
     // 注意参数中的model就是使用的模型，这里用了Ollama，也可以选择OpenAIChatModel
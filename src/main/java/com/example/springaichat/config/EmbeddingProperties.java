@@ -0,0 +1,74 @@
+package com.example.springaichat.config;
+
+import com.example.springaichat.embedding.EmbeddingPipeline;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 向量生成配置（embedding.*），模型名称和维度沿用 spring.ai.openai.embedding.options.*
+ */
+@Data
+@ConfigurationProperties(prefix = "embedding")
+public class EmbeddingProperties {
+
+    private Cache cache = new Cache();
+
+    private Pipeline pipeline = new Pipeline();
+
+    /**
+     * 向量缓存配置（embedding.cache.*）
+     */
+    @Data
+    public static class Cache {
+        /**
+         * 是否缓存已生成的向量，文本未变化的文档再次入库时不再调用向量模型
+         */
+        private boolean enabled = true;
+
+        /**
+         * 缓存文件
+         */
+        private String file = "uploads/.embedding-cache/embeddings.bin";
+    }
+
+    /**
+     * 批量生成配置（embedding.pipeline.*）
+     */
+    @Data
+    public static class Pipeline {
+        /**
+         * 是否按token数分批、多批并发生成向量
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每批最多的token数
+         */
+        private int maxBatchTokens = EmbeddingPipeline.DEFAULT_MAX_BATCH_TOKENS;
+
+        /**
+         * 每批最多的文本数
+         */
+        private int maxBatchSize = EmbeddingPipeline.DEFAULT_MAX_BATCH_SIZE;
+
+        /**
+         * 同时进行的请求数
+         */
+        private int maxInFlight = EmbeddingPipeline.DEFAULT_MAX_IN_FLIGHT;
+
+        /**
+         * 限流或临时故障时的最大重试次数
+         */
+        private int maxRetries = 5;
+
+        /**
+         * 首次重试前的等待时间（毫秒）
+         */
+        private long initialBackoffMs = 1000;
+
+        /**
+         * 重试等待时间上限（毫秒）
+         */
+        private long maxBackoffMs = 30_000;
+    }
+}
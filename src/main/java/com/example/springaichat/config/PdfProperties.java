@@ -0,0 +1,299 @@
+package com.example.springaichat.config;
+
+import com.example.springaichat.search.CompressedTextStore;
+import com.example.springaichat.search.PassageSplitter;
+import com.example.springaichat.search.ProximityScorer;
+import com.example.springaichat.search.ReciprocalRankFusion;
+import com.example.springaichat.search.ShardedSearcher;
+import com.example.springaichat.search.SnippetExtractor;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * PDF知识库配置（pdf.*）
+ * 默认值只在此处定义；检索相关的开关和超时每次检索时读取，线程池、缓存等在首次使用时按当时的配置创建
+ */
+@Data
+@ConfigurationProperties(prefix = "pdf")
+public class PdfProperties {
+
+    private Search search = new Search();
+
+    private Chat chat = new Chat();
+
+    private Tokenizer tokenizer = new Tokenizer();
+
+    private PageText pageText = new PageText();
+
+    private Passage passage = new Passage();
+
+    private Ingest ingest = new Ingest();
+
+    private Snapshot snapshot = new Snapshot();
+
+    private Bootstrap bootstrap = new Bootstrap();
+
+    /**
+     * 检索配置（pdf.search.*）
+     */
+    @Data
+    public static class Search {
+        /**
+         * 分片检索线程池并行度
+         */
+        private int parallelism = 4;
+
+        /**
+         * 单个查询最多切分的分片数
+         */
+        private int maxShardsPerQuery = 4;
+
+        /**
+         * 需访问的倒排项数低于该值时在请求线程上顺序检索
+         */
+        private long sequentialThreshold = ShardedSearcher.DEFAULT_SEQUENTIAL_THRESHOLD;
+
+        private Proximity proximity = new Proximity();
+
+        private Hybrid hybrid = new Hybrid();
+
+        private Cache cache = new Cache();
+    }
+
+    /**
+     * 短语与邻近度重排配置（pdf.search.proximity.*）
+     */
+    @Data
+    public static class Proximity {
+        /**
+         * 是否按短语和邻近度对BM25候选页面重新排序
+         */
+        private boolean enabled = true;
+
+        /**
+         * 邻近度权重
+         */
+        private double weight = ProximityScorer.DEFAULT_PROXIMITY_WEIGHT;
+
+        /**
+         * 短语加权
+         */
+        private double phraseBoost = ProximityScorer.DEFAULT_PHRASE_BOOST;
+
+        /**
+         * 参与重新排序的候选页面数（返回数量的倍数）
+         */
+        private int candidates = 10;
+    }
+
+    /**
+     * 关键词 + 向量混合检索配置（pdf.search.hybrid.*）
+     */
+    @Data
+    public static class Hybrid {
+        /**
+         * 是否启用混合检索（未配置向量库时只使用关键词检索）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 混合检索的总超时（毫秒），向量检索未在期限内返回时只使用关键词检索结果
+         */
+        private long timeoutMs = 2000;
+
+        /**
+         * 每路检索参与融合的候选数
+         */
+        private int candidates = 20;
+
+        /**
+         * 倒数排名融合的平滑常数
+         */
+        private int rrfK = ReciprocalRankFusion.DEFAULT_K;
+
+        /**
+         * 向量检索线程数，等待队列按线程数的倍数限长
+         */
+        private int threads = 4;
+    }
+
+    /**
+     * 检索结果缓存配置（pdf.search.cache.*）
+     */
+    @Data
+    public static class Cache {
+        /**
+         * 最大条目数，0表示不缓存
+         */
+        private int maxEntries = 1024;
+    }
+
+    /**
+     * 对话上下文配置（pdf.chat.*）
+     */
+    @Data
+    public static class Chat {
+        /**
+         * 每次对话送入模型的段落数
+         */
+        private int maxPassages = 3;
+
+        /**
+         * 每次对话送入模型的文档片段总字符数
+         */
+        private int contextChars = 1500;
+
+        /**
+         * 片段窗口字符数
+         */
+        private int snippetWindowChars = SnippetExtractor.DEFAULT_WINDOW_CHARS;
+    }
+
+    /**
+     * 分词配置（pdf.tokenizer.*）
+     */
+    @Data
+    public static class Tokenizer {
+        /**
+         * 分词器类型：dictionary（词典分词）或 ngram（2-4字n-gram）
+         */
+        private String type = "dictionary";
+
+        /**
+         * 词典文件，为空时使用内置词典
+         */
+        private String dictionary = "";
+    }
+
+    /**
+     * 段落文本存储配置（pdf.page-text.*）
+     */
+    @Data
+    public static class PageText {
+        /**
+         * 存储方式：heap（堆上字符串）或 off-heap（deflate压缩后保存在堆外内存，读取时解压）
+         */
+        private String store = "heap";
+
+        /**
+         * 堆外存储的deflate压缩级别（1最快，9压缩率最高）
+         */
+        private int compressionLevel = 1;
+
+        /**
+         * 堆外存储的分块大小（字节）
+         */
+        private int chunkSize = CompressedTextStore.DEFAULT_CHUNK_SIZE;
+
+        public boolean isOffHeap() {
+            return "off-heap".equalsIgnoreCase(store);
+        }
+    }
+
+    /**
+     * 段落切分配置（pdf.passage.*）
+     */
+    @Data
+    public static class Passage {
+        /**
+         * 段落最大字符数
+         */
+        private int maxChars = PassageSplitter.DEFAULT_MAX_CHARS;
+
+        /**
+         * 相邻段落重叠字符数
+         */
+        private int overlap = PassageSplitter.DEFAULT_OVERLAP;
+    }
+
+    /**
+     * 解析配置（pdf.ingest.*）
+     */
+    @Data
+    public static class Ingest {
+        /**
+         * 解析方式：streaming（逐批提取页面文本）或 reader（PagePdfDocumentReader一次读出所有页面）
+         */
+        private String mode = "streaming";
+
+        /**
+         * 流式解析时每批提取的页数
+         */
+        private int batchPages = 8;
+
+        /**
+         * 解析线程数
+         */
+        private int threads = 2;
+
+        /**
+         * 等待解析的任务数上限，排满时拒绝新的上传（重试的任务不受限制）
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * 已结束的任务保留时间（分钟）
+         */
+        private long jobRetentionMinutes = 60;
+
+        /**
+         * 解析进度事件的检查间隔（毫秒）
+         */
+        private long eventsIntervalMs = 500;
+
+        private Retry retry = new Retry();
+    }
+
+    /**
+     * 解析重试配置（pdf.ingest.retry.*），只有临时故障会重试
+     */
+    @Data
+    public static class Retry {
+        /**
+         * 每个任务最多执行的次数（含首次）
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 首次重试前的等待时间（毫秒）
+         */
+        private long initialBackoffMs = 1000;
+
+        /**
+         * 每次重试等待时间的倍数
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * 重试等待时间上限（毫秒）
+         */
+        private long maxBackoffMs = 30_000;
+    }
+
+    /**
+     * 知识库快照配置（pdf.snapshot.*）
+     */
+    @Data
+    public static class Snapshot {
+        /**
+         * 是否保存解析结果，重启时免去重新解析PDF
+         */
+        private boolean enabled = true;
+
+        /**
+         * 快照目录
+         */
+        private String dir = "uploads/.kb-snapshot";
+    }
+
+    /**
+     * 知识库加载配置（pdf.bootstrap.*）
+     */
+    @Data
+    public static class Bootstrap {
+        /**
+         * 加载线程数
+         */
+        private int threads = 4;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.springaichat.config;
+
+import com.example.springaichat.vectorstore.HnswIndex;
+import com.example.springaichat.vectorstore.QuantizedVectorIndex;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 本地向量库配置（vector-store.*）
+ */
+@Data
+@ConfigurationProperties(prefix = "vector-store")
+public class VectorStoreProperties {
+
+    /**
+     * 向量库类型：hnsw（近似最近邻索引）、quantized（压缩编码粗排、原始向量重排）或 simple（逐个比较）
+     */
+    private String type = "hnsw";
+
+    private Hnsw hnsw = new Hnsw();
+
+    private Quantization quantization = new Quantization();
+
+    /**
+     * HNSW索引配置（vector-store.hnsw.*）
+     */
+    @Data
+    public static class Hnsw {
+        /**
+         * 每个节点在每层保留的邻居数
+         */
+        private int m = HnswIndex.DEFAULT_M;
+
+        /**
+         * 建图时的候选列表长度
+         */
+        private int efConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+
+        /**
+         * 检索时的候选列表长度
+         */
+        private int efSearch = HnswIndex.DEFAULT_EF_SEARCH;
+    }
+
+    /**
+     * 量化配置（vector-store.quantization.*）
+     */
+    @Data
+    public static class Quantization {
+        /**
+         * 量化方式：int8 或 pq（乘积量化）
+         */
+        private String type = "int8";
+
+        /**
+         * 乘积量化的子空间数（每个向量的编码字节数），0表示取维度的1/8
+         */
+        private int pqSubspaces = 0;
+
+        /**
+         * 粗排候选数相对返回数量的倍数
+         */
+        private int rerankFactor = QuantizedVectorIndex.DEFAULT_RERANK_FACTOR;
+
+        /**
+         * 训练乘积量化码本使用的向量数
+         */
+        private int trainingSize = QuantizedVectorIndex.DEFAULT_TRAINING_SIZE;
+    }
+}
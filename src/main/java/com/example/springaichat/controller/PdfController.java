@@ -1,25 +1,32 @@
 package com.example.springaichat.controller;
 
+import com.example.springaichat.config.PdfProperties;
 import com.example.springaichat.entity.vo.Result;
 import com.example.springaichat.repository.ChatHistoryRepository;
 import com.example.springaichat.repository.FileRepository;
+import com.example.springaichat.search.DeferredReclaimer;
 import com.example.springaichat.service.PdfContentService;
-import jakarta.annotation.PostConstruct;
+import com.example.springaichat.service.PdfIngestionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
@@ -39,6 +46,9 @@ public class PdfController {
     @Autowired
     private PdfContentService pdfContentService;
 
+    @Autowired
+    private PdfIngestionService pdfIngestionService;
+
     @jakarta.annotation.Resource
     private ChatHistoryRepository chatHistoryRepository;
 
@@ -46,31 +56,35 @@ public class PdfController {
     private ChatClient simplePdfChatClient;
 
     /**
-     * 应用启动后初始化全局知识库
+     * 知识库配置（对话上下文的段落数和字符数、解析进度事件间隔）
+     */
+    @Autowired
+    private PdfProperties pdfProperties;
+
+    /**
+     * 应用就绪后在后台初始化全局知识库，不阻塞Spring容器启动
      */
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
     public void initializeKnowledgeBase() {
-        log.info("开始初始化PDF全局知识库...");
+        log.info("开始在后台初始化PDF全局知识库...");
         try {
-            pdfContentService.initializeGlobalKnowledgeBase();
-            
-            Map<String, Object> stats = pdfContentService.getGlobalKnowledgeBaseStats();
-            log.info("全局知识库初始化完成 - 文档数: {}, 总页数: {}, 总内容长度: {}", 
-                stats.get("documentCount"), stats.get("totalPages"), stats.get("totalContentLength"));
-                
+            pdfContentService.startGlobalKnowledgeBaseInitialization();
         } catch (Exception e) {
-            log.error("初始化全局知识库失败", e);
+            log.error("启动全局知识库初始化失败", e);
         }
     }
 
     /**
-     * 上传PDF文件并处理内容
+     * 上传PDF文件，保存后提交解析任务并立即返回任务ID
+     * 解析在独立的解析队列中执行，可通过 /jobs/{jobId} 查询状态或通过 /jobs/{jobId}/events 订阅进度
      * @param chatId 聊天会话ID
      * @param file 上传的PDF文件
-     * @return 上传结果
+     * @param priority 解析优先级：HIGH、NORMAL、LOW
+     * @return 上传结果和任务信息
      */
     @PostMapping("/upload/{chatId}")
-    public Result uploadPdf(@PathVariable String chatId, @RequestParam("file") MultipartFile file) {
+    public Result uploadPdf(@PathVariable String chatId, @RequestParam("file") MultipartFile file,
+                            @RequestParam(value = "priority", defaultValue = "NORMAL") String priority) {
         try {
             log.info("开始上传PDF文件，chatId: {}, 文件名: {}", chatId, file.getOriginalFilename());
             
@@ -87,22 +101,72 @@ public class PdfController {
                 return Result.fail("文件保存失败");
             }
             
-            // 3. 处理PDF内容（解析并存储到个人和全局知识库）
-            pdfContentService.processPdfDocument(chatId, file.getResource());
-            
-            // 4. 获取全局知识库统计信息
-            Map<String, Object> stats = pdfContentService.getGlobalKnowledgeBaseStats();
+            // 3. 提交解析任务（解析并存储到个人和全局知识库，相同内容只解析一次）
+            PdfIngestionService.IngestionJob job = pdfIngestionService.submit(chatId, fileRepository.getFile(chatId),
+                file.getOriginalFilename(), fileRepository.getContentHash(chatId),
+                PdfIngestionService.Priority.parse(priority));
             
-            log.info("PDF文件上传和处理成功，chatId: {}", chatId);
-            return Result.ok("上传成功，已加入全局知识库")
-                .put("globalStats", stats);
+            log.info("PDF文件上传成功，已提交解析任务，chatId: {}, jobId: {}", chatId, job.getJobId());
+            return Result.ok("上传成功，正在解析并加入全局知识库")
+                .put("jobId", job.getJobId())
+                .put("job", job.toMap());
             
+        } catch (RejectedExecutionException e) {
+            log.warn("解析队列已满，拒绝上传，chatId: {}", chatId);
+            return Result.fail("当前解析任务较多，请稍后再试");
         } catch (Exception e) {
             log.error("上传PDF文件失败，chatId: {}", chatId, e);
             return Result.fail("上传失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 查询解析任务状态
+     * @param jobId 任务ID
+     * @return 任务状态，解析中时附带页面进度
+     */
+    @GetMapping("/jobs/{jobId}")
+    public Result getJob(@PathVariable String jobId) {
+        Map<String, Object> status = pdfIngestionService.getJobStatus(jobId);
+        if (status == null) {
+            return Result.fail("未找到解析任务: " + jobId);
+        }
+        return Result.ok("获取解析任务成功").put("job", status);
+    }
+
+    /**
+     * 订阅解析任务进度（Server-Sent Events）
+     * 状态或页面进度变化时推送 progress 事件，任务结束时推送 done 事件并关闭连接
+     * @param jobId 任务ID
+     * @return 进度事件流
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> jobEvents(@PathVariable String jobId) {
+        if (pdfIngestionService.getJob(jobId) == null) {
+            return Flux.just(ServerSentEvent.<Map<String, Object>>builder()
+                .event("error")
+                .data(Map.of("message", "未找到解析任务: " + jobId))
+                .build());
+        }
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(pdfProperties.getIngest().getEventsIntervalMs()))
+            .<Map<String, Object>>handle((tick, sink) -> {
+                Map<String, Object> status = pdfIngestionService.getJobStatus(jobId);
+                if (status == null) {
+                    sink.complete();
+                } else {
+                    sink.next(status);
+                }
+            })
+            // 只在状态、执行次数或已解析页数变化时推送
+            .distinctUntilChanged(status -> List.of(status.get("state"), status.get("attempts"),
+                String.valueOf(status.get("processedPages"))))
+            .takeUntil(status -> Boolean.TRUE.equals(status.get("finished")))
+            .map(status -> ServerSentEvent.<Map<String, Object>>builder()
+                .event(Boolean.TRUE.equals(status.get("finished")) ? "done" : "progress")
+                .data(status)
+                .build());
+    }
+
     /**
      * 下载PDF文件
      * @param chatId 聊天会话ID
@@ -120,8 +184,12 @@ public class PdfController {
                 return ResponseEntity.notFound().build();
             }
             
-            // 2. 文件名编码写入响应头
-            String filename = URLEncoder.encode(Objects.requireNonNull(resource.getFilename()), StandardCharsets.UTF_8);
+            // 2. 原始文件名编码写入响应头（本地文件按内容哈希命名）
+            String originalFilename = fileRepository.getOriginalFilename(chatId);
+            if (originalFilename == null) {
+                originalFilename = resource.getFilename();
+            }
+            String filename = URLEncoder.encode(Objects.requireNonNull(originalFilename), StandardCharsets.UTF_8);
             
             // 3. 返回文件
             return ResponseEntity.ok()
@@ -147,33 +215,45 @@ public class PdfController {
         log.info("开始基于全局知识库的对话，chatId: {}, 用户问题: {}", chatId, prompt);
         
         try {
-            // 1. 从全局知识库搜索相关内容
-            List<PdfContentService.PdfPageContent> relevantContents = 
-                pdfContentService.searchGlobalKnowledgeBase(prompt, 5);
+            // 检索结果的段落文本在租约关闭前保持可读，即使所属文档被并发删除
+            String contextPrompt;
+            try (DeferredReclaimer.Lease lease = pdfContentService.beginRead()) {
+                // 1. 从全局知识库搜索相关内容
+                List<PdfContentService.PdfPageContent> relevantContents = 
+                    pdfContentService.searchGlobalKnowledgeBase(prompt, pdfProperties.getChat().getMaxPassages());
             
-            if (relevantContents.isEmpty()) {
-                log.warn("未找到相关内容，chatId: {}", chatId);
-                return Flux.just("抱歉，我在全局知识库中没有找到与您问题相关的内容。请确保已上传相关的PDF文档。");
-            }
+                if (relevantContents.isEmpty()) {
+                    PdfContentService.BootstrapProgress progress = pdfContentService.getBootstrapProgress();
+                    if (!progress.isReady()) {
+                        log.warn("知识库仍在加载中且未找到相关内容，chatId: {}", chatId);
+                        return Flux.just(String.format("知识库正在加载中（已加载 %d/%d 个文档），暂未找到与您问题相关的内容，请稍后再试。",
+                            progress.getLoaded(), progress.getTotal()));
+                    }
+                    log.warn("未找到相关内容，chatId: {}", chatId);
+                    return Flux.just("抱歉，我在全局知识库中没有找到与您问题相关的内容。请确保已上传相关的PDF文档。");
+                }
             
-            // 2. 构建上下文
-            StringBuilder contextBuilder = new StringBuilder();
-            contextBuilder.append("基于以下PDF文档内容回答用户问题:\n\n");
+                // 2. 构建上下文（每个段落只保留与问题相关的片段）
+                List<String> snippets = pdfContentService.extractSnippets(prompt, relevantContents,
+                    pdfProperties.getChat().getContextChars());
+                StringBuilder contextBuilder = new StringBuilder();
+                contextBuilder.append("基于以下PDF文档内容回答用户问题:\n\n");
             
-            for (int i = 0; i < relevantContents.size(); i++) {
-                PdfContentService.PdfPageContent content = relevantContents.get(i);
-                String fileName = (String) content.getMetadata().get("file_name");
-                contextBuilder.append(String.format("【文档%d: %s - 第%d页】\n", 
-                    i + 1, fileName, content.getPageNumber()));
-                contextBuilder.append(content.getContent());
-                contextBuilder.append("\n\n");
-            }
+                for (int i = 0; i < relevantContents.size(); i++) {
+                    PdfContentService.PdfPageContent content = relevantContents.get(i);
+                    String fileName = (String) content.getMetadata().get("file_name");
+                    contextBuilder.append(String.format("【文档%d: %s - 第%d页】\n", 
+                        i + 1, fileName, content.getPageNumber()));
+                    contextBuilder.append(snippets.get(i));
+                    contextBuilder.append("\n\n");
+                }
             
-            contextBuilder.append("用户问题: ").append(prompt);
-            contextBuilder.append("\n\n请基于上述文档内容准确回答问题，如果文档中没有相关信息，请明确说明。");
+                contextBuilder.append("用户问题: ").append(prompt);
+                contextBuilder.append("\n\n请基于上述文档内容准确回答问题，如果文档中没有相关信息，请明确说明。");
             
-            String contextPrompt = contextBuilder.toString();
-            log.info("构建的上下文长度: {} 字符，包含 {} 个文档片段", contextPrompt.length(), relevantContents.size());
+                contextPrompt = contextBuilder.toString();
+                log.info("构建的上下文长度: {} 字符，包含 {} 个文档段落", contextPrompt.length(), relevantContents.size());
+            }
             
             // 3. 调用AI进行对话
             return simplePdfChatClient.prompt()
@@ -210,7 +290,7 @@ public class PdfController {
     
     /**
      * 从全局知识库中删除指定文档
-     * @param fileName 文件名
+     * @param fileName 文件名或文档ID
      * @return 删除结果
      */
     @DeleteMapping("/documents/{fileName}")
@@ -229,20 +309,17 @@ public class PdfController {
     }
     
     /**
-     * 重新初始化全局知识库
+     * 重新初始化全局知识库（在后台执行，通过 /status 查询进度）
      * @return 初始化结果
      */
     @PostMapping("/reinitialize")
     public Result reinitializeKnowledgeBase() {
         try {
             log.info("开始重新初始化全局知识库...");
-            pdfContentService.initializeGlobalKnowledgeBase();
-            
-            Map<String, Object> stats = pdfContentService.getGlobalKnowledgeBaseStats();
-            log.info("全局知识库重新初始化完成");
+            boolean started = pdfContentService.startGlobalKnowledgeBaseInitialization();
             
-            return Result.ok("全局知识库重新初始化成功")
-                .put("stats", stats);
+            return Result.ok(started ? "全局知识库重新初始化已开始" : "全局知识库正在加载中")
+                .put("progress", pdfContentService.getBootstrapProgress().toMap());
                 
         } catch (Exception e) {
             log.error("重新初始化全局知识库失败", e);
@@ -250,6 +327,19 @@ public class PdfController {
         }
     }
     
+    /**
+     * 获取全局知识库加载进度
+     * @return 加载进度、就绪状态、正在解析的文档的页面进度和解析队列统计
+     */
+    @GetMapping("/status")
+    public Result getKnowledgeBaseStatus() {
+        PdfContentService.BootstrapProgress progress = pdfContentService.getBootstrapProgress();
+        return Result.ok(progress.isReady() ? "知识库已就绪" : "知识库加载中")
+            .put("progress", progress.toMap())
+            .put("ingestions", pdfContentService.getActiveIngestions())
+            .put("ingestQueue", pdfIngestionService.getQueueStats());
+    }
+    
     /**
      * 获取全局知识库统计信息
      * @return 统计信息
@@ -281,7 +371,8 @@ public class PdfController {
             List<PdfContentService.PdfPageContent> allContents = pdfContentService.getAllContent(chatId);
             
             return Result.ok("PDF信息获取成功")
-                    .put("totalPages", allContents.size())
+                    .put("totalPages", PdfContentService.countPages(allContents))
+                    .put("totalPassages", allContents.size())
                     .put("hasContent", true);
                     
         } catch (Exception e) {
@@ -0,0 +1,125 @@
+package com.example.springaichat.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带持久化缓存的EmbeddingModel
+ * 批量生成文档向量时，已缓存的文本直接返回缓存的向量，只把未缓存的文档（同一批内按文本去重）交给被包装的模型，
+ * 生成的向量写入缓存。缓存键为（模型名，维度，文本SHA-256），请求选项未指定模型或维度时使用默认值。
+ * 检索时的问题等单独的文本几乎不会重复，不经过缓存，避免缓存文件无限增长和请求路径上的磁盘写入。
+ * 缓存写入失败只记录日志，不影响本次请求
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String defaultModel;
+    private final int defaultDimensions;
+
+    /**
+     * @param delegate 被包装的模型
+     * @param cache 向量缓存
+     * @param defaultModel 请求未指定模型时的模型名
+     * @param defaultDimensions 请求未指定维度时的维度，0表示模型默认维度
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String defaultModel,
+                                 int defaultDimensions) {
+        if (delegate == null || cache == null) {
+            throw new IllegalArgumentException("delegate和cache不能为空");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModel = defaultModel;
+        this.defaultDimensions = defaultDimensions;
+    }
+
+    /**
+     * 直接交给被包装的模型，不经过缓存（{@link #embed(String)}等单条文本的调用都走这里）
+     */
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    /**
+     * 查缓存后，未命中的文档交给被包装模型的同名方法：流水线（EmbeddingPipeline）自行分批，其他模型按传入的策略分批
+     */
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        int dimensions = options != null && options.getDimensions() != null ? options.getDimensions() : defaultDimensions;
+
+        float[][] outputs = new float[documents.size()][];
+        byte[][] keys = new byte[documents.size()][];
+        // 未缓存的文本 -> 在待生成列表中的位置
+        Map<String, Integer> pending = new HashMap<>();
+        List<Document> missing = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            String text = documents.get(i).getText();
+            keys[i] = EmbeddingCache.sha256(text);
+            outputs[i] = cache.get(model, dimensions, keys[i]);
+            if (outputs[i] == null && pending.putIfAbsent(text, missing.size()) == null) {
+                missing.add(documents.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<float[]> generated = delegate.embed(missing, options, batchingStrategy);
+            if (generated.size() != missing.size()) {
+                throw new IllegalStateException("向量数与文本数不一致: " + generated.size() + " / " + missing.size());
+            }
+            boolean[] stored = new boolean[missing.size()];
+            for (int i = 0; i < documents.size(); i++) {
+                if (outputs[i] != null) {
+                    continue;
+                }
+                int slot = pending.get(documents.get(i).getText());
+                outputs[i] = generated.get(slot);
+                if (!stored[slot]) {
+                    stored[slot] = true;
+                    store(model, dimensions, keys[i], outputs[i]);
+                }
+            }
+        }
+        return new ArrayList<>(Arrays.asList(outputs));
+    }
+
+    /**
+     * 单个文档的向量不经过缓存：文档可能带元数据格式化后再生成向量，与按文本缓存的键不一致
+     */
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCache getCache() {
+        return cache;
+    }
+
+    private void store(String model, int dimensions, byte[] key, float[] vector) {
+        try {
+            cache.put(model, dimensions, key, vector);
+        } catch (IOException e) {
+            log.warn("写入向量缓存失败: {}", e.getMessage());
+        }
+    }
+}
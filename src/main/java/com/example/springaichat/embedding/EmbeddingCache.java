@@ -0,0 +1,320 @@
+package com.example.springaichat.embedding;
+
+import com.example.springaichat.search.ContentHash;
+import com.example.springaichat.search.LongObjectMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化的向量缓存
+ * 以（模型名，维度，文本SHA-256）为键，向量只追加写入单个文件，读取通过内存映射完成
+ * （文件按记录边界分成不超过1GB的区域分别映射），内存中只保留键哈希到文件偏移的索引。
+ * 打开时顺序扫描文件重建索引，末尾写了一半或校验失败的记录被截掉。同一个键重复写入时以最后一条为准；文件不会压缩，旧记录只占磁盘空间
+ */
+public class EmbeddingCache implements Closeable {
+
+    /** 文件魔数 "EMBC" */
+    private static final int MAGIC = 0x454D4243;
+
+    /** 文件格式版本，格式变化时递增，旧版本文件会被清空重建 */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int FILE_HEADER = 8;
+
+    /** 每条记录的头部：记录体长度 + CRC32 */
+    private static final int RECORD_HEADER = 8;
+
+    private static final int SHA256_BYTES = 32;
+
+    /** 单个映射区域的最大长度 */
+    private static final long REGION_BYTES = 1L << 30;
+
+    private final Path file;
+    private final FileChannel channel;
+
+    /** 键哈希到记录偏移 */
+    private final LongObjectMap<Long> index = new LongObjectMap<>(1024);
+
+    /** 映射区域的起始位置，区域边界总是记录边界 */
+    private final List<Long> regionStarts = new ArrayList<>();
+
+    /** 映射区域，尚未映射的为null；最后一个区域在读取新追加的记录时重新映射 */
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+    private long size;
+
+    private long hits;
+    private long misses;
+    private long discardedBytes;
+
+    private EmbeddingCache(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * 打开缓存文件，不存在时创建
+     * @param file 缓存文件
+     */
+    public static EmbeddingCache open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        EmbeddingCache cache = new EmbeddingCache(file, channel);
+        try {
+            cache.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * 计算文本的SHA-256
+     */
+    public static byte[] sha256(String text) {
+        return ContentHash.newDigest().digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 查找缓存的向量
+     * @param model 模型名
+     * @param dimensions 请求的向量维度，0表示模型默认维度
+     * @param textSha256 文本的SHA-256
+     * @return 向量，未缓存时返回null
+     */
+    public synchronized float[] get(String model, int dimensions, byte[] textSha256) {
+        Long offset = index.get(keyHash(model, dimensions, textSha256));
+        float[] vector = offset == null ? null : read(offset, model, dimensions, textSha256);
+        if (vector == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return vector;
+    }
+
+    /**
+     * 追加写入向量
+     * @param model 模型名
+     * @param dimensions 请求的向量维度，0表示模型默认维度
+     * @param textSha256 文本的SHA-256
+     * @param vector 向量
+     */
+    public synchronized void put(String model, int dimensions, byte[] textSha256, float[] vector) throws IOException {
+        if (textSha256.length != SHA256_BYTES) {
+            throw new IllegalArgumentException("文本哈希必须是SHA-256: " + textSha256.length + "字节");
+        }
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 2 + modelBytes.length + 4 + SHA256_BYTES + 4 + vector.length * Float.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bodyLength);
+        record.putInt(bodyLength).putInt(0);
+        record.putShort((short) modelBytes.length).put(modelBytes);
+        record.putInt(dimensions).put(textSha256).putInt(vector.length);
+        for (float value : vector) {
+            record.putFloat(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        long offset = size;
+        startRegionIfFull(offset, record.remaining());
+        writeFully(record, offset);
+        size += RECORD_HEADER + bodyLength;
+        index.put(keyHash(model, dimensions, textSha256), offset);
+    }
+
+    /** 缓存的向量数（同一个键只计一次） */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 获取缓存统计
+     * @return 向量数、文件大小、命中/未命中次数和打开时截掉的损坏字节数
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("file", file.toString());
+        stats.put("entries", index.size());
+        stats.put("fileBytes", size);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("discardedBytes", discardedBytes);
+        return stats;
+    }
+
+    /**
+     * 把已写入的记录刷到磁盘
+     */
+    public synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * 刷盘后关闭文件，重复关闭时不做任何事
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } finally {
+            regions.clear();
+            channel.close();
+        }
+    }
+
+    /**
+     * 校验文件头并扫描全部记录重建索引
+     */
+    private void load() throws IOException {
+        long fileSize = channel.size();
+        regionStarts.add((long) FILE_HEADER);
+        regions.add(null);
+        if (fileSize < FILE_HEADER || !validHeader()) {
+            // 空文件、写了一半的文件头或旧版本格式：清空重建
+            discardedBytes = fileSize;
+            channel.truncate(0);
+            writeFully(ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+            size = FILE_HEADER;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        long offset = FILE_HEADER;
+        while (offset + RECORD_HEADER <= fileSize) {
+            readFully(header.clear(), offset);
+            int bodyLength = header.getInt(0);
+            if (bodyLength <= 0 || offset + RECORD_HEADER + bodyLength > fileSize) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(body, offset + RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            startRegionIfFull(offset, RECORD_HEADER + bodyLength);
+            body.flip();
+            byte[] modelBytes = new byte[body.getShort()];
+            body.get(modelBytes);
+            int dimensions = body.getInt();
+            byte[] sha = new byte[SHA256_BYTES];
+            body.get(sha);
+            index.put(keyHash(new String(modelBytes, StandardCharsets.UTF_8), dimensions, sha), offset);
+            offset += RECORD_HEADER + bodyLength;
+        }
+        size = offset;
+        if (offset < fileSize) {
+            // 末尾写了一半或损坏的记录
+            discardedBytes = fileSize - offset;
+            channel.truncate(offset);
+        }
+    }
+
+    private boolean validHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION;
+    }
+
+    /**
+     * 写入位置之后的记录放不进当前区域时，从写入位置开始一个新区域
+     */
+    private void startRegionIfFull(long offset, int recordLength) {
+        long lastStart = regionStarts.get(regionStarts.size() - 1);
+        if (offset > lastStart && offset + recordLength - lastStart > REGION_BYTES) {
+            regionStarts.add(offset);
+            regions.add(null);
+        }
+    }
+
+    /**
+     * 定位到记录开头的只读缓冲区
+     */
+    private ByteBuffer recordAt(long offset) {
+        int region = regionStarts.size() - 1;
+        while (regionStarts.get(region) > offset) {
+            region--;
+        }
+        long start = regionStarts.get(region);
+        MappedByteBuffer buffer = regions.get(region);
+        if (buffer == null || offset - start >= buffer.capacity()) {
+            // 区域尚未映射，或记录是映射之后追加的
+            long end = region + 1 < regionStarts.size() ? regionStarts.get(region + 1) : size;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException("映射向量缓存文件失败: " + file, e);
+            }
+            regions.set(region, buffer);
+        }
+        return buffer.duplicate().position((int) (offset - start));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * 读取记录中的向量，记录的键与查询的键不一致（哈希冲突）时返回null
+     */
+    private float[] read(long offset, String model, int dimensions, byte[] textSha256) {
+        ByteBuffer record = recordAt(offset + RECORD_HEADER);
+        byte[] modelBytes = new byte[record.getShort()];
+        record.get(modelBytes);
+        int recordDimensions = record.getInt();
+        byte[] sha = new byte[SHA256_BYTES];
+        record.get(sha);
+        if (recordDimensions != dimensions || !Arrays.equals(sha, textSha256)
+            || !model.equals(new String(modelBytes, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        float[] vector = new float[record.getInt()];
+        record.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * 键哈希：文本哈希的前8字节混入模型名和维度，冲突在读取时按完整的键校验
+     */
+    private static long keyHash(String model, int dimensions, byte[] textSha256) {
+        long hash = ByteBuffer.wrap(textSha256).getLong();
+        return hash ^ ((31L * model.hashCode() + dimensions) * 0x9E3779B97F4A7C15L);
+    }
+
+}
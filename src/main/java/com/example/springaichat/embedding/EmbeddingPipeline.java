@@ -0,0 +1,409 @@
+package com.example.springaichat.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.lang.Character.UnicodeScript;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * 批量、限并发的向量生成流水线，放在向量模型（OpenAiEmbeddingModel）之前
+ * 一次请求中的分块按顺序装入不超过token上限和条数上限的批次，多个批次同时发送，同时在途的批次数有上限。
+ * 遇到限流响应（HTTP 429）时所有批次暂停退避后重试，并把并发上限减半，之后每连续成功若干批再逐步恢复。
+ * 非限流错误直接抛出（瞬时错误由被包装模型自身的重试处理）。统计累计的分块数、批次数和每秒处理的分块数
+ */
+@Slf4j
+public class EmbeddingPipeline implements EmbeddingModel, AutoCloseable {
+
+    /** 默认每批token上限 */
+    public static final int DEFAULT_MAX_BATCH_TOKENS = 8192;
+
+    /** 默认每批条数上限（百炼兼容接口每次最多10条） */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10;
+
+    /** 默认同时在途的批次数 */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchTokens;
+    private final int maxBatchSize;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ToIntFunction<String> tokenEstimator;
+
+    private final ExecutorService executor;
+
+    /** 并发上限的状态，由limitLock保护 */
+    private final Object limitLock = new Object();
+    private int limit;
+    private int inFlight;
+    private int successesSinceIncrease;
+
+    /** 限流退避的截止时间，所有批次发送前都要等到此时 */
+    private volatile long pausedUntilMillis;
+
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong elapsedNanos = new AtomicLong();
+    private volatile double lastChunksPerSecond;
+
+    protected EmbeddingPipeline(Builder builder) {
+        this.delegate = builder.delegate;
+        this.maxBatchTokens = builder.maxBatchTokens;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxInFlight = builder.maxInFlight;
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.tokenEstimator = builder.tokenEstimator;
+        this.limit = builder.maxInFlight;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "kb-embed-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder(EmbeddingModel delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+        private final EmbeddingModel delegate;
+        private int maxBatchTokens = DEFAULT_MAX_BATCH_TOKENS;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private int maxRetries = 5;
+        private long initialBackoffMillis = 1000;
+        private long maxBackoffMillis = 30000;
+        private ToIntFunction<String> tokenEstimator = EmbeddingPipeline::estimateTokens;
+
+        private Builder(EmbeddingModel delegate) {
+            if (delegate == null) {
+                throw new IllegalArgumentException("delegate不能为空");
+            }
+            this.delegate = delegate;
+        }
+
+        /** 每批token上限，单个超过上限的分块独占一批 */
+        public Builder maxBatchTokens(int maxBatchTokens) {
+            this.maxBatchTokens = maxBatchTokens;
+            return this;
+        }
+
+        /** 每批条数上限 */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /** 同时在途的批次数 */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /** 单个批次遇到限流时的最大重试次数 */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /** 限流退避：首次等待时间，之后每次翻倍，不超过maxBackoffMillis */
+        public Builder backoff(long initialBackoffMillis, long maxBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /** 分块token数的估算方法，默认按字符估算 */
+        public Builder tokenEstimator(ToIntFunction<String> tokenEstimator) {
+            this.tokenEstimator = tokenEstimator;
+            return this;
+        }
+
+        public EmbeddingPipeline build() {
+            if (maxBatchTokens <= 0 || maxBatchSize <= 0 || maxInFlight <= 0) {
+                throw new IllegalArgumentException("批次上限和并发数必须大于0");
+            }
+            if (maxRetries < 0 || initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+                throw new IllegalArgumentException("重试参数无效");
+            }
+            if (tokenEstimator == null) {
+                throw new IllegalArgumentException("tokenEstimator不能为空");
+            }
+            return new EmbeddingPipeline(this);
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        if (texts.isEmpty()) {
+            return new EmbeddingResponse(new ArrayList<>());
+        }
+        long start = System.nanoTime();
+        List<int[]> ranges = batch(texts);
+        float[][] outputs = new float[texts.size()][];
+        List<Future<?>> futures = new ArrayList<>(ranges.size());
+        for (int[] range : ranges) {
+            futures.add(executor.submit(() -> {
+                embedBatch(texts.subList(range[0], range[1]), request.getOptions(), outputs, range[0]);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("向量生成被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        chunks.addAndGet(texts.size());
+        batches.addAndGet(ranges.size());
+        elapsedNanos.addAndGet(elapsed);
+        lastChunksPerSecond = texts.size() * 1e9 / Math.max(1, elapsed);
+        if (ranges.size() > 1) {
+            log.info("向量生成完成: {} 个分块, {} 批, 耗时 {} ms, {} 块/秒", texts.size(), ranges.size(),
+                elapsed / 1_000_000, String.format(Locale.ROOT, "%.1f", lastChunksPerSecond));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(outputs.length);
+        for (int i = 0; i < outputs.length; i++) {
+            embeddings.add(new Embedding(outputs[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * 所有文档作为一个请求交给流水线分批，不再按传入的策略预先分批
+     */
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<String> texts = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            texts.add(document.getText());
+        }
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (Embedding embedding : call(new EmbeddingRequest(texts, options)).getResults()) {
+            embeddings.add(embedding.getOutput());
+        }
+        return embeddings;
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 获取累计统计
+     * @return 分块数、批次数、限流次数、当前并发上限和每秒处理的分块数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long totalChunks = chunks.get();
+        long totalNanos = elapsedNanos.get();
+        stats.put("chunks", totalChunks);
+        stats.put("batches", batches.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("currentLimit", currentLimit());
+        // 并发的多次调用耗时会重叠累计，此值偏保守
+        stats.put("chunksPerSecond", totalNanos == 0 ? 0.0 : totalChunks * 1e9 / totalNanos);
+        stats.put("lastChunksPerSecond", lastChunksPerSecond);
+        return stats;
+    }
+
+    /** 当前的并发上限（限流后会临时降低） */
+    public int currentLimit() {
+        synchronized (limitLock) {
+            return limit;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 按顺序把分块装入批次
+     * @return 每批在请求中的[起始, 结束)位置
+     */
+    List<int[]> batch(List<String> texts) {
+        List<int[]> ranges = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int textTokens = tokenEstimator.applyAsInt(texts.get(i));
+            if (i > from && (tokens + textTokens > maxBatchTokens || i - from >= maxBatchSize)) {
+                ranges.add(new int[]{from, i});
+                from = i;
+                tokens = 0;
+            }
+            tokens += textTokens;
+        }
+        ranges.add(new int[]{from, texts.size()});
+        return ranges;
+    }
+
+    /**
+     * 估算token数：中日韩文字按每字1.5个token，其他字符按每4个字符1个token，宁多勿少
+     */
+    static int estimateTokens(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            UnicodeScript script = UnicodeScript.of(codePoint);
+            if (script == UnicodeScript.HAN || script == UnicodeScript.HIRAGANA || script == UnicodeScript.KATAKANA
+                || script == UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return (cjk * 3 + 1) / 2 + (other + 3) / 4;
+    }
+
+    /**
+     * 是否为限流错误：异常链中的HTTP 429或rate limit信息
+     */
+    static boolean isRateLimited(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if ("TooManyRequests".equals(e.getClass().getSimpleName())) {
+                return true;
+            }
+            String message = e.getMessage();
+            if (message != null) {
+                String lower = message.toLowerCase(Locale.ROOT);
+                if (lower.startsWith("429") || lower.contains("too many requests") || lower.contains("rate limit")
+                    || lower.contains("rate_limit")) {
+                    return true;
+                }
+            }
+            if (e.getCause() == e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    long backoffMillis(int attempt) {
+        double delay = initialBackoffMillis * Math.pow(2, attempt - 1);
+        return (long) Math.min(delay, maxBackoffMillis);
+    }
+
+    private void embedBatch(List<String> texts, EmbeddingOptions options, float[][] outputs, int offset)
+        throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            acquire();
+            boolean limited = false;
+            try {
+                List<Embedding> results = delegate.call(new EmbeddingRequest(texts, options)).getResults();
+                if (results.size() != texts.size()) {
+                    throw new IllegalStateException("向量数与文本数不一致: " + results.size() + " / " + texts.size());
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    Embedding embedding = results.get(i);
+                    int index = embedding.getIndex() == null ? i : embedding.getIndex();
+                    outputs[offset + index] = embedding.getOutput();
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (!isRateLimited(e) || attempt > maxRetries) {
+                    throw e;
+                }
+                limited = true;
+                rateLimited.incrementAndGet();
+                // 加随机抖动，避免所有批次同时恢复
+                long delay = backoffMillis(attempt);
+                delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+                long until = System.currentTimeMillis() + delay;
+                synchronized (limitLock) {
+                    pausedUntilMillis = Math.max(pausedUntilMillis, until);
+                }
+                log.warn("向量接口限流，第 {} 次重试前等待 {} ms，并发上限降为 {}", attempt, delay,
+                    Math.max(1, currentLimit() / 2));
+            } finally {
+                release(limited);
+            }
+        }
+    }
+
+    /**
+     * 等待退避结束并占用一个并发名额
+     */
+    private void acquire() throws InterruptedException {
+        synchronized (limitLock) {
+            while (true) {
+                long wait = pausedUntilMillis - System.currentTimeMillis();
+                if (wait > 0) {
+                    limitLock.wait(wait);
+                } else if (inFlight >= limit) {
+                    limitLock.wait();
+                } else {
+                    inFlight++;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 归还并发名额：限流时上限减半，连续成功的批次数达到当前上限时上限加一
+     */
+    private void release(boolean limited) {
+        synchronized (limitLock) {
+            inFlight--;
+            if (limited) {
+                limit = Math.max(1, limit / 2);
+                successesSinceIncrease = 0;
+            } else if (limit < maxInFlight && ++successesSinceIncrease >= limit) {
+                limit++;
+                successesSinceIncrease = 0;
+            }
+            limitLock.notifyAll();
+        }
+    }
+}
@@ -22,4 +22,18 @@ public interface FileRepository {
      */
     Resource getFile(String chatId);
 
+    /**
+     *  根据ChatId获取上传时的原始文件名
+     * @param chatId
+     * @return
+     */
+    String getOriginalFilename(String chatId);
+
+    /**
+     *  根据ChatId获取文件内容的SHA-256，未知时返回null
+     * @param chatId
+     * @return
+     */
+    String getContentHash(String chatId);
+
 }
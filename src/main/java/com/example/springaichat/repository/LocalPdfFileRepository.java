@@ -1,5 +1,6 @@
 package com.example.springaichat.repository;
 
+import com.example.springaichat.search.ContentHash;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
@@ -8,7 +9,12 @@ import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.Objects;
 import java.util.Properties;
@@ -27,8 +33,15 @@ public class LocalPdfFileRepository implements FileRepository {
      */
     private final Properties chatFiles = new Properties();
 
+    /**
+     * 会话id与上传时原始文件名的对应关系，文件本身按内容哈希命名
+     */
+    private final Properties chatFileNames = new Properties();
+
     /**
      * 保存文件到本地磁盘，并记录ChatId与文件的映射关系
+     * 文件按内容寻址保存为 uploads/{sha256}.pdf：写入磁盘的同时计算SHA-256，
+     * 内容相同的文件只保存一份，不同内容的同名文件也不会互相覆盖
      * @param chatId 聊天会话ID
      * @param resource 文件资源
      * @return 保存是否成功
@@ -56,27 +69,36 @@ public class LocalPdfFileRepository implements FileRepository {
                 }
             }
             
-            // 3. 创建目标文件路径（保存到uploads目录）
-            File target = new File(uploadsDir, filename);
-            
-            // 4. 如果文件不存在，则保存文件
-            if (!target.exists()) {
-                try {
-                    // 将resource文件保存到本地磁盘
-                    Files.copy(resource.getInputStream(), target.toPath());
+            // 3. 写入临时文件，同时计算内容哈希
+            String contentHash;
+            Path temp = Files.createTempFile(uploadsDir.toPath(), ".upload-", ".tmp");
+            try {
+                MessageDigest digest = ContentHash.newDigest();
+                try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+                    Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                contentHash = ContentHash.toHex(digest.digest());
+                
+                // 4. 按内容哈希命名，内容已存在时丢弃临时文件
+                File target = new File(uploadsDir, contentHash + ".pdf");
+                if (!target.exists()) {
+                    Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
                     log.info("文件保存成功：{}", target.getAbsolutePath());
-                } catch (IOException e) {
-                    log.error("保存文件失败，文件名: {}", filename, e);
-                    return false;
+                } else {
+                    log.info("相同内容的文件已存在，跳过保存：{}", target.getAbsolutePath());
                 }
-            } else {
-                log.info("文件已存在，跳过保存：{}", target.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("保存文件失败，文件名: {}", filename, e);
+                return false;
+            } finally {
+                Files.deleteIfExists(temp);
             }
             
-            // 5. 保存ChatId与文件名的映射关系（存储相对路径）
-            String relativePath = "uploads" + File.separator + filename;
+            // 5. 保存ChatId与文件路径、原始文件名的映射关系（存储相对路径）
+            String relativePath = "uploads" + File.separator + contentHash + ".pdf";
             chatFiles.put(chatId, relativePath);
-            log.info("保存文件映射关系成功，chatId: {} -> 文件路径: {}", chatId, relativePath);
+            chatFileNames.put(chatId, filename);
+            log.info("保存文件映射关系成功，chatId: {} -> 文件路径: {}, 原始文件名: {}", chatId, relativePath, filename);
             
             return true;
             
@@ -128,6 +150,32 @@ public class LocalPdfFileRepository implements FileRepository {
         }
     }
 
+    /**
+     * 根据ChatId获取上传时的原始文件名
+     * @param chatId 聊天会话ID
+     * @return 原始文件名，未知时返回保存的文件名
+     */
+    @Override
+    public String getOriginalFilename(String chatId) {
+        String filename = chatFileNames.getProperty(chatId);
+        if (filename != null) {
+            return filename;
+        }
+        String filePath = chatFiles.getProperty(chatId);
+        return filePath == null ? null : new File(filePath).getName();
+    }
+
+    /**
+     * 根据ChatId获取文件内容的SHA-256
+     * @param chatId 聊天会话ID
+     * @return 内容哈希，旧版按文件名保存的文件返回null
+     */
+    @Override
+    public String getContentHash(String chatId) {
+        String filePath = chatFiles.getProperty(chatId);
+        return filePath == null ? null : ContentHash.fromFileName(new File(filePath).getName());
+    }
+
     /**
      * 初始化方法，加载已有的文件映射关系
      */
@@ -149,6 +197,17 @@ public class LocalPdfFileRepository implements FileRepository {
                 log.info("文件映射配置文件不存在，将创建新的配置");
             }
             
+            // 加载原始文件名
+            FileSystemResource namesResource = new FileSystemResource("chat-pdf-names.properties");
+            if (namesResource.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(namesResource.getInputStream(), StandardCharsets.UTF_8))) {
+                    chatFileNames.load(reader);
+                    log.info("成功加载原始文件名，共{}条记录", chatFileNames.size());
+                } catch (IOException e) {
+                    log.error("加载原始文件名失败", e);
+                }
+            }
+            
             log.info("PDF文件仓库初始化完成");
             
         } catch (Exception e) {
@@ -172,6 +231,14 @@ public class LocalPdfFileRepository implements FileRepository {
                 log.error("持久化文件映射关系失败", e);
             }
             
+            // 保存原始文件名
+            try (Writer writer = Files.newBufferedWriter(Path.of("chat-pdf-names.properties"), StandardCharsets.UTF_8)) {
+                chatFileNames.store(writer, "PDF原始文件名 - " + LocalDateTime.now().toString());
+                log.info("成功持久化原始文件名，共{}条记录", chatFileNames.size());
+            } catch (IOException e) {
+                log.error("持久化原始文件名失败", e);
+            }
+            
         } catch (Exception e) {
             log.error("持久化过程出现异常", e);
         }
@@ -195,6 +262,7 @@ public class LocalPdfFileRepository implements FileRepository {
             String filePath = chatFiles.getProperty(chatId);
             if (filePath != null) {
                 chatFiles.remove(chatId);
+                chatFileNames.remove(chatId);
                 log.info("已清除文件映射关系，chatId: {}, 文件路径: {}", chatId, filePath);
                 return true;
             } else {
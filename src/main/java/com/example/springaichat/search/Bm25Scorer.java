@@ -0,0 +1,51 @@
+package com.example.springaichat.search;
+
+/**
+ * BM25相关性打分
+ * 使用倒排索引中增量维护的语料统计（文档频率、页面长度、平均长度），查询时无需再扫描原文
+ */
+public class Bm25Scorer {
+
+    /** 默认词频饱和参数 */
+    public static final double DEFAULT_K1 = 1.2;
+    /** 默认长度归一化参数 */
+    public static final double DEFAULT_B = 0.75;
+
+    private final double k1;
+    private final double b;
+
+    public Bm25Scorer() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    public Bm25Scorer(double k1, double b) {
+        if (k1 < 0 || b < 0 || b > 1) {
+            throw new IllegalArgumentException("BM25参数不合法: k1=" + k1 + ", b=" + b);
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * 逆文档频率（Lucene风格，保证非负）
+     * @param pageCount 语料中的页面总数
+     * @param documentFrequency 包含该词的页面数
+     * @return idf
+     */
+    public double idf(int pageCount, int documentFrequency) {
+        return Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * 单个词项在单个页面上的得分
+     * @param idf 词项的逆文档频率
+     * @param termFrequency 词频
+     * @param pageLength 页面长度（词项数）
+     * @param averagePageLength 语料平均页面长度
+     * @return 得分
+     */
+    public double score(double idf, int termFrequency, int pageLength, double averagePageLength) {
+        double norm = averagePageLength > 0 ? pageLength / averagePageLength : 1.0;
+        return idf * termFrequency * (k1 + 1) / (termFrequency + k1 * (1 - b + b * norm));
+    }
+}
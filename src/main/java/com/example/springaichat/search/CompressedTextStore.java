@@ -0,0 +1,324 @@
+package com.example.springaichat.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 堆外压缩文本存储
+ * 文本以UTF-8编码、deflate压缩后追加写入堆外直接内存分块，读取时才解压。
+ * 每条文本在堆上只占槽位表中的一个位置（8字节）和代数（4字节），句柄由槽位和代数组成：
+ * 释放后槽位可被新文本复用，旧句柄因代数不符而读取失败，重复释放无效果。
+ * 分块中的文本全部释放后整块归还；已释放的字节超过一半时，把仍存活的记录原样复制到当前分块末尾后归还整块（压缩）。
+ * 分块写入后内容不再修改，读取在锁外解压，正在读取被归还分块的线程持有缓冲区副本，不受压缩影响
+ */
+public final class CompressedTextStore {
+
+    /** 默认分块大小 */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** 每条记录的头部：槽位 + 压缩后长度 + 原始UTF-8长度 */
+    private static final int RECORD_HEADER = 12;
+
+    /** 分块中已释放的字节超过该比例时压缩 */
+    private static final double COMPACT_THRESHOLD = 0.5;
+
+    /** 已释放槽位的位置 */
+    private static final long RELEASED = -1L;
+
+    private final int chunkSize;
+    private final int compressionLevel;
+
+    /** 分块，已整块归还的位置为null */
+    private final List<Chunk> chunks = new ArrayList<>();
+    private Chunk current;
+
+    /** 槽位对应的记录位置（高32位为分块序号，低32位为块内偏移），已释放为RELEASED */
+    private long[] locations = new long[64];
+    /** 槽位代数，每次释放加一 */
+    private int[] generations = new int[64];
+    /** 已使用过的槽位数 */
+    private int slotCount;
+    /** 可复用的槽位 */
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    private long rawBytes;
+    private long storedBytes;
+    private int liveRecords;
+    private long compactions;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+    public CompressedTextStore() {
+        this(DEFAULT_CHUNK_SIZE, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param chunkSize 分块大小（字节），超过分块大小的单条文本独占一块
+     * @param compressionLevel deflate压缩级别（0-9）
+     */
+    public CompressedTextStore(int chunkSize, int compressionLevel) {
+        if (chunkSize <= RECORD_HEADER) {
+            throw new IllegalArgumentException("分块过小: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.compressionLevel = compressionLevel;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(compressionLevel));
+    }
+
+    /**
+     * 压缩并保存文本
+     * @param text 文本
+     * @return 句柄（高32位为槽位代数，低32位为槽位）
+     */
+    public long put(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(raw);
+        int recordLength = RECORD_HEADER + compressed.length;
+        synchronized (this) {
+            int slot = allocateSlot();
+            Chunk chunk = chunkWithRoom(recordLength);
+            int offset = chunk.buffer.position();
+            chunk.buffer.putInt(slot);
+            chunk.buffer.putInt(compressed.length);
+            chunk.buffer.putInt(raw.length);
+            chunk.buffer.put(compressed);
+            chunk.liveRecords++;
+            chunk.liveBytes += recordLength;
+            locations[slot] = location(chunk.index, offset);
+            rawBytes += raw.length;
+            storedBytes += recordLength;
+            liveRecords++;
+            return ((long) generations[slot] << 32) | slot;
+        }
+    }
+
+    /**
+     * 读取并解压文本
+     * @param handle 句柄
+     * @return 文本
+     * @throws IllegalStateException 文本已释放
+     */
+    public String get(long handle) {
+        ByteBuffer view;
+        int offset;
+        synchronized (this) {
+            long location = liveLocation(handle);
+            if (location == RELEASED) {
+                throw new IllegalStateException("文本已释放: " + handle);
+            }
+            view = chunks.get((int) (location >>> 32)).buffer.duplicate();
+            offset = (int) location;
+        }
+        int compressedLength = view.getInt(offset + 4);
+        int rawLength = view.getInt(offset + 8);
+        view.limit(offset + RECORD_HEADER + compressedLength).position(offset + RECORD_HEADER);
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(view);
+        byte[] raw = new byte[rawLength];
+        try {
+            int read = 0;
+            while (read < rawLength) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != rawLength) {
+                throw new IllegalStateException("文本记录已损坏: " + handle);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("文本记录已损坏: " + handle, e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 释放文本，已释放的句柄不做任何处理
+     * 分块中的文本全部释放后归还整块内存，已释放的字节超过一半时压缩该分块
+     * @param handle 句柄
+     */
+    public synchronized void remove(long handle) {
+        long location = liveLocation(handle);
+        if (location == RELEASED) {
+            return;
+        }
+        int slot = (int) handle;
+        Chunk chunk = chunks.get((int) (location >>> 32));
+        int offset = (int) location;
+        int recordLength = RECORD_HEADER + chunk.buffer.getInt(offset + 4);
+        rawBytes -= chunk.buffer.getInt(offset + 8);
+        storedBytes -= recordLength;
+        liveRecords--;
+        locations[slot] = RELEASED;
+        generations[slot]++;
+        releaseSlot(slot);
+
+        chunk.liveRecords--;
+        chunk.liveBytes -= recordLength;
+        if (chunk == current) {
+            return;
+        }
+        if (chunk.liveRecords == 0) {
+            chunks.set(chunk.index, null);
+        } else if (chunk.liveBytes < chunk.buffer.position() * (1 - COMPACT_THRESHOLD)) {
+            compact(chunk);
+        }
+    }
+
+    /** 保存的文本数量 */
+    public synchronized int size() {
+        return liveRecords;
+    }
+
+    /** 原始UTF-8字节数 */
+    public synchronized long rawBytes() {
+        return rawBytes;
+    }
+
+    /** 压缩后字节数（含记录头） */
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    /** 已分配的堆外内存字节数 */
+    public synchronized long allocatedBytes() {
+        long total = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                total += chunk.buffer.capacity();
+            }
+        }
+        return total;
+    }
+
+    /** 压缩率（压缩后 / 原始） */
+    public synchronized double compressionRatio() {
+        return rawBytes == 0 ? 0 : (double) storedBytes / rawBytes;
+    }
+
+    /** 分块压缩次数 */
+    public synchronized long compactions() {
+        return compactions;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 句柄对应的记录位置
+     * @return 记录位置，句柄无效或文本已释放时返回RELEASED
+     */
+    private long liveLocation(long handle) {
+        int slot = (int) handle;
+        if (slot < 0 || slot >= slotCount || generations[slot] != (int) (handle >>> 32)) {
+            return RELEASED;
+        }
+        return locations[slot];
+    }
+
+    /**
+     * 把分块中仍存活的记录原样复制到当前分块末尾，更新槽位位置后归还整块
+     */
+    private void compact(Chunk chunk) {
+        ByteBuffer source = chunk.buffer.duplicate();
+        int end = chunk.buffer.position();
+        int offset = 0;
+        while (offset < end) {
+            int slot = source.getInt(offset);
+            int recordLength = RECORD_HEADER + source.getInt(offset + 4);
+            if (slot < slotCount && locations[slot] == location(chunk.index, offset)) {
+                Chunk target = chunkWithRoom(recordLength);
+                int targetOffset = target.buffer.position();
+                source.limit(offset + recordLength).position(offset);
+                target.buffer.put(source);
+                source.limit(source.capacity());
+                target.liveRecords++;
+                target.liveBytes += recordLength;
+                locations[slot] = location(target.index, targetOffset);
+            }
+            offset += recordLength;
+        }
+        chunks.set(chunk.index, null);
+        compactions++;
+    }
+
+    /**
+     * 当前分块剩余空间不足时开始新的分块
+     */
+    private Chunk chunkWithRoom(int recordLength) {
+        if (current == null || current.buffer.remaining() < recordLength) {
+            Chunk previous = current;
+            current = new Chunk(chunks.size(), Math.max(chunkSize, recordLength));
+            chunks.add(current);
+            // 写满的分块不再是当前分块，其中的文本此前已全部释放时直接归还
+            if (previous != null && previous.liveRecords == 0) {
+                chunks.set(previous.index, null);
+            }
+        }
+        return current;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == locations.length) {
+            locations = Arrays.copyOf(locations, slotCount * 2);
+            generations = Arrays.copyOf(generations, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void releaseSlot(int slot) {
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private static long location(int chunkIndex, int offset) {
+        return ((long) chunkIndex << 32) | offset;
+    }
+
+    private byte[] compress(byte[] raw) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = buffers.get();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                buffers.set(buffer);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static final class Chunk {
+        final int index;
+        final ByteBuffer buffer;
+        int liveRecords;
+        long liveBytes;
+
+        Chunk(int index, int capacity) {
+            this.index = index;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+}
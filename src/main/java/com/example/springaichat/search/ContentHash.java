@@ -0,0 +1,76 @@
+package com.example.springaichat.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * 内容哈希工具：PDF按内容的SHA-256寻址存储，同一内容只解析一次
+ */
+public final class ContentHash {
+
+    /** 按内容寻址保存的文件名：64位十六进制SHA-256 + .pdf */
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{64}\\.pdf");
+
+    private ContentHash() {
+    }
+
+    /**
+     * 创建SHA-256摘要器
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+
+    /**
+     * 摘要转为小写十六进制字符串
+     */
+    public static String toHex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * 计算文件内容的SHA-256
+     */
+    public static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return sha256(in);
+        }
+    }
+
+    /**
+     * 计算输入流内容的SHA-256（不关闭输入流）
+     */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 文件名是否为按内容寻址的名称
+     */
+    public static boolean isContentAddressedName(String fileName) {
+        return fileName != null && CONTENT_ADDRESSED_NAME.matcher(fileName).matches();
+    }
+
+    /**
+     * 从按内容寻址的文件名中取出SHA-256，不是此类名称时返回null
+     */
+    public static String fromFileName(String fileName) {
+        return isContentAddressedName(fileName) ? fileName.substring(0, 64) : null;
+    }
+}
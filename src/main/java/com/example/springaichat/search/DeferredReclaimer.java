@@ -0,0 +1,111 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延迟回收：对象从共享结构中移除后，它占用的资源（如堆外文本）等到移除之前开始的读者全部结束才释放
+ * 读者在查找共享对象前调用{@link #enter()}，读取完毕后关闭返回的租约；写入方先把对象从所有能被读者找到的位置移除，
+ * 再调用{@link #retire(Runnable)}提交释放操作。释放操作在进入时间不晚于提交时刻的读者全部关闭租约后执行，
+ * 没有这样的读者时立即执行。读者进入和退出不加锁，只有提交和回收时短暂持有锁
+ */
+public final class DeferredReclaimer {
+
+    /** 提交释放操作时递增的纪元 */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /** 未关闭的租约 */
+    private final Set<Lease> readers = ConcurrentHashMap.newKeySet();
+
+    /** 待执行的释放操作，按纪元递增排列 */
+    private final ArrayDeque<Retired> retired = new ArrayDeque<>();
+
+    /** 是否有待执行的释放操作，读者关闭租约时据此决定是否尝试回收 */
+    private volatile boolean pending;
+
+    /**
+     * 开始读取，之后找到的对象在租约关闭前不会被释放
+     * @return 租约，读取完毕后关闭
+     */
+    public Lease enter() {
+        Lease lease = new Lease(epoch.get());
+        readers.add(lease);
+        return lease;
+    }
+
+    /**
+     * 提交释放操作，调用前对象必须已从所有能被读者找到的位置移除
+     * @param release 释放操作，在提交线程或最后一个相关读者关闭租约的线程上执行
+     */
+    public void retire(Runnable release) {
+        synchronized (this) {
+            retired.addLast(new Retired(epoch.getAndIncrement(), release));
+            pending = true;
+        }
+        reclaim();
+    }
+
+    /**
+     * @return 等待读者结束的释放操作数
+     */
+    public synchronized int pendingCount() {
+        return retired.size();
+    }
+
+    /**
+     * @return 未关闭的租约数
+     */
+    public int activeReaders() {
+        return readers.size();
+    }
+
+    /**
+     * 执行所有已没有相关读者的释放操作（在锁外执行）
+     */
+    private void reclaim() {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            long oldest = Long.MAX_VALUE;
+            for (Lease lease : readers) {
+                oldest = Math.min(oldest, lease.epoch);
+            }
+            while (!retired.isEmpty() && retired.peekFirst().epoch < oldest) {
+                ready.add(retired.pollFirst().release);
+            }
+            pending = !retired.isEmpty();
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    /**
+     * 读取租约，重复关闭无效果
+     */
+    public final class Lease implements AutoCloseable {
+        private final long epoch;
+
+        private Lease(long epoch) {
+            this.epoch = epoch;
+        }
+
+        @Override
+        public void close() {
+            if (readers.remove(this) && pending) {
+                reclaim();
+            }
+        }
+    }
+
+    private static final class Retired {
+        final long epoch;
+        final Runnable release;
+
+        Retired(long epoch, Runnable release) {
+            this.epoch = epoch;
+            this.release = release;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.springaichat.search;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基于词典的中文分词器
+ * 词典加载到双数组Trie中，连续中文片段按词频做Viterbi（最大概率路径）切分：
+ * <ul>
+ *     <li>切分出的多字词作为词项；长词额外输出其中包含的词典词，短词查询也能命中长词</li>
+ *     <li>词典中的单字词（的、是、了等）不作为词项</li>
+ *     <li>连续的未登录单字按二元组输出，人名、专有名词等不在词典中时仍可检索</li>
+ * </ul>
+ * 英文/数字与n-gram分词器一致，按单词切分（长度>=2）
+ */
+public final class DictionarySegmenter implements Tokenizer {
+
+    /** 内置词典（classpath） */
+    public static final String DEFAULT_DICTIONARY = "dict/kb-dict.txt";
+
+    /** 分词规则版本，与词典校验和一起组成分词器标识 */
+    private static final String VERSION = "dict-viterbi-v1";
+
+    /** 最短的英文单词长度 */
+    private static final int MIN_WORD_LENGTH = 2;
+
+    private final DoubleArrayTrie trie;
+
+    /** 词序号 -> 对数概率 */
+    private final double[] logProbabilities;
+
+    /** 未登录单字的对数概率 */
+    private final double unknownLogProbability;
+
+    private final String id;
+
+    /**
+     * 按线程复用的Viterbi计算空间
+     */
+    private final ThreadLocal<Lattice> lattices = ThreadLocal.withInitial(Lattice::new);
+
+    private DictionarySegmenter(DoubleArrayTrie trie, double[] logProbabilities, double unknownLogProbability,
+                                String id) {
+        this.trie = trie;
+        this.logProbabilities = logProbabilities;
+        this.unknownLogProbability = unknownLogProbability;
+        this.id = id;
+    }
+
+    /**
+     * 加载内置词典
+     * @return 分词器
+     * @throws IOException 词典不存在或读取失败
+     */
+    public static DictionarySegmenter loadDefault() throws IOException {
+        try (InputStream in = DictionarySegmenter.class.getClassLoader().getResourceAsStream(DEFAULT_DICTIONARY)) {
+            if (in == null) {
+                throw new IOException("找不到内置词典: " + DEFAULT_DICTIONARY);
+            }
+            return load(in);
+        }
+    }
+
+    /**
+     * 加载词典文件
+     * @param file 词典文件
+     * @return 分词器
+     * @throws IOException 读取失败
+     */
+    public static DictionarySegmenter load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * 加载词典：每行“词 词频”，词频可省略（按1计），#开头为注释
+     * @param in 词典内容（UTF-8）
+     * @return 分词器
+     * @throws IOException 读取失败
+     */
+    public static DictionarySegmenter load(InputStream in) throws IOException {
+        byte[] content = in.readAllBytes();
+        Map<String, Long> frequencies = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                String word = parts[0];
+                if (!isCjkWord(word)) {
+                    continue;
+                }
+                long frequency = parts.length > 1 ? Long.parseLong(parts[1]) : 1;
+                frequencies.merge(word, Math.max(1, frequency), Math::max);
+            }
+        }
+
+        List<String> words = new ArrayList<>(frequencies.keySet());
+        double total = 0;
+        for (long frequency : frequencies.values()) {
+            total += frequency;
+        }
+        double[] logProbabilities = new double[words.size()];
+        int index = 0;
+        for (long frequency : frequencies.values()) {
+            logProbabilities[index++] = Math.log(frequency / total);
+        }
+        String checksum = ContentHash.toHex(ContentHash.newDigest().digest(content)).substring(0, 12);
+        return new DictionarySegmenter(new DoubleArrayTrie(words), logProbabilities,
+            Math.log(0.5 / Math.max(total, 1)), VERSION + "-" + checksum);
+    }
+
+    private static boolean isCjkWord(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (!Terms.isCjk(word.charAt(i))) {
+                return false;
+            }
+        }
+        return !word.isEmpty();
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    /** 词典词数量 */
+    public int dictionarySize() {
+        return trie.keyCount();
+    }
+
+    /**
+     * 切分文本并逐个输出词项哈希，除首次使用时创建计算空间外不分配对象
+     * @param text 文本
+     * @param sink 词项接收者
+     */
+    @Override
+    public void tokenize(CharSequence text, TermSink sink) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            byte type = Terms.classOf(text.charAt(i));
+            if (type == Terms.CJK) {
+                int end = i + 1;
+                while (end < length && Terms.classOf(text.charAt(end)) == Terms.CJK) {
+                    end++;
+                }
+                segment(text, i, end, sink);
+                i = end;
+            } else if (type == Terms.WORD) {
+                int end = i + 1;
+                while (end < length && Terms.classOf(text.charAt(end)) == Terms.WORD) {
+                    end++;
+                }
+                if (end - i >= MIN_WORD_LENGTH) {
+                    sink.accept(Terms.hash(text, i, end), i);
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 切分连续中文片段text[start, end)
+     */
+    private void segment(CharSequence text, int start, int end, TermSink sink) {
+        Lattice lattice = lattices.get();
+        lattice.ensureCapacity(end - start + 1);
+        double[] route = lattice.route;
+        int[] next = lattice.next;
+        boolean[] known = lattice.known;
+
+        // 从右向左计算每个位置到片段末尾的最大对数概率
+        int n = end - start;
+        route[n] = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            double best = Double.NEGATIVE_INFINITY;
+            int bestEnd = i + 1;
+            boolean singleKnown = false;
+            int state = DoubleArrayTrie.ROOT;
+            for (int j = i; j < n; j++) {
+                state = trie.transition(state, text.charAt(start + j));
+                if (state == DoubleArrayTrie.NONE) {
+                    break;
+                }
+                int word = trie.valueAt(state);
+                if (word >= 0) {
+                    if (j == i) {
+                        singleKnown = true;
+                    }
+                    double score = logProbabilities[word] + route[j + 1];
+                    if (score > best) {
+                        best = score;
+                        bestEnd = j + 1;
+                    }
+                }
+            }
+            if (!singleKnown) {
+                double score = unknownLogProbability + route[i + 1];
+                if (score > best) {
+                    best = score;
+                    bestEnd = i + 1;
+                }
+            }
+            route[i] = best;
+            next[i] = bestEnd;
+            known[i] = singleKnown;
+        }
+
+        // 沿最优路径输出词项
+        int i = 0;
+        while (i < n) {
+            int wordEnd = next[i];
+            if (wordEnd - i >= 2) {
+                sink.accept(Terms.hash(text, start + i, start + wordEnd), start + i);
+                if (wordEnd - i >= 3) {
+                    emitInnerWords(text, start + i, start + wordEnd, sink);
+                }
+                i = wordEnd;
+            } else if (!known[i]) {
+                // 连续的未登录单字按二元组输出
+                int runEnd = i + 1;
+                while (runEnd < n && next[runEnd] == runEnd + 1 && !known[runEnd]) {
+                    runEnd++;
+                }
+                for (int k = i; k + 1 < runEnd; k++) {
+                    sink.accept(Terms.hash(text, start + k, start + k + 2), start + k);
+                }
+                i = runEnd;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 输出长词text[start, end)内部包含的词典词（长度>=2且短于整个词）
+     */
+    private void emitInnerWords(CharSequence text, int start, int end, TermSink sink) {
+        for (int i = start; i < end; i++) {
+            int state = DoubleArrayTrie.ROOT;
+            for (int j = i; j < end; j++) {
+                state = trie.transition(state, text.charAt(j));
+                if (state == DoubleArrayTrie.NONE) {
+                    break;
+                }
+                int length = j + 1 - i;
+                if (length >= 2 && length < end - start && trie.valueAt(state) >= 0) {
+                    sink.accept(Terms.hash(text, i, j + 1), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Viterbi计算空间
+     */
+    private static final class Lattice {
+        double[] route = new double[64];
+        int[] next = new int[64];
+        boolean[] known = new boolean[64];
+
+        void ensureCapacity(int capacity) {
+            if (route.length < capacity) {
+                int size = Math.max(capacity, route.length * 2);
+                route = new double[size];
+                next = new int[size];
+                known = new boolean[size];
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 双数组Trie
+ * 状态转移 t = base[s] + code(c)，当且仅当 check[t] == s 时转移有效；
+ * 状态s上有词结束时 t = base[s] + 0 满足 check[t] == s 且 base[t] = -(词序号 + 1)。
+ * 构建后只读，查找时逐字转移，不分配对象
+ */
+public final class DoubleArrayTrie {
+
+    /** 根状态 */
+    public static final int ROOT = 0;
+
+    /** 无效状态 */
+    public static final int NONE = -1;
+
+    private int[] base;
+    private int[] check;
+    /** 每个起始位置是否已被某个状态用作base，保证不同状态的base互不相同 */
+    private boolean[] usedBase;
+    private int nextCheckPos;
+    private int size;
+
+    private final int keyCount;
+
+    /** 构建期间使用的词，构建完成后释放 */
+    private char[][] keys;
+
+    /**
+     * @param sortedKeys 按字符序升序排列、互不重复的词
+     */
+    public DoubleArrayTrie(List<String> sortedKeys) {
+        keys = new char[sortedKeys.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = sortedKeys.get(i).toCharArray();
+            if (keys[i].length == 0) {
+                throw new IllegalArgumentException("词不能为空");
+            }
+            if (i > 0 && compare(keys[i - 1], keys[i]) >= 0) {
+                throw new IllegalArgumentException("词必须按升序排列且不重复: " + sortedKeys.get(i));
+            }
+        }
+        resize(Character.MAX_VALUE + 2);
+        if (keys.length > 0) {
+            int rootBase = insert(ROOT, 0, 0, keys.length);
+            base[ROOT] = rootBase;
+        }
+        size = Math.max(size, 1);
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        usedBase = null;
+        keyCount = keys.length;
+        keys = null;
+    }
+
+    /**
+     * 状态转移
+     * @param state 当前状态
+     * @param c 字符
+     * @return 下一状态，没有对应的转移时返回{@link #NONE}
+     */
+    public int transition(int state, char c) {
+        int next = base[state] + c + 1;
+        if (next < check.length && check[next] == state) {
+            return next;
+        }
+        return NONE;
+    }
+
+    /**
+     * 状态上结束的词
+     * @param state 状态
+     * @return 词序号（与构建时的顺序一致），没有词在此结束时返回-1
+     */
+    public int valueAt(int state) {
+        int terminal = base[state];
+        if (terminal >= 0 && terminal < check.length && check[terminal] == state && base[terminal] < 0) {
+            return -base[terminal] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 精确查找
+     * @param word 词
+     * @return 词序号，不存在时返回-1
+     */
+    public int find(CharSequence word) {
+        int state = ROOT;
+        for (int i = 0; i < word.length() && state != NONE; i++) {
+            state = transition(state, word.charAt(i));
+        }
+        return state == NONE ? -1 : valueAt(state);
+    }
+
+    /** 词数量 */
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /** 双数组长度 */
+    public int arraySize() {
+        return check.length;
+    }
+
+    /**
+     * 为keys[left, right)在第depth个字符处的所有分支分配位置，并递归构建子树
+     * @return 分配的base
+     */
+    private int insert(int parent, int depth, int left, int right) {
+        // 收集子节点：词在depth处结束时编码为0，否则为字符+1；keys有序，相同编码连续出现
+        int[] codes = new int[right - left];
+        int[] starts = new int[right - left + 1];
+        int count = 0;
+        for (int i = left; i < right; i++) {
+            int code = depth < keys[i].length ? keys[i][depth] + 1 : 0;
+            if (count == 0 || codes[count - 1] != code) {
+                codes[count] = code;
+                starts[count] = i;
+                count++;
+            }
+        }
+        starts[count] = right;
+
+        // 寻找所有子节点都空闲的base
+        int begin;
+        int position = Math.max(codes[0] + 1, nextCheckPos) - 1;
+        int nonZero = 0;
+        boolean first = true;
+        while (true) {
+            position++;
+            if (position >= check.length) {
+                resize(Math.max(position + 1, (int) (check.length * 1.5)));
+            }
+            if (check[position] != NONE) {
+                nonZero++;
+                continue;
+            } else if (first) {
+                nextCheckPos = position;
+                first = false;
+            }
+            begin = position - codes[0];
+            if (begin < 1) {
+                continue;
+            }
+            int last = begin + codes[count - 1];
+            if (last >= check.length) {
+                resize(Math.max(last + 1, (int) (check.length * 1.5)));
+            }
+            if (usedBase[begin]) {
+                continue;
+            }
+            boolean free = true;
+            for (int k = 1; k < count; k++) {
+                if (check[begin + codes[k]] != NONE) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                break;
+            }
+        }
+        // 区间已基本占满时跳过，减少后续搜索
+        if ((double) nonZero / (position - nextCheckPos + 1) >= 0.95) {
+            nextCheckPos = position;
+        }
+
+        usedBase[begin] = true;
+        for (int k = 0; k < count; k++) {
+            check[begin + codes[k]] = parent;
+            size = Math.max(size, begin + codes[k] + 1);
+        }
+        for (int k = 0; k < count; k++) {
+            int state = begin + codes[k];
+            if (codes[k] == 0) {
+                base[state] = -(starts[k] + 1);
+            } else {
+                // 递归构建时数组可能扩容，必须先取得结果再写入当前数组
+                int childBase = insert(state, depth + 1, starts[k], starts[k + 1]);
+                base[state] = childBase;
+            }
+        }
+        return begin;
+    }
+
+    private void resize(int newSize) {
+        int oldSize = check == null ? 0 : check.length;
+        base = base == null ? new int[newSize] : Arrays.copyOf(base, newSize);
+        check = check == null ? new int[newSize] : Arrays.copyOf(check, newSize);
+        usedBase = usedBase == null ? new boolean[newSize] : Arrays.copyOf(usedBase, newSize);
+        Arrays.fill(check, oldSize, newSize, NONE);
+    }
+
+    private static int compare(char[] a, char[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return a.length - b.length;
+    }
+}
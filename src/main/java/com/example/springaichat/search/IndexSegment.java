@@ -0,0 +1,190 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 不可变索引段
+ * 一次入库的页面构建为一个段，段内的倒排列表和页面长度构建后不再修改，可被任意多个读者无锁访问。
+ * 删除不修改段，而是在{@link IndexSnapshot}的删除位图中标记，合并时才真正丢弃
+ */
+final class IndexSegment {
+
+    /** 词项哈希 -> 倒排列表 */
+    private final LongObjectMap<PostingList> postings;
+
+    /** 段内页面ID（升序） */
+    private final int[] pageIds;
+
+    /** 页面长度，下标为 页面ID - minPageId */
+    private final int[] pageLengths;
+
+    private final int minPageId;
+    private final long totalLength;
+    private final long postingCount;
+
+    private IndexSegment(LongObjectMap<PostingList> postings, int[] pageIds, int[] pageLengths, long postingCount) {
+        this.postings = postings;
+        this.pageIds = pageIds;
+        this.pageLengths = pageLengths;
+        this.minPageId = pageIds.length == 0 ? 0 : pageIds[0];
+        long total = 0;
+        for (int length : pageLengths) {
+            total += length;
+        }
+        this.totalLength = total;
+        this.postingCount = postingCount;
+    }
+
+    /**
+     * 由一批已分词的页面构建段
+     * @param pageIds 页面ID（升序）
+     * @param pages 分词结果，与pageIds一一对应
+     */
+    static IndexSegment build(int[] pageIds, TokenizedPage[] pages) {
+        for (int i = 1; i < pageIds.length; i++) {
+            if (pageIds[i] <= pageIds[i - 1]) {
+                throw new IllegalArgumentException("页面ID必须递增: " + pageIds[i]);
+            }
+        }
+        int distinctTerms = 0;
+        for (TokenizedPage page : pages) {
+            distinctTerms += page.termCount();
+        }
+        LongObjectMap<PostingList> postings = new LongObjectMap<>(Math.max(16, distinctTerms / 2));
+        int[] pageLengths = new int[pageIds.length == 0 ? 0 : pageIds[pageIds.length - 1] - pageIds[0] + 1];
+        long postingCount = 0;
+        for (int i = 0; i < pageIds.length; i++) {
+            TokenizedPage page = pages[i];
+            for (int t = 0; t < page.termCount(); t++) {
+                long term = page.term(t);
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    list = new PostingList();
+                    postings.put(term, list);
+                }
+                if (page.hasPositions()) {
+                    list.add(pageIds[i], page.count(t), page.positions(), page.positionStart(t), page.count(t));
+                } else {
+                    list.add(pageIds[i], page.count(t));
+                }
+            }
+            postingCount += page.termCount();
+            pageLengths[pageIds[i] - pageIds[0]] = page.length();
+        }
+        postings.forEachValue(PostingList::trimToSize);
+        return new IndexSegment(postings, pageIds.clone(), pageLengths, postingCount);
+    }
+
+    /**
+     * 合并页面ID区间相邻的若干段，丢弃已删除的页面
+     * @param segments 按页面ID排序的段
+     * @param snapshot 提供删除位图的快照
+     * @return 合并后的段
+     */
+    static IndexSegment merge(List<IndexSegment> segments, IndexSnapshot snapshot) {
+        int livePages = 0;
+        int estimatedTerms = 0;
+        for (IndexSegment segment : segments) {
+            livePages += segment.pageIds.length;
+            estimatedTerms = Math.max(estimatedTerms, segment.postings.size());
+        }
+        int[] pageIds = new int[livePages];
+        int count = 0;
+        for (IndexSegment segment : segments) {
+            for (int pageId : segment.pageIds) {
+                if (!snapshot.isDeleted(pageId)) {
+                    pageIds[count++] = pageId;
+                }
+            }
+        }
+        pageIds = Arrays.copyOf(pageIds, count);
+        int[] pageLengths = new int[count == 0 ? 0 : pageIds[count - 1] - pageIds[0] + 1];
+        for (IndexSegment segment : segments) {
+            for (int pageId : segment.pageIds) {
+                if (!snapshot.isDeleted(pageId)) {
+                    pageLengths[pageId - pageIds[0]] = segment.pageLength(pageId);
+                }
+            }
+        }
+
+        // 按段的顺序依次追加，段之间页面ID不重叠，合并后的倒排列表仍然有序
+        LongObjectMap<PostingList> postings = new LongObjectMap<>(Math.max(16, estimatedTerms));
+        long[] postingCount = new long[1];
+        PostingList.Cursor cursor = new PostingList.Cursor();
+        int[][] positions = {new int[64]};
+        for (IndexSegment segment : segments) {
+            segment.postings.forEach((term, source) -> {
+                PostingList target = null;
+                cursor.reset(source);
+                while (cursor.next()) {
+                    if (snapshot.isDeleted(cursor.pageId())) {
+                        continue;
+                    }
+                    if (target == null) {
+                        target = postings.get(term);
+                        if (target == null) {
+                            target = new PostingList();
+                            postings.put(term, target);
+                        }
+                    }
+                    if (positions[0].length < cursor.frequency()) {
+                        positions[0] = new int[Math.max(cursor.frequency(), positions[0].length * 2)];
+                    }
+                    int positionCount = cursor.readPositions(positions[0]);
+                    target.add(cursor.pageId(), cursor.frequency(), positions[0], 0, positionCount);
+                    postingCount[0]++;
+                }
+            });
+        }
+        postings.forEachValue(PostingList::trimToSize);
+        return new IndexSegment(postings, pageIds, pageLengths, postingCount[0]);
+    }
+
+    /** 词项的倒排列表，不存在时返回null */
+    PostingList postings(long term) {
+        return postings.get(term);
+    }
+
+    LongObjectMap<PostingList> postings() {
+        return postings;
+    }
+
+    /** 段内页面ID（升序，只读） */
+    int[] pageIds() {
+        return pageIds;
+    }
+
+    int pageCount() {
+        return pageIds.length;
+    }
+
+    /** 页面长度（词项数），页面不在段内时返回0 */
+    int pageLength(int pageId) {
+        int index = pageId - minPageId;
+        return index >= 0 && index < pageLengths.length ? pageLengths[index] : 0;
+    }
+
+    int minPageId() {
+        return minPageId;
+    }
+
+    /** 段内最大页面ID，空段返回-1 */
+    int maxPageId() {
+        return pageIds.length == 0 ? -1 : pageIds[pageIds.length - 1];
+    }
+
+    /** 段内页面（含已删除的）的长度之和 */
+    long totalLength() {
+        return totalLength;
+    }
+
+    long postingCount() {
+        return postingCount;
+    }
+
+    /** 页面长度表占用的字节数 */
+    long lengthTableBytes() {
+        return 16 + pageLengths.length * 4L + 16 + pageIds.length * 4L;
+    }
+}
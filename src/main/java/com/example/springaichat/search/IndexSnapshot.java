@@ -0,0 +1,345 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 倒排索引的不可变快照：若干按页面ID排序的{@link IndexSegment}加一个删除位图
+ * 写入方基于当前快照构造新快照后原子发布，读者取得快照后无需加锁，也不会看到写了一半的更新。
+ * 文档频率按各段倒排列表长度之和计算，已删除但尚未合并掉的页面仍计入，合并后恢复精确
+ */
+public final class IndexSnapshot {
+
+    static final IndexSnapshot EMPTY = new IndexSnapshot(new IndexSegment[0], new long[0], 0, 0, 0);
+
+    /** 按页面ID排序的段 */
+    private final IndexSegment[] segments;
+
+    /** 已删除页面的位图，下标为页面ID */
+    private final long[] deleted;
+
+    /** 未删除的页面数 */
+    private final int pageCount;
+
+    /** 未删除页面的长度之和 */
+    private final long totalLength;
+
+    /** 快照版本，每次发布递增 */
+    private final long generation;
+
+    private IndexSnapshot(IndexSegment[] segments, long[] deleted, int pageCount, long totalLength, long generation) {
+        this.segments = segments;
+        this.deleted = deleted;
+        this.pageCount = pageCount;
+        this.totalLength = totalLength;
+        this.generation = generation;
+    }
+
+    /**
+     * 追加一个段
+     */
+    IndexSnapshot withSegment(IndexSegment segment) {
+        if (segment.pageCount() == 0) {
+            return this;
+        }
+        if (segments.length > 0 && segment.minPageId() <= segments[segments.length - 1].maxPageId()) {
+            throw new IllegalArgumentException("页面ID必须大于已有的所有页面ID: " + segment.minPageId());
+        }
+        IndexSegment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+        newSegments[segments.length] = segment;
+        return new IndexSnapshot(newSegments, deleted, pageCount + segment.pageCount(),
+            totalLength + segment.totalLength(), generation + 1);
+    }
+
+    /**
+     * 标记删除页面（复制删除位图）
+     * @param pageIds 页面ID
+     */
+    IndexSnapshot withDeletions(int[] pageIds) {
+        long[] newDeleted = deleted;
+        int removedPages = 0;
+        long removedLength = 0;
+        for (int pageId : pageIds) {
+            if (isDeleted(newDeleted, pageId)) {
+                continue;
+            }
+            IndexSegment segment = segmentOf(pageId);
+            if (segment == null) {
+                continue;
+            }
+            if (newDeleted == deleted) {
+                int maxPageId = segments[segments.length - 1].maxPageId();
+                newDeleted = Arrays.copyOf(deleted, Math.max(deleted.length, (maxPageId >>> 6) + 1));
+            }
+            newDeleted[pageId >>> 6] |= 1L << pageId;
+            removedPages++;
+            removedLength += segment.pageLength(pageId);
+        }
+        if (removedPages == 0) {
+            return this;
+        }
+        return new IndexSnapshot(segments, newDeleted, pageCount - removedPages, totalLength - removedLength,
+            generation + 1);
+    }
+
+    /**
+     * 用合并后的段替换参与合并的段，删除位图和统计不变（合并只丢弃已删除的页面）
+     * @param inputs 参与合并的段
+     * @param merged 合并结果
+     */
+    IndexSnapshot withMerged(List<IndexSegment> inputs, IndexSegment merged) {
+        List<IndexSegment> result = new ArrayList<>(segments.length);
+        boolean inserted = false;
+        for (IndexSegment segment : segments) {
+            if (!containsSegment(inputs, segment)) {
+                result.add(segment);
+            } else if (!inserted) {
+                if (merged.pageCount() > 0) {
+                    result.add(merged);
+                }
+                inserted = true;
+            }
+        }
+        return new IndexSnapshot(result.toArray(new IndexSegment[0]), deleted, pageCount, totalLength,
+            generation + 1);
+    }
+
+    /**
+     * 选择下一次合并的段：
+     * <ul>
+     *     <li>已删除页面超过比例的段单独重写</li>
+     *     <li>段数超过上限时，合并页面数之和最小的相邻若干段，小段先合并，形成按规模分层的结构</li>
+     * </ul>
+     * @return 需要合并的段，不需要合并时返回空列表
+     */
+    List<IndexSegment> selectMerge(int maxSegments, int mergeFactor, double maxDeletedRatio) {
+        for (IndexSegment segment : segments) {
+            if (deletedPages(segment) > segment.pageCount() * maxDeletedRatio) {
+                return List.of(segment);
+            }
+        }
+        if (segments.length <= maxSegments) {
+            return List.of();
+        }
+        int window = Math.min(segments.length, Math.max(2, mergeFactor));
+        int bestStart = 0;
+        long bestPages = Long.MAX_VALUE;
+        for (int start = 0; start + window <= segments.length; start++) {
+            long pages = 0;
+            for (int i = start; i < start + window; i++) {
+                pages += segments[i].pageCount();
+            }
+            if (pages < bestPages) {
+                bestPages = pages;
+                bestStart = start;
+            }
+        }
+        return List.of(Arrays.copyOfRange(segments, bestStart, bestStart + window));
+    }
+
+    /**
+     * 遍历查询词的倒排列表并按BM25打分，只访问页面ID区间[fromPageId, toPageId)内未删除的页面
+     * @param terms 查询词项哈希（应已去重）
+     * @param scorer BM25打分器
+     * @param fromPageId 起始页面ID（含）
+     * @param toPageId 结束页面ID（不含）
+     * @param visitor 回调，同一页面会因多个查询词被多次回调，由调用方累加
+     */
+    public void search(TermBuffer terms, Bm25Scorer scorer, int fromPageId, int toPageId,
+                       InvertedIndex.ScoreVisitor visitor) {
+        double averagePageLength = averagePageLength();
+        PostingList.Cursor cursor = new PostingList.Cursor();
+        for (int t = 0; t < terms.size(); t++) {
+            long term = terms.get(t);
+            int documentFrequency = documentFrequency(term);
+            if (documentFrequency == 0) {
+                continue;
+            }
+            // 已删除但尚未合并掉的倒排项仍计入文档频率，超过未删除的页面数时idf会变为负数
+            double idf = scorer.idf(pageCount, Math.min(documentFrequency, pageCount));
+            for (IndexSegment segment : segments) {
+                if (segment.maxPageId() < fromPageId || segment.minPageId() >= toPageId) {
+                    continue;
+                }
+                PostingList list = segment.postings(term);
+                if (list == null) {
+                    continue;
+                }
+                // 按跳表指针直接定位到分片起点所在的块
+                cursor.reset(list);
+                if (!cursor.advance(fromPageId)) {
+                    continue;
+                }
+                do {
+                    int pageId = cursor.pageId();
+                    if (pageId >= toPageId) {
+                        break;
+                    }
+                    if (!isDeleted(pageId)) {
+                        visitor.visit(pageId, scorer.score(idf, cursor.frequency(),
+                            segment.pageLength(pageId), averagePageLength));
+                    }
+                } while (cursor.next());
+            }
+        }
+    }
+
+    /**
+     * 把游标定位到词项在指定页面上的倒排项，之后可读取词频和位置
+     * @param term 词项哈希
+     * @param pageId 页面ID
+     * @param cursor 可复用的游标
+     * @return 页面是否包含该词项（已删除的页面返回false）
+     */
+    public boolean seek(long term, int pageId, PostingList.Cursor cursor) {
+        if (isDeleted(pageId)) {
+            return false;
+        }
+        IndexSegment segment = segmentOf(pageId);
+        PostingList list = segment == null ? null : segment.postings(term);
+        if (list == null) {
+            return false;
+        }
+        cursor.reset(list);
+        return cursor.advance(pageId) && cursor.pageId() == pageId;
+    }
+
+    /**
+     * 词项的文档频率（各段倒排列表长度之和）
+     */
+    public int documentFrequency(long term) {
+        int frequency = 0;
+        for (IndexSegment segment : segments) {
+            PostingList list = segment.postings(term);
+            if (list != null) {
+                frequency += list.size();
+            }
+        }
+        return frequency;
+    }
+
+    /**
+     * 估算查询的工作量：各查询词倒排列表长度之和
+     */
+    public long postingCount(TermBuffer terms) {
+        long total = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            total += documentFrequency(terms.get(t));
+        }
+        return total;
+    }
+
+    /** 未删除的页面数 */
+    public int pageCount() {
+        return pageCount;
+    }
+
+    /** 平均页面长度（词项数） */
+    public double averagePageLength() {
+        return pageCount == 0 ? 0.0 : (double) totalLength / pageCount;
+    }
+
+    /** 页面是否已删除 */
+    public boolean isDeleted(int pageId) {
+        return isDeleted(deleted, pageId);
+    }
+
+    /** 段数 */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /** 已删除但仍保留在段中的页面数 */
+    public int deletedPageCount() {
+        int total = 0;
+        for (IndexSegment segment : segments) {
+            total += deletedPages(segment);
+        }
+        return total;
+    }
+
+    /** 快照版本 */
+    public long generation() {
+        return generation;
+    }
+
+    /** 最大页面ID+1 */
+    public int pageIdLimit() {
+        return segments.length == 0 ? 0 : segments[segments.length - 1].maxPageId() + 1;
+    }
+
+    /** 不同词项数 */
+    public int termCount() {
+        if (segments.length == 1) {
+            return segments[0].postings().size();
+        }
+        LongObjectMap<Boolean> distinct = new LongObjectMap<>(1 << 10);
+        for (IndexSegment segment : segments) {
+            segment.postings().forEach((term, list) -> distinct.put(term, Boolean.TRUE));
+        }
+        return distinct.size();
+    }
+
+    /** 倒排项总数（含已删除页面的） */
+    public long postingCount() {
+        long total = 0;
+        for (IndexSegment segment : segments) {
+            total += segment.postingCount();
+        }
+        return total;
+    }
+
+    IndexSegment[] segments() {
+        return segments;
+    }
+
+    /** 删除位图占用的字节数 */
+    long deletionBitmapBytes() {
+        return 16 + deleted.length * 8L;
+    }
+
+    private int deletedPages(IndexSegment segment) {
+        if (deleted.length == 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int pageId : segment.pageIds()) {
+            if (isDeleted(pageId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private IndexSegment segmentOf(int pageId) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            IndexSegment segment = segments[mid];
+            if (pageId < segment.minPageId()) {
+                high = mid - 1;
+            } else if (pageId > segment.maxPageId()) {
+                low = mid + 1;
+            } else {
+                return Arrays.binarySearch(segment.pageIds(), pageId) >= 0 ? segment : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsSegment(List<IndexSegment> list, IndexSegment segment) {
+        for (IndexSegment candidate : list) {
+            if (candidate == segment) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeleted(long[] bitmap, int pageId) {
+        int word = pageId >>> 6;
+        return word < bitmap.length && (bitmap[word] & (1L << pageId)) != 0;
+    }
+}
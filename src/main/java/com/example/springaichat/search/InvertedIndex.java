@@ -0,0 +1,444 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 知识库倒排索引
+ * 词项哈希 -> 倒排列表（页面ID, 词频）。文档入库时构建，检索时只访问包含查询词的页面
+ * 倒排列表按块做差值+变长整数压缩（见{@link PostingList}）。
+ * 可检索的内容是一个不可变快照（{@link IndexSnapshot}）：每次入库追加一个不可变段，删除只在删除位图中标记，
+ * 新快照通过原子引用发布，检索全程不加锁，入库和删除也不会阻塞检索。
+ * 段数过多或段内已删除页面过多时，在后台线程中合并相邻的段并丢弃已删除的页面
+ */
+public class InvertedIndex {
+
+    /** 默认段数上限，超过后触发合并 */
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    /** 默认每次合并的段数 */
+    public static final int DEFAULT_MERGE_FACTOR = 4;
+
+    /** 段内已删除页面超过该比例时重写该段 */
+    public static final double DEFAULT_MAX_DELETED_RATIO = 0.3;
+
+    /** 当前快照 */
+    private final AtomicReference<IndexSnapshot> current = new AtomicReference<>(IndexSnapshot.EMPTY);
+
+    /** 文档名 -> 该文档的页面ID，只由写入方访问 */
+    private final Map<String, int[]> documents = new HashMap<>();
+
+    /** 写入方之间互斥（入库、删除、发布合并结果），不影响读者 */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** 同一时间只运行一个合并 */
+    private final ReentrantLock mergeLock = new ReentrantLock();
+
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+    /** 后台合并执行器，为null时只在调用{@link #merge()}或{@link #compact()}时合并 */
+    private final Executor mergeExecutor;
+
+    private final int maxSegments;
+    private final int mergeFactor;
+
+    public InvertedIndex() {
+        this(null);
+    }
+
+    /**
+     * @param mergeExecutor 后台合并执行器，为null时不自动合并
+     */
+    public InvertedIndex(Executor mergeExecutor) {
+        this(mergeExecutor, DEFAULT_MAX_SEGMENTS, DEFAULT_MERGE_FACTOR);
+    }
+
+    /**
+     * @param mergeExecutor 后台合并执行器，为null时不自动合并
+     * @param maxSegments 段数上限
+     * @param mergeFactor 每次合并的段数
+     */
+    public InvertedIndex(Executor mergeExecutor, int maxSegments, int mergeFactor) {
+        if (maxSegments <= 0 || mergeFactor < 2) {
+            throw new IllegalArgumentException("段数上限必须为正数，合并段数至少为2");
+        }
+        this.mergeExecutor = mergeExecutor;
+        this.maxSegments = maxSegments;
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * 页面得分回调
+     */
+    @FunctionalInterface
+    public interface ScoreVisitor {
+        /**
+         * @param pageId 页面ID
+         * @param score 单个查询词在该页面上的得分
+         */
+        void visit(int pageId, double score);
+    }
+
+    /**
+     * 将文档的所有页面加入索引，同名文档会先被移除
+     * @param documentKey 文档名
+     * @param pageIds 页面ID（必须大于已有的所有页面ID，保证倒排列表有序）
+     * @param pageTexts 页面文本，与pageIds一一对应
+     * @param tokenizer 分词器（须与查询时使用的一致）
+     */
+    public void addDocument(String documentKey, int[] pageIds, List<String> pageTexts, Tokenizer tokenizer) {
+        // 分词在写锁外完成，不阻塞其他写入
+        addDocument(documentKey, pageIds, tokenize(pageTexts, tokenizer));
+    }
+
+    /**
+     * 将已分词的页面加入索引（例如从快照恢复），同名文档会先被移除
+     * @param documentKey 文档名
+     * @param pageIds 页面ID（必须大于已有的所有页面ID，保证倒排列表有序）
+     * @param pages 分词结果，与pageIds一一对应
+     */
+    public void addDocument(String documentKey, int[] pageIds, TokenizedPage[] pages) {
+        if (pageIds.length != pages.length) {
+            throw new IllegalArgumentException("页面ID数量与页面数量不一致");
+        }
+        // 段在写锁外构建，写锁内只做删除标记和发布
+        int[] sortedIds = pageIds.clone();
+        TokenizedPage[] sortedPages = pages;
+        if (!isSorted(pageIds)) {
+            int[] order = sortedOrder(pageIds);
+            sortedPages = new TokenizedPage[pages.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedIds[i] = pageIds[order[i]];
+                sortedPages[i] = pages[order[i]];
+            }
+        }
+        IndexSegment segment = IndexSegment.build(sortedIds, sortedPages);
+
+        writeLock.lock();
+        try {
+            IndexSnapshot snapshot = current.get();
+            int[] previous = documents.remove(documentKey);
+            if (previous != null) {
+                snapshot = snapshot.withDeletions(previous);
+            }
+            current.set(snapshot.withSegment(segment));
+            documents.put(documentKey, sortedIds);
+        } finally {
+            writeLock.unlock();
+        }
+        scheduleMerge();
+    }
+
+    /**
+     * 对页面文本分词
+     * @param pageTexts 页面文本
+     * @param tokenizer 分词器
+     * @return 分词结果
+     */
+    public static TokenizedPage[] tokenize(List<String> pageTexts, Tokenizer tokenizer) {
+        TokenizedPage[] pages = new TokenizedPage[pageTexts.size()];
+        TermCounter counter = new TermCounter();
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = TokenizedPage.of(pageTexts.get(i), tokenizer, counter);
+        }
+        return pages;
+    }
+
+    /**
+     * 从索引中移除文档
+     * @param documentKey 文档名
+     * @return 是否存在并被移除
+     */
+    public boolean removeDocument(String documentKey) {
+        writeLock.lock();
+        try {
+            int[] pageIds = documents.remove(documentKey);
+            if (pageIds == null) {
+                return false;
+            }
+            current.set(current.get().withDeletions(pageIds));
+        } finally {
+            writeLock.unlock();
+        }
+        scheduleMerge();
+        return true;
+    }
+
+    /**
+     * 获取当前快照，之后的写入不影响已取得的快照
+     */
+    public IndexSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * 遍历查询词的倒排列表并按BM25打分，只访问包含查询词的页面，不分配对象
+     * @param terms 查询词项哈希（应已去重）
+     * @param scorer BM25打分器
+     * @param visitor 回调，同一页面会因多个查询词被多次回调，由调用方累加
+     */
+    public void search(TermBuffer terms, Bm25Scorer scorer, ScoreVisitor visitor) {
+        search(terms, scorer, 0, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * 只在页面ID区间[fromPageId, toPageId)内检索，供分片并行检索使用
+     * @param terms 查询词项哈希（应已去重）
+     * @param scorer BM25打分器
+     * @param fromPageId 起始页面ID（含）
+     * @param toPageId 结束页面ID（不含）
+     * @param visitor 回调
+     */
+    public void search(TermBuffer terms, Bm25Scorer scorer, int fromPageId, int toPageId, ScoreVisitor visitor) {
+        current.get().search(terms, scorer, fromPageId, toPageId, visitor);
+    }
+
+    /**
+     * 估算查询的工作量：各查询词倒排列表长度之和
+     * @param terms 查询词项哈希
+     * @return 需要访问的倒排项数量
+     */
+    public long postingCount(TermBuffer terms) {
+        return current.get().postingCount(terms);
+    }
+
+    /**
+     * @return 索引中的页面数量
+     */
+    public int pageCount() {
+        return current.get().pageCount();
+    }
+
+    /**
+     * @return 平均页面长度（词项数）
+     */
+    public double averagePageLength() {
+        return current.get().averagePageLength();
+    }
+
+    /**
+     * @return 索引中的词项数量
+     */
+    public int termCount() {
+        return current.get().termCount();
+    }
+
+    /**
+     * @return 索引中的倒排项总数（含已删除但尚未合并掉的）
+     */
+    public long postingCount() {
+        return current.get().postingCount();
+    }
+
+    /**
+     * @return 段数
+     */
+    public int segmentCount() {
+        return current.get().segmentCount();
+    }
+
+    /**
+     * 按合并策略执行一次合并：合并在锁外构建新段，只在发布时短暂持有写锁
+     * @return 是否发生了合并
+     */
+    public boolean merge() {
+        mergeLock.lock();
+        try {
+            IndexSnapshot snapshot = current.get();
+            List<IndexSegment> inputs = snapshot.selectMerge(maxSegments, mergeFactor, DEFAULT_MAX_DELETED_RATIO);
+            if (inputs.isEmpty()) {
+                return false;
+            }
+            publishMerge(inputs, IndexSegment.merge(inputs, snapshot));
+            return true;
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    /**
+     * 把所有段合并为一个并丢弃已删除的页面，适合在批量加载完成后调用
+     */
+    public void compact() {
+        mergeLock.lock();
+        try {
+            IndexSnapshot snapshot = current.get();
+            IndexSegment[] segments = snapshot.segments();
+            if (segments.length == 0 || (segments.length == 1 && snapshot.deletedPageCount() == 0)) {
+                return;
+            }
+            List<IndexSegment> inputs = List.of(segments);
+            publishMerge(inputs, IndexSegment.merge(inputs, snapshot));
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    /**
+     * 发布合并结果。合并期间新增的段在参与合并的段之后，新的删除标记仍在位图中，都不受影响
+     */
+    private void publishMerge(List<IndexSegment> inputs, IndexSegment merged) {
+        writeLock.lock();
+        try {
+            current.set(current.get().withMerged(inputs, merged));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 需要合并时提交后台合并任务，同一时间最多一个
+     */
+    private void scheduleMerge() {
+        if (mergeExecutor == null
+            || current.get().selectMerge(maxSegments, mergeFactor, DEFAULT_MAX_DELETED_RATIO).isEmpty()
+            || !mergeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mergeExecutor.execute(() -> {
+            try {
+                while (merge()) {
+                    // 一次合并后可能仍需继续合并
+                }
+            } finally {
+                mergeScheduled.set(false);
+            }
+            // 标记清除前提交的写入可能错过了调度
+            scheduleMerge();
+        });
+    }
+
+    private static boolean isSorted(int[] pageIds) {
+        for (int i = 1; i < pageIds.length; i++) {
+            if (pageIds[i] < pageIds[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] sortedOrder(int[] pageIds) {
+        Integer[] order = new Integer[pageIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Integer.compare(pageIds[x], pageIds[y]));
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * 统计索引占用的堆内存
+     * @return 内存占用报告
+     */
+    public MemoryFootprint memoryFootprint() {
+        IndexSnapshot snapshot = current.get();
+        long[] totals = new long[5];
+        long dictionaryBytes = 0;
+        long statisticsBytes = snapshot.deletionBitmapBytes();
+        for (IndexSegment segment : snapshot.segments()) {
+            segment.postings().forEachValue(list -> {
+                totals[0] += list.size();
+                totals[1] += list.encodedBytes();
+                totals[2] += list.skipBytes();
+                totals[3] += list.memoryBytes();
+                totals[4] += list.positionBytes();
+            });
+            // 词典：long键数组 + 引用数组（按压缩指针4字节计）
+            dictionaryBytes += segment.postings().capacity() * 12L;
+            statisticsBytes += segment.lengthTableBytes();
+        }
+        long documentBytes = 0;
+        writeLock.lock();
+        try {
+            for (int[] pageIds : documents.values()) {
+                documentBytes += 64 + pageIds.length * 4L;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return new MemoryFootprint(snapshot.pageCount(), snapshot.termCount(), totals[0], totals[1], totals[2],
+            totals[4], totals[3], dictionaryBytes, documentBytes, statisticsBytes, snapshot.segmentCount(),
+            snapshot.deletedPageCount());
+    }
+
+    /**
+     * 索引内存占用报告
+     */
+    public static final class MemoryFootprint {
+        private final int pageCount;
+        private final int termCount;
+        private final long postingCount;
+        private final long encodedPostingBytes;
+        private final long skipPointerBytes;
+        private final long positionBytes;
+        private final long postingListBytes;
+        private final long dictionaryBytes;
+        private final long documentBytes;
+        private final long statisticsBytes;
+        private final int segmentCount;
+        private final int deletedPageCount;
+
+        MemoryFootprint(int pageCount, int termCount, long postingCount, long encodedPostingBytes,
+                        long skipPointerBytes, long positionBytes, long postingListBytes, long dictionaryBytes,
+                        long documentBytes, long statisticsBytes, int segmentCount, int deletedPageCount) {
+            this.pageCount = pageCount;
+            this.termCount = termCount;
+            this.postingCount = postingCount;
+            this.encodedPostingBytes = encodedPostingBytes;
+            this.skipPointerBytes = skipPointerBytes;
+            this.positionBytes = positionBytes;
+            this.postingListBytes = postingListBytes;
+            this.dictionaryBytes = dictionaryBytes;
+            this.documentBytes = documentBytes;
+            this.statisticsBytes = statisticsBytes;
+            this.segmentCount = segmentCount;
+            this.deletedPageCount = deletedPageCount;
+        }
+
+        public int getPageCount() { return pageCount; }
+        public int getTermCount() { return termCount; }
+        public long getPostingCount() { return postingCount; }
+        /** 压缩后的倒排项字节数 */
+        public long getEncodedPostingBytes() { return encodedPostingBytes; }
+        /** 跳表指针字节数 */
+        public long getSkipPointerBytes() { return skipPointerBytes; }
+        /** 位置流字节数 */
+        public long getPositionBytes() { return positionBytes; }
+        /** 倒排列表实际占用（含预留容量和对象头） */
+        public long getPostingListBytes() { return postingListBytes; }
+        /** 不压缩时（页面ID和词频各4字节）倒排项所需的字节数 */
+        public long getUncompressedPostingBytes() { return postingCount * 8; }
+        public long getDictionaryBytes() { return dictionaryBytes; }
+        public long getDocumentBytes() { return documentBytes; }
+        /** 页面长度表和删除位图 */
+        public long getStatisticsBytes() { return statisticsBytes; }
+        public int getSegmentCount() { return segmentCount; }
+        /** 已删除但尚未合并掉的页面数 */
+        public int getDeletedPageCount() { return deletedPageCount; }
+
+        /** 索引总占用 */
+        public long getTotalBytes() {
+            return postingListBytes + dictionaryBytes + documentBytes + statisticsBytes;
+        }
+
+        /** 平均每个页面（段落）占用的字节数 */
+        public double getBytesPerPage() {
+            return pageCount == 0 ? 0 : (double) getTotalBytes() / pageCount;
+        }
+
+        /** 平均每个倒排项压缩后的字节数 */
+        public double getBytesPerPosting() {
+            return postingCount == 0 ? 0 : (double) encodedPostingBytes / postingCount;
+        }
+    }
+}
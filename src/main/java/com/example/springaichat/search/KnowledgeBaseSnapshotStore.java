@@ -0,0 +1,404 @@
+package com.example.springaichat.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 知识库快照存储
+ * 每个PDF的解析结果（段落文本、元数据、分词后的索引数据）保存为一个以内容SHA-256命名的快照文件，
+ * 文件头记录文件名、大小、修改时间和内容哈希。启动时以内存映射方式读取快照，
+ * 只有新增或内容变化的PDF才需要重新解析
+ */
+public class KnowledgeBaseSnapshotStore {
+
+    /** 文件魔数 "KBSN" */
+    private static final int MAGIC = 0x4B42534E;
+
+    /** 快照格式版本，格式变化时递增，旧版本快照会被忽略 */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final String SUFFIX = ".kbs";
+
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_DATE = 'T';
+
+    private final Path directory;
+
+    /** 分词器标识，分词规则变化后旧快照中的词项哈希不再可用 */
+    private final String tokenizerId;
+
+    public KnowledgeBaseSnapshotStore(Path directory, String tokenizerId) {
+        this.directory = directory;
+        this.tokenizerId = tokenizerId;
+    }
+
+    /**
+     * 快照文件头
+     */
+    public static final class Header {
+        private final String fileName;
+        private final long fileSize;
+        private final long lastModified;
+        private final String sha256;
+
+        public Header(String fileName, long fileSize, long lastModified, String sha256) {
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+        }
+
+        public String getFileName() { return fileName; }
+        public long getFileSize() { return fileSize; }
+        public long getLastModified() { return lastModified; }
+        public String getSha256() { return sha256; }
+
+        /**
+         * 文件大小和修改时间是否与快照一致
+         */
+        public boolean matches(Path file) throws IOException {
+            return Files.size(file) == fileSize && Files.getLastModifiedTime(file).toMillis() == lastModified;
+        }
+    }
+
+    /**
+     * 快照中的一个段落
+     */
+    public static final class Passage {
+        private final int pageNumber;
+        private final int startOffset;
+        private final int endOffset;
+        private final String text;
+        private final Map<String, Object> metadata;
+        private final TokenizedPage tokens;
+
+        public Passage(int pageNumber, int startOffset, int endOffset, String text,
+                       Map<String, Object> metadata, TokenizedPage tokens) {
+            this.pageNumber = pageNumber;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.text = text;
+            this.metadata = metadata;
+            this.tokens = tokens;
+        }
+
+        public int getPageNumber() { return pageNumber; }
+        public int getStartOffset() { return startOffset; }
+        public int getEndOffset() { return endOffset; }
+        public String getText() { return text; }
+        public Map<String, Object> getMetadata() { return metadata; }
+        public TokenizedPage getTokens() { return tokens; }
+    }
+
+    /**
+     * 单个文档的快照
+     */
+    public static final class DocumentSnapshot {
+        private final Header header;
+        private final List<Passage> passages;
+
+        public DocumentSnapshot(Header header, List<Passage> passages) {
+            this.header = header;
+            this.passages = passages;
+        }
+
+        public Header getHeader() { return header; }
+        public List<Passage> getPassages() { return passages; }
+    }
+
+    /**
+     * 为PDF文件生成快照文件头
+     * @param fileName 文档名称
+     * @param file PDF文件
+     * @return 文件头
+     */
+    public static Header headerOf(String fileName, Path file) throws IOException {
+        return new Header(fileName, Files.size(file), Files.getLastModifiedTime(file).toMillis(), ContentHash.sha256(file));
+    }
+
+    /**
+     * 查找与PDF文件对应的快照：文件名、大小和修改时间一致时直接使用；
+     * 否则计算内容哈希，按内容查找（文件被重命名或仅修改时间变化）
+     * @param fileName 文档名称
+     * @param file PDF文件
+     * @param headersByName 已有快照的文件头（按文件名）
+     * @return 快照，不存在或版本不兼容时返回null
+     */
+    public DocumentSnapshot find(String fileName, Path file, Map<String, Header> headersByName) throws IOException {
+        Header header = headersByName.get(fileName);
+        if (header != null && header.matches(file)) {
+            return read(snapshotPath(header.getSha256()));
+        }
+        String sha256 = ContentHash.sha256(file);
+        Path snapshotFile = snapshotPath(sha256);
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        DocumentSnapshot snapshot = read(snapshotFile);
+        if (snapshot == null) {
+            return null;
+        }
+        // 内容未变：用当前的文件名、大小和修改时间刷新文件头，下次启动无需再计算哈希
+        DocumentSnapshot refreshed = new DocumentSnapshot(
+            new Header(fileName, Files.size(file), Files.getLastModifiedTime(file).toMillis(), sha256),
+            snapshot.getPassages());
+        write(refreshed);
+        return refreshed;
+    }
+
+    /**
+     * 按内容哈希读取快照
+     * @param sha256 内容哈希
+     * @return 快照，不存在或版本不兼容时返回null
+     */
+    public DocumentSnapshot findByContentHash(String sha256) throws IOException {
+        return read(snapshotPath(sha256));
+    }
+
+    /**
+     * 读取目录中所有快照的文件头
+     * @return 文件名 -> 文件头
+     */
+    public Map<String, Header> loadHeaders() throws IOException {
+        Map<String, Header> headers = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return headers;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(SUFFIX))::iterator) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    Header header = readHeader(buffer);
+                    if (header != null) {
+                        headers.put(header.getFileName(), header);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // 损坏的快照直接忽略，对应的PDF会被重新解析
+                }
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * 以内存映射方式读取快照
+     * @param snapshotFile 快照文件
+     * @return 快照，文件不存在或版本不兼容时返回null
+     */
+    public DocumentSnapshot read(Path snapshotFile) throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Header header = readHeader(buffer);
+            if (header == null) {
+                return null;
+            }
+            int passageCount = buffer.getInt();
+            List<Passage> passages = new ArrayList<>(passageCount);
+            Map<String, Object> metadata = null;
+            for (int i = 0; i < passageCount; i++) {
+                int pageNumber = buffer.getInt();
+                int startOffset = buffer.getInt();
+                int endOffset = buffer.getInt();
+                // 同一页的段落共享元数据，只有变化时才写入
+                if (buffer.get() == 1) {
+                    metadata = readMetadata(buffer);
+                }
+                String text = readString(buffer);
+                int length = buffer.getInt();
+                int termCount = buffer.getInt();
+                long[] terms = new long[termCount];
+                int[] counts = new int[termCount];
+                int positionCount = 0;
+                for (int t = 0; t < termCount; t++) {
+                    terms[t] = buffer.getLong();
+                    counts[t] = buffer.getInt();
+                    positionCount += counts[t];
+                }
+                // 词项位置（按词项分组），没有位置信息时只有一个0字节
+                int[] positions = null;
+                if (buffer.get() == 1) {
+                    positions = new int[positionCount];
+                    for (int p = 0; p < positionCount; p++) {
+                        positions[p] = buffer.getInt();
+                    }
+                }
+                passages.add(new Passage(pageNumber, startOffset, endOffset, text, metadata,
+                    new TokenizedPage(terms, counts, positions, length)));
+            }
+            return new DocumentSnapshot(header, passages);
+        } catch (RuntimeException e) {
+            throw new IOException("快照文件已损坏: " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * 写入快照（先写临时文件再原子替换）
+     * @param snapshot 文档快照
+     */
+    public void write(DocumentSnapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        Path target = snapshotPath(snapshot.getHeader().getSha256());
+        Path temp = Files.createTempFile(directory, "snapshot", ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+                Header header = snapshot.getHeader();
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, tokenizerId);
+                writeString(out, header.getFileName());
+                out.writeLong(header.getFileSize());
+                out.writeLong(header.getLastModified());
+                writeString(out, header.getSha256());
+
+                out.writeInt(snapshot.getPassages().size());
+                Map<String, Object> previousMetadata = null;
+                for (Passage passage : snapshot.getPassages()) {
+                    out.writeInt(passage.getPageNumber());
+                    out.writeInt(passage.getStartOffset());
+                    out.writeInt(passage.getEndOffset());
+                    if (passage.getMetadata() != previousMetadata) {
+                        out.writeByte(1);
+                        writeMetadata(out, passage.getMetadata());
+                        previousMetadata = passage.getMetadata();
+                    } else {
+                        out.writeByte(0);
+                    }
+                    writeString(out, passage.getText());
+                    TokenizedPage tokens = passage.getTokens();
+                    out.writeInt(tokens.length());
+                    out.writeInt(tokens.termCount());
+                    for (int t = 0; t < tokens.termCount(); t++) {
+                        out.writeLong(tokens.term(t));
+                        out.writeInt(tokens.count(t));
+                    }
+                    if (tokens.hasPositions()) {
+                        out.writeByte(1);
+                        for (int position : tokens.positions()) {
+                            out.writeInt(position);
+                        }
+                    } else {
+                        out.writeByte(0);
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 删除指定内容的快照
+     * @param sha256 内容哈希
+     */
+    public void delete(String sha256) throws IOException {
+        Files.deleteIfExists(snapshotPath(sha256));
+    }
+
+    private Path snapshotPath(String sha256) {
+        return directory.resolve(sha256 + SUFFIX);
+    }
+
+    /**
+     * 读取并校验文件头，魔数、格式版本或分词器不匹配时返回null
+     */
+    private Header readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        if (!tokenizerId.equals(readString(buffer))) {
+            return null;
+        }
+        String fileName = readString(buffer);
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        String sha256 = readString(buffer);
+        return new Header(fileName, fileSize, lastModified, sha256);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 元数据只保存基本类型和日期，其他类型按字符串保存
+     */
+    private static void writeMetadata(DataOutputStream out, Map<String, Object> metadata) throws IOException {
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Integer i) {
+                out.writeByte(TYPE_INT);
+                out.writeInt(i);
+            } else if (value instanceof Long l) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong(l);
+            } else if (value instanceof Double d) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(d);
+            } else if (value instanceof Boolean b) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(b);
+            } else if (value instanceof Date date) {
+                out.writeByte(TYPE_DATE);
+                out.writeLong(date.getTime());
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private static Map<String, Object> readMetadata(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(buffer);
+            byte type = buffer.get();
+            Object value = switch (type) {
+                case TYPE_INT -> buffer.getInt();
+                case TYPE_LONG -> buffer.getLong();
+                case TYPE_DOUBLE -> buffer.getDouble();
+                case TYPE_BOOLEAN -> buffer.get() != 0;
+                case TYPE_DATE -> new Date(buffer.getLong());
+                default -> readString(buffer);
+            };
+            metadata.put(key, value);
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.springaichat.search;
+
+/**
+ * n-gram分词器
+ * 英文/数字按单词切分（长度>=2），连续中文按2-4字n-gram切分，不依赖词典。
+ * 基于字符分类表单遍扫描文本，词项以64位哈希（FNV-1a + 混淆）的原始long输出，不创建子串
+ */
+public final class NgramTokenizer implements Tokenizer {
+
+    /** 分词器标识，分词规则变化时需要修改，使持久化的词项哈希失效 */
+    public static final String ID = "ngram-2-4-fnv1a-v1";
+
+    /** 最短的n-gram长度 */
+    public static final int MIN_GRAM = 2;
+    /** 最长的n-gram长度 */
+    public static final int MAX_GRAM = 4;
+
+    public static final NgramTokenizer INSTANCE = new NgramTokenizer();
+
+    private NgramTokenizer() {
+    }
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    /**
+     * 切分文本并逐个输出词项哈希，不分配任何对象
+     * @param text 文本
+     * @param sink 词项接收者
+     */
+    @Override
+    public void tokenize(CharSequence text, TermSink sink) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            byte type = Terms.classOf(text.charAt(i));
+            if (type == Terms.CJK) {
+                // 连续中文片段，输出其中所有2-4字的子串（同一起点的n-gram哈希逐字递推）
+                int end = i + 1;
+                while (end < length && Terms.classOf(text.charAt(end)) == Terms.CJK) {
+                    end++;
+                }
+                for (int start = i; start < end - 1; start++) {
+                    long hash = Terms.FNV_OFFSET;
+                    int limit = Math.min(end, start + MAX_GRAM);
+                    for (int j = start; j < limit; j++) {
+                        hash = (hash ^ text.charAt(j)) * Terms.FNV_PRIME;
+                        if (j - start + 1 >= MIN_GRAM) {
+                            sink.accept(Terms.mix(hash), start);
+                        }
+                    }
+                }
+                i = end;
+            } else if (type == Terms.WORD) {
+                // 连续字母数字片段作为一个单词
+                long hash = Terms.FNV_OFFSET;
+                int end = i;
+                while (end < length && Terms.classOf(text.charAt(end)) == Terms.WORD) {
+                    hash = (hash ^ Terms.fold(text.charAt(end))) * Terms.FNV_PRIME;
+                    end++;
+                }
+                if (end - i >= MIN_GRAM) {
+                    sink.accept(Terms.mix(hash), i);
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 计算单个词项的哈希（与tokenize输出一致）
+     * @param term 单个单词或中文n-gram
+     * @return 词项哈希
+     */
+    public static long hash(CharSequence term) {
+        return Terms.hash(term, 0, term.length());
+    }
+
+    /**
+     * 是否为常用中文字符
+     */
+    public static boolean isCjk(char c) {
+        return Terms.isCjk(c);
+    }
+}
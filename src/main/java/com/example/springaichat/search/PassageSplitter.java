@@ -0,0 +1,104 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 段落切分器
+ * 将页面文本按字符数切分为带重叠的窗口，尽量在句末标点或换行处断开，保留段落在页面中的偏移
+ */
+public class PassageSplitter {
+
+    /** 默认段落最大字符数 */
+    public static final int DEFAULT_MAX_CHARS = 600;
+    /** 默认相邻段落重叠字符数 */
+    public static final int DEFAULT_OVERLAP = 100;
+
+    /** 可作为段落边界的字符 */
+    private static final String BOUNDARIES = "\n。！？；.!?;";
+
+    private final int maxChars;
+    private final int overlap;
+
+    /**
+     * 段落在页面文本中的位置 [start, end)
+     */
+    public static final class Passage {
+        private final int start;
+        private final int end;
+
+        Passage(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+    }
+
+    public PassageSplitter() {
+        this(DEFAULT_MAX_CHARS, DEFAULT_OVERLAP);
+    }
+
+    public PassageSplitter(int maxChars, int overlap) {
+        if (maxChars <= 0 || overlap < 0 || overlap >= maxChars) {
+            throw new IllegalArgumentException("段落切分参数不合法: maxChars=" + maxChars + ", overlap=" + overlap);
+        }
+        this.maxChars = maxChars;
+        this.overlap = overlap;
+    }
+
+    /**
+     * 切分页面文本
+     * @param text 页面文本
+     * @return 段落位置列表，按起始位置递增
+     */
+    public List<Passage> split(String text) {
+        List<Passage> passages = new ArrayList<>();
+        int length = text.length();
+        if (length <= maxChars) {
+            passages.add(new Passage(0, length));
+            return passages;
+        }
+
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + maxChars);
+            if (end < length) {
+                // 在窗口后半段向前寻找句子边界，避免把句子切断
+                int boundary = findBoundary(text, start + maxChars / 2, end);
+                if (boundary > 0) {
+                    end = boundary;
+                }
+            }
+            passages.add(new Passage(start, end));
+            if (end == length) {
+                break;
+            }
+            // 下一个窗口与当前窗口重叠overlap个字符，且必须向前推进
+            start = Math.max(end - overlap, start + 1);
+        }
+        return passages;
+    }
+
+    /**
+     * 在[from, to)内从后向前查找句子边界
+     * @return 边界之后的位置，找不到返回-1
+     */
+    private static int findBoundary(String text, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (BOUNDARIES.indexOf(text.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public int getOverlap() {
+        return overlap;
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+
+/**
+ * 压缩倒排列表
+ * 倒排项按页面ID递增追加，每{@value #BLOCK_SIZE}项为一块：页面ID存与前一项的差值，差值和词频都用变长整数（varint）编码。
+ * 每块记录最后一个页面ID和起始字节位置作为跳表指针，定位页面ID时按块二分查找，只解码目标块。
+ * 词项在页面中的位置单独存放在位置流中（每项：位置数 + 位置差值），只做词频打分时不解码，需要时才按块定位读取
+ */
+public final class PostingList {
+
+    /** 每块的倒排项数 */
+    public static final int BLOCK_SIZE = 128;
+
+    /** 编码后的倒排项 */
+    private byte[] data = new byte[16];
+    private int dataLength;
+
+    /** 每块最后一个页面ID */
+    private int[] blockLastIds = new int[1];
+    /** 每块的起始字节位置 */
+    private int[] blockOffsets = new int[1];
+    private int blockCount;
+
+    private int size;
+    private int lastPageId = -1;
+
+    /** 位置流，首次加入带位置的倒排项时创建 */
+    private byte[] positionData;
+    private int positionLength;
+    /** 每块在位置流中的起始字节位置 */
+    private int[] blockPositionOffsets;
+
+    /**
+     * 追加倒排项
+     * @param pageId 页面ID（必须大于已有的所有页面ID）
+     * @param frequency 词频
+     */
+    public void add(int pageId, int frequency) {
+        add(pageId, frequency, null, 0, 0);
+    }
+
+    /**
+     * 追加带位置的倒排项
+     * @param pageId 页面ID（必须大于已有的所有页面ID）
+     * @param frequency 词频
+     * @param positions 位置数组
+     * @param from 本项位置在数组中的起始下标
+     * @param count 位置数量（升序），0表示没有位置信息
+     */
+    public void add(int pageId, int frequency, int[] positions, int from, int count) {
+        if (pageId <= lastPageId) {
+            throw new IllegalArgumentException("页面ID必须递增: " + pageId + " <= " + lastPageId);
+        }
+        if (count > 0 && positionData == null) {
+            startPositions();
+        }
+        if (size % BLOCK_SIZE == 0) {
+            if (blockCount == blockOffsets.length) {
+                int capacity = blockCount * 2;
+                blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+                blockLastIds = Arrays.copyOf(blockLastIds, capacity);
+                if (positionData != null) {
+                    blockPositionOffsets = Arrays.copyOf(blockPositionOffsets, capacity);
+                }
+            }
+            blockOffsets[blockCount] = dataLength;
+            if (positionData != null) {
+                blockPositionOffsets[blockCount] = positionLength;
+            }
+            blockCount++;
+        }
+        if (positionData != null) {
+            writePositions(positions, from, count);
+        }
+        ensureCapacity(dataLength + 10);
+        // 块内第一项以前一块的最后一个页面ID为基准，解码时不依赖前面的块
+        dataLength = writeVarint(data, dataLength, pageId - lastPageId - 1);
+        dataLength = writeVarint(data, dataLength, frequency);
+        lastPageId = pageId;
+        blockLastIds[blockCount - 1] = pageId;
+        size++;
+    }
+
+    /**
+     * 释放编码缓冲区的多余容量
+     */
+    public void trimToSize() {
+        if (data.length > dataLength) {
+            data = Arrays.copyOf(data, Math.max(dataLength, 1));
+        }
+        if (blockOffsets.length > blockCount) {
+            blockOffsets = Arrays.copyOf(blockOffsets, Math.max(blockCount, 1));
+            blockLastIds = Arrays.copyOf(blockLastIds, Math.max(blockCount, 1));
+            if (positionData != null) {
+                blockPositionOffsets = Arrays.copyOf(blockPositionOffsets, Math.max(blockCount, 1));
+            }
+        }
+        if (positionData != null && positionData.length > positionLength) {
+            positionData = Arrays.copyOf(positionData, Math.max(positionLength, 1));
+        }
+    }
+
+    /** 倒排项数量（即文档频率） */
+    public int size() {
+        return size;
+    }
+
+    /** 占用的堆内存字节数（数组容量 + 对象头的估算） */
+    public long memoryBytes() {
+        long bytes = 56L + arrayBytes(data.length) + 2 * arrayBytes(blockOffsets.length * 4L);
+        if (positionData != null) {
+            bytes += arrayBytes(positionData.length) + arrayBytes(blockPositionOffsets.length * 4L);
+        }
+        return bytes;
+    }
+
+    /** 是否带有位置信息 */
+    public boolean hasPositions() {
+        return positionData != null;
+    }
+
+    /** 位置流字节数 */
+    public int positionBytes() {
+        return positionLength;
+    }
+
+    /** 编码后的倒排项字节数 */
+    public int encodedBytes() {
+        return dataLength;
+    }
+
+    /** 跳表指针字节数 */
+    public int skipBytes() {
+        return blockCount * 8;
+    }
+
+    /**
+     * 创建从头开始的游标
+     */
+    public Cursor cursor() {
+        Cursor cursor = new Cursor();
+        cursor.reset(this);
+        return cursor;
+    }
+
+    /**
+     * 创建位置流，已有的倒排项补记为没有位置信息（每项1字节）
+     */
+    private void startPositions() {
+        positionData = new byte[Math.max(16, size * 2)];
+        positionLength = size;
+        blockPositionOffsets = new int[blockOffsets.length];
+        for (int block = 0; block < blockCount; block++) {
+            blockPositionOffsets[block] = block * BLOCK_SIZE;
+        }
+    }
+
+    private void writePositions(int[] positions, int from, int count) {
+        ensurePositionCapacity(positionLength + 5 * (count + 1));
+        positionLength = writeVarint(positionData, positionLength, count);
+        int previous = 0;
+        for (int i = from; i < from + count; i++) {
+            positionLength = writeVarint(positionData, positionLength, positions[i] - previous);
+            previous = positions[i];
+        }
+    }
+
+    private void ensurePositionCapacity(int capacity) {
+        if (capacity > positionData.length) {
+            positionData = Arrays.copyOf(positionData, Math.max(capacity, positionData.length + (positionData.length >> 1)));
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1)));
+        }
+    }
+
+    private static long arrayBytes(long length) {
+        return 16 + ((length + 7) & ~7L);
+    }
+
+    private static int writeVarint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * 倒排列表游标，可复用以避免检索时分配对象
+     * 游标不加锁，调用方需保证遍历期间倒排列表不被修改
+     */
+    public static final class Cursor {
+        private PostingList list;
+        private int block;
+        private int indexInBlock;
+        private int offset;
+        private int position;
+        private int pageId;
+        private int frequency;
+        /** 位置流中块内第positionIndex项的起始字节位置 */
+        private int positionOffset;
+        private int positionIndex;
+
+        /**
+         * 指向列表开头（第一个倒排项之前）
+         */
+        public void reset(PostingList list) {
+            this.list = list;
+            this.position = -1;
+            this.pageId = -1;
+            this.frequency = 0;
+            seekBlock(0);
+        }
+
+        /**
+         * 移动到下一项
+         * @return 是否还有倒排项
+         */
+        public boolean next() {
+            if (position + 1 >= list.size) {
+                position = list.size;
+                return false;
+            }
+            if (indexInBlock == BLOCK_SIZE) {
+                seekBlock(block + 1);
+            }
+            byte[] data = list.data;
+            // 页面ID差值
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += value + 1;
+            // 词频
+            value = 0;
+            shift = 0;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            frequency = value;
+            indexInBlock++;
+            position++;
+            return true;
+        }
+
+        /**
+         * 移动到第一个页面ID不小于target的倒排项，按跳表指针跳过整块
+         * @param target 目标页面ID
+         * @return 是否存在这样的倒排项
+         */
+        public boolean advance(int target) {
+            if (position >= 0 && position < list.size && pageId >= target) {
+                return true;
+            }
+            // 当前块不包含target时，二分查找最后页面ID不小于target的块
+            if (block < list.blockCount && list.blockLastIds[block] < target) {
+                int low = block + 1;
+                int high = list.blockCount - 1;
+                int found = list.blockCount;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (list.blockLastIds[mid] >= target) {
+                        found = mid;
+                        high = mid - 1;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                if (found == list.blockCount) {
+                    position = list.size;
+                    return false;
+                }
+                seekBlock(found);
+                position = found * BLOCK_SIZE - 1;
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+
+        public int frequency() {
+            return frequency;
+        }
+
+        /**
+         * 读取当前倒排项的位置（升序），跳过块内之前未读取的项；每个倒排项最多读取一次
+         * @param out 输出数组，长度至少为{@link #frequency()}
+         * @return 位置数量，没有位置信息时为0
+         */
+        public int readPositions(int[] out) {
+            byte[] data = list.positionData;
+            int current = indexInBlock - 1;
+            if (data == null || current < positionIndex) {
+                return 0;
+            }
+            // 跳过块内前面的项
+            while (positionIndex < current) {
+                int count = readVarint(data);
+                for (int i = 0; i < count; i++) {
+                    while (data[positionOffset++] < 0) {
+                        // 跳过变长整数的后续字节
+                    }
+                }
+                positionIndex++;
+            }
+            int count = readVarint(data);
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                position += readVarint(data);
+                out[i] = position;
+            }
+            positionIndex++;
+            return count;
+        }
+
+        private int readVarint(byte[] data) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[positionOffset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private void seekBlock(int newBlock) {
+            block = newBlock;
+            indexInBlock = 0;
+            positionIndex = 0;
+            if (newBlock < list.blockCount) {
+                offset = list.blockOffsets[newBlock];
+                pageId = newBlock == 0 ? -1 : list.blockLastIds[newBlock - 1];
+                if (list.positionData != null) {
+                    positionOffset = list.blockPositionOffsets[newBlock];
+                }
+            }
+        }
+    }
+}
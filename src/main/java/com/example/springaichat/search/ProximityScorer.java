@@ -0,0 +1,225 @@
+package com.example.springaichat.search;
+
+/**
+ * 短语与邻近度打分
+ * 对BM25选出的候选页面读取查询词的位置，按两项信号调整得分：
+ * <ul>
+ *     <li>邻近度：覆盖页面中出现的所有查询词的最小窗口宽度，与这些词在查询中的跨度越接近加权越高</li>
+ *     <li>短语：所有查询词按查询中的相对位置（允许少量字符偏差）连续出现时再乘以短语加权</li>
+ * </ul>
+ * 位置按词项在文本中的起始字符计，按线程复用计算空间，不分配对象
+ */
+public final class ProximityScorer {
+
+    /** 默认邻近度权重：查询词紧挨着出现且全部命中时得分最多乘以(1 + 权重) */
+    public static final double DEFAULT_PROXIMITY_WEIGHT = 1.0;
+
+    /** 默认短语加权 */
+    public static final double DEFAULT_PHRASE_BOOST = 1.5;
+
+    /** 默认短语匹配允许的位置偏差（字符），容忍空格、标点的差异 */
+    public static final int DEFAULT_PHRASE_SLACK = 2;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final double proximityWeight;
+    private final double phraseBoost;
+    private final int phraseSlack;
+
+    public ProximityScorer() {
+        this(DEFAULT_PROXIMITY_WEIGHT, DEFAULT_PHRASE_BOOST, DEFAULT_PHRASE_SLACK);
+    }
+
+    public ProximityScorer(double proximityWeight, double phraseBoost, int phraseSlack) {
+        if (proximityWeight < 0 || phraseBoost < 1 || phraseSlack < 0) {
+            throw new IllegalArgumentException("邻近度参数不合法: weight=" + proximityWeight
+                + ", phraseBoost=" + phraseBoost + ", slack=" + phraseSlack);
+        }
+        this.proximityWeight = proximityWeight;
+        this.phraseBoost = phraseBoost;
+        this.phraseSlack = phraseSlack;
+    }
+
+    /**
+     * 按邻近度重新排序候选页面
+     * @param snapshot 检索使用的索引快照
+     * @param query 查询词项（带位置）
+     * @param pageIds 候选页面ID，按BM25得分降序
+     * @param scores 候选页面得分，就地乘以邻近度系数
+     * @param count 候选数量
+     * @param k 保留数量
+     * @return 重新排序后保留的数量
+     */
+    public int rerank(IndexSnapshot snapshot, TermBuffer query, int[] pageIds, double[] scores, int count, int k) {
+        for (int i = 0; i < count; i++) {
+            scores[i] *= boost(snapshot, query, pageIds[i]);
+        }
+        // 候选数量很小，插入排序即可
+        for (int i = 1; i < count; i++) {
+            int pageId = pageIds[i];
+            double score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && (scores[j] < score || (scores[j] == score && pageIds[j] > pageId))) {
+                pageIds[j + 1] = pageIds[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            pageIds[j + 1] = pageId;
+            scores[j + 1] = score;
+        }
+        return Math.min(count, k);
+    }
+
+    /**
+     * 页面的邻近度系数
+     * @param snapshot 索引快照
+     * @param query 查询词项（带位置）
+     * @param pageId 页面ID
+     * @return 系数（>=1），查询不足两个词或页面没有位置信息时为1
+     */
+    public double boost(IndexSnapshot snapshot, TermBuffer query, int pageId) {
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureTerms(query.size());
+        int queryTerms = 0;
+        int present = 0;
+        for (int t = 0; t < query.size(); t++) {
+            int queryOffset = query.offset(t);
+            if (queryOffset == TermBuffer.NO_OFFSET) {
+                continue;
+            }
+            queryTerms++;
+            if (!snapshot.seek(query.get(t), pageId, scratch.cursor)) {
+                continue;
+            }
+            scratch.ensurePositions(present, scratch.cursor.frequency());
+            int count = scratch.cursor.readPositions(scratch.positions[present]);
+            if (count > 0) {
+                scratch.counts[present] = count;
+                scratch.queryOffsets[present] = queryOffset;
+                present++;
+            }
+        }
+        if (present < 2) {
+            return 1.0;
+        }
+
+        int minOffset = Integer.MAX_VALUE;
+        int maxOffset = Integer.MIN_VALUE;
+        for (int i = 0; i < present; i++) {
+            minOffset = Math.min(minOffset, scratch.queryOffsets[i]);
+            maxOffset = Math.max(maxOffset, scratch.queryOffsets[i]);
+        }
+        int expected = maxOffset - minOffset;
+        int width = minimalWindow(scratch, present);
+        double proximity = (expected + 1.0) / (Math.max(width, expected) + 1.0);
+        double boost = 1.0 + proximityWeight * proximity * present / queryTerms;
+        if (present == queryTerms && isPhrase(scratch, present)) {
+            boost *= phraseBoost;
+        }
+        return boost;
+    }
+
+    /**
+     * 覆盖每个词至少一次出现的最小窗口宽度（各列表头部取最小值前移）
+     */
+    private static int minimalWindow(Scratch scratch, int present) {
+        int[] heads = scratch.heads;
+        for (int i = 0; i < present; i++) {
+            heads[i] = 0;
+        }
+        int best = Integer.MAX_VALUE;
+        while (true) {
+            int minList = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < present; i++) {
+                int value = scratch.positions[i][heads[i]];
+                if (value < min) {
+                    min = value;
+                    minList = i;
+                }
+                max = Math.max(max, value);
+            }
+            best = Math.min(best, max - min);
+            if (++heads[minList] == scratch.counts[minList]) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * 是否存在一处所有词都按查询中的相对位置出现（偏差不超过phraseSlack）
+     */
+    private boolean isPhrase(Scratch scratch, int present) {
+        int anchor = 0;
+        for (int i = 1; i < present; i++) {
+            if (scratch.counts[i] < scratch.counts[anchor]) {
+                anchor = i;
+            }
+        }
+        int[] anchorPositions = scratch.positions[anchor];
+        for (int a = 0; a < scratch.counts[anchor]; a++) {
+            int base = anchorPositions[a] - scratch.queryOffsets[anchor];
+            boolean matched = true;
+            for (int i = 0; i < present && matched; i++) {
+                if (i != anchor) {
+                    int target = base + scratch.queryOffsets[i];
+                    matched = containsNear(scratch.positions[i], scratch.counts[i], target, phraseSlack);
+                }
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 升序数组中是否有值落在[target - slack, target + slack]内
+     */
+    private static boolean containsNear(int[] positions, int count, int target, int slack) {
+        int low = 0;
+        int high = count;
+        int from = target - slack;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < count && positions[low] <= target + slack;
+    }
+
+    /**
+     * 按线程复用的计算空间
+     */
+    private static final class Scratch {
+        final PostingList.Cursor cursor = new PostingList.Cursor();
+        int[][] positions = new int[0][];
+        int[] counts = new int[0];
+        int[] queryOffsets = new int[0];
+        int[] heads = new int[0];
+
+        void ensureTerms(int terms) {
+            if (counts.length < terms) {
+                int[][] grown = new int[terms][];
+                System.arraycopy(positions, 0, grown, 0, positions.length);
+                for (int i = positions.length; i < terms; i++) {
+                    grown[i] = new int[16];
+                }
+                positions = grown;
+                counts = new int[terms];
+                queryOffsets = new int[terms];
+                heads = new int[terms];
+            }
+        }
+
+        void ensurePositions(int index, int capacity) {
+            if (positions[index].length < capacity) {
+                positions[index] = new int[Math.max(capacity, positions[index].length * 2)];
+            }
+        }
+    }
+}
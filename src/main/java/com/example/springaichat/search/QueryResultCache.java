@@ -0,0 +1,181 @@
+package com.example.springaichat.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 检索结果缓存
+ * 以规范化后的查询文本和返回条数为键，按最近最少使用淘汰，容量固定。
+ * 每个条目记录写入时的知识库版本，知识库变化后版本递增，旧条目在读取时视为失效
+ * @param <V> 检索结果类型（应不可修改）
+ */
+public class QueryResultCache<V> {
+
+    private final int maxEntries;
+
+    private final LinkedHashMap<Key, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries 最大条目数
+     */
+    public QueryResultCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry<V>> eldest) {
+                if (size() > QueryResultCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 规范化查询：全角转半角、转小写，标点和空白（分词时的分隔符）合并为单个空格
+     * 只在分隔符上有差异的查询分词结果相同，共用一个缓存条目
+     * @param query 用户问题
+     * @return 规范化后的查询
+     */
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(query, Normalizer.Form.NFKC);
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                pendingSpace = false;
+                builder.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 读取缓存
+     * @param normalizedQuery 规范化后的查询
+     * @param maxResults 最大返回结果数
+     * @param version 当前知识库版本
+     * @return 缓存的结果，不存在或已失效时返回null
+     */
+    public V get(String normalizedQuery, int maxResults, long version) {
+        Key key = new Key(normalizedQuery, maxResults);
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.version == version) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                staleMisses.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     * @param normalizedQuery 规范化后的查询
+     * @param maxResults 最大返回结果数
+     * @param version 开始检索前读取的知识库版本
+     * @param value 检索结果
+     */
+    public void put(String normalizedQuery, int maxResults, long version, V value) {
+        Key key = new Key(normalizedQuery, maxResults);
+        synchronized (entries) {
+            Entry<V> existing = entries.get(key);
+            // 不用旧版本的结果覆盖新版本的结果
+            if (existing == null || existing.version <= version) {
+                entries.put(key, new Entry<>(version, value));
+            }
+        }
+    }
+
+    /**
+     * 清空缓存（不重置统计）
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() { return maxEntries; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getStaleMisses() { return staleMisses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    /**
+     * @return 命中率，尚无请求时为0
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static final class Key {
+        final String query;
+        final int maxResults;
+
+        Key(String query, int maxResults) {
+            this.query = query;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return maxResults == other.maxResults && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return query.hashCode() * 31 + maxResults;
+        }
+    }
+
+    private static final class Entry<V> {
+        final long version;
+        final V value;
+
+        Entry(long version, V value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 倒数排名融合（Reciprocal Rank Fusion）
+ * 多路检索结果只按名次合并，不比较各路得分的量纲：每条结果的融合得分为各路中 1 / (k + 名次) 之和，
+ * 名次从1开始。k越大，各路靠后的结果与靠前的结果差距越小。结果按对象身份去重
+ */
+public final class ReciprocalRankFusion {
+
+    /** 常用的平滑常数 */
+    public static final int DEFAULT_K = 60;
+
+    private final int k;
+
+    public ReciprocalRankFusion() {
+        this(DEFAULT_K);
+    }
+
+    public ReciprocalRankFusion(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k不能为负数: " + k);
+        }
+        this.k = k;
+    }
+
+    /**
+     * 融合多路排序结果
+     * @param rankings 各路结果，按相关度降序
+     * @param limit 最多返回的数量
+     * @return 按融合得分降序的结果；得分相同时最佳名次靠前者在前，再相同时先出现的路优先
+     */
+    public <T> List<T> fuse(List<? extends List<? extends T>> rankings, int limit) {
+        Map<T, Entry<T>> entries = new IdentityHashMap<>();
+        List<Entry<T>> order = new ArrayList<>();
+        for (List<? extends T> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                T item = ranking.get(rank);
+                Entry<T> entry = entries.get(item);
+                if (entry == null) {
+                    entry = new Entry<>(item, order.size());
+                    entries.put(item, entry);
+                    order.add(entry);
+                }
+                entry.score += score(rank + 1);
+                entry.bestRank = Math.min(entry.bestRank, rank + 1);
+            }
+        }
+        order.sort((a, b) -> {
+            int result = Double.compare(b.score, a.score);
+            if (result == 0) {
+                result = Integer.compare(a.bestRank, b.bestRank);
+            }
+            return result != 0 ? result : Integer.compare(a.firstSeen, b.firstSeen);
+        });
+        List<T> fused = new ArrayList<>(Math.min(limit, order.size()));
+        for (int i = 0; i < order.size() && i < limit; i++) {
+            fused.add(order.get(i).item);
+        }
+        return fused;
+    }
+
+    /**
+     * 单路中某个名次贡献的得分
+     * @param rank 名次（从1开始）
+     */
+    public double score(int rank) {
+        return 1.0 / (k + rank);
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final int firstSeen;
+        double score;
+        int bestRank = Integer.MAX_VALUE;
+
+        Entry(T item, int firstSeen) {
+            this.item = item;
+            this.firstSeen = firstSeen;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+
+/**
+ * 页面得分累加器
+ * 以页面ID为键的开放寻址哈希表（线性探测），页面ID和得分按首次出现顺序存放在稠密的原始类型数组中，
+ * 可直接交给{@link TopKSelector}扫描。clear()只重置已使用的槽位，适合按线程复用
+ */
+public final class ScoreAccumulator implements InvertedIndex.ScoreVisitor {
+
+    /** 槽位 -> 稠密数组下标+1，0表示空槽 */
+    private int[] table;
+    private int mask;
+
+    private int[] pageIds;
+    private double[] scores;
+    private int[] slots;
+    private int size;
+
+    public ScoreAccumulator(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        table = new int[capacity];
+        mask = capacity - 1;
+        pageIds = new int[capacity / 2];
+        scores = new double[capacity / 2];
+        slots = new int[capacity / 2];
+    }
+
+    /**
+     * 给页面累加得分
+     */
+    @Override
+    public void visit(int pageId, double score) {
+        int slot = slot(pageId);
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (pageIds[index] == pageId) {
+                scores[index] += score;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        pageIds[size] = pageId;
+        scores[size] = score;
+        slots[size] = slot;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * 清空累加结果（只重置已使用的槽位）
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            table[slots[i]] = 0;
+        }
+        size = 0;
+    }
+
+    /** 已累加的页面数量 */
+    public int size() {
+        return size;
+    }
+
+    /** 页面ID数组，前size()个有效，只读 */
+    public int[] pageIds() {
+        return pageIds;
+    }
+
+    /** 得分数组，前size()个有效，只读 */
+    public double[] scores() {
+        return scores;
+    }
+
+    private int slot(int pageId) {
+        int hash = pageId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = slot(pageIds[i]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+            slots[i] = slot;
+        }
+    }
+}
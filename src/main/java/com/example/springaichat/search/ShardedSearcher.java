@@ -0,0 +1,108 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 分片并行检索
+ * 按页面ID区间把倒排索引切分为若干分片，在专用的ForkJoinPool中各自计算局部Top-K后合并。
+ * 查询工作量（需访问的倒排项数）低于阈值时在请求线程上顺序执行；
+ * 线程池并行度和单个查询的分片数都有上限，避免一个大查询占满所有线程
+ */
+public class ShardedSearcher implements AutoCloseable {
+
+    /** 默认顺序检索阈值（倒排项数） */
+    public static final long DEFAULT_SEQUENTIAL_THRESHOLD = 20_000;
+
+    /**
+     * 按线程复用的得分累加器（请求线程和检索线程池中的线程各自一份）
+     */
+    private static final ThreadLocal<ScoreAccumulator> SCORE_ACCUMULATOR =
+        ThreadLocal.withInitial(() -> new ScoreAccumulator(1024));
+
+    private final InvertedIndex index;
+    private final Bm25Scorer scorer;
+    private final ForkJoinPool pool;
+    private final int maxShardsPerQuery;
+    private final long sequentialThreshold;
+
+    /**
+     * @param index 倒排索引
+     * @param scorer BM25打分器
+     * @param parallelism 检索线程池并行度
+     * @param maxShardsPerQuery 单个查询最多切分的分片数
+     * @param sequentialThreshold 倒排项数低于该值时顺序检索
+     */
+    public ShardedSearcher(InvertedIndex index, Bm25Scorer scorer, int parallelism,
+                           int maxShardsPerQuery, long sequentialThreshold) {
+        if (parallelism <= 0 || maxShardsPerQuery <= 0) {
+            throw new IllegalArgumentException("并行度和分片数必须为正数");
+        }
+        this.index = index;
+        this.scorer = scorer;
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxShardsPerQuery = maxShardsPerQuery;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * 检索得分最高的k个页面
+     * @param terms 查询词项哈希（应已去重）
+     * @param k 返回数量
+     * @param pageIdLimit 当前已分配的最大页面ID+1
+     * @return Top-K选择器
+     */
+    public TopKSelector search(TermBuffer terms, int k, int pageIdLimit) {
+        return search(index.snapshot(), terms, k, pageIdLimit);
+    }
+
+    /**
+     * 在指定快照上检索得分最高的k个页面，所有分片使用同一个快照，查询期间的入库和删除不影响本次结果
+     * @param snapshot 索引快照
+     * @param terms 查询词项哈希（应已去重）
+     * @param k 返回数量
+     * @param pageIdLimit 当前已分配的最大页面ID+1
+     * @return Top-K选择器
+     */
+    public TopKSelector search(IndexSnapshot snapshot, TermBuffer terms, int k, int pageIdLimit) {
+        int limit = Math.min(pageIdLimit, snapshot.pageIdLimit());
+        int shards = Math.min(maxShardsPerQuery, pool.getParallelism());
+        if (shards <= 1 || limit < shards || snapshot.postingCount(terms) < sequentialThreshold) {
+            return searchShard(snapshot, terms, k, 0, limit);
+        }
+
+        int shardSize = (limit + shards - 1) / shards;
+        List<ForkJoinTask<TopKSelector>> tasks = new ArrayList<>(shards);
+        for (int from = 0; from < limit; from += shardSize) {
+            int start = from;
+            int end = Math.min(limit, from + shardSize);
+            tasks.add(pool.submit(() -> searchShard(snapshot, terms, k, start, end)));
+        }
+        TopKSelector merged = new TopKSelector(k);
+        for (ForkJoinTask<TopKSelector> task : tasks) {
+            merged.merge(task.join());
+        }
+        return merged;
+    }
+
+    /**
+     * 在单个分片内累加得分并选出局部Top-K
+     */
+    private TopKSelector searchShard(IndexSnapshot snapshot, TermBuffer terms, int k, int fromPageId, int toPageId) {
+        ScoreAccumulator accumulator = SCORE_ACCUMULATOR.get();
+        accumulator.clear();
+        snapshot.search(terms, scorer, fromPageId, toPageId, accumulator);
+        return TopKSelector.select(accumulator.pageIds(), accumulator.scores(), 0, accumulator.size(), k);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
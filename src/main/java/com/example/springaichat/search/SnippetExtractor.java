@@ -0,0 +1,287 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 查询相关片段提取
+ * 重新切分段落文本得到查询词的命中位置，在固定宽度的窗口中选出覆盖查询词最多、命中最密集的片段，
+ * 按句子边界修整后合并相邻片段，总字符数不超过预算。段落本身不超过预算时原样保留
+ */
+public final class SnippetExtractor {
+
+    /** 默认窗口字符数 */
+    public static final int DEFAULT_WINDOW_CHARS = 200;
+
+    /** 片段之间以及被省略的首尾处的连接符 */
+    public static final String ELLIPSIS = "……";
+
+    /** 估算命中词项长度时在起始位置之后预留的字符数（分词器只输出起始位置） */
+    private static final int MATCH_TAIL = 8;
+
+    /** 间隔不超过该字符数的片段合并为一个 */
+    private static final int MERGE_GAP = 16;
+
+    /** 可作为片段边界的字符（与段落切分一致） */
+    private static final String BOUNDARIES = "\n。！？；.!?;";
+
+    private final Tokenizer tokenizer;
+    private final int windowChars;
+
+    /**
+     * 片段在文本中的位置 [start, end)
+     */
+    public static final class Snippet {
+        private final int start;
+        private final int end;
+
+        Snippet(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+        public int length() { return end - start; }
+    }
+
+    public SnippetExtractor(Tokenizer tokenizer) {
+        this(tokenizer, DEFAULT_WINDOW_CHARS);
+    }
+
+    public SnippetExtractor(Tokenizer tokenizer, int windowChars) {
+        if (windowChars <= MATCH_TAIL) {
+            throw new IllegalArgumentException("片段窗口过小: " + windowChars);
+        }
+        this.tokenizer = tokenizer;
+        this.windowChars = windowChars;
+    }
+
+    /**
+     * 提取片段
+     * @param text 段落文本
+     * @param query 查询词项（已排序去重，见{@link Tokenizer#queryTerms}）
+     * @param budget 片段总字符数上限
+     * @return 片段位置，按起始位置递增且互不重叠；没有命中时返回文本开头的一段
+     */
+    public List<Snippet> extract(CharSequence text, TermBuffer query, int budget) {
+        int length = text.length();
+        List<Snippet> snippets = new ArrayList<>();
+        if (length == 0 || budget <= 0) {
+            return snippets;
+        }
+        if (length <= budget) {
+            snippets.add(new Snippet(0, length));
+            return snippets;
+        }
+        int window = Math.min(windowChars, budget);
+
+        Matches matches = collectMatches(text, query);
+        if (matches.size == 0) {
+            snippets.add(new Snippet(0, snapEnd(text, 0, window)));
+            return snippets;
+        }
+
+        // 以每个命中为窗口起点，滑动统计窗口内覆盖的查询词数和命中数
+        int count = matches.size;
+        int[] termCounts = new int[query.size()];
+        int[] candidateEnds = new int[count];
+        long[] candidateKeys = new long[count];
+        int span = window - MATCH_TAIL;
+        int distinct = 0;
+        int k = 0;
+        for (int i = 0; i < count; i++) {
+            while (k < count && matches.offsets[k] - matches.offsets[i] < span) {
+                if (termCounts[matches.terms[k]]++ == 0) {
+                    distinct++;
+                }
+                k++;
+            }
+            candidateEnds[i] = k;
+            // 覆盖的查询词数优先，其次命中数，再次位置靠前；按键降序排列
+            candidateKeys[i] = ((long) distinct << 48) | ((long) Math.min(k - i, 0xFFFF) << 32)
+                | (Integer.MAX_VALUE - i);
+            if (--termCounts[matches.terms[i]] == 0) {
+                distinct--;
+            }
+        }
+        Arrays.sort(candidateKeys);
+
+        // 依次接受得分最高且带来新内容的窗口，直到预算用完
+        for (int c = count - 1; c >= 0; c--) {
+            int i = Integer.MAX_VALUE - (int) (candidateKeys[c] & 0xFFFFFFFFL);
+            int spanStart = matches.offsets[i];
+            int lastMatch = matches.offsets[candidateEnds[i] - 1];
+            if (covers(snippets, spanStart, lastMatch + 1)) {
+                continue;
+            }
+            Snippet snippet = window(text, spanStart, lastMatch, window);
+            List<Snippet> merged = merge(snippets, snippet);
+            if (totalLength(merged) <= budget) {
+                snippets = merged;
+            }
+        }
+        return snippets;
+    }
+
+    /**
+     * 按片段拼接文本，片段之间和被省略的首尾处加省略号
+     * @param text 段落文本
+     * @param snippets 片段位置（{@link #extract}的结果）
+     * @return 拼接后的文本
+     */
+    public static String format(CharSequence text, List<Snippet> snippets) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < snippets.size(); i++) {
+            Snippet snippet = snippets.get(i);
+            if (i > 0 || snippet.start > 0) {
+                builder.append(ELLIPSIS);
+            }
+            builder.append(text, snippet.start, snippet.end);
+        }
+        if (!snippets.isEmpty() && snippets.get(snippets.size() - 1).end < text.length()) {
+            builder.append(ELLIPSIS);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 命中的查询词：起始位置和词项在查询中的序号，按位置递增
+     */
+    private static final class Matches implements Tokenizer.TermSink {
+        private final TermBuffer query;
+        private int[] offsets = new int[32];
+        private int[] terms = new int[32];
+        private int size;
+
+        Matches(TermBuffer query) {
+            this.query = query;
+        }
+
+        @Override
+        public void accept(long termHash) {
+            // 分词器总是输出位置
+        }
+
+        @Override
+        public void accept(long termHash, int offset) {
+            int term = indexOf(query, termHash);
+            if (term < 0) {
+                return;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                terms = Arrays.copyOf(terms, size * 2);
+            }
+            offsets[size] = offset;
+            terms[size] = term;
+            size++;
+        }
+    }
+
+    private Matches collectMatches(CharSequence text, TermBuffer query) {
+        Matches matches = new Matches(query);
+        if (!query.isEmpty()) {
+            tokenizer.tokenize(text, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * 在已排序的查询词项中二分查找
+     */
+    private static int indexOf(TermBuffer query, long termHash) {
+        int low = 0;
+        int high = query.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long term = query.get(mid);
+            if (term < termHash) {
+                low = mid + 1;
+            } else if (term > termHash) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 以命中范围为中心扩展为窗口，再收缩到命中所在句子的边界
+     * @param spanStart 第一个命中的起始位置
+     * @param lastMatch 最后一个命中的起始位置
+     */
+    private static Snippet window(CharSequence text, int spanStart, int lastMatch, int window) {
+        int length = text.length();
+        int spanEnd = Math.min(length, lastMatch + MATCH_TAIL);
+        int start = Math.max(0, spanStart - Math.max(0, window - (spanEnd - spanStart)) / 2);
+        int end = Math.min(length, start + window);
+        start = Math.max(0, end - window);
+        for (int i = spanStart - 1; i >= start; i--) {
+            if (BOUNDARIES.indexOf(text.charAt(i)) >= 0) {
+                start = i + 1;
+                break;
+            }
+        }
+        // 词项不含边界字符，从最后一个命中的起始位置向后找句末即可
+        return new Snippet(start, Math.max(lastMatch + 1, snapEnd(text, lastMatch, end)));
+    }
+
+    /**
+     * 在[from, to)内找到第一个句子边界并截止到边界之后，找不到时为to
+     */
+    private static int snapEnd(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (BOUNDARIES.indexOf(text.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    private static boolean covers(List<Snippet> snippets, int start, int end) {
+        for (Snippet snippet : snippets) {
+            if (snippet.start <= start && end <= snippet.end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加入新片段后按位置排序，合并重叠或间隔很小的片段
+     */
+    private static List<Snippet> merge(List<Snippet> snippets, Snippet added) {
+        List<Snippet> sorted = new ArrayList<>(snippets.size() + 1);
+        sorted.addAll(snippets);
+        sorted.add(added);
+        sorted.sort((a, b) -> Integer.compare(a.start, b.start));
+        List<Snippet> merged = new ArrayList<>(sorted.size());
+        Snippet current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            Snippet next = sorted.get(i);
+            if (next.start - current.end <= MERGE_GAP) {
+                current = new Snippet(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    private static int totalLength(List<Snippet> snippets) {
+        int total = 0;
+        for (Snippet snippet : snippets) {
+            total += snippet.length();
+        }
+        return total;
+    }
+
+    public int getWindowChars() {
+        return windowChars;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的词项哈希缓冲区，避免每次查询创建集合和装箱对象
+ * 同时记录每个词项在查询中的起始位置，供短语和邻近度打分使用
+ */
+public final class TermBuffer implements Tokenizer.TermSink {
+
+    /** 位置未知 */
+    public static final int NO_OFFSET = -1;
+
+    private long[] terms = new long[64];
+    private int[] offsets = new int[64];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public void accept(long term) {
+        add(term, NO_OFFSET);
+    }
+
+    @Override
+    public void accept(long term, int offset) {
+        add(term, offset);
+    }
+
+    public void add(long term) {
+        add(term, NO_OFFSET);
+    }
+
+    public void add(long term, int offset) {
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        terms[size] = term;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * 按词项排序并去重，重复的词项保留最小的位置
+     */
+    public void sortDistinct() {
+        if (size < 2) {
+            return;
+        }
+        sort(0, size - 1);
+        int distinct = 1;
+        for (int i = 1; i < size; i++) {
+            if (terms[i] != terms[distinct - 1]) {
+                terms[distinct] = terms[i];
+                offsets[distinct] = offsets[i];
+                distinct++;
+            }
+        }
+        size = distinct;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        return terms[index];
+    }
+
+    /** 词项的起始位置，未知时为{@link #NO_OFFSET} */
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * 按(词项, 位置)原地快速排序，两个数组同步交换，不分配对象
+     */
+    private void sort(int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            long pivotTerm = terms[mid];
+            int pivotOffset = offsets[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(terms[i], offsets[i], pivotTerm, pivotOffset) < 0) {
+                    i++;
+                }
+                while (compare(terms[j], offsets[j], pivotTerm, pivotOffset) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // 先递归较短的一侧，限制栈深度
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(terms[j - 1], offsets[j - 1], terms[j], offsets[j]) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(long term1, int offset1, long term2, int offset2) {
+        int result = Long.compare(term1, term2);
+        return result != 0 ? result : Integer.compare(offset1, offset2);
+    }
+
+    private void swap(int i, int j) {
+        long term = terms[i];
+        terms[i] = terms[j];
+        terms[j] = term;
+        int offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.springaichat.search;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的词频计数器（long词项哈希 -> int词频），入库分词时按页复用，按插入顺序遍历
+ * 同时记录每次出现的位置，用于建立位置索引
+ */
+public final class TermCounter implements Tokenizer.TermSink {
+
+    private long[] tableKeys;
+    /** 槽位 -> 稠密数组下标+1，0表示空槽 */
+    private int[] table;
+    private int mask;
+
+    private long[] terms = new long[256];
+    private int[] counts = new int[256];
+    private int[] slots = new int[256];
+    private int size;
+    private int total;
+
+    /** 每次出现对应的词项下标和位置，按出现顺序 */
+    private int[] occurrenceTerms = new int[1024];
+    private int[] occurrenceOffsets = new int[1024];
+    /** 所有出现都带有位置 */
+    private boolean positionsKnown = true;
+    /** 分组输出位置时的写入游标 */
+    private int[] cursors = new int[256];
+
+    public TermCounter() {
+        allocate(512);
+    }
+
+    @Override
+    public void accept(long term) {
+        positionsKnown = false;
+        accept(term, TermBuffer.NO_OFFSET);
+    }
+
+    @Override
+    public void accept(long term, int offset) {
+        if (total == occurrenceTerms.length) {
+            occurrenceTerms = Arrays.copyOf(occurrenceTerms, total * 2);
+            occurrenceOffsets = Arrays.copyOf(occurrenceOffsets, total * 2);
+        }
+        occurrenceOffsets[total] = offset;
+        total++;
+        int slot = slot(term);
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (tableKeys[slot] == term) {
+                counts[index]++;
+                occurrenceTerms[total - 1] = index;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        occurrenceTerms[total - 1] = size;
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        tableKeys[slot] = term;
+        table[slot] = size + 1;
+        terms[size] = term;
+        counts[size] = 1;
+        slots[size] = slot;
+        size++;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * 清空计数（只重置已使用的槽位）
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            table[slots[i]] = 0;
+        }
+        size = 0;
+        total = 0;
+        positionsKnown = true;
+    }
+
+    /** 是否所有出现都带有位置 */
+    public boolean hasPositions() {
+        return positionsKnown;
+    }
+
+    /**
+     * 按词项（插入顺序）分组输出所有位置：第i个词项的位置紧接在前i-1个词项的位置之后，组内升序
+     * @param out 长度至少为{@link #total()}
+     */
+    public void copyPositions(int[] out) {
+        if (cursors.length < size) {
+            cursors = new int[Math.max(size, cursors.length * 2)];
+        }
+        int start = 0;
+        for (int i = 0; i < size; i++) {
+            cursors[i] = start;
+            start += counts[i];
+        }
+        for (int k = 0; k < total; k++) {
+            out[cursors[occurrenceTerms[k]]++] = occurrenceOffsets[k];
+        }
+        // 分词器按位置非递减输出，组内通常已有序
+        start = 0;
+        for (int i = 0; i < size; i++) {
+            int end = start + counts[i];
+            for (int k = start + 1; k < end; k++) {
+                if (out[k] < out[k - 1]) {
+                    Arrays.sort(out, start, end);
+                    break;
+                }
+            }
+            start = end;
+        }
+    }
+
+    /** 不同词项数 */
+    public int size() {
+        return size;
+    }
+
+    /** 词项总数（即页面长度） */
+    public int total() {
+        return total;
+    }
+
+    public long term(int index) {
+        return terms[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        tableKeys = new long[capacity];
+        table = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        allocate(table.length * 2);
+        for (int i = 0; i < size; i++) {
+            int slot = slot(terms[i]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = terms[i];
+            table[slot] = i + 1;
+            slots[i] = slot;
+        }
+    }
+}
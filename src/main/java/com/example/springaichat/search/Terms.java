@@ -0,0 +1,77 @@
+package com.example.springaichat.search;
+
+/**
+ * 分词器共用的字符分类表和词项哈希（FNV-1a + 混淆），保证不同分词器对同一个词输出相同的哈希
+ */
+final class Terms {
+
+    /** 字符分类：分隔符 */
+    static final byte SEPARATOR = 0;
+    /** 字符分类：字母或数字 */
+    static final byte WORD = 1;
+    /** 字符分类：中文 */
+    static final byte CJK = 2;
+
+    /** 字符 -> 分类 */
+    private static final byte[] CHAR_CLASS = new byte[Character.MAX_VALUE + 1];
+    /** 字符 -> 小写折叠后的字符 */
+    private static final char[] FOLD = new char[Character.MAX_VALUE + 1];
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char ch = (char) c;
+            if (isCjk(ch)) {
+                CHAR_CLASS[c] = CJK;
+            } else if (Character.isLetterOrDigit(ch)) {
+                CHAR_CLASS[c] = WORD;
+            } else {
+                CHAR_CLASS[c] = SEPARATOR;
+            }
+            FOLD[c] = Character.toLowerCase(ch);
+        }
+    }
+
+    private Terms() {
+    }
+
+    static byte classOf(char c) {
+        return CHAR_CLASS[c];
+    }
+
+    static char fold(char c) {
+        return FOLD[c];
+    }
+
+    /**
+     * 是否为常用中文字符
+     */
+    static boolean isCjk(char c) {
+        return c >= '\u4e00' && c <= '\u9fa5';
+    }
+
+    /**
+     * 计算text[start, end)的词项哈希
+     */
+    static long hash(CharSequence text, int start, int end) {
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ FOLD[text.charAt(i)]) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 64位哈希混淆（MurmurHash3 fmix64），让低位分布均匀
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.springaichat.search;
+
+/**
+ * 分词后的页面（段落）：不同词项哈希及其词频和出现位置，可在锁外预先计算或从快照恢复
+ */
+public final class TokenizedPage {
+
+    private final long[] terms;
+    private final int[] counts;
+    /** 按词项分组的位置，第t个词项的位置从positionStarts[t]开始，共counts[t]个；没有位置信息时为null */
+    private final int[] positions;
+    private final int[] positionStarts;
+    private final int length;
+
+    public TokenizedPage(long[] terms, int[] counts, int length) {
+        this(terms, counts, null, length);
+    }
+
+    /**
+     * @param terms 词项哈希
+     * @param counts 词频
+     * @param positions 按词项分组、组内升序的位置，长度为词频之和；为null表示没有位置信息
+     * @param length 页面长度（词项总数）
+     */
+    public TokenizedPage(long[] terms, int[] counts, int[] positions, int length) {
+        if (terms.length != counts.length) {
+            throw new IllegalArgumentException("词项数量与词频数量不一致");
+        }
+        this.terms = terms;
+        this.counts = counts;
+        this.length = length;
+        if (positions == null) {
+            this.positions = null;
+            this.positionStarts = null;
+        } else {
+            int[] starts = new int[counts.length];
+            int start = 0;
+            for (int t = 0; t < counts.length; t++) {
+                starts[t] = start;
+                start += counts[t];
+            }
+            if (start != positions.length) {
+                throw new IllegalArgumentException("位置数量与词频之和不一致");
+            }
+            this.positions = positions;
+            this.positionStarts = starts;
+        }
+    }
+
+    /**
+     * 对文本分词
+     * @param text 文本
+     * @param tokenizer 分词器
+     * @param counter 可复用的词频计数器
+     * @return 分词结果
+     */
+    public static TokenizedPage of(String text, Tokenizer tokenizer, TermCounter counter) {
+        counter.clear();
+        tokenizer.tokenize(text, counter);
+        long[] terms = new long[counter.size()];
+        int[] counts = new int[counter.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = counter.term(i);
+            counts[i] = counter.count(i);
+        }
+        int[] positions = null;
+        if (counter.hasPositions()) {
+            positions = new int[counter.total()];
+            counter.copyPositions(positions);
+        }
+        return new TokenizedPage(terms, counts, positions, counter.total());
+    }
+
+    /** 不同词项数 */
+    public int termCount() {
+        return terms.length;
+    }
+
+    public long term(int index) {
+        return terms[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    /** 是否带有位置信息 */
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    /** 第index个词项的第一个位置在{@link #positions()}中的下标 */
+    public int positionStart(int index) {
+        return positionStarts[index];
+    }
+
+    /** 按词项分组的位置（只读），没有位置信息时为null */
+    public int[] positions() {
+        return positions;
+    }
+
+    /** 页面长度（词项总数） */
+    public int length() {
+        return length;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.springaichat.search;
+
+/**
+ * 知识库分词器扩展点
+ * 入库和查询必须使用同一个分词器；分词规则或词典变化时{@link #id()}随之变化，使持久化的词项哈希失效
+ */
+public interface Tokenizer {
+
+    /**
+     * 词项哈希接收者
+     */
+    @FunctionalInterface
+    interface TermSink {
+        void accept(long termHash);
+
+        /**
+         * 带位置的词项，分词器应优先调用此方法
+         * @param termHash 词项哈希
+         * @param offset 词项在文本中的起始字符位置
+         */
+        default void accept(long termHash, int offset) {
+            accept(termHash);
+        }
+    }
+
+    /**
+     * @return 分词器标识，写入快照文件头
+     */
+    String id();
+
+    /**
+     * 切分文本并按起始位置非递减的顺序逐个输出词项哈希及其位置
+     * @param text 文本
+     * @param sink 词项接收者
+     */
+    void tokenize(CharSequence text, TermSink sink);
+
+    /**
+     * 将查询切分为去重后的词项哈希（保留每个词项在查询中第一次出现的位置）
+     * @param query 用户问题
+     * @param buffer 输出缓冲区（会先被清空）
+     */
+    default void queryTerms(CharSequence query, TermBuffer buffer) {
+        buffer.clear();
+        tokenize(query, buffer);
+        buffer.sortDistinct();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.springaichat.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 定长最小堆Top-K选择器
+ * 使用原始类型数组存放候选ID和得分，O(n log k)，不为每个候选创建对象。
+ * 堆顶是当前K个结果中最差的一个：得分更低者更差，得分相同时ID更大者更差
+ */
+public final class TopKSelector {
+
+    private final int k;
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    public TopKSelector(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k不能为负数: " + k);
+        }
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new double[k];
+    }
+
+    /**
+     * 从候选数组的[from, to)区间选出Top-K，ID小于0的槽位视为空槽跳过
+     */
+    public static TopKSelector select(int[] candidateIds, double[] candidateScores, int from, int to, int k) {
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = from; i < to; i++) {
+            if (candidateIds[i] >= 0) {
+                selector.offer(candidateIds[i], candidateScores[i]);
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * 并行选择：候选区间切分为若干片，每片在线程池中计算局部Top-K，最后合并各片的堆
+     * @param candidateIds 候选ID（小于0为空槽）
+     * @param candidateScores 候选得分
+     * @param length 候选区间长度
+     * @param k 返回数量
+     * @param pool 执行并行任务的线程池
+     * @return 合并后的选择器
+     */
+    public static TopKSelector parallelSelect(int[] candidateIds, double[] candidateScores, int length, int k,
+                                              ForkJoinPool pool) {
+        int slices = Math.max(1, Math.min(pool.getParallelism(), length / Math.max(k, 1)));
+        if (slices == 1) {
+            return select(candidateIds, candidateScores, 0, length, k);
+        }
+        int sliceSize = (length + slices - 1) / slices;
+        List<ForkJoinTask<TopKSelector>> tasks = new ArrayList<>(slices);
+        for (int from = 0; from < length; from += sliceSize) {
+            int start = from;
+            int end = Math.min(length, from + sliceSize);
+            tasks.add(pool.submit(() -> select(candidateIds, candidateScores, start, end, k)));
+        }
+        TopKSelector merged = new TopKSelector(k);
+        for (ForkJoinTask<TopKSelector> task : tasks) {
+            merged.merge(task.join());
+        }
+        return merged;
+    }
+
+    /**
+     * 提交一个候选
+     */
+    public void offer(int id, double score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && isWorse(scores[0], ids[0], score, id)) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 合并另一个选择器中的结果
+     */
+    public void merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 按得分从高到低输出结果并清空选择器
+     * @param outIds 输出ID，长度不小于size()
+     * @param outScores 输出得分，长度不小于size()
+     * @return 输出的结果数量
+     */
+    public int drainDescending(int[] outIds, double[] outScores) {
+        int count = size;
+        // 反复弹出堆顶（最差者），从后向前填充
+        for (int i = count - 1; i >= 0; i--) {
+            outIds[i] = ids[0];
+            outScores[i] = scores[0];
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * (scoreA, idA) 是否比 (scoreB, idB) 更差
+     */
+    private static boolean isWorse(double scoreA, int idA, double scoreB, int idB) {
+        return scoreA < scoreB || (scoreA == scoreB && idA > idB);
+    }
+
+    private void siftUp(int index) {
+        int id = ids[index];
+        double score = scores[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(score, id, scores[parent], ids[parent])) {
+                break;
+            }
+            ids[index] = ids[parent];
+            scores[index] = scores[parent];
+            index = parent;
+        }
+        ids[index] = id;
+        scores[index] = score;
+    }
+
+    private void siftDown(int index) {
+        int id = ids[index];
+        double score = scores[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && isWorse(scores[right], ids[right], scores[child], ids[child])) {
+                child = right;
+            }
+            if (!isWorse(scores[child], ids[child], score, id)) {
+                break;
+            }
+            ids[index] = ids[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+        ids[index] = id;
+        scores[index] = score;
+    }
+}
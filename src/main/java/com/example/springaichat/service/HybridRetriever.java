@@ -0,0 +1,481 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.search.DeferredReclaimer;
+import com.example.springaichat.search.QueryResultCache;
+import com.example.springaichat.search.ReciprocalRankFusion;
+import com.example.springaichat.search.TermBuffer;
+import com.example.springaichat.service.PdfContentService.KnowledgeDocument;
+import com.example.springaichat.service.PdfContentService.PdfPageContent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 关键词 + 向量混合检索：倒排索引与向量库并行查询，按倒数排名融合，并缓存检索结果
+ * 同时负责把全局知识库中的文档段落同步到向量库。未配置向量库或未启用混合检索时只使用关键词检索
+ */
+@Slf4j
+final class HybridRetriever {
+
+    /**
+     * 按线程复用的查询词缓冲区，检索路径不为每个页面分配对象
+     */
+    private static final ThreadLocal<TermBuffer> QUERY_TERMS = ThreadLocal.withInitial(TermBuffer::new);
+
+    private final PdfProperties properties;
+
+    /**
+     * 向量库（见CommonConfiguration），入库时同时写入段落向量，检索时与倒排索引并行查询
+     */
+    private final VectorStore vectorStore;
+
+    private final KnowledgeBaseIndex index;
+
+    private final KnowledgeDocumentRegistry registry;
+
+    /**
+     * 向量检索线程池，首次混合检索时创建
+     */
+    private volatile ExecutorService vectorSearchExecutor;
+
+    /**
+     * 段落已写入向量库的文档
+     * Key: 文档ID, Value: 写入时的文档对象（删除向量时按其段落数生成向量ID）
+     */
+    private final Map<String, KnowledgeDocument> vectorizedDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * 向量库更新线程：文档入库和删除后提交同步任务，在解析锁和索引写锁之外生成向量；
+     * 单线程按提交顺序执行，同一文档的写入和删除不会交错
+     */
+    private final ExecutorService vectorStoreExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kb-vectorize");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 已提交但尚未完成的向量库同步任务数
+     */
+    private final AtomicInteger pendingVectorUpdates = new AtomicInteger();
+
+    /**
+     * 向量检索次数、超时次数和失败次数
+     */
+    private final AtomicLong vectorSearches = new AtomicLong();
+    private final AtomicLong vectorSearchTimeouts = new AtomicLong();
+    private final AtomicLong vectorSearchFailures = new AtomicLong();
+
+    /**
+     * 检索结果缓存，首次检索时按配置创建
+     */
+    private volatile QueryResultCache<List<PdfPageContent>> queryCache;
+
+    HybridRetriever(PdfProperties properties, VectorStore vectorStore, KnowledgeBaseIndex index,
+                    KnowledgeDocumentRegistry registry) {
+        this.properties = properties;
+        this.vectorStore = vectorStore;
+        this.index = index;
+        this.registry = registry;
+    }
+
+    /**
+     * 根据用户问题检索，知识库未变化时相同的问题直接返回缓存的结果
+     * @param userQuery 用户问题
+     * @param maxResults 最大返回结果数
+     * @return 相关内容列表（不可修改）
+     */
+    List<PdfPageContent> search(String userQuery, int maxResults) {
+        // 先查缓存：版本必须在检索前读取，检索期间知识库变化时写入的条目会因版本落后而失效
+        QueryResultCache<List<PdfPageContent>> cache = getQueryCache();
+        String normalizedQuery = null;
+        long version = index.version();
+        if (cache != null) {
+            normalizedQuery = QueryResultCache.normalize(userQuery);
+            List<PdfPageContent> cached = cache.get(normalizedQuery, maxResults, version);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Retrieval retrieval = searchUncached(userQuery, maxResults);
+        List<PdfPageContent> results = Collections.unmodifiableList(retrieval.results);
+        // 向量检索超时或失败时的降级结果不缓存，下次相同的问题重新检索
+        if (cache != null && retrieval.complete) {
+            cache.put(normalizedQuery, maxResults, version, results);
+        }
+        return results;
+    }
+
+    /**
+     * 一次检索的结果
+     */
+    private static final class Retrieval {
+        final List<PdfPageContent> results;
+        /** 是否所有检索路都已返回 */
+        final boolean complete;
+
+        Retrieval(List<PdfPageContent> results, boolean complete) {
+            this.results = results;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * 不经过缓存直接检索
+     * @param userQuery 用户问题
+     * @param maxResults 最大返回结果数
+     * @return 检索结果
+     */
+    private Retrieval searchUncached(String userQuery, int maxResults) {
+        // 提取查询词项（与入库时使用同一套分词规则）
+        TermBuffer queryTerms = QUERY_TERMS.get();
+        index.getTokenizer().queryTerms(userQuery, queryTerms);
+
+        VectorStore store = isEnabled() ? vectorStore : null;
+        if (store != null && !vectorizedDocuments.isEmpty()) {
+            return hybridSearch(store, userQuery, queryTerms, maxResults);
+        }
+        if (queryTerms.isEmpty()) {
+            return new Retrieval(index.leadingPassages(maxResults), true);
+        }
+        return new Retrieval(index.search(queryTerms, maxResults), true);
+    }
+
+    /**
+     * 关键词 + 向量混合检索
+     * 向量检索（需调用嵌入模型）提交到向量检索线程池，同时在当前线程上执行倒排索引检索，
+     * 两路共用一个从检索开始计时的期限，各取若干候选后按倒数排名融合。
+     * 向量检索超时、失败或线程池排满时只使用关键词检索结果
+     * @param store 向量库
+     * @param userQuery 用户问题
+     * @param queryTerms 查询词项
+     * @param maxResults 最大返回结果数
+     * @return 检索结果
+     */
+    private Retrieval hybridSearch(VectorStore store, String userQuery, TermBuffer queryTerms, int maxResults) {
+        PdfProperties.Hybrid hybrid = properties.getSearch().getHybrid();
+        long timeoutMillis = hybrid.getTimeoutMs();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int candidates = Math.max(maxResults, hybrid.getCandidates());
+        CompletableFuture<List<PdfPageContent>> vectorFuture;
+        try {
+            vectorFuture = CompletableFuture.supplyAsync(
+                () -> searchVectorStore(store, userQuery, candidates), getVectorSearchExecutor());
+        } catch (RejectedExecutionException e) {
+            vectorFuture = CompletableFuture.failedFuture(e);
+        }
+
+        List<PdfPageContent> keywordResults = queryTerms.isEmpty()
+            ? Collections.emptyList()
+            : index.search(queryTerms, candidates);
+        List<PdfPageContent> vectorResults = awaitVectorResults(vectorFuture, deadline, timeoutMillis);
+        if (vectorResults == null) {
+            List<PdfPageContent> fallback = queryTerms.isEmpty() ? index.leadingPassages(maxResults) : keywordResults;
+            return new Retrieval(fallback.subList(0, Math.min(maxResults, fallback.size())), false);
+        }
+        return new Retrieval(new ReciprocalRankFusion(hybrid.getRrfK()).fuse(List.of(keywordResults, vectorResults),
+            maxResults), true);
+    }
+
+    /**
+     * 等待向量检索结果，最多等到期限
+     * @return 检索结果，超时或失败时返回null
+     */
+    private List<PdfPageContent> awaitVectorResults(CompletableFuture<List<PdfPageContent>> future, long deadline,
+                                                    long timeoutMillis) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            vectorSearchTimeouts.incrementAndGet();
+            log.warn("向量检索超过 {} ms，本次只使用关键词检索结果", timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            vectorSearchFailures.incrementAndGet();
+            log.warn("向量检索失败，本次只使用关键词检索结果", e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * 向量相似度检索，只保留仍在全局知识库中的段落
+     * @param store 向量库
+     * @param userQuery 用户问题
+     * @param candidates 候选数
+     * @return 按相似度降序的段落
+     */
+    private List<PdfPageContent> searchVectorStore(VectorStore store, String userQuery, int candidates) {
+        vectorSearches.incrementAndGet();
+        List<Document> hits = store.similaritySearch(SearchRequest.builder()
+            .query(userQuery)
+            .topK(candidates)
+            .build());
+        List<PdfPageContent> results = new ArrayList<>(hits.size());
+        for (Document hit : hits) {
+            PdfPageContent passage = resolveVectorHit(hit);
+            if (passage != null) {
+                results.add(passage);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按向量元数据中的文档ID和段落序号找回段落，文档已移除或不是由本服务写入的向量返回null
+     */
+    private PdfPageContent resolveVectorHit(Document hit) {
+        Object documentId = hit.getMetadata().get("content_hash");
+        Object passageIndex = hit.getMetadata().get("passage_index");
+        if (documentId == null || !(passageIndex instanceof Number)) {
+            return null;
+        }
+        KnowledgeDocument document = index.getDocument(documentId.toString());
+        int passage = ((Number) passageIndex).intValue();
+        if (document == null || passage < 0 || passage >= document.getPassages().size()) {
+            return null;
+        }
+        return document.getPassages().get(passage);
+    }
+
+    /**
+     * 提交向量库同步任务，未配置向量库或未启用混合检索时不做任何处理
+     * @param documentId 文档ID
+     */
+    void scheduleVectorStoreSync(String documentId) {
+        if (!isEnabled()) {
+            return;
+        }
+        pendingVectorUpdates.incrementAndGet();
+        try {
+            vectorStoreExecutor.execute(() -> {
+                try {
+                    syncVectorStore(documentId);
+                } finally {
+                    pendingVectorUpdates.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingVectorUpdates.decrementAndGet();
+            log.warn("服务已关闭，跳过向量库更新: {}", documentId);
+        }
+    }
+
+    /**
+     * 使向量库与全局知识库中该文档的当前状态一致：文档在知识库中而向量未写入时写入，
+     * 文档已移除而向量仍在时删除。任务串行执行且只看执行时的状态，
+     * 入库和删除无论以何种顺序交错，最后一个任务执行后都不会留下孤立的向量
+     * @param documentId 文档ID
+     */
+    private void syncVectorStore(String documentId) {
+        // 文档可能在读取段落文本期间被并发删除，持有租约直到写入完成
+        try (DeferredReclaimer.Lease lease = registry.beginRead()) {
+            KnowledgeDocument document = index.getDocument(documentId);
+            KnowledgeDocument vectorized = vectorizedDocuments.get(documentId);
+            if (document != null && vectorized == null) {
+                addToVectorStore(document);
+            } else if (document == null && vectorized != null) {
+                removeFromVectorStore(vectorized);
+            }
+        }
+    }
+
+    /**
+     * 把文档段落写入向量库
+     * 向量ID由文档ID和段落序号生成，元数据记录二者，检索结果据此找回共享的段落对象
+     * @param document 文档
+     */
+    private void addToVectorStore(KnowledgeDocument document) {
+        String documentId = document.getDocumentId();
+        List<PdfPageContent> passages = document.getPassages();
+        List<Document> vectorDocuments = new ArrayList<>(passages.size());
+        for (int i = 0; i < passages.size(); i++) {
+            PdfPageContent passage = passages.get(i);
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("file_name", document.getFileName());
+            metadata.put("content_hash", documentId);
+            metadata.put("page_number", passage.getPageNumber());
+            metadata.put("passage_index", i);
+            vectorDocuments.add(new Document(vectorId(documentId, i), passage.getContent(), metadata));
+        }
+        try {
+            vectorStore.add(vectorDocuments);
+        } catch (RuntimeException e) {
+            log.warn("段落写入向量库失败，该文档暂时只能通过关键词检索: {}", document.getFileName(), e);
+            return;
+        }
+        vectorizedDocuments.put(documentId, document);
+        // 向量写入后同一问题改走混合检索，之前缓存的只有关键词结果的条目失效
+        index.invalidate();
+        log.info("段落已写入向量库: {}，段落数: {}", document.getFileName(), passages.size());
+    }
+
+    /**
+     * 从向量库删除文档的段落向量
+     * @param document 写入向量时的文档
+     */
+    private void removeFromVectorStore(KnowledgeDocument document) {
+        String documentId = document.getDocumentId();
+        vectorizedDocuments.remove(documentId);
+        index.invalidate();
+        List<String> ids = new ArrayList<>(document.getPassages().size());
+        for (int i = 0; i < document.getPassages().size(); i++) {
+            ids.add(vectorId(documentId, i));
+        }
+        try {
+            vectorStore.delete(ids);
+        } catch (RuntimeException e) {
+            // 残留的向量检索时因找不到文档而被忽略
+            log.warn("从向量库删除段落失败: {}", document.getFileName(), e);
+        }
+    }
+
+    /**
+     * 等待已提交的向量库同步任务全部完成
+     */
+    void awaitVectorStoreUpdates() {
+        try {
+            vectorStoreExecutor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            log.warn("等待向量库更新失败", e);
+        }
+    }
+
+    /**
+     * 段落的向量ID（按文档ID和段落序号生成的UUID，重复写入同一段落时ID不变）
+     */
+    private static String vectorId(String documentId, int passageIndex) {
+        return UUID.nameUUIDFromBytes((documentId + "#" + passageIndex).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 是否配置了向量库并启用了混合检索
+     */
+    private boolean isEnabled() {
+        return vectorStore != null && properties.getSearch().getHybrid().isEnabled();
+    }
+
+    /**
+     * 获取向量检索线程池（按配置延迟创建）
+     */
+    private ExecutorService getVectorSearchExecutor() {
+        ExecutorService executor = vectorSearchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = vectorSearchExecutor;
+                if (executor == null) {
+                    PdfProperties.Hybrid hybrid = properties.getSearch().getHybrid();
+                    int threads = hybrid.getThreads();
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(threads * 16), runnable -> {
+                            Thread thread = new Thread(runnable, "kb-vector-search-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    vectorSearchExecutor = executor;
+                    log.info("混合检索已启用，向量检索线程数: {}，超时: {} ms，每路候选数: {}",
+                        threads, hybrid.getTimeoutMs(), hybrid.getCandidates());
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 获取检索结果缓存（按配置延迟创建），未启用时返回null
+     */
+    private QueryResultCache<List<PdfPageContent>> getQueryCache() {
+        int maxEntries = properties.getSearch().getCache().getMaxEntries();
+        if (maxEntries <= 0) {
+            return null;
+        }
+        QueryResultCache<List<PdfPageContent>> cache = queryCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = queryCache;
+                if (cache == null) {
+                    cache = new QueryResultCache<>(maxEntries);
+                    queryCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 获取混合检索统计
+     * @return 是否启用、向量库类型、已写入向量的文档数及向量检索的次数、超时和失败次数
+     */
+    Map<String, Object> getHybridSearchStats() {
+        PdfProperties.Hybrid hybrid = properties.getSearch().getHybrid();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", isEnabled());
+        report.put("vectorStore", vectorStore == null ? null : vectorStore.getName());
+        report.put("vectorizedDocuments", vectorizedDocuments.size());
+        report.put("pendingUpdates", pendingVectorUpdates.get());
+        report.put("vectorSearches", vectorSearches.get());
+        report.put("timeouts", vectorSearchTimeouts.get());
+        report.put("failures", vectorSearchFailures.get());
+        report.put("timeoutMillis", hybrid.getTimeoutMs());
+        report.put("rrfK", hybrid.getRrfK());
+        return report;
+    }
+
+    /**
+     * 获取检索结果缓存统计
+     * @return 缓存统计，尚未创建缓存时返回null
+     */
+    Map<String, Object> getQueryCacheStats() {
+        QueryResultCache<List<PdfPageContent>> cache = queryCache;
+        if (cache == null) {
+            return null;
+        }
+        Map<String, Object> cacheStats = new LinkedHashMap<>();
+        cacheStats.put("size", cache.size());
+        cacheStats.put("maxEntries", cache.getMaxEntries());
+        cacheStats.put("hits", cache.getHits());
+        cacheStats.put("misses", cache.getMisses());
+        cacheStats.put("staleMisses", cache.getStaleMisses());
+        cacheStats.put("evictions", cache.getEvictions());
+        cacheStats.put("hitRate", cache.getHitRate());
+        return cacheStats;
+    }
+
+    /**
+     * 关闭向量检索线程池和向量库更新线程
+     */
+    void shutdown() {
+        ExecutorService executor = vectorSearchExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        vectorStoreExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,416 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.search.Bm25Scorer;
+import com.example.springaichat.search.DictionarySegmenter;
+import com.example.springaichat.search.IndexSnapshot;
+import com.example.springaichat.search.InvertedIndex;
+import com.example.springaichat.search.NgramTokenizer;
+import com.example.springaichat.search.ProximityScorer;
+import com.example.springaichat.search.ShardedSearcher;
+import com.example.springaichat.search.TermBuffer;
+import com.example.springaichat.search.TokenizedPage;
+import com.example.springaichat.search.Tokenizer;
+import com.example.springaichat.search.TopKSelector;
+import com.example.springaichat.service.PdfContentService.KnowledgeDocument;
+import com.example.springaichat.service.PdfContentService.PdfPageContent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 全局知识库索引：已入库的文档、倒排索引和页面登记表，以及基于它们的BM25关键词检索
+ * 文档入库和移除串行执行，检索读取倒排索引快照，不加锁
+ */
+@Slf4j
+final class KnowledgeBaseIndex {
+
+    /**
+     * 相对得分阈值：低于最高分该比例的页面不再返回，减少送入模型的无关页面
+     */
+    private static final double MIN_RELATIVE_SCORE = 0.3;
+
+    /**
+     * 全局知识库：已建立索引的文档，相同内容的PDF只保存一份
+     * Key: 文档ID, Value: 共享的文档对象
+     */
+    private final Map<String, KnowledgeDocument> globalKnowledgeBase = new ConcurrentHashMap<>();
+
+    /**
+     * 索引段后台合并线程
+     */
+    private final ExecutorService indexMergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kb-index-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 全局知识库的倒排索引，文档入库时追加不可变段并原子发布新快照，检索不加锁
+     */
+    private final InvertedIndex invertedIndex = new InvertedIndex(indexMergeExecutor);
+
+    /**
+     * 已索引页面登记表
+     * Key: 页面ID, Value: 页面内容
+     */
+    private final Map<Integer, PdfPageContent> indexedPages = new ConcurrentHashMap<>();
+
+    /**
+     * 文档对应的页面ID
+     * Key: 文档ID, Value: 页面ID数组
+     */
+    private final Map<String, int[]> documentPageIds = new ConcurrentHashMap<>();
+
+    /**
+     * 页面ID生成器，保证倒排列表按页面ID递增
+     */
+    private final AtomicInteger pageIdGenerator = new AtomicInteger();
+
+    /**
+     * BM25打分器
+     */
+    private final Bm25Scorer bm25Scorer = new Bm25Scorer();
+
+    /**
+     * 知识库版本，文档加入、移除或重新初始化时递增，使检索结果缓存失效
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 写入索引时的互斥锁：保证页面ID按写入顺序递增，倒排列表保持有序
+     */
+    private final Object writeLock = new Object();
+
+    private final PdfProperties properties;
+
+    /**
+     * 全局知识库持有的文档引用登记在此
+     */
+    private final KnowledgeDocumentRegistry registry;
+
+    /**
+     * 分片并行检索器，首次检索时按配置创建
+     */
+    private volatile ShardedSearcher shardedSearcher;
+
+    /**
+     * 短语与邻近度打分器，首次检索时按配置创建
+     */
+    private volatile ProximityScorer proximityScorer;
+
+    /**
+     * 分词器，入库和查询共用，首次使用时按配置创建
+     */
+    private volatile Tokenizer tokenizer;
+
+    KnowledgeBaseIndex(PdfProperties properties, KnowledgeDocumentRegistry registry) {
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    /**
+     * 将已分词的文档写入倒排索引，同一文档ID的旧页面先移除
+     * @param document 文档
+     * @param tokenizedPages 段落分词结果，与文档段落一一对应
+     */
+    void add(KnowledgeDocument document, TokenizedPage[] tokenizedPages) {
+        String documentId = document.getDocumentId();
+        List<PdfPageContent> pageContents = document.getPassages();
+        // 并行加载时多个文档会同时写入，分配页面ID和写索引必须串行，保证倒排列表按页面ID递增
+        synchronized (writeLock) {
+            // 同一文档先移除旧的页面登记
+            unregisterPages(documentId);
+
+            // 页面ID按文档连续分配
+            int firstPageId = pageIdGenerator.getAndAdd(pageContents.size());
+            int[] pageIds = new int[pageContents.size()];
+            for (int i = 0; i < pageContents.size(); i++) {
+                pageIds[i] = firstPageId + i;
+                indexedPages.put(pageIds[i], pageContents.get(i));
+            }
+            documentPageIds.put(documentId, pageIds);
+
+            invertedIndex.addDocument(documentId, pageIds, tokenizedPages);
+            version.incrementAndGet();
+            // 全局知识库持有一个引用
+            KnowledgeDocument previous = globalKnowledgeBase.put(documentId, document);
+            if (previous != document) {
+                registry.retain(document);
+                if (previous != null) {
+                    // 被替换的旧文档按对象释放，此时登记表中的ID已指向新文档
+                    registry.release(previous);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从倒排索引移除文档并释放全局知识库持有的引用
+     * @param documentId 文档ID
+     * @return 被移除的文档，不在知识库中时返回null
+     */
+    KnowledgeDocument remove(String documentId) {
+        synchronized (writeLock) {
+            KnowledgeDocument removed = globalKnowledgeBase.remove(documentId);
+            if (removed != null) {
+                invertedIndex.removeDocument(documentId);
+                unregisterPages(documentId);
+                registry.release(removed);
+                version.incrementAndGet();
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * 移除文档的页面登记
+     * @param documentId 文档ID
+     */
+    private void unregisterPages(String documentId) {
+        int[] pageIds = documentPageIds.remove(documentId);
+        if (pageIds != null) {
+            for (int pageId : pageIds) {
+                indexedPages.remove(pageId);
+            }
+        }
+    }
+
+    /**
+     * 把所有索引段合并为一个（批量加载完成后调用）
+     */
+    void compact() {
+        invertedIndex.compact();
+    }
+
+    KnowledgeDocument getDocument(String documentId) {
+        return globalKnowledgeBase.get(documentId);
+    }
+
+    boolean containsDocument(String documentId) {
+        return globalKnowledgeBase.containsKey(documentId);
+    }
+
+    /**
+     * 全局知识库中的所有文档（只读视图）
+     */
+    Collection<KnowledgeDocument> getDocuments() {
+        return Collections.unmodifiableCollection(globalKnowledgeBase.values());
+    }
+
+    int documentCount() {
+        return globalKnowledgeBase.size();
+    }
+
+    boolean isEmpty() {
+        return globalKnowledgeBase.isEmpty();
+    }
+
+    /**
+     * 当前知识库版本
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * 递增知识库版本，使之前的检索结果缓存失效
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * 通过倒排索引检索，只对包含查询词的页面按BM25计算得分，再用定长最小堆选出Top-K
+     * 工作量较大的查询按页面ID区间分片，在专用线程池中并行计算后合并；
+     * 多词查询先按BM25多取若干候选，再按查询词在页面中的位置做短语和邻近度加权后重新排序
+     * @param queryTerms 查询词项
+     * @param maxResults 最大返回结果数
+     * @return 相关内容列表
+     */
+    List<PdfPageContent> search(TermBuffer queryTerms, int maxResults) {
+        PdfProperties.Proximity proximity = properties.getSearch().getProximity();
+        IndexSnapshot snapshot = invertedIndex.snapshot();
+        boolean rerank = proximity.isEnabled() && queryTerms.size() > 1;
+        int candidates = rerank ? maxResults * Math.max(1, proximity.getCandidates()) : maxResults;
+        TopKSelector selector = getShardedSearcher().search(snapshot, queryTerms, candidates, pageIdGenerator.get());
+        int[] pageIds = new int[selector.size()];
+        double[] scores = new double[selector.size()];
+        int count = selector.drainDescending(pageIds, scores);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        if (rerank) {
+            count = getProximityScorer().rerank(snapshot, queryTerms, pageIds, scores, count, maxResults);
+        }
+
+        // 丢弃明显弱于最佳结果的页面
+        double cutoff = scores[0] * MIN_RELATIVE_SCORE;
+        List<PdfPageContent> results = new ArrayList<>(count);
+        for (int i = 0; i < count && scores[i] >= cutoff; i++) {
+            PdfPageContent content = indexedPages.get(pageIds[i]);
+            // 页面可能已被并发移除
+            if (content != null) {
+                results.add(content);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 没有关键词时返回各文档的前几页内容
+     */
+    List<PdfPageContent> leadingPassages(int maxResults) {
+        return globalKnowledgeBase.values().stream()
+            .flatMap(document -> document.getPassages().stream().limit(2))
+            .limit(maxResults)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 对段落分词
+     * @param pageContents 段落
+     * @return 分词结果
+     */
+    TokenizedPage[] tokenize(List<PdfPageContent> pageContents) {
+        return InvertedIndex.tokenize(
+            pageContents.stream().map(PdfPageContent::getContent).collect(Collectors.toList()), getTokenizer());
+    }
+
+    /**
+     * 获取分词器（按配置延迟创建），词典加载失败时退回n-gram分词
+     */
+    Tokenizer getTokenizer() {
+        Tokenizer current = tokenizer;
+        if (current == null) {
+            synchronized (this) {
+                current = tokenizer;
+                if (current == null) {
+                    current = createTokenizer();
+                    tokenizer = current;
+                    log.info("知识库分词器: {}", current.id());
+                }
+            }
+        }
+        return current;
+    }
+
+    private Tokenizer createTokenizer() {
+        PdfProperties.Tokenizer settings = properties.getTokenizer();
+        if ("ngram".equalsIgnoreCase(settings.getType())) {
+            return NgramTokenizer.INSTANCE;
+        }
+        String dictionary = settings.getDictionary();
+        try {
+            DictionarySegmenter segmenter = dictionary == null || dictionary.isBlank()
+                ? DictionarySegmenter.loadDefault()
+                : DictionarySegmenter.load(Paths.get(dictionary));
+            log.info("词典加载完成，共 {} 个词", segmenter.dictionarySize());
+            return segmenter;
+        } catch (IOException | RuntimeException e) {
+            log.error("加载分词词典失败，使用n-gram分词: {}", dictionary, e);
+            return NgramTokenizer.INSTANCE;
+        }
+    }
+
+    /**
+     * 获取短语与邻近度打分器（按配置延迟创建）
+     */
+    private ProximityScorer getProximityScorer() {
+        ProximityScorer scorer = proximityScorer;
+        if (scorer == null) {
+            synchronized (this) {
+                scorer = proximityScorer;
+                if (scorer == null) {
+                    PdfProperties.Proximity proximity = properties.getSearch().getProximity();
+                    scorer = new ProximityScorer(proximity.getWeight(), proximity.getPhraseBoost(),
+                        ProximityScorer.DEFAULT_PHRASE_SLACK);
+                    proximityScorer = scorer;
+                }
+            }
+        }
+        return scorer;
+    }
+
+    /**
+     * 获取分片检索器（按配置延迟创建）
+     */
+    private ShardedSearcher getShardedSearcher() {
+        ShardedSearcher searcher = shardedSearcher;
+        if (searcher == null) {
+            synchronized (this) {
+                searcher = shardedSearcher;
+                if (searcher == null) {
+                    PdfProperties.Search search = properties.getSearch();
+                    searcher = new ShardedSearcher(invertedIndex, bm25Scorer, search.getParallelism(),
+                        search.getMaxShardsPerQuery(), search.getSequentialThreshold());
+                    shardedSearcher = searcher;
+                    log.info("分片检索已启用，并行度: {}, 单查询最大分片数: {}, 顺序检索阈值: {}",
+                        search.getParallelism(), search.getMaxShardsPerQuery(), search.getSequentialThreshold());
+                }
+            }
+        }
+        return searcher;
+    }
+
+    /**
+     * 获取索引统计：词项数、倒排项数和平均页面长度
+     */
+    Map<String, Object> getIndexStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexedTerms", invertedIndex.termCount());
+        stats.put("indexedPostings", invertedIndex.postingCount());
+        stats.put("averagePageLength", invertedIndex.averagePageLength());
+        return stats;
+    }
+
+    /**
+     * 获取倒排索引内存占用报告
+     * @return 各部分占用的字节数及每页平均占用
+     */
+    Map<String, Object> getMemoryFootprint() {
+        InvertedIndex.MemoryFootprint footprint = invertedIndex.memoryFootprint();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("pages", footprint.getPageCount());
+        report.put("terms", footprint.getTermCount());
+        report.put("postings", footprint.getPostingCount());
+        report.put("encodedPostingBytes", footprint.getEncodedPostingBytes());
+        report.put("uncompressedPostingBytes", footprint.getUncompressedPostingBytes());
+        report.put("skipPointerBytes", footprint.getSkipPointerBytes());
+        report.put("positionBytes", footprint.getPositionBytes());
+        report.put("postingListBytes", footprint.getPostingListBytes());
+        report.put("dictionaryBytes", footprint.getDictionaryBytes());
+        report.put("documentBytes", footprint.getDocumentBytes());
+        report.put("statisticsBytes", footprint.getStatisticsBytes());
+        report.put("segments", footprint.getSegmentCount());
+        report.put("deletedPages", footprint.getDeletedPageCount());
+        report.put("totalBytes", footprint.getTotalBytes());
+        report.put("bytesPerPage", footprint.getBytesPerPage());
+        report.put("bytesPerPosting", footprint.getBytesPerPosting());
+        return report;
+    }
+
+    /**
+     * 关闭检索线程池和索引合并线程
+     */
+    void shutdown() {
+        ShardedSearcher searcher = shardedSearcher;
+        if (searcher != null) {
+            searcher.close();
+        }
+        indexMergeExecutor.shutdownNow();
+    }
+}
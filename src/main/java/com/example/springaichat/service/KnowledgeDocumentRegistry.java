@@ -0,0 +1,208 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.search.CompressedTextStore;
+import com.example.springaichat.search.DeferredReclaimer;
+import com.example.springaichat.service.PdfContentService.KnowledgeDocument;
+import com.example.springaichat.service.PdfContentService.PdfPageContent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文档登记表：按引用计数管理所有会话和全局知识库共享的文档，并负责段落文本的存储与延迟回收
+ * 全局知识库和每个引用文档的聊天会话各持有一个引用，引用计数归零的文档等到进行中的读者结束后归还堆外文本
+ */
+@Slf4j
+final class KnowledgeDocumentRegistry {
+
+    /**
+     * 每个聊天会话引用的文档，内容由所有会话共享
+     * Key: chatId, Value: 会话持有引用的文档对象（释放时按对象释放，不按ID重新查找）
+     */
+    private final Map<String, KnowledgeDocument> chatDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * 所有仍被引用的文档（全局知识库或聊天会话），引用计数归零时移除
+     * Key: 文档ID（内容SHA-256）, Value: 共享的文档对象
+     */
+    private final Map<String, KnowledgeDocument> documents = new ConcurrentHashMap<>();
+
+    /**
+     * 引用计数归零的文档等到之前开始的检索和片段提取结束后才归还堆外文本，
+     * 检索结果中的段落在读者关闭租约前始终可读
+     */
+    private final DeferredReclaimer textReclaimer = new DeferredReclaimer();
+
+    /**
+     * 段落文本存储配置，存储方式在每次创建段落时读取
+     */
+    private final PdfProperties.PageText pageText;
+
+    /**
+     * 堆外文本存储，off-heap模式下首次入库时创建
+     */
+    private volatile CompressedTextStore pageTextStore;
+
+    KnowledgeDocumentRegistry(PdfProperties.PageText pageText) {
+        this.pageText = pageText;
+    }
+
+    /**
+     * 会话引用文档，替换该会话之前引用的文档
+     * @param chatId 聊天会话ID
+     * @param document 文档
+     */
+    void bindChat(String chatId, KnowledgeDocument document) {
+        retain(document);
+        KnowledgeDocument previous = chatDocuments.put(chatId, document);
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    /**
+     * 解除会话对文档的引用
+     * @param chatId 聊天会话ID
+     */
+    void unbindChat(String chatId) {
+        KnowledgeDocument document = chatDocuments.remove(chatId);
+        if (document != null) {
+            release(document);
+        }
+    }
+
+    /**
+     * 获取会话引用的文档
+     * @param chatId 聊天会话ID
+     * @return 文档，不存在时返回null
+     */
+    KnowledgeDocument getChatDocument(String chatId) {
+        return chatDocuments.get(chatId);
+    }
+
+    /**
+     * 增加文档引用，并保证文档在登记表中
+     * @param document 文档
+     */
+    void retain(KnowledgeDocument document) {
+        documents.compute(document.getDocumentId(), (id, current) -> {
+            document.retainReference();
+            return document;
+        });
+    }
+
+    /**
+     * 按ID查找仍被引用的文档并增加引用
+     * 查找和增加引用是原子的：引用计数已归零（文本已提交归还）的文档不会被重新引用
+     * @param documentId 文档ID
+     * @return 文档，不存在时返回null；非null时调用方负责{@link #release(KnowledgeDocument)}
+     */
+    KnowledgeDocument acquire(String documentId) {
+        return documents.computeIfPresent(documentId, (id, document) -> {
+            document.retainReference();
+            return document;
+        });
+    }
+
+    /**
+     * 释放文档引用，引用计数归零时从登记表移除，并在进行中的读者结束后归还堆外文本
+     * 必须按持有引用的文档对象释放：同一ID可能已被新解析的文档替换，按ID查找会错减新文档的引用
+     * @param document 持有引用的文档
+     */
+    void release(KnowledgeDocument document) {
+        boolean[] unreferenced = new boolean[1];
+        documents.compute(document.getDocumentId(), (id, current) -> {
+            if (document.releaseReference() > 0) {
+                return current;
+            }
+            unreferenced[0] = true;
+            // 登记表中的ID已指向替换后的文档时保留新文档
+            return current == document ? null : current;
+        });
+        if (unreferenced[0]) {
+            // 不再被任何会话和全局知识库引用，检索线程可能仍持有其段落，等读者结束后归还堆外文本
+            textReclaimer.retire(() -> document.getPassages().forEach(PdfPageContent::releaseText));
+        }
+    }
+
+    /**
+     * 开始读取：租约关闭前，之后找到的段落即使所属文档被删除或替换，文本也保持可读
+     * @return 读取租约
+     */
+    DeferredReclaimer.Lease beginRead() {
+        return textReclaimer.enter();
+    }
+
+    /**
+     * 按配置的文本存储方式创建段落
+     */
+    PdfPageContent newPassage(String text, int pageNumber, int startOffset, int endOffset,
+                              Map<String, Object> metadata) {
+        CompressedTextStore store = getPageTextStore();
+        return store == null
+            ? new PdfPageContent(text, pageNumber, startOffset, endOffset, metadata)
+            : new PdfPageContent(store, text, pageNumber, startOffset, endOffset, metadata);
+    }
+
+    /**
+     * 获取堆外文本存储
+     * @return 堆外文本存储，heap模式下返回null
+     */
+    CompressedTextStore getPageTextStore() {
+        if (!pageText.isOffHeap()) {
+            return null;
+        }
+        CompressedTextStore store = pageTextStore;
+        if (store == null) {
+            synchronized (this) {
+                store = pageTextStore;
+                if (store == null) {
+                    store = new CompressedTextStore(pageText.getChunkSize(), pageText.getCompressionLevel());
+                    pageTextStore = store;
+                    log.info("段落文本使用堆外压缩存储，分块大小: {}，压缩级别: {}",
+                        pageText.getChunkSize(), pageText.getCompressionLevel());
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * 仍被引用的文档数
+     */
+    int documentCount() {
+        return documents.size();
+    }
+
+    /**
+     * 引用文档的聊天会话数
+     */
+    int chatSessionCount() {
+        return chatDocuments.size();
+    }
+
+    /**
+     * 获取段落文本存储统计
+     * @return 存储方式，off-heap模式下包含原始、压缩后和已分配的堆外字节数
+     */
+    Map<String, Object> getPageTextStats() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        CompressedTextStore store = getPageTextStore();
+        report.put("store", store == null ? "heap" : "off-heap");
+        if (store != null) {
+            report.put("passages", store.size());
+            report.put("rawBytes", store.rawBytes());
+            report.put("compressedBytes", store.storedBytes());
+            report.put("allocatedBytes", store.allocatedBytes());
+            report.put("compressionRatio", store.compressionRatio());
+            report.put("compressionLevel", store.getCompressionLevel());
+            report.put("compactions", store.compactions());
+            report.put("pendingReleases", textReclaimer.pendingCount());
+            report.put("activeReaders", textReclaimer.activeReaders());
+        }
+        return report;
+    }
+}
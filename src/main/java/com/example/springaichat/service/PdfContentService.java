@@ -1,69 +1,404 @@
 package com.example.springaichat.service;
 
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.search.CompressedTextStore;
+import com.example.springaichat.search.ContentHash;
+import com.example.springaichat.search.DeferredReclaimer;
+import com.example.springaichat.search.InvertedIndex;
+import com.example.springaichat.search.KnowledgeBaseSnapshotStore;
+import com.example.springaichat.search.PassageSplitter;
+import com.example.springaichat.search.SnippetExtractor;
+import com.example.springaichat.search.TermBuffer;
+import com.example.springaichat.search.Tokenizer;
+import com.example.springaichat.search.TokenizedPage;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * PDF内容管理服务
  * 负责PDF文档内容的解析、存储和检索，支持全局知识库
+ * 文档引用与段落文本由{@link KnowledgeDocumentRegistry}管理，倒排索引由{@link KnowledgeBaseIndex}管理，
+ * 检索由{@link HybridRetriever}完成；本服务负责解析入库、快照和启动加载
  */
 @Service
 @Slf4j
 public class PdfContentService {
     
     /**
-     * 存储每个聊天ID对应的PDF文档内容
-     * Key: chatId, Value: PDF文档的分页内容列表
+     * 解析锁的条带数
      */
-    private final Map<String, List<PdfPageContent>> pdfContents = new ConcurrentHashMap<>();
+    private static final int PARSE_LOCK_STRIPES = 64;
     
     /**
-     * 全局知识库：存储所有PDF文档的内容
-     * Key: 文档名称, Value: PDF文档的分页内容列表
+     * 按文档ID分条带的解析锁，同一内容并发上传时只解析一次；锁的数量固定，不随上传过的文档增长
      */
-    private final Map<String, List<PdfPageContent>> globalKnowledgeBase = new ConcurrentHashMap<>();
+    private final Object[] parseLocks = new Object[PARSE_LOCK_STRIPES];
     
     /**
-     * 文档文件路径映射
-     * Key: 文档名称, Value: 文件路径
+     * 知识库配置（pdf.*）
      */
-    private final Map<String, String> documentPaths = new ConcurrentHashMap<>();
+    private final PdfProperties properties;
     
     /**
-     * PDF页面内容存储类
+     * 文档登记表：会话和全局知识库共享的文档及其段落文本
+     */
+    private final KnowledgeDocumentRegistry registry;
+    
+    /**
+     * 全局知识库索引
+     */
+    private final KnowledgeBaseIndex index;
+    
+    /**
+     * 关键词 + 向量混合检索
+     */
+    private final HybridRetriever retriever;
+    
+    /**
+     * 正在解析的文档进度
+     * Key: 文档ID, Value: 解析进度
+     */
+    private final Map<String, IngestionProgress> ingestions = new ConcurrentHashMap<>();
+    
+    /**
+     * 知识库快照存储，首次使用时按配置创建
+     */
+    private volatile KnowledgeBaseSnapshotStore snapshotStore;
+    
+    /**
+     * 知识库加载线程池，首次加载时创建
+     */
+    private ExecutorService bootstrapExecutor;
+    
+    /**
+     * 当前加载任务
+     */
+    private volatile CompletableFuture<Void> bootstrapFuture;
+    
+    /**
+     * 知识库加载进度
+     */
+    private final BootstrapProgress bootstrapProgress = new BootstrapProgress();
+    
+    /**
+     * @param properties 知识库配置
+     * @param vectorStore 向量库（见CommonConfiguration），未配置时只使用关键词检索
+     */
+    public PdfContentService(PdfProperties properties, @Nullable VectorStore vectorStore) {
+        this.properties = properties;
+        this.registry = new KnowledgeDocumentRegistry(properties.getPageText());
+        this.index = new KnowledgeBaseIndex(properties, registry);
+        this.retriever = new HybridRetriever(properties, vectorStore, index, registry);
+        Arrays.setAll(parseLocks, i -> new Object());
+    }
+    
+    /**
+     * 知识库加载进度
+     */
+    public static class BootstrapProgress {
+        /** 最多保留的错误记录数 */
+        private static final int MAX_ERRORS = 20;
+        
+        private volatile String state = "IDLE";
+        private volatile int total;
+        private final AtomicInteger loaded = new AtomicInteger();
+        private final AtomicInteger restored = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Deque<String> errors = new ConcurrentLinkedDeque<>();
+        private volatile long startTime;
+        private volatile long endTime;
+        
+        synchronized void start(int total) {
+            this.total = total;
+            loaded.set(0);
+            restored.set(0);
+            failed.set(0);
+            errors.clear();
+            startTime = System.currentTimeMillis();
+            endTime = 0;
+            state = "LOADING";
+        }
+        
+        void documentLoaded(boolean fromSnapshot) {
+            loaded.incrementAndGet();
+            if (fromSnapshot) {
+                restored.incrementAndGet();
+            }
+        }
+        
+        void documentFailed(String fileName, Exception e) {
+            failed.incrementAndGet();
+            errors.addLast(fileName + ": " + e.getMessage());
+            while (errors.size() > MAX_ERRORS) {
+                errors.pollFirst();
+            }
+        }
+        
+        synchronized void finish() {
+            endTime = System.currentTimeMillis();
+            state = "READY";
+        }
+        
+        public boolean isLoading() { return "LOADING".equals(state); }
+        public boolean isReady() { return "READY".equals(state); }
+        public String getState() { return state; }
+        public int getTotal() { return total; }
+        public int getLoaded() { return loaded.get(); }
+        public int getRestored() { return restored.get(); }
+        public int getFailed() { return failed.get(); }
+        public int getRemaining() { return Math.max(0, total - loaded.get() - failed.get()); }
+        
+        public long getElapsedMillis() {
+            if (startTime == 0) {
+                return 0;
+            }
+            return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+        }
+        
+        /**
+         * 转换为接口返回的结构
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("state", state);
+            map.put("ready", isReady());
+            map.put("total", total);
+            map.put("loaded", getLoaded());
+            map.put("restoredFromSnapshot", getRestored());
+            map.put("failed", getFailed());
+            map.put("remaining", getRemaining());
+            map.put("elapsedMillis", getElapsedMillis());
+            map.put("errors", new ArrayList<>(errors));
+            return map;
+        }
+    }
+    
+    /**
+     * 单个PDF文档的解析进度，解析期间可随时读取
+     */
+    public static class IngestionProgress {
+        private final String documentId;
+        private final String fileName;
+        private final long startTime = System.currentTimeMillis();
+        private volatile String state = "PARSING";
+        private volatile int totalPages;
+        private final AtomicInteger processedPages = new AtomicInteger();
+        private final AtomicInteger passages = new AtomicInteger();
+        
+        IngestionProgress(String documentId, String fileName) {
+            this.documentId = documentId;
+            this.fileName = fileName;
+        }
+        
+        void start(int totalPages) {
+            this.totalPages = totalPages;
+        }
+        
+        void pagesProcessed(int pages, int newPassages) {
+            processedPages.addAndGet(pages);
+            passages.addAndGet(newPassages);
+        }
+        
+        void indexing() {
+            state = "INDEXING";
+        }
+        
+        public String getDocumentId() { return documentId; }
+        public String getFileName() { return fileName; }
+        public String getState() { return state; }
+        public int getTotalPages() { return totalPages; }
+        public int getProcessedPages() { return processedPages.get(); }
+        public int getPassages() { return passages.get(); }
+        public long getElapsedMillis() { return System.currentTimeMillis() - startTime; }
+        
+        /**
+         * 转换为接口返回的结构
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("documentId", documentId);
+            map.put("fileName", fileName);
+            map.put("state", state);
+            map.put("totalPages", totalPages);
+            map.put("processedPages", getProcessedPages());
+            map.put("passages", getPassages());
+            map.put("elapsedMillis", getElapsedMillis());
+            return map;
+        }
+    }
+    
+    /**
+     * 共享的不可变文档：段落和元数据在所有会话、所有文件名之间只保存一份
+     * 全局知识库和每个引用它的聊天会话各持有一个引用，引用计数归零时从文档登记表移除
+     */
+    public static final class KnowledgeDocument {
+        /** 文档ID（内容SHA-256） */
+        private final String documentId;
+        /** 段落列表（不可修改） */
+        private final List<PdfPageContent> passages;
+        /** 文档元数据（不可修改，所有段落共享） */
+        private final Map<String, Object> metadata;
+        /** 本地文件路径 */
+        private final String filePath;
+        /** 该内容出现过的文件名，按首次出现的顺序 */
+        private final Set<String> fileNames = new CopyOnWriteArraySet<>();
+        /** 引用计数 */
+        private final AtomicInteger references = new AtomicInteger();
+        
+        public KnowledgeDocument(String documentId, String fileName, List<PdfPageContent> passages,
+                                 Map<String, Object> metadata, String filePath) {
+            this.documentId = documentId;
+            this.passages = Collections.unmodifiableList(passages);
+            this.metadata = metadata;
+            this.filePath = filePath;
+            if (fileName != null) {
+                fileNames.add(fileName);
+            }
+        }
+        
+        public String getDocumentId() { return documentId; }
+        public List<PdfPageContent> getPassages() { return passages; }
+        public Map<String, Object> getMetadata() { return metadata; }
+        public String getFilePath() { return filePath; }
+        public int getReferenceCount() { return references.get(); }
+        
+        /**
+         * 主文件名（首次上传时的文件名）
+         */
+        public String getFileName() {
+            Iterator<String> iterator = fileNames.iterator();
+            return iterator.hasNext() ? iterator.next() : documentId;
+        }
+        
+        /**
+         * 所有文件名
+         */
+        public List<String> getFileNames() {
+            return new ArrayList<>(fileNames);
+        }
+        
+        void addFileName(String fileName) {
+            if (fileName != null) {
+                fileNames.add(fileName);
+            }
+        }
+        
+        void retainReference() {
+            references.incrementAndGet();
+        }
+        
+        /**
+         * @return 释放后的引用计数
+         */
+        int releaseReference() {
+            return references.decrementAndGet();
+        }
+    }
+    
+    /**
+     * PDF内容存储类，入库时页面被切分为段落，每个实例对应页面中的一个段落
+     * 同一文档的所有段落共享同一个元数据对象
      */
     public static class PdfPageContent {
-        /** 页面内容文本 */
+        /** 段落内容文本，文本保存在堆外存储中时为null */
         private final String content;
+        /** 堆外文本存储，文本保存在堆上时为null */
+        private final CompressedTextStore textStore;
+        /** 文本在堆外存储中的句柄 */
+        private final long textHandle;
+        /** 文本长度（字符数） */
+        private final int contentLength;
         /** 页码 */
         private final int pageNumber;
-        /** 文档元数据 */
+        /** 段落在页面文本中的起始偏移 */
+        private final int startOffset;
+        /** 段落在页面文本中的结束偏移（不含） */
+        private final int endOffset;
+        /** 文档元数据（同一文档的段落共享） */
         private final Map<String, Object> metadata;
         
         public PdfPageContent(String content, int pageNumber, Map<String, Object> metadata) {
+            this(content, pageNumber, 0, content.length(), metadata);
+        }
+        
+        public PdfPageContent(String content, int pageNumber, int startOffset, int endOffset, Map<String, Object> metadata) {
+            this(content, null, 0, content.length(), pageNumber, startOffset, endOffset, metadata);
+        }
+        
+        /**
+         * 文本压缩保存在堆外存储中的段落，读取内容时才解压
+         */
+        PdfPageContent(CompressedTextStore textStore, String content, int pageNumber, int startOffset, int endOffset,
+                       Map<String, Object> metadata) {
+            this(null, textStore, textStore.put(content), content.length(), pageNumber, startOffset, endOffset, metadata);
+        }
+        
+        private PdfPageContent(String content, CompressedTextStore textStore, long textHandle, int contentLength,
+                               int pageNumber, int startOffset, int endOffset, Map<String, Object> metadata) {
             this.content = content;
+            this.textStore = textStore;
+            this.textHandle = textHandle;
+            this.contentLength = contentLength;
             this.pageNumber = pageNumber;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
             this.metadata = metadata;
         }
         
-        public String getContent() { return content; }
+        /**
+         * 段落内容，文本保存在堆外存储中时每次调用都会解压
+         */
+        public String getContent() {
+            return content != null ? content : textStore.get(textHandle);
+        }
+        
+        /** 文本长度（字符数），不解压文本 */
+        public int getContentLength() { return contentLength; }
+        /** 文本是否保存在堆外存储中 */
+        public boolean isOffHeap() { return textStore != null; }
         public int getPageNumber() { return pageNumber; }
+        public int getStartOffset() { return startOffset; }
+        public int getEndOffset() { return endOffset; }
         public Map<String, Object> getMetadata() { return metadata; }
         
         @Override
         public String toString() {
             String fileName = (String) metadata.get("file_name");
-            return String.format("[%s-第%d页] %s", fileName, pageNumber, content);
+            return String.format("[%s-第%d页] %s", fileName, pageNumber, getContent());
+        }
+        
+        /**
+         * 释放堆外存储中的文本
+         */
+        void releaseText() {
+            if (textStore != null) {
+                textStore.remove(textHandle);
+            }
         }
     }
     
@@ -74,281 +409,666 @@ public class PdfContentService {
      * @throws Exception 解析异常
      */
     public void processPdfDocument(String chatId, Resource pdfResource) throws Exception {
-        log.info("开始处理PDF文档，chatId: {}, 文件名: {}", chatId, pdfResource.getFilename());
+        processPdfDocument(chatId, pdfResource, pdfResource.getFilename(), null);
+    }
+    
+    /**
+     * 解析并存储PDF文档内容（同时更新个人和全局知识库）
+     * 文档以内容SHA-256为ID，相同内容只解析一次，以其他文件名或会话再次上传时直接共享已有结果
+     * @param chatId 聊天会话ID，为null时只加入全局知识库
+     * @param pdfResource PDF文件资源
+     * @param fileName 上传时的文件名
+     * @param contentHash 内容SHA-256，为null时读取文件计算
+     * @throws Exception 解析异常
+     */
+    public void processPdfDocument(String chatId, Resource pdfResource, String fileName, String contentHash) throws Exception {
+        log.info("开始处理PDF文档，chatId: {}, 文件名: {}", chatId, fileName);
         
         try {
-            String fileName = pdfResource.getFilename();
-            
-            // 1. 检查全局知识库中是否已存在该文档
-            if (globalKnowledgeBase.containsKey(fileName)) {
-                log.info("文档已存在于全局知识库中，直接使用: {}", fileName);
-                // 复制全局知识库中的内容到当前会话
-                List<PdfPageContent> existingContent = new ArrayList<>(globalKnowledgeBase.get(fileName));
-                pdfContents.put(chatId, existingContent);
-                return;
+            // 1. 计算文档ID
+            String documentId = contentHash;
+            if (documentId == null) {
+                try (InputStream in = pdfResource.getInputStream()) {
+                    documentId = ContentHash.sha256(in);
+                }
             }
             
-            // 2. 创建PDF读取器
-            PagePdfDocumentReader reader = new PagePdfDocumentReader(
-                pdfResource,
-                PdfDocumentReaderConfig.builder()
-                    .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
-                    .withPagesPerDocument(1) // 每页作为一个独立的Document
-                    .build()
-            );
+            synchronized (parseLock(documentId)) {
+                // 2. 检查是否已存在相同内容的文档，存在时直接共享（临时持有引用，期间其他引用全部释放也不会归还文本）
+                KnowledgeDocument document = registry.acquire(documentId);
+                if (document != null) {
+                    try {
+                        document.addFileName(fileName);
+                        log.info("相同内容的文档已存在，直接共享: {} ({})", fileName, documentId);
+                        // 文档已从全局知识库移除但仍被会话引用时，重新加入索引
+                        if (!index.containsDocument(documentId)) {
+                            addToGlobalKnowledgeBase(document, index.tokenize(document.getPassages()));
+                        }
+                        if (chatId != null) {
+                            registry.bindChat(chatId, document);
+                        }
+                    } finally {
+                        registry.release(document);
+                    }
+                } else {
+                    // 3. 当前会话只记录文档ID
+                    document = parsePdfDocument(pdfResource, fileName, documentId);
+                    if (chatId != null) {
+                        registry.bindChat(chatId, document);
+                    }
+                }
+            }
             
-            // 3. 读取PDF文档并拆分为Document对象
-            List<Document> documents = reader.read();
+        } catch (Exception e) {
+            log.error("处理PDF文档失败，chatId: {}", chatId, e);
+            throw new Exception("PDF文档处理失败: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 获取文档ID对应的解析锁，不同的文档可能共用一把锁
+     * @param documentId 文档ID
+     * @return 解析锁
+     */
+    private Object parseLock(String documentId) {
+        return parseLocks[Math.floorMod(documentId.hashCode(), PARSE_LOCK_STRIPES)];
+    }
+    
+    /**
+     * 解析PDF文档并加入全局知识库，解析期间可通过{@link #getActiveIngestions()}查看进度
+     * @param pdfResource PDF文件资源
+     * @param fileName 文件名
+     * @param documentId 文档ID
+     * @return 共享的文档对象
+     * @throws IOException 读取或解析失败
+     */
+    private KnowledgeDocument parsePdfDocument(Resource pdfResource, String fileName, String documentId)
+            throws IOException {
+        IngestionProgress progress = new IngestionProgress(documentId, fileName);
+        ingestions.put(documentId, progress);
+        try {
+            // 1. 文档元数据只保存一份，所有段落共享
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("file_name", fileName);
+            metadata.put("content_hash", documentId);
+            metadata.put("processed_time", new Date());
+            metadata = Collections.unmodifiableMap(metadata);
             
-            // 4. 转换为我们的存储格式
+            // 2. 提取页面文本，每页切分为带重叠的段落并分词
+            PdfProperties.Passage passage = properties.getPassage();
+            PassageSplitter splitter = new PassageSplitter(passage.getMaxChars(), passage.getOverlap());
             List<PdfPageContent> pageContents = new ArrayList<>();
-            for (int i = 0; i < documents.size(); i++) {
-                Document doc = documents.get(i);
-                String content = doc.getText();
-                
-                // 获取页码信息（如果有的话）
-                int pageNumber = i + 1;
-                Map<String, Object> metadata = new HashMap<>(doc.getMetadata());
-                metadata.put("file_name", fileName);
-                metadata.put("chat_id", chatId);
-                metadata.put("processed_time", new Date());
+            List<TokenizedPage> tokenizedPageList = new ArrayList<>();
+            KnowledgeDocument document;
+            boolean indexed = false;
+            try {
+                if ("reader".equalsIgnoreCase(properties.getIngest().getMode())) {
+                    readAllPages(pdfResource, metadata, splitter, pageContents, tokenizedPageList, progress);
+                } else {
+                    streamPages(pdfResource, metadata, splitter, pageContents, tokenizedPageList, progress);
+                }
                 
-                if (content != null && !content.trim().isEmpty()) {
-                    pageContents.add(new PdfPageContent(content.trim(), pageNumber, metadata));
+                // 3. 创建共享文档，存储到全局知识库并建立倒排索引
+                progress.indexing();
+                Path pdfPath = resolvePdfPath(pdfResource, fileName, documentId);
+                document = new KnowledgeDocument(documentId, fileName, pageContents, metadata,
+                    pdfPath != null ? pdfPath.toAbsolutePath().toString() : null);
+                TokenizedPage[] tokenizedPages = tokenizedPageList.toArray(new TokenizedPage[0]);
+                // 入库后文档可能立即被并发删除，保存快照读取段落文本期间持有租约
+                try (DeferredReclaimer.Lease lease = registry.beginRead()) {
+                    addToGlobalKnowledgeBase(document, tokenizedPages);
+                    indexed = true;
+                    
+                    // 4. 保存解析结果快照
+                    if (pdfPath != null) {
+                        writeSnapshot(document, pdfPath, tokenizedPages);
+                    } else {
+                        log.warn("无法获取文件路径: {}", fileName);
+                    }
                 }
+            } catch (Throwable e) {
+                // 文档进入全局知识库前失败时，已存入的段落没有任何引用，直接归还堆外文本；
+                // 已入库的文档由登记表按引用计数回收
+                if (!indexed) {
+                    pageContents.forEach(PdfPageContent::releaseText);
+                }
+                throw e;
             }
             
-            // 5. 存储到个人知识库
-            pdfContents.put(chatId, pageContents);
-            
-            // 6. 存储到全局知识库
-            globalKnowledgeBase.put(fileName, new ArrayList<>(pageContents));
-            
-            // 7. 记录文档路径
-            try {
-                File file = pdfResource.getFile();
-                documentPaths.put(fileName, file.getAbsolutePath());
-            } catch (Exception e) {
-                log.warn("无法获取文件路径: {}", fileName);
+            log.info("PDF文档处理完成，文件名: {}, 总页数: {}, 段落数: {}, 耗时 {} ms",
+                fileName, progress.getTotalPages(), pageContents.size(), progress.getElapsedMillis());
+            log.info("全局知识库已更新，当前包含 {} 个文档", index.documentCount());
+            return document;
+        } finally {
+            ingestions.remove(documentId, progress);
+        }
+    }
+    
+    /**
+     * 流式解析：每次提取一批页面，切分段落、分词后即丢弃页面文本，再提取下一批
+     */
+    private void streamPages(Resource pdfResource, Map<String, Object> metadata, PassageSplitter splitter,
+                             List<PdfPageContent> pageContents, List<TokenizedPage> tokenizedPages,
+                             IngestionProgress progress) throws IOException {
+        try (PdfPageStream pages = PdfPageStream.open(pdfResource, ExtractedTextFormatter.defaults())) {
+            progress.start(pages.getPageCount());
+            int batchPages = Math.max(1, properties.getIngest().getBatchPages());
+            while (pages.hasNext()) {
+                int firstPageNumber = pages.getPagesRead() + 1;
+                List<String> batch = pages.nextBatch(batchPages);
+                int passages = addPages(batch, firstPageNumber, metadata, splitter, pageContents, tokenizedPages);
+                progress.pagesProcessed(batch.size(), passages);
             }
-            
-            log.info("PDF文档处理完成，chatId: {}, 文件名: {}, 总页数: {}", chatId, fileName, pageContents.size());
-            log.info("全局知识库已更新，当前包含 {} 个文档", globalKnowledgeBase.size());
-            
+        }
+    }
+    
+    /**
+     * 一次读出所有页面后再处理（PagePdfDocumentReader）
+     */
+    private void readAllPages(Resource pdfResource, Map<String, Object> metadata, PassageSplitter splitter,
+                              List<PdfPageContent> pageContents, List<TokenizedPage> tokenizedPages,
+                              IngestionProgress progress) {
+        PagePdfDocumentReader reader = new PagePdfDocumentReader(
+            pdfResource,
+            PdfDocumentReaderConfig.builder()
+                .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
+                .withPagesPerDocument(1) // 每页作为一个独立的Document
+                .build()
+        );
+        List<Document> documentPages = reader.read();
+        progress.start(documentPages.size());
+        List<String> pageTexts = new ArrayList<>(documentPages.size());
+        for (Document page : documentPages) {
+            pageTexts.add(page.getText());
+        }
+        int passages = addPages(pageTexts, 1, metadata, splitter, pageContents, tokenizedPages);
+        progress.pagesProcessed(pageTexts.size(), passages);
+    }
+    
+    /**
+     * 把连续的若干页切分为带重叠的段落并分词，空白页跳过
+     * @param pageTexts 页面文本
+     * @param firstPageNumber 第一页的页码
+     * @param metadata 文档元数据
+     * @param splitter 段落切分器
+     * @param pageContents 追加段落
+     * @param tokenizedPages 追加段落分词结果
+     * @return 新增的段落数
+     */
+    private int addPages(List<String> pageTexts, int firstPageNumber, Map<String, Object> metadata,
+                         PassageSplitter splitter, List<PdfPageContent> pageContents,
+                         List<TokenizedPage> tokenizedPages) {
+        List<String> passageTexts = new ArrayList<>();
+        List<int[]> passageSpans = new ArrayList<>();
+        for (int i = 0; i < pageTexts.size(); i++) {
+            String content = pageTexts.get(i);
+            if (content == null || content.trim().isEmpty()) {
+                continue;
+            }
+            String pageText = content.trim();
+            for (PassageSplitter.Passage passage : splitter.split(pageText)) {
+                passageTexts.add(pageText.substring(passage.getStart(), passage.getEnd()));
+                passageSpans.add(new int[]{firstPageNumber + i, passage.getStart(), passage.getEnd()});
+            }
+        }
+        // 在段落文本可能被压缩到堆外之前分词
+        TokenizedPage[] tokens = InvertedIndex.tokenize(passageTexts, index.getTokenizer());
+        for (int i = 0; i < passageTexts.size(); i++) {
+            int[] span = passageSpans.get(i);
+            pageContents.add(registry.newPassage(passageTexts.get(i), span[0], span[1], span[2], metadata));
+            tokenizedPages.add(tokens[i]);
+        }
+        return passageTexts.size();
+    }
+    
+    /**
+     * 获取PDF资源对应的本地文件
+     * @param pdfResource PDF文件资源
+     * @param fileName 文件名
+     * @param documentId 文档ID
+     * @return 本地文件路径，找不到时返回null
+     */
+    private Path resolvePdfPath(Resource pdfResource, String fileName, String documentId) {
+        try {
+            return pdfResource.getFile().toPath();
         } catch (Exception e) {
-            log.error("处理PDF文档失败，chatId: {}", chatId, e);
-            throw new Exception("PDF文档处理失败: " + e.getMessage(), e);
+            // 上传的文件资源没有对应的本地文件，使用uploads目录中保存的副本
+            File saved = new File("uploads", documentId + ".pdf");
+            if (!saved.exists()) {
+                saved = new File("uploads", fileName);
+            }
+            return saved.exists() ? saved.toPath() : null;
         }
     }
     
     /**
-     * 初始化时加载uploads目录下的所有PDF文档到全局知识库
+     * 开始读取知识库内容：租约关闭前，之后检索到的段落即使所属文档被删除或替换，文本也保持可读
+     * 调用方在检索、提取片段、拼接上下文期间持有租约，读取完毕后关闭（try-with-resources）
+     * @return 读取租约
+     */
+    public DeferredReclaimer.Lease beginRead() {
+        return registry.beginRead();
+    }
+    
+    /**
+     * 获取堆外文本存储
+     * @return 堆外文本存储，heap模式下返回null
+     */
+    CompressedTextStore getPageTextStore() {
+        return registry.getPageTextStore();
+    }
+    
+    /**
+     * 初始化时加载uploads目录下的所有PDF文档到全局知识库（阻塞直到加载完成）
      */
     public void initializeGlobalKnowledgeBase() {
+        startGlobalKnowledgeBaseInitialization();
+        CompletableFuture<Void> future = bootstrapFuture;
+        if (future != null) {
+            future.join();
+        }
+    }
+    
+    /**
+     * 在后台线程池中并行加载uploads目录下的所有PDF文档，立即返回
+     * 加载期间知识库可正常检索已加载的文档，进度通过{@link #getBootstrapProgress()}查询
+     * @return 是否启动了新的加载任务（已有任务在运行时返回false）
+     */
+    public synchronized boolean startGlobalKnowledgeBaseInitialization() {
+        if (bootstrapProgress.isLoading()) {
+            log.info("全局知识库正在加载中，忽略重复的初始化请求");
+            return false;
+        }
         log.info("开始初始化全局知识库...");
+        index.invalidate();
         
         File uploadsDir = new File("uploads");
-        if (!uploadsDir.exists() || !uploadsDir.isDirectory()) {
-            log.info("uploads目录不存在，跳过全局知识库初始化");
-            return;
-        }
-        
-        File[] pdfFiles = uploadsDir.listFiles((dir, name) -> 
-            name.toLowerCase().endsWith(".pdf"));
+        File[] pdfFiles = uploadsDir.isDirectory()
+            ? uploadsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"))
+            : null;
         
         if (pdfFiles == null || pdfFiles.length == 0) {
-            log.info("uploads目录中没有PDF文件");
-            return;
+            log.info("uploads目录不存在或没有PDF文件，跳过全局知识库初始化");
+            bootstrapProgress.start(0);
+            bootstrapProgress.finish();
+            bootstrapFuture = CompletableFuture.completedFuture(null);
+            return true;
         }
         
-        int loadedCount = 0;
-        for (File pdfFile : pdfFiles) {
+        // 读取已有快照的文件头
+        Map<String, KnowledgeBaseSnapshotStore.Header> snapshotHeaders = Collections.emptyMap();
+        KnowledgeBaseSnapshotStore store = getSnapshotStore();
+        if (store != null) {
             try {
-                String fileName = pdfFile.getName();
-                
-                // 跳过已加载的文档
-                if (globalKnowledgeBase.containsKey(fileName)) {
-                    continue;
-                }
-                
-                log.info("加载PDF文档到全局知识库: {}", fileName);
-                
-                // 使用临时chatId处理文档
-                String tempChatId = "init_" + System.currentTimeMillis() + "_" + fileName;
-                
-                // 创建Resource对象
-                org.springframework.core.io.FileSystemResource resource = 
-                    new org.springframework.core.io.FileSystemResource(pdfFile);
-                
-                // 处理文档
-                processPdfDocument(tempChatId, resource);
-                
-                // 移除临时的chatId映射
-                pdfContents.remove(tempChatId);
-                
-                loadedCount++;
-                log.info("成功加载文档: {} (第 {}/{} 个)", fileName, loadedCount, pdfFiles.length);
-                
-            } catch (Exception e) {
-                log.error("加载PDF文档失败: {}", pdfFile.getName(), e);
+                snapshotHeaders = store.loadHeaders();
+                log.info("发现 {} 个知识库快照", snapshotHeaders.size());
+            } catch (IOException e) {
+                log.warn("读取知识库快照失败，将重新解析所有PDF", e);
             }
         }
         
-        log.info("全局知识库初始化完成，已加载 {} 个PDF文档", loadedCount);
+        bootstrapProgress.start(pdfFiles.length);
+        ExecutorService executor = getBootstrapExecutor();
+        Map<String, KnowledgeBaseSnapshotStore.Header> headers = snapshotHeaders;
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[pdfFiles.length];
+        for (int i = 0; i < pdfFiles.length; i++) {
+            File pdfFile = pdfFiles[i];
+            tasks[i] = CompletableFuture.runAsync(() -> loadUploadedPdf(pdfFile, store, headers), executor);
+        }
+        bootstrapFuture = CompletableFuture.allOf(tasks).whenComplete((ignored, error) -> {
+            // 批量加载完成后把所有索引段合并为一个
+            index.compact();
+            bootstrapProgress.finish();
+            log.info("全局知识库初始化完成，已加载 {} 个PDF文档，其中 {} 个从快照恢复，失败 {} 个，耗时 {} ms",
+                bootstrapProgress.getLoaded(), bootstrapProgress.getRestored(),
+                bootstrapProgress.getFailed(), bootstrapProgress.getElapsedMillis());
+        });
+        return true;
     }
     
     /**
-     * 根据用户问题从全局知识库检索相关内容
-     * @param userQuery 用户问题
-     * @param maxResults 最大返回结果数
-     * @return 相关内容列表
+     * 加载单个PDF文档（在加载线程池中执行）
+     * 按内容哈希命名的文件直接按哈希查找快照，无需读取文件内容；旧版按原始文件名保存的文件按文件名查找
+     * @param pdfFile PDF文件
+     * @param store 快照存储，未启用时为null
+     * @param snapshotHeaders 已有快照的文件头
      */
-    public List<PdfPageContent> searchGlobalKnowledgeBase(String userQuery, int maxResults) {
-        if (globalKnowledgeBase.isEmpty()) {
-            log.warn("全局知识库为空");
-            return Collections.emptyList();
+    private void loadUploadedPdf(File pdfFile, KnowledgeBaseSnapshotStore store,
+                                 Map<String, KnowledgeBaseSnapshotStore.Header> snapshotHeaders) {
+        String fileName = pdfFile.getName();
+        try {
+            String documentId = ContentHash.fromFileName(fileName);
+            
+            // 跳过已加载的文档
+            if (documentId != null && index.containsDocument(documentId)) {
+                bootstrapProgress.documentLoaded(false);
+                return;
+            }
+            
+            // 优先从快照恢复，文件未变化时无需重新解析
+            if (store != null) {
+                KnowledgeBaseSnapshotStore.DocumentSnapshot snapshot = findSnapshot(store, documentId, fileName,
+                    pdfFile.toPath(), snapshotHeaders);
+                if (snapshot != null && restoreFromSnapshot(snapshot, pdfFile.toPath())) {
+                    bootstrapProgress.documentLoaded(true);
+                    return;
+                }
+            }
+            
+            log.info("加载PDF文档到全局知识库: {}", fileName);
+            
+            // 只加入全局知识库，不关联聊天会话
+            processPdfDocument(null, new FileSystemResource(pdfFile), fileName, documentId);
+            
+            bootstrapProgress.documentLoaded(false);
+            log.info("成功加载文档: {} (已完成 {}/{} 个)", fileName,
+                bootstrapProgress.getLoaded() + bootstrapProgress.getFailed(), bootstrapProgress.getTotal());
+        } catch (Exception e) {
+            bootstrapProgress.documentFailed(fileName, e);
+            log.error("加载PDF文档失败: {}", fileName, e);
         }
-        
-        // 收集所有文档的所有页面内容
-        List<PdfPageContent> allContents = new ArrayList<>();
-        for (List<PdfPageContent> docContents : globalKnowledgeBase.values()) {
-            allContents.addAll(docContents);
+    }
+    
+    /**
+     * 查找PDF文件对应的快照
+     * @param store 快照存储
+     * @param documentId 文件名中的内容哈希，旧版文件为null
+     * @param fileName 文件名
+     * @param pdfPath PDF文件路径
+     * @param snapshotHeaders 已有快照的文件头
+     * @return 快照，不存在时返回null
+     */
+    private KnowledgeBaseSnapshotStore.DocumentSnapshot findSnapshot(KnowledgeBaseSnapshotStore store, String documentId,
+                                                                     String fileName, Path pdfPath,
+                                                                     Map<String, KnowledgeBaseSnapshotStore.Header> snapshotHeaders) {
+        try {
+            return documentId != null
+                ? store.findByContentHash(documentId)
+                : store.find(fileName, pdfPath, snapshotHeaders);
+        } catch (Exception e) {
+            log.warn("读取知识库快照失败，将重新解析: {}", fileName, e);
+            return null;
         }
-        
-        return searchInContents(allContents, userQuery, maxResults);
     }
     
     /**
-     * 根据用户问题检索相关的PDF内容（仅当前聊天的文档 + 全局知识库）
-     * @param chatId 聊天会话ID
-     * @param userQuery 用户问题
-     * @param maxResults 最大返回结果数
-     * @return 相关内容列表
+     * 获取正在解析的文档进度
+     * @return 各文档的总页数、已处理页数和段落数
      */
-    public List<PdfPageContent> searchRelevantContent(String chatId, String userQuery, int maxResults) {
-        // 优先从全局知识库搜索
-        return searchGlobalKnowledgeBase(userQuery, maxResults);
+    public List<Map<String, Object>> getActiveIngestions() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (IngestionProgress progress : ingestions.values()) {
+            result.add(progress.toMap());
+        }
+        return result;
     }
     
     /**
-     * 在指定内容中搜索相关信息
-     * @param contents 要搜索的内容列表
-     * @param userQuery 用户问题
-     * @param maxResults 最大返回结果数
-     * @return 相关内容列表
+     * 获取文档的解析进度
+     * @param documentId 文档ID
+     * @return 解析进度，未在解析时返回null
      */
-    private List<PdfPageContent> searchInContents(List<PdfPageContent> contents, String userQuery, int maxResults) {
-        if (contents.isEmpty()) {
-            return Collections.emptyList();
+    public IngestionProgress getIngestionProgress(String documentId) {
+        return ingestions.get(documentId);
+    }
+    
+    /**
+     * 获取知识库加载进度
+     * @return 加载进度
+     */
+    public BootstrapProgress getBootstrapProgress() {
+        return bootstrapProgress;
+    }
+    
+    /**
+     * 知识库是否已加载完成
+     */
+    public boolean isKnowledgeBaseReady() {
+        return bootstrapProgress.isReady();
+    }
+    
+    /**
+     * 获取加载线程池（按配置延迟创建）
+     */
+    private synchronized ExecutorService getBootstrapExecutor() {
+        if (bootstrapExecutor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            bootstrapExecutor = Executors.newFixedThreadPool(properties.getBootstrap().getThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "kb-bootstrap-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        
-        // 提取查询关键词（简单的中文分词）
-        Set<String> queryKeywords = extractKeywords(userQuery.toLowerCase());
-        
-        if (queryKeywords.isEmpty()) {
-            // 如果没有关键词，返回各文档的前几页内容
-            Map<String, List<PdfPageContent>> byDocument = contents.stream()
-                .collect(Collectors.groupingBy(c -> (String) c.getMetadata().get("file_name")));
-            
-            return byDocument.values().stream()
-                .flatMap(docContents -> docContents.stream().limit(2))
-                .limit(maxResults)
-                .collect(Collectors.toList());
-        }
-        
-        // 计算每页内容的相关性得分
-        List<ScoredContent> scoredContents = new ArrayList<>();
-        for (PdfPageContent content : contents) {
-            double score = calculateRelevanceScore(content.getContent().toLowerCase(), queryKeywords);
-            if (score > 0) {
-                scoredContents.add(new ScoredContent(content, score));
+        return bootstrapExecutor;
+    }
+    
+    /**
+     * 从快照恢复文档
+     * @param snapshot 文档快照
+     * @param pdfPath PDF文件路径
+     * @return 是否恢复成功
+     */
+    private boolean restoreFromSnapshot(KnowledgeBaseSnapshotStore.DocumentSnapshot snapshot, Path pdfPath) {
+        String documentId = snapshot.getHeader().getSha256();
+        String fileName = snapshot.getHeader().getFileName();
+        try {
+            synchronized (parseLock(documentId)) {
+                // 相同内容已以其他文件名加载
+                KnowledgeDocument existing = index.getDocument(documentId);
+                if (existing != null) {
+                    existing.addFileName(fileName);
+                    return true;
+                }
+                List<KnowledgeBaseSnapshotStore.Passage> passages = snapshot.getPassages();
+                TokenizedPage[] tokenizedPages = new TokenizedPage[passages.size()];
+                for (int i = 0; i < passages.size(); i++) {
+                    tokenizedPages[i] = passages.get(i).getTokens();
+                }
+                KnowledgeDocument document = registry.acquire(documentId);
+                if (document == null) {
+                    Map<String, Object> metadata = documentMetadata(passages, fileName, documentId);
+                    List<PdfPageContent> pageContents = new ArrayList<>(passages.size());
+                    for (KnowledgeBaseSnapshotStore.Passage passage : passages) {
+                        pageContents.add(registry.newPassage(passage.getText(), passage.getPageNumber(),
+                            passage.getStartOffset(), passage.getEndOffset(), metadata));
+                    }
+                    document = new KnowledgeDocument(documentId, fileName, pageContents, metadata,
+                        pdfPath.toAbsolutePath().toString());
+                    addToGlobalKnowledgeBase(document, tokenizedPages);
+                } else {
+                    try {
+                        document.addFileName(fileName);
+                        addToGlobalKnowledgeBase(document, tokenizedPages);
+                    } finally {
+                        registry.release(document);
+                    }
+                }
+                log.info("从快照恢复文档: {}，段落数: {}", fileName, passages.size());
+                return true;
             }
+        } catch (Exception e) {
+            log.warn("从快照恢复文档失败，将重新解析: {}", fileName, e);
+            return false;
         }
-        
-        // 按得分排序并返回top结果
-        return scoredContents.stream()
-            .sorted((a, b) -> Double.compare(b.score, a.score))
-            .limit(maxResults)
-            .map(sc -> sc.content)
-            .collect(Collectors.toList());
     }
     
     /**
-     * 提取关键词（简单实现）
-     * @param text 输入文本
-     * @return 关键词集合
+     * 从快照段落中取出文档元数据：旧版快照的元数据按会话保存，去掉会话相关字段后只保留一份
+     * @param passages 快照段落
+     * @param fileName 文档名称
+     * @param documentId 文档ID
+     * @return 不可修改的文档元数据
      */
-    private Set<String> extractKeywords(String text) {
-        Set<String> keywords = new HashSet<>();
-        
-        // 移除标点符号并分割
-        String cleanText = text.replaceAll("[\\p{Punct}\\s]+", " ").trim();
-        String[] words = cleanText.split("\\s+");
-        
-        for (String word : words) {
-            if (word.length() >= 2) { // 只保留长度>=2的词
-                keywords.add(word);
+    private static Map<String, Object> documentMetadata(List<KnowledgeBaseSnapshotStore.Passage> passages,
+                                                        String fileName, String documentId) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        if (!passages.isEmpty() && passages.get(0).getMetadata() != null) {
+            metadata.putAll(passages.get(0).getMetadata());
+        }
+        metadata.remove("chat_id");
+        metadata.putIfAbsent("file_name", fileName);
+        metadata.put("content_hash", documentId);
+        return Collections.unmodifiableMap(metadata);
+    }
+    
+    /**
+     * 保存文档的解析结果快照
+     * @param document 文档
+     * @param pdfPath PDF文件路径
+     * @param tokenizedPages 段落分词结果
+     */
+    private void writeSnapshot(KnowledgeDocument document, Path pdfPath, TokenizedPage[] tokenizedPages) {
+        KnowledgeBaseSnapshotStore store = getSnapshotStore();
+        if (store == null) {
+            return;
+        }
+        String fileName = document.getFileName();
+        try {
+            List<PdfPageContent> pageContents = document.getPassages();
+            List<KnowledgeBaseSnapshotStore.Passage> passages = new ArrayList<>(pageContents.size());
+            for (int i = 0; i < pageContents.size(); i++) {
+                PdfPageContent content = pageContents.get(i);
+                passages.add(new KnowledgeBaseSnapshotStore.Passage(content.getPageNumber(),
+                    content.getStartOffset(), content.getEndOffset(), content.getContent(),
+                    content.getMetadata(), tokenizedPages[i]));
             }
+            KnowledgeBaseSnapshotStore.Header header = new KnowledgeBaseSnapshotStore.Header(fileName,
+                Files.size(pdfPath), Files.getLastModifiedTime(pdfPath).toMillis(), document.getDocumentId());
+            store.write(new KnowledgeBaseSnapshotStore.DocumentSnapshot(header, passages));
+        } catch (Exception e) {
+            log.warn("保存知识库快照失败: {}", fileName, e);
         }
-        
-        // 对于中文，也可以尝试字符级别的匹配
-        if (text.matches(".*[\\u4e00-\\u9fa5].*")) {
-            // 包含中文字符，添加2-4字的子串作为关键词
-            for (int i = 0; i <= text.length() - 2; i++) {
-                for (int len = 2; len <= Math.min(4, text.length() - i); len++) {
-                    String substr = text.substring(i, i + len);
-                    if (substr.matches(".*[\\u4e00-\\u9fa5].*") && !substr.matches(".*[\\s\\p{Punct}].*")) {
-                        keywords.add(substr);
-                    }
+    }
+    
+    /**
+     * 获取快照存储（按配置延迟创建），未启用时返回null
+     */
+    private KnowledgeBaseSnapshotStore getSnapshotStore() {
+        PdfProperties.Snapshot snapshot = properties.getSnapshot();
+        if (!snapshot.isEnabled()) {
+            return null;
+        }
+        KnowledgeBaseSnapshotStore store = snapshotStore;
+        if (store == null) {
+            synchronized (this) {
+                store = snapshotStore;
+                if (store == null) {
+                    store = new KnowledgeBaseSnapshotStore(Paths.get(snapshot.getDir()), index.getTokenizer().id());
+                    snapshotStore = store;
                 }
             }
         }
-        
-        return keywords;
+        return store;
     }
     
     /**
-     * 计算文本与关键词的相关性得分
-     * @param content 文本内容
-     * @param keywords 关键词集合
-     * @return 相关性得分
+     * 将已分词的文档加入全局知识库，写入倒排索引，并异步把段落写入向量库
+     * @param document 文档
+     * @param tokenizedPages 段落分词结果，与文档段落一一对应
      */
-    private double calculateRelevanceScore(String content, Set<String> keywords) {
-        double score = 0.0;
-        int totalMatches = 0;
-        
-        for (String keyword : keywords) {
-            int count = countOccurrences(content, keyword);
-            if (count > 0) {
-                // 较长的关键词给予更高权重
-                double weight = Math.min(keyword.length() / 2.0, 3.0);
-                score += count * weight;
-                totalMatches += count;
-            }
+    void addToGlobalKnowledgeBase(KnowledgeDocument document, TokenizedPage[] tokenizedPages) {
+        index.add(document, tokenizedPages);
+        // 生成向量需要调用嵌入模型，交给向量库更新线程，不占用解析锁和索引写锁
+        retriever.scheduleVectorStoreSync(document.getDocumentId());
+    }
+    
+    /**
+     * 获取知识库使用的分词器
+     */
+    Tokenizer getTokenizer() {
+        return index.getTokenizer();
+    }
+    
+    /**
+     * 等待已提交的向量库同步任务全部完成
+     */
+    void awaitVectorStoreUpdates() {
+        retriever.awaitVectorStoreUpdates();
+    }
+    
+    /**
+     * 根据用户问题从全局知识库检索相关内容，知识库未变化时相同的问题直接返回缓存的结果
+     * @param userQuery 用户问题
+     * @param maxResults 最大返回结果数
+     * @return 相关内容列表
+     */
+    public List<PdfPageContent> searchGlobalKnowledgeBase(String userQuery, int maxResults) {
+        if (index.isEmpty()) {
+            log.warn("全局知识库为空");
+            return Collections.emptyList();
         }
-        
-        // 归一化得分
-        if (totalMatches > 0) {
-            score = score / Math.log(content.length() + 1) * Math.log(totalMatches + 1);
+        return retriever.search(userQuery, maxResults);
+    }
+    
+    /**
+     * 从检索结果中提取与问题相关的片段，用于构建对话上下文
+     * 每个段落只保留查询词命中最密集的窗口，总字符数不超过预算；预算按段落平均分配，
+     * 排在前面的段落用不完的预算顺延给后面的段落
+     * @param userQuery 用户问题
+     * @param contents 检索结果
+     * @param budgetChars 所有片段的总字符数上限
+     * @return 与检索结果一一对应的片段文本，被省略的部分以省略号标记
+     */
+    public List<String> extractSnippets(String userQuery, List<PdfPageContent> contents, int budgetChars) {
+        List<String> snippets = new ArrayList<>(contents.size());
+        if (contents.isEmpty()) {
+            return snippets;
         }
-        
-        return score;
+        TermBuffer queryTerms = new TermBuffer();
+        Tokenizer tokenizer = index.getTokenizer();
+        tokenizer.queryTerms(userQuery, queryTerms);
+        SnippetExtractor extractor = new SnippetExtractor(tokenizer, properties.getChat().getSnippetWindowChars());
+        int remaining = Math.max(0, budgetChars);
+        for (int i = 0; i < contents.size(); i++) {
+            String text = contents.get(i).getContent();
+            int budget = remaining / (contents.size() - i);
+            List<SnippetExtractor.Snippet> selected = extractor.extract(text, queryTerms, budget);
+            String snippet = SnippetExtractor.format(text, selected);
+            remaining -= Math.min(remaining, snippet.length());
+            snippets.add(snippet);
+        }
+        return snippets;
     }
     
     /**
-     * 计算子字符串在文本中的出现次数
-     * @param text 文本
-     * @param substring 子字符串
-     * @return 出现次数
+     * 获取混合检索统计
+     * @return 是否启用、向量库类型、已写入向量的文档数及向量检索的次数、超时和失败次数
      */
-    private int countOccurrences(String text, String substring) {
-        int count = 0;
-        int index = 0;
-        while ((index = text.indexOf(substring, index)) != -1) {
-            count++;
-            index += substring.length();
+    public Map<String, Object> getHybridSearchStats() {
+        return retriever.getHybridSearchStats();
+    }
+    
+    /**
+     * 获取当前知识库版本
+     */
+    public long getKnowledgeBaseVersion() {
+        return index.version();
+    }
+    
+    /**
+     * 根据用户问题检索相关的PDF内容（仅当前聊天的文档 + 全局知识库）
+     * @param chatId 聊天会话ID
+     * @param userQuery 用户问题
+     * @param maxResults 最大返回结果数
+     * @return 相关内容列表
+     */
+    public List<PdfPageContent> searchRelevantContent(String chatId, String userQuery, int maxResults) {
+        // 优先从全局知识库搜索
+        return searchGlobalKnowledgeBase(userQuery, maxResults);
+    }
+    
+    /**
+     * 关闭检索线程池、向量检索线程池、加载线程池和索引合并线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        index.shutdown();
+        synchronized (this) {
+            if (bootstrapExecutor != null) {
+                bootstrapExecutor.shutdownNow();
+            }
         }
-        return count;
+        retriever.shutdown();
     }
     
     /**
@@ -356,21 +1076,19 @@ public class PdfContentService {
      * @return 文档信息列表
      */
     public List<Map<String, Object>> getAllDocuments() {
-        return globalKnowledgeBase.entrySet().stream()
-            .map(entry -> {
-                String fileName = entry.getKey();
-                List<PdfPageContent> contents = entry.getValue();
+        return index.getDocuments().stream()
+            .map(document -> {
+                List<PdfPageContent> contents = document.getPassages();
                 
                 Map<String, Object> docInfo = new HashMap<>();
-                docInfo.put("fileName", fileName);
-                docInfo.put("pageCount", contents.size());
-                docInfo.put("filePath", documentPaths.get(fileName));
-                
-                // 获取第一页的处理时间
-                if (!contents.isEmpty()) {
-                    Object processedTime = contents.get(0).getMetadata().get("processed_time");
-                    docInfo.put("processedTime", processedTime);
-                }
+                docInfo.put("documentId", document.getDocumentId());
+                docInfo.put("fileName", document.getFileName());
+                docInfo.put("fileNames", document.getFileNames());
+                docInfo.put("pageCount", countPages(contents));
+                docInfo.put("passageCount", contents.size());
+                docInfo.put("filePath", document.getFilePath());
+                docInfo.put("references", document.getReferenceCount());
+                docInfo.put("processedTime", document.getMetadata().get("processed_time"));
                 
                 return docInfo;
             })
@@ -378,15 +1096,29 @@ public class PdfContentService {
     }
     
     /**
-     * 从全局知识库中移除指定文档
-     * @param fileName 文件名
+     * 从全局知识库中移除指定文档，仍被聊天会话引用的文档内容在会话中保留
+     * @param fileNameOrId 文档ID或文件名（按文件名时移除使用该文件名的所有文档）
      * @return 是否成功移除
      */
-    public boolean removeDocumentFromGlobalKnowledgeBase(String fileName) {
-        boolean removed = globalKnowledgeBase.remove(fileName) != null;
-        if (removed) {
-            documentPaths.remove(fileName);
-            log.info("已从全局知识库中移除文档: {}", fileName);
+    public boolean removeDocumentFromGlobalKnowledgeBase(String fileNameOrId) {
+        List<String> documentIds = new ArrayList<>();
+        if (index.containsDocument(fileNameOrId)) {
+            documentIds.add(fileNameOrId);
+        } else {
+            for (KnowledgeDocument document : index.getDocuments()) {
+                if (document.getFileNames().contains(fileNameOrId)) {
+                    documentIds.add(document.getDocumentId());
+                }
+            }
+        }
+        
+        boolean removed = false;
+        for (String documentId : documentIds) {
+            if (index.remove(documentId) != null) {
+                retriever.scheduleVectorStoreSync(documentId);
+                log.info("已从全局知识库中移除文档: {} ({})", fileNameOrId, documentId);
+                removed = true;
+            }
         }
         return removed;
     }
@@ -394,10 +1126,20 @@ public class PdfContentService {
     /**
      * 获取指定聊天的所有内容
      * @param chatId 聊天会话ID
-     * @return 内容列表
+     * @return 内容列表（与其他会话共享，不可修改）
      */
     public List<PdfPageContent> getAllContent(String chatId) {
-        return pdfContents.getOrDefault(chatId, Collections.emptyList());
+        KnowledgeDocument document = getChatDocument(chatId);
+        return document == null ? Collections.emptyList() : document.getPassages();
+    }
+    
+    /**
+     * 获取指定聊天引用的文档
+     * @param chatId 聊天会话ID
+     * @return 文档，不存在时返回null
+     */
+    public KnowledgeDocument getChatDocument(String chatId) {
+        return registry.getChatDocument(chatId);
     }
     
     /**
@@ -405,7 +1147,7 @@ public class PdfContentService {
      * @param chatId 聊天会话ID
      */
     public void removeContent(String chatId) {
-        pdfContents.remove(chatId);
+        registry.unbindChat(chatId);
         log.info("已移除聊天内容: {}", chatId);
     }
     
@@ -415,7 +1157,35 @@ public class PdfContentService {
      * @return 是否存在内容
      */
     public boolean hasContent(String chatId) {
-        return pdfContents.containsKey(chatId) && !pdfContents.get(chatId).isEmpty();
+        return !getAllContent(chatId).isEmpty();
+    }
+    
+    /**
+     * 统计段落列表覆盖的页面数
+     * @param contents 段落列表
+     * @return 不同页码的数量
+     */
+    public static int countPages(List<PdfPageContent> contents) {
+        return (int) contents.stream()
+            .mapToInt(PdfPageContent::getPageNumber)
+            .distinct()
+            .count();
+    }
+    
+    /**
+     * 获取倒排索引内存占用报告
+     * @return 各部分占用的字节数及每页平均占用
+     */
+    public Map<String, Object> getIndexMemoryFootprint() {
+        return index.getMemoryFootprint();
+    }
+    
+    /**
+     * 获取段落文本存储统计
+     * @return 存储方式，off-heap模式下包含原始、压缩后和已分配的堆外字节数
+     */
+    public Map<String, Object> getPageTextStats() {
+        return registry.getPageTextStats();
     }
     
     /**
@@ -423,33 +1193,39 @@ public class PdfContentService {
      * @return 统计信息
      */
     public Map<String, Object> getGlobalKnowledgeBaseStats() {
+        Collection<KnowledgeDocument> knowledgeBase = index.getDocuments();
         Map<String, Object> stats = new HashMap<>();
-        stats.put("documentCount", globalKnowledgeBase.size());
+        stats.put("documentCount", knowledgeBase.size());
         
-        int totalPages = globalKnowledgeBase.values().stream()
-            .mapToInt(List::size)
+        int totalPages = knowledgeBase.stream()
+            .mapToInt(document -> countPages(document.getPassages()))
             .sum();
         stats.put("totalPages", totalPages);
         
-        long totalContentLength = globalKnowledgeBase.values().stream()
-            .flatMap(List::stream)
-            .mapToLong(content -> content.getContent().length())
+        int totalPassages = knowledgeBase.stream()
+            .mapToInt(document -> document.getPassages().size())
+            .sum();
+        stats.put("totalPassages", totalPassages);
+        
+        long totalContentLength = knowledgeBase.stream()
+            .flatMap(document -> document.getPassages().stream())
+            .mapToLong(PdfPageContent::getContentLength)
             .sum();
         stats.put("totalContentLength", totalContentLength);
+        stats.put("sharedDocuments", registry.documentCount());
+        stats.put("chatSessions", registry.chatSessionCount());
+        stats.putAll(index.getIndexStats());
+        stats.put("indexMemory", getIndexMemoryFootprint());
+        stats.put("pageText", getPageTextStats());
+        stats.put("hybridSearch", getHybridSearchStats());
+        stats.put("bootstrap", bootstrapProgress.toMap());
+        stats.put("ingestions", getActiveIngestions());
+        stats.put("version", index.version());
+        Map<String, Object> cacheStats = retriever.getQueryCacheStats();
+        if (cacheStats != null) {
+            stats.put("queryCache", cacheStats);
+        }
         
         return stats;
     }
-    
-    /**
-     * 内容得分包装类
-     */
-    private static class ScoredContent {
-        final PdfPageContent content;
-        final double score;
-        
-        ScoredContent(PdfPageContent content, double score) {
-            this.content = content;
-            this.score = score;
-        }
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,489 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF解析任务队列
+ * 上传接口保存文件后立即返回任务ID，解析在专用的有界线程池中按优先级执行，不占用请求线程，
+ * 线程优先级低于请求线程，批量上传时对话请求不受影响；因读取文件等临时故障失败的任务按指数退避重试，
+ * 文件内容无效等重试也不会成功的失败立即结束，任务状态和页面进度可随时查询
+ */
+@Service
+@Slf4j
+public class PdfIngestionService {
+
+    private final PdfContentService pdfContentService;
+
+    /**
+     * 解析配置（pdf.ingest.*）
+     */
+    private final PdfProperties.Ingest settings;
+
+    /**
+     * 任务登记表
+     * Key: 任务ID, Value: 任务
+     */
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 入队序号，同一优先级按入队顺序执行
+     */
+    private final AtomicLong enqueueSequence = new AtomicLong();
+
+    /**
+     * 解析线程池，首次提交时按配置创建
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * 重试定时器，首次重试时创建
+     */
+    private volatile ScheduledExecutorService retryScheduler;
+
+    public PdfIngestionService(PdfContentService pdfContentService, PdfProperties properties) {
+        this.pdfContentService = pdfContentService;
+        this.settings = properties.getIngest();
+    }
+
+    /**
+     * 任务优先级，数值越小越先执行
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW;
+
+        /**
+         * 解析优先级参数，无法识别时为NORMAL
+         */
+        public static Priority parse(String value) {
+            if (value != null) {
+                for (Priority priority : values()) {
+                    if (priority.name().equalsIgnoreCase(value.trim())) {
+                        return priority;
+                    }
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    /**
+     * 任务执行的工作
+     */
+    @FunctionalInterface
+    interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * 解析任务
+     */
+    public static class IngestionJob {
+        private final String jobId;
+        private final String fileName;
+        private final String documentId;
+        private final String chatId;
+        private final Priority priority;
+        private final Task task;
+        private final long submittedTime = System.currentTimeMillis();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final CompletableFuture<IngestionJob> completion = new CompletableFuture<>();
+        private volatile String state = "QUEUED";
+        private volatile String error;
+        private volatile long startedTime;
+        private volatile long finishedTime;
+        private volatile long nextAttemptTime;
+
+        IngestionJob(String jobId, String fileName, String documentId, String chatId, Priority priority, Task task) {
+            this.jobId = jobId;
+            this.fileName = fileName;
+            this.documentId = documentId;
+            this.chatId = chatId;
+            this.priority = priority;
+            this.task = task;
+        }
+
+        void queued() {
+            state = "QUEUED";
+        }
+
+        int running() {
+            if (startedTime == 0) {
+                startedTime = System.currentTimeMillis();
+            }
+            state = "RUNNING";
+            return attempts.incrementAndGet();
+        }
+
+        void retryScheduled(String error, long delayMillis) {
+            this.error = error;
+            this.nextAttemptTime = System.currentTimeMillis() + delayMillis;
+            state = "RETRY_WAIT";
+        }
+
+        void succeeded() {
+            finish("SUCCEEDED");
+        }
+
+        void failed(String error) {
+            this.error = error;
+            finish("FAILED");
+        }
+
+        private void finish(String finalState) {
+            finishedTime = System.currentTimeMillis();
+            nextAttemptTime = 0;
+            state = finalState;
+            completion.complete(this);
+        }
+
+        public String getJobId() { return jobId; }
+        public String getFileName() { return fileName; }
+        public String getDocumentId() { return documentId; }
+        public String getChatId() { return chatId; }
+        public Priority getPriority() { return priority; }
+        public String getState() { return state; }
+        public int getAttempts() { return attempts.get(); }
+        /** 最近一次失败的原因 */
+        public String getError() { return error; }
+        public boolean isFinished() { return finishedTime > 0; }
+        public long getFinishedTime() { return finishedTime; }
+
+        /** 任务结束（成功或最终失败）时完成 */
+        public CompletableFuture<IngestionJob> completion() {
+            return completion;
+        }
+
+        /**
+         * 转换为接口返回的结构
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("jobId", jobId);
+            map.put("fileName", fileName);
+            map.put("documentId", documentId);
+            map.put("chatId", chatId);
+            map.put("priority", priority.name());
+            map.put("state", state);
+            map.put("finished", isFinished());
+            map.put("attempts", getAttempts());
+            map.put("error", error);
+            map.put("submittedTime", submittedTime);
+            map.put("startedTime", startedTime == 0 ? null : startedTime);
+            map.put("finishedTime", finishedTime == 0 ? null : finishedTime);
+            map.put("nextAttemptTime", nextAttemptTime == 0 ? null : nextAttemptTime);
+            long end = finishedTime > 0 ? finishedTime : System.currentTimeMillis();
+            map.put("elapsedMillis", end - submittedTime);
+            return map;
+        }
+    }
+
+    /**
+     * 线程池中排队的任务，按优先级、再按入队顺序排序
+     */
+    private final class QueuedJob implements Runnable, Comparable<QueuedJob> {
+        private final IngestionJob job;
+        private final long sequence;
+
+        QueuedJob(IngestionJob job, long sequence) {
+            this.job = job;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runJob(job);
+        }
+
+        @Override
+        public int compareTo(QueuedJob other) {
+            int result = Integer.compare(job.priority.ordinal(), other.job.priority.ordinal());
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 提交已保存文件的解析任务，立即返回
+     * @param chatId 聊天会话ID，为null时只加入全局知识库
+     * @param pdfResource 已保存的PDF文件
+     * @param fileName 上传时的文件名
+     * @param contentHash 内容SHA-256，为null时解析前读取文件计算
+     * @param priority 优先级
+     * @return 任务
+     * @throws RejectedExecutionException 等待解析的任务已达上限
+     */
+    public IngestionJob submit(String chatId, Resource pdfResource, String fileName, String contentHash,
+                               Priority priority) {
+        return submit(fileName, contentHash, chatId, priority,
+            () -> pdfContentService.processPdfDocument(chatId, pdfResource, fileName, contentHash));
+    }
+
+    /**
+     * 提交任务
+     * @param fileName 文件名
+     * @param documentId 文档ID（用于查询页面进度），未知时为null
+     * @param chatId 聊天会话ID
+     * @param priority 优先级
+     * @param task 要执行的工作
+     * @return 任务
+     * @throws RejectedExecutionException 等待解析的任务已达上限
+     */
+    IngestionJob submit(String fileName, String documentId, String chatId, Priority priority, Task task) {
+        evictFinishedJobs();
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), fileName, documentId, chatId,
+            priority == null ? Priority.NORMAL : priority, task);
+        jobs.put(job.jobId, job);
+        try {
+            enqueue(job, false);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.jobId);
+            throw e;
+        }
+        log.info("PDF解析任务已提交: {}，文件名: {}，优先级: {}", job.jobId, fileName, job.priority);
+        return job;
+    }
+
+    /**
+     * 任务放入线程池队列
+     * @param job 任务
+     * @param retry 是否为重试（重试的任务已被接纳过，不受队列上限限制）
+     */
+    private void enqueue(IngestionJob job, boolean retry) {
+        ThreadPoolExecutor pool = getExecutor();
+        synchronized (pool) {
+            if (!retry && pool.getQueue().size() >= settings.getQueueCapacity()) {
+                throw new RejectedExecutionException("解析队列已满: " + settings.getQueueCapacity());
+            }
+            job.queued();
+            pool.execute(new QueuedJob(job, enqueueSequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * 执行任务，临时故障导致失败且未达到最大次数时按退避时间安排重试
+     * 任务抛出Error时同样标记为失败，之后只重新抛出虚拟机错误
+     */
+    private void runJob(IngestionJob job) {
+        int attempt = job.running();
+        try {
+            job.task.run();
+            job.succeeded();
+            log.info("PDF解析任务完成: {}，文件名: {}，第 {} 次执行", job.jobId, job.fileName, attempt);
+        } catch (Throwable e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (e instanceof VirtualMachineError fatal) {
+                job.failed(error);
+                log.error("PDF解析任务因虚拟机错误失败: {}，文件名: {}", job.jobId, job.fileName, fatal);
+                throw fatal;
+            }
+            if (!isRetryable(e)) {
+                job.failed(error);
+                log.error("PDF解析任务失败且不可重试: {}，文件名: {}", job.jobId, job.fileName, e);
+                return;
+            }
+            if (attempt >= settings.getRetry().getMaxAttempts()) {
+                job.failed(error);
+                log.error("PDF解析任务失败: {}，文件名: {}，已执行 {} 次", job.jobId, job.fileName, attempt, e);
+                return;
+            }
+            long delay = backoffMillis(attempt);
+            job.retryScheduled(error, delay);
+            log.warn("PDF解析任务第 {} 次执行失败，{} ms后重试: {}，文件名: {}，原因: {}",
+                attempt, delay, job.jobId, job.fileName, error);
+            try {
+                getRetryScheduler().schedule(() -> retry(job, error), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                job.failed("服务关闭，未能重试: " + error);
+            }
+        }
+    }
+
+    /**
+     * 退避时间到后重新放入队列，解析线程池已关闭时任务以失败结束
+     * @param job 任务
+     * @param error 上次失败的原因
+     */
+    private void retry(IngestionJob job, String error) {
+        try {
+            enqueue(job, true);
+        } catch (RejectedExecutionException e) {
+            job.failed("服务关闭，未能重试: " + error);
+            log.warn("解析线程池已关闭，PDF解析任务不再重试: {}，文件名: {}", job.jobId, job.fileName);
+        }
+    }
+
+    /**
+     * 判断失败是否可能在重试后恢复：原因链中有读写错误或超时时重试；
+     * 文件内容无法解析，以及参数、状态等确定性的运行时异常重试结果相同，不重试
+     * @param failure 任务抛出的异常
+     * @return 是否重试
+     */
+    static boolean isRetryable(Throwable failure) {
+        boolean transientFailure = false;
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PdfPageStream.InvalidPdfException) {
+                return false;
+            }
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                transientFailure = true;
+            }
+        }
+        return transientFailure;
+    }
+
+    /**
+     * 第attempt次失败后的等待时间：初始等待时间按倍数递增，不超过上限
+     */
+    long backoffMillis(int attempt) {
+        PdfProperties.Retry retry = settings.getRetry();
+        double delay = retry.getInitialBackoffMs() * Math.pow(retry.getMultiplier(), attempt - 1);
+        return (long) Math.min(delay, retry.getMaxBackoffMs());
+    }
+
+    /**
+     * 移除保留时间已过的已结束任务
+     */
+    private void evictFinishedJobs() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(settings.getJobRetentionMinutes());
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedTime() < expireBefore);
+    }
+
+    /**
+     * 获取任务
+     * @param jobId 任务ID
+     * @return 任务，不存在或已过保留时间时返回null
+     */
+    public IngestionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 获取任务状态，解析中的任务附带页面进度
+     * @param jobId 任务ID
+     * @return 任务状态，不存在时返回null
+     */
+    public Map<String, Object> getJobStatus(String jobId) {
+        IngestionJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        Map<String, Object> status = job.toMap();
+        PdfContentService.IngestionProgress progress = job.documentId == null || pdfContentService == null
+            ? null
+            : pdfContentService.getIngestionProgress(job.documentId);
+        if (progress != null && "RUNNING".equals(job.state)) {
+            status.put("parseState", progress.getState());
+            status.put("totalPages", progress.getTotalPages());
+            status.put("processedPages", progress.getProcessedPages());
+            status.put("passages", progress.getPassages());
+        }
+        return status;
+    }
+
+    /**
+     * 获取队列统计
+     * @return 线程数、排队、执行中和各状态的任务数
+     */
+    public Map<String, Object> getQueueStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        ThreadPoolExecutor pool = executor;
+        stats.put("threads", pool == null ? settings.getThreads() : pool.getCorePoolSize());
+        stats.put("queueCapacity", settings.getQueueCapacity());
+        stats.put("queued", pool == null ? 0 : pool.getQueue().size());
+        stats.put("running", pool == null ? 0 : pool.getActiveCount());
+        Map<String, Integer> states = new LinkedHashMap<>();
+        for (IngestionJob job : jobs.values()) {
+            states.merge(job.state, 1, Integer::sum);
+        }
+        stats.put("jobs", states);
+        return stats;
+    }
+
+    /**
+     * 获取解析线程池（按配置延迟创建）
+     */
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor pool = executor;
+        if (pool == null) {
+            synchronized (this) {
+                pool = executor;
+                if (pool == null) {
+                    int threads = settings.getThreads();
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new PriorityBlockingQueue<>(), runnable -> {
+                            Thread thread = new Thread(runnable, "kb-ingest-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            // 低于请求线程，CPU紧张时优先保证对话请求
+                            thread.setPriority(Thread.NORM_PRIORITY - 2);
+                            return thread;
+                        });
+                    executor = pool;
+                    log.info("PDF解析队列已启动，线程数: {}，队列上限: {}，最多执行 {} 次", threads,
+                        settings.getQueueCapacity(), settings.getRetry().getMaxAttempts());
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 获取重试定时器（延迟创建）
+     */
+    private ScheduledExecutorService getRetryScheduler() {
+        ScheduledExecutorService scheduler = retryScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = retryScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "kb-ingest-retry");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    retryScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * 关闭解析线程池和重试定时器，仍在排队或等待重试的任务以失败结束
+     */
+    @PreDestroy
+    public void shutdown() {
+        ScheduledExecutorService scheduler = retryScheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        ThreadPoolExecutor pool = executor;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        for (IngestionJob job : jobs.values()) {
+            if ("QUEUED".equals(job.state) || "RETRY_WAIT".equals(job.state)) {
+                job.failed(job.error == null ? "服务关闭" : "服务关闭，未能重试: " + job.error);
+            }
+        }
+    }
+}
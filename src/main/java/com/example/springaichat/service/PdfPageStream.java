@@ -0,0 +1,155 @@
+package com.example.springaichat.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按页流式读取PDF文本
+ * PDF按文件随机访问打开，不把整个文件读入堆，解析过程中的流数据缓存在临时文件中；
+ * 每次只提取一小批页面的文本，调用方处理完一批再读取下一批，内存占用只与批大小有关
+ */
+final class PdfPageStream implements Closeable {
+
+    private final PDDocument document;
+    private final PDFTextStripper stripper = new PDFTextStripper();
+    private final ExtractedTextFormatter formatter;
+    private final int pageCount;
+
+    /** 资源没有对应的本地文件时复制出的临时文件 */
+    private final Path tempFile;
+
+    /** 下一个要读取的页码（从1开始） */
+    private int nextPage = 1;
+
+    private PdfPageStream(PDDocument document, ExtractedTextFormatter formatter, Path tempFile) {
+        this.document = document;
+        this.formatter = formatter;
+        this.tempFile = tempFile;
+        this.pageCount = document.getNumberOfPages();
+        stripper.setSortByPosition(true);
+    }
+
+    /**
+     * 打开PDF
+     * @param resource PDF文件资源，没有本地文件时先复制到临时文件
+     * @param formatter 页面文本规范化规则（与PagePdfDocumentReader一致）
+     * @return 页面流，用完须关闭
+     * @throws InvalidPdfException 文件内容不是可解析的PDF（损坏、加密等）
+     * @throws IOException 读取失败
+     */
+    static PdfPageStream open(Resource resource, ExtractedTextFormatter formatter) throws IOException {
+        File file = localFile(resource);
+        Path tempFile = null;
+        if (file == null) {
+            tempFile = Files.createTempFile("pdf-ingest-", ".pdf");
+            file = tempFile.toFile();
+        }
+        try {
+            if (tempFile != null) {
+                try (InputStream in = resource.getInputStream()) {
+                    Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return new PdfPageStream(load(file), formatter, tempFile);
+        } catch (IOException | RuntimeException e) {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 加载PDF，文件系统错误原样抛出，其余解析失败视为文件内容无效
+     */
+    private static PDDocument load(File file) throws IOException {
+        try {
+            return Loader.loadPDF(file, IOUtils.createTempFileOnlyStreamCache());
+        } catch (FileNotFoundException | FileSystemException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            throw new InvalidPdfException("无法解析PDF: " + e.getMessage(), e);
+        }
+    }
+
+    private static File localFile(Resource resource) {
+        try {
+            File file = resource.getFile();
+            return file.isFile() ? file : null;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /** 总页数 */
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /** 已读取的页数 */
+    int getPagesRead() {
+        return nextPage - 1;
+    }
+
+    boolean hasNext() {
+        return nextPage <= pageCount;
+    }
+
+    /**
+     * 读取下一批页面的文本（已规范化）
+     * @param maxPages 本批最多读取的页数
+     * @return 页面文本，第一个元素的页码为读取前的{@link #getPagesRead()} + 1；已读完时为空列表
+     * @throws InvalidPdfException 页面内容无法解析
+     */
+    List<String> nextBatch(int maxPages) throws IOException {
+        int endPage = Math.min(pageCount, nextPage + Math.max(1, maxPages) - 1);
+        List<String> pages = new ArrayList<>(Math.max(0, endPage - nextPage + 1));
+        while (nextPage <= endPage) {
+            stripper.setStartPage(nextPage);
+            stripper.setEndPage(nextPage);
+            try {
+                pages.add(formatter.format(stripper.getText(document)));
+            } catch (IOException | RuntimeException e) {
+                throw new InvalidPdfException("无法解析PDF第" + nextPage + "页: " + e.getMessage(), e);
+            }
+            nextPage++;
+        }
+        return pages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            document.close();
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * PDF内容无法解析（文件损坏、加密或不是PDF），重新读取同一文件结果相同
+     */
+    static final class InvalidPdfException extends IOException {
+        InvalidPdfException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,634 @@
+package com.example.springaichat.vectorstore;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引
+ * 每个节点随机分配层数，高层稀疏、低层稠密；检索从最高层的入口点贪心下降到第0层，再在第0层做宽度为ef的最佳优先搜索。
+ * 向量插入时归一化，相似度为余弦（归一化后的点积），距离为 1 - 相似度。
+ * <p>
+ * 插入与检索可并发进行：节点的邻居表由节点自身的锁保护，入口点（层数和节点ID）打包在一个long中原子更新。
+ * 删除只做标记，被删除的节点仍参与导航但不出现在结果中；被删除的节点占比过高时由{@link IndexedVectorStore}重建索引
+ */
+public final class HnswIndex implements VectorIndex {
+
+    /** 默认每层邻居数（第0层为其两倍） */
+    public static final int DEFAULT_M = 16;
+
+    /** 默认构建时的候选宽度 */
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+
+    /** 默认检索时的候选宽度 */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    /** 层数上限 */
+    private static final int MAX_LEVEL = 16;
+
+    /** 空索引的入口点 */
+    private static final long NO_ENTRY = -1L;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+
+    /** 节点数组，扩容时整体替换；新节点在写入数组之后才会被链接进图 */
+    private volatile Node[] nodes = new Node[1024];
+    private final Object growLock = new Object();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+
+    /** 入口点：高32位为层数，低32位为节点ID */
+    private final AtomicLong entry = new AtomicLong(NO_ENTRY);
+
+    /**
+     * 图节点
+     */
+    private static final class Node {
+        final float[] vector;
+        final int level;
+        /** 每层的邻居ID，由节点自身的锁保护 */
+        final int[][] neighbors;
+        final int[] counts;
+        volatile boolean deleted;
+
+        Node(float[] vector, int level, int m, int maxM0) {
+            this.vector = vector;
+            this.level = level;
+            this.neighbors = new int[level + 1][];
+            this.counts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                neighbors[l] = new int[l == 0 ? maxM0 : m];
+            }
+        }
+    }
+
+    public HnswIndex(int dimensions) {
+        this(dimensions, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param dimensions 向量维度
+     * @param m 每层邻居数，越大召回越高、内存和构建时间越多
+     * @param efConstruction 构建时的候选宽度，越大图质量越好、构建越慢
+     * @param efSearch 检索时的候选宽度（不小于返回数量），越大召回越高、检索越慢
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, int efSearch) {
+        if (dimensions <= 0 || m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW参数不合法: dimensions=" + dimensions + ", m=" + m
+                + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    @Override
+    public int add(float[] vector) {
+        float[] normalized = Vectors.normalize(vector, dimensions);
+        int level = randomLevel();
+        int id = allocate(new Node(normalized, level, m, maxM0));
+        Node node = node(id);
+
+        long current = entry.get();
+        if (current == NO_ENTRY && entry.compareAndSet(NO_ENTRY, pack(level, id))) {
+            return id;
+        }
+        current = entry.get();
+        int maxLevel = levelOf(current);
+        int entryId = idOf(current);
+
+        Scratch scratch = SCRATCH.get();
+        int nearest = greedyDescend(normalized, entryId, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            searchLayer(normalized, nearest, efConstruction, l, scratch);
+            int count = scratch.drainAscending(id);
+            if (count == 0) {
+                continue;
+            }
+            nearest = scratch.sortedIds[0];
+            int[] selected = selectNeighbors(normalized, scratch.sortedIds, scratch.sortedDistances, count, m);
+            // 其他线程可能已经从高层找到新节点并链接过来，与已有邻居合并而不是覆盖
+            mergeNeighbors(node, l, selected, selected.length);
+            for (int neighbor : selected) {
+                link(neighbor, id, l);
+            }
+        }
+
+        // 新节点层数更高时成为入口点
+        while (true) {
+            long latest = entry.get();
+            if (levelOf(latest) >= level || entry.compareAndSet(latest, pack(level, id))) {
+                break;
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k, IntPredicate accept) {
+        return search(query, k, efSearch, accept);
+    }
+
+    /**
+     * 检索最相似的向量
+     * @param query 查询向量
+     * @param k 返回数量
+     * @param ef 候选宽度，小于k时按k计
+     * @param accept 节点过滤条件，为null时不过滤
+     * @return 检索结果
+     */
+    public SearchResult search(float[] query, int k, int ef, IntPredicate accept) {
+        long current = entry.get();
+        if (current == NO_ENTRY || k <= 0) {
+            return new SearchResult(new int[0], new float[0], 0);
+        }
+        float[] normalized = Vectors.normalize(query, dimensions);
+        int nearest = greedyDescend(normalized, idOf(current), levelOf(current), 0);
+        Scratch scratch = SCRATCH.get();
+        int width = Math.max(ef, k);
+        int[] ids = new int[k];
+        float[] similarities = new float[k];
+        while (true) {
+            searchLayer(normalized, nearest, width, 0, scratch);
+            int count = scratch.drainAscending(-1);
+            int found = 0;
+            for (int i = 0; i < count && found < k; i++) {
+                int id = scratch.sortedIds[i];
+                if (!node(id).deleted && (accept == null || accept.test(id))) {
+                    ids[found] = id;
+                    similarities[found] = 1f - scratch.sortedDistances[i];
+                    found++;
+                }
+            }
+            // 过滤掉的节点过多时加宽候选重新检索，直到候选覆盖全部节点
+            if (found == k || width >= size.get()) {
+                return new SearchResult(ids, similarities, found);
+            }
+            width = Math.min(size.get(), width * 2);
+        }
+    }
+
+    @Override
+    public boolean markDeleted(int id) {
+        Node node = node(id);
+        if (node.deleted) {
+            return false;
+        }
+        synchronized (node) {
+            if (node.deleted) {
+                return false;
+            }
+            node.deleted = true;
+        }
+        deleted.incrementAndGet();
+        return true;
+    }
+
+    public boolean isDeleted(int id) {
+        return node(id).deleted;
+    }
+
+    /**
+     * 节点的归一化向量（只读）
+     */
+    @Override
+    public float[] vector(int id) {
+        return node(id).vector;
+    }
+
+    /**
+     * 节点在指定层的邻居（副本），节点层数低于该层时为空
+     */
+    int[] neighbors(int id, int level) {
+        Node node = node(id);
+        int[] buffer = new int[level == 0 ? maxM0 : m];
+        return Arrays.copyOf(buffer, copyNeighbors(node, level, buffer));
+    }
+
+    /** 入口点的层数，空索引为-1 */
+    int maxLevel() {
+        long current = entry.get();
+        return current == NO_ENTRY ? -1 : levelOf(current);
+    }
+
+    /** 入口点的节点ID，空索引为-1 */
+    int entryPoint() {
+        long current = entry.get();
+        return current == NO_ENTRY ? -1 : idOf(current);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int liveSize() {
+        return size.get() - deleted.get();
+    }
+
+    @Override
+    public int getDimensions() { return dimensions; }
+    public int getM() { return m; }
+    public int getEfConstruction() { return efConstruction; }
+    public int getEfSearch() { return efSearch; }
+
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch必须大于0: " + efSearch);
+        }
+        this.efSearch = efSearch;
+    }
+
+    private int allocate(Node node) {
+        synchronized (growLock) {
+            int id = size.get();
+            Node[] current = nodes;
+            if (id == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[id] = node;
+            nodes = current;
+            size.set(id + 1);
+            return id;
+        }
+    }
+
+    private Node node(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * 从入口点开始逐层贪心下降到targetLevel + 1层，返回最接近的节点
+     */
+    private int greedyDescend(float[] query, int entryId, int fromLevel, int targetLevel) {
+        int current = entryId;
+        float currentDistance = distance(query, node(current).vector);
+        int[] buffer = SCRATCH.get().neighborBuffer(maxM0);
+        for (int l = fromLevel; l > targetLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int count = copyNeighbors(node(current), l, buffer);
+                for (int i = 0; i < count; i++) {
+                    float d = distance(query, node(buffer[i]).vector);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = buffer[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做最佳优先搜索，结果留在scratch.results中（按距离的最大堆，最多ef个）
+     */
+    private void searchLayer(float[] query, int entryId, int ef, int level, Scratch scratch) {
+        scratch.begin(size.get());
+        Heap candidates = scratch.candidates;
+        Heap results = scratch.results;
+        float entryDistance = distance(query, node(entryId).vector);
+        scratch.visit(entryId);
+        candidates.push(entryId, entryDistance);
+        results.push(entryId, entryDistance);
+        int[] buffer = scratch.neighborBuffer(maxM0);
+        while (candidates.size > 0) {
+            float closest = candidates.topDistance();
+            if (results.size >= ef && closest > results.topDistance()) {
+                break;
+            }
+            int current = candidates.topId();
+            candidates.pop();
+            int count = copyNeighbors(node(current), level, buffer);
+            for (int i = 0; i < count; i++) {
+                int neighbor = buffer[i];
+                if (!scratch.visit(neighbor)) {
+                    continue;
+                }
+                float d = distance(query, node(neighbor).vector);
+                if (results.size < ef || d < results.topDistance()) {
+                    candidates.push(neighbor, d);
+                    results.push(neighbor, d);
+                    if (results.size > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    private static int copyNeighbors(Node node, int level, int[] buffer) {
+        if (level > node.level) {
+            return 0;
+        }
+        synchronized (node) {
+            int count = node.counts[level];
+            System.arraycopy(node.neighbors[level], 0, buffer, 0, count);
+            return count;
+        }
+    }
+
+    /**
+     * 启发式选择邻居：按距离从近到远，只保留比所有已选邻居都更接近基准点的候选，使邻居分布在不同方向；
+     * 不足max个时用被跳过的候选补齐
+     * @param base 基准向量
+     * @param ids 候选ID，按到基准点的距离升序
+     * @param distances 候选到基准点的距离
+     * @param count 候选数量
+     * @param max 最多选择的数量
+     */
+    private int[] selectNeighbors(float[] base, int[] ids, float[] distances, int count, int max) {
+        if (count <= max) {
+            return Arrays.copyOf(ids, count);
+        }
+        int[] selected = new int[max];
+        int selectedCount = 0;
+        boolean[] taken = new boolean[count];
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            float[] candidate = node(ids[i]).vector;
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (distance(candidate, node(selected[j]).vector) < distances[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = ids[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            if (!taken[i]) {
+                selected[selectedCount++] = ids[i];
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 把newId加入节点的邻居表，邻居表已满时重新选择
+     */
+    private void link(int nodeId, int newId, int level) {
+        Node node = node(nodeId);
+        synchronized (node) {
+            int[] neighbors = node.neighbors[level];
+            int count = node.counts[level];
+            if (count < neighbors.length) {
+                if (!contains(neighbors, count, newId)) {
+                    neighbors[count] = newId;
+                    node.counts[level] = count + 1;
+                }
+                return;
+            }
+        }
+        mergeNeighbors(node, level, new int[]{newId}, 1);
+    }
+
+    /**
+     * 把候选合并进节点在指定层的邻居表（持有节点的锁），已有的邻居保留；
+     * 合并后超过上限时在现有邻居和候选中按启发式重新选择
+     */
+    private void mergeNeighbors(Node node, int level, int[] added, int addedCount) {
+        synchronized (node) {
+            int[] neighbors = node.neighbors[level];
+            int count = node.counts[level];
+            int[] ids = Arrays.copyOf(neighbors, count + addedCount);
+            int total = count;
+            for (int i = 0; i < addedCount; i++) {
+                if (!contains(ids, total, added[i])) {
+                    ids[total++] = added[i];
+                }
+            }
+            if (total <= neighbors.length) {
+                System.arraycopy(ids, count, neighbors, count, total - count);
+                node.counts[level] = total;
+                return;
+            }
+            float[] distances = new float[total];
+            for (int i = 0; i < total; i++) {
+                distances[i] = distance(node.vector, node(ids[i]).vector);
+            }
+            sortByDistance(ids, distances, total);
+            int[] selected = selectNeighbors(node.vector, ids, distances, total, neighbors.length);
+            System.arraycopy(selected, 0, neighbors, 0, selected.length);
+            node.counts[level] = selected.length;
+        }
+    }
+
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sortByDistance(int[] ids, float[] distances, int count) {
+        // 邻居表很小，插入排序即可
+        for (int i = 1; i < count; i++) {
+            int id = ids[i];
+            float d = distances[i];
+            int j = i - 1;
+            while (j >= 0 && distances[j] > d) {
+                ids[j + 1] = ids[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            distances[j + 1] = d;
+        }
+    }
+
+    private int randomLevel() {
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(random) * levelMultiplier));
+    }
+
+    private static float distance(float[] a, float[] b) {
+        return 1f - Vectors.dot(a, b);
+    }
+
+    private static long pack(int level, int id) {
+        return ((long) level << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int levelOf(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    private static int idOf(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * 按距离排序的二叉堆，id和距离分别存放在基本类型数组中
+     */
+    private static final class Heap {
+        private final boolean max;
+        private int[] ids = new int[64];
+        private float[] distances = new float[64];
+        private int size;
+
+        Heap(boolean max) {
+            this.max = max;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int topId() {
+            return ids[0];
+        }
+
+        float topDistance() {
+            return distances[0];
+        }
+
+        void push(int id, float distance) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+
+        void pop() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            int id = ids[size];
+            float distance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                    child++;
+                }
+                if (!before(distances[child], distance)) {
+                    break;
+                }
+                ids[i] = ids[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /**
+     * 按线程复用的检索空间
+     */
+    private static final class Scratch {
+        final Heap candidates = new Heap(false);
+        final Heap results = new Heap(true);
+        int[] neighbors = new int[0];
+        int[] visited = new int[1024];
+        int tag;
+        int[] sortedIds = new int[64];
+        float[] sortedDistances = new float[64];
+
+        void begin(int nodeCount) {
+            candidates.clear();
+            results.clear();
+            if (visited.length < nodeCount) {
+                visited = new int[Math.max(nodeCount, visited.length * 2)];
+                tag = 0;
+            }
+            if (++tag == 0) {
+                Arrays.fill(visited, 0);
+                tag = 1;
+            }
+        }
+
+        /**
+         * 邻居缓冲区（同一线程可能使用邻居数不同的多个索引）
+         */
+        int[] neighborBuffer(int capacity) {
+            if (neighbors.length < capacity) {
+                neighbors = new int[capacity];
+            }
+            return neighbors;
+        }
+
+        /**
+         * @return 节点此前未被访问时返回true
+         */
+        boolean visit(int id) {
+            if (id >= visited.length) {
+                visited = Arrays.copyOf(visited, Math.max(id + 1, visited.length * 2));
+            }
+            if (visited[id] == tag) {
+                return false;
+            }
+            visited[id] = tag;
+            return true;
+        }
+
+        /**
+         * 取出results中的节点，按距离升序放入sortedIds / sortedDistances
+         * @param exclude 要排除的节点ID
+         * @return 数量
+         */
+        int drainAscending(int exclude) {
+            int count = results.size;
+            if (sortedIds.length < count) {
+                sortedIds = new int[count];
+                sortedDistances = new float[count];
+            }
+            int n = 0;
+            for (int i = count - 1; i >= 0; i--) {
+                int id = results.topId();
+                float distance = results.topDistance();
+                results.pop();
+                sortedIds[i] = id;
+                sortedDistances[i] = distance;
+            }
+            for (int i = 0; i < count; i++) {
+                if (sortedIds[i] != exclude) {
+                    sortedIds[n] = sortedIds[i];
+                    sortedDistances[n] = sortedDistances[i];
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.springaichat.vectorstore;
+
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+
+import java.util.Map;
+
+/**
+ * 基于HNSW索引的向量库，可直接替换SimpleVectorStore
+ * 写入时分批生成向量并插入HNSW图，检索只访问图中的少量节点，不再逐个计算所有文档的相似度。
+ * 写入与检索可并发进行；相同ID的文档再次写入时覆盖旧文档。支持相似度阈值和元数据过滤表达式
+ */
+public class HnswVectorStore extends IndexedVectorStore {
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    protected HnswVectorStore(Builder builder) {
+        super(builder.embeddingModel, builder.batchingStrategy);
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+        private final EmbeddingModel embeddingModel;
+        private BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+        private int m = HnswIndex.DEFAULT_M;
+        private int efConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+        private int efSearch = HnswIndex.DEFAULT_EF_SEARCH;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            if (embeddingModel == null) {
+                throw new IllegalArgumentException("embeddingModel不能为空");
+            }
+            this.embeddingModel = embeddingModel;
+        }
+
+        /** 写入时把文档分批生成向量的策略，默认按token数分批（与SimpleVectorStore一致） */
+        public Builder batchingStrategy(BatchingStrategy batchingStrategy) {
+            this.batchingStrategy = batchingStrategy;
+            return this;
+        }
+
+        /** 每层邻居数 */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /** 构建时的候选宽度 */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /** 检索时的候选宽度 */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public HnswVectorStore build() {
+            // 提前校验参数，维度在第一次写入时才知道
+            new HnswIndex(1, m, efConstruction, efSearch);
+            return new HnswVectorStore(this);
+        }
+    }
+
+    @Override
+    protected VectorIndex createIndex(int dimensions) {
+        return new HnswIndex(dimensions, m, efConstruction, efSearch);
+    }
+
+    @Override
+    protected void addIndexStats(VectorIndex index, Map<String, Object> stats) {
+        stats.put("m", m);
+        stats.put("efConstruction", efConstruction);
+        stats.put("efSearch", efSearch);
+    }
+}
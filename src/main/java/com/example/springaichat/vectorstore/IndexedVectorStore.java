@@ -0,0 +1,247 @@
+package com.example.springaichat.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 基于向量索引的向量库
+ * 负责文档与索引节点的对应、覆盖写入、删除、相似度阈值和元数据过滤，具体的索引结构由子类创建。
+ * 写入与检索可并发进行；相同ID的文档再次写入时覆盖旧文档。
+ * 索引的删除只做标记，被删除的节点占比超过阈值时用存活节点的向量重建索引：重建期间写入等待，检索继续使用旧索引，
+ * 重建完成后索引与节点映射一起替换
+ */
+public abstract class IndexedVectorStore implements VectorStore {
+
+    /** 被删除的节点占比超过该值时重建索引 */
+    static final double COMPACT_THRESHOLD = 0.5;
+
+    /** 节点总数达到该值后才考虑重建 */
+    static final int MIN_COMPACT_NODES = 1024;
+
+    private final EmbeddingModel embeddingModel;
+    private final BatchingStrategy batchingStrategy;
+
+    /** 当前索引及其节点映射，维度在第一次写入时确定；重建后整体替换 */
+    private volatile Generation generation;
+
+    /** 写入与删除持有读锁（可并发），重建持有写锁 */
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * 向量索引及其节点映射
+     */
+    private static final class Generation {
+        final VectorIndex index;
+
+        /** 文档ID到索引节点的映射 */
+        final Map<String, Integer> nodeIds = new ConcurrentHashMap<>();
+
+        /** 索引节点到文档的映射，已删除的节点不在其中 */
+        final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+
+        Generation(VectorIndex index) {
+            this.index = index;
+        }
+
+        void removeNode(int node) {
+            index.markDeleted(node);
+            documents.remove(node);
+        }
+    }
+
+    protected IndexedVectorStore(EmbeddingModel embeddingModel, BatchingStrategy batchingStrategy) {
+        if (embeddingModel == null) {
+            throw new IllegalArgumentException("embeddingModel不能为空");
+        }
+        this.embeddingModel = embeddingModel;
+        this.batchingStrategy = batchingStrategy;
+    }
+
+    /**
+     * 创建向量索引
+     * @param dimensions 向量维度（第一批写入的向量长度）
+     */
+    protected abstract VectorIndex createIndex(int dimensions);
+
+    /**
+     * 补充索引相关的统计项
+     * @param index 当前索引，尚未写入时为null
+     */
+    protected void addIndexStats(VectorIndex index, Map<String, Object> stats) {
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+            batchingStrategy);
+        rebuildLock.readLock().lock();
+        try {
+            Generation current = getGeneration(embeddings.get(0).length);
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                int node = current.index.add(embeddings.get(i));
+                current.documents.put(node, document);
+                Integer previous = current.nodeIds.put(document.getId(), node);
+                if (previous != null) {
+                    current.removeNode(previous);
+                }
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (generation == null) {
+            return;
+        }
+        rebuildLock.readLock().lock();
+        try {
+            Generation current = generation;
+            for (String id : idList) {
+                Integer node = current.nodeIds.remove(id);
+                if (node != null) {
+                    current.removeNode(node);
+                }
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Generation current = generation;
+        if (current == null) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (Document document : current.documents.values()) {
+            if (MetadataFilter.matches(filterExpression, document.getMetadata())) {
+                ids.add(document.getId());
+            }
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Generation current = generation;
+        if (current == null || request.getTopK() <= 0) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Document> documents = current.documents;
+        float[] query = embeddingModel.embed(request.getQuery());
+        Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        IntPredicate accept = filter == null ? null : node -> {
+            Document document = documents.get(node);
+            return document != null && MetadataFilter.matches(filter, document.getMetadata());
+        };
+
+        VectorIndex.SearchResult hits = current.index.search(query, request.getTopK(), accept);
+        List<Document> results = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            double similarity = hits.similarity(i);
+            Document document = documents.get(hits.id(i));
+            // 检索期间被删除或覆盖的文档跳过
+            if (document == null || similarity < request.getSimilarityThreshold()) {
+                continue;
+            }
+            results.add(document.mutate().score(similarity).build());
+        }
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 获取索引统计
+     * @return 文档数、索引节点数（含已删除）、维度、重建次数和索引参数
+     */
+    public Map<String, Object> getIndexStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Generation current = generation;
+        VectorIndex index = current == null ? null : current.index;
+        stats.put("documents", current == null ? 0 : current.documents.size());
+        stats.put("nodes", index == null ? 0 : index.size());
+        stats.put("dimensions", index == null ? 0 : index.getDimensions());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("similarityKernel", Vectors.kernelName());
+        addIndexStats(index, stats);
+        return stats;
+    }
+
+    /**
+     * 被删除的节点占比超过阈值时，用存活节点的向量重建索引（持有写锁，写入在此期间等待）
+     */
+    private void compactIfNeeded() {
+        if (!needsCompaction(generation)) {
+            return;
+        }
+        rebuildLock.writeLock().lock();
+        try {
+            Generation current = generation;
+            if (!needsCompaction(current)) {
+                return;
+            }
+            Generation rebuilt = new Generation(createIndex(current.index.getDimensions()));
+            for (Map.Entry<String, Integer> entry : current.nodeIds.entrySet()) {
+                int node = rebuilt.index.add(current.index.vector(entry.getValue()));
+                rebuilt.nodeIds.put(entry.getKey(), node);
+                rebuilt.documents.put(node, current.documents.get(entry.getValue()));
+            }
+            generation = rebuilt;
+            rebuilds.incrementAndGet();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    private static boolean needsCompaction(Generation current) {
+        if (current == null) {
+            return false;
+        }
+        int size = current.index.size();
+        return size >= MIN_COMPACT_NODES && size - current.index.liveSize() > size * COMPACT_THRESHOLD;
+    }
+
+    private Generation getGeneration(int dimensions) {
+        Generation current = generation;
+        if (current == null) {
+            synchronized (this) {
+                current = generation;
+                if (current == null) {
+                    current = new Generation(createIndex(dimensions));
+                    generation = current;
+                }
+            }
+        }
+        return current;
+    }
+}
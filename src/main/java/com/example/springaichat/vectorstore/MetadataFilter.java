@@ -0,0 +1,123 @@
+package com.example.springaichat.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 在文档元数据上求值Spring AI的过滤表达式
+ * 支持 AND / OR / NOT、比较运算（数字按数值比较，其他按字符串比较）和 IN / NIN
+ */
+final class MetadataFilter {
+
+    /** 值无法比较（缺失或类型不同） */
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    private MetadataFilter() {
+    }
+
+    /**
+     * @param expression 过滤表达式
+     * @param metadata 文档元数据
+     * @return 元数据满足表达式时返回true
+     */
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        switch (expression.type()) {
+            case AND:
+                return evaluate(expression.left(), metadata) && evaluate(expression.right(), metadata);
+            case OR:
+                return evaluate(expression.left(), metadata) || evaluate(expression.right(), metadata);
+            case NOT:
+                return !evaluate(expression.left(), metadata);
+            default:
+                break;
+        }
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("不支持的过滤表达式: " + expression);
+        }
+        Object actual = metadata.get(unquote(key.key()));
+        Object expected = value.value();
+        switch (expression.type()) {
+            case EQ:
+                return equalsValue(actual, expected);
+            case NE:
+                return !equalsValue(actual, expected);
+            case GT:
+                return compare(actual, expected) > 0;
+            case GTE:
+                return compare(actual, expected) >= 0;
+            case LT: {
+                int result = compare(actual, expected);
+                return result != INCOMPARABLE && result < 0;
+            }
+            case LTE: {
+                int result = compare(actual, expected);
+                return result != INCOMPARABLE && result <= 0;
+            }
+            case IN:
+                return contains(expected, actual);
+            case NIN:
+                return !contains(expected, actual);
+            default:
+                throw new IllegalArgumentException("不支持的过滤运算: " + expression.type());
+        }
+    }
+
+    private static boolean evaluate(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return matches(expression, metadata);
+        }
+        throw new IllegalArgumentException("不支持的过滤表达式: " + operand);
+    }
+
+    private static boolean equalsValue(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        return Objects.equals(actual, expected) || actual.toString().equals(expected.toString());
+    }
+
+    /**
+     * 比较大小
+     * @return 比较结果的符号；无法比较时为{@link #INCOMPARABLE}，不满足任何比较
+     */
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Integer.signum(Double.compare(a.doubleValue(), b.doubleValue()));
+        }
+        if (actual == null || expected == null || actual instanceof Number || expected instanceof Number) {
+            return INCOMPARABLE;
+        }
+        return Integer.signum(actual.toString().compareTo(expected.toString()));
+    }
+
+    private static boolean contains(Object values, Object actual) {
+        if (values instanceof Collection<?> collection) {
+            for (Object value : collection) {
+                if (equalsValue(actual, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return equalsValue(actual, values);
+    }
+
+    /**
+     * 表达式解析器保留了键两侧的引号时去掉
+     */
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.springaichat.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 堆外向量存储
+ * 向量按节点ID顺序写入堆外直接内存分块，堆上只保留分块数组。
+ * 写入由调用方串行化且ID连续；读取只使用绝对位置，可与写入并发（调用方保证只读已发布的ID）
+ */
+final class OffHeapVectorStorage {
+
+    /** 分块大小（字节） */
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private final int dimensions;
+    private final int vectorsPerChunk;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    OffHeapVectorStorage(int dimensions) {
+        this.dimensions = dimensions;
+        this.vectorsPerChunk = Math.max(1, CHUNK_BYTES / (dimensions * Float.BYTES));
+    }
+
+    /**
+     * 写入向量
+     * @param id 节点ID，必须等于已写入的向量数
+     */
+    void write(int id, float[] vector) {
+        int chunk = id / vectorsPerChunk;
+        ByteBuffer[] current = chunks;
+        if (chunk >= current.length) {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = ByteBuffer.allocateDirect(vectorsPerChunk * dimensions * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+            chunks = current;
+        }
+        ByteBuffer buffer = current[chunk];
+        int base = (id % vectorsPerChunk) * dimensions * Float.BYTES;
+        for (int d = 0; d < dimensions; d++) {
+            buffer.putFloat(base + d * Float.BYTES, vector[d]);
+        }
+    }
+
+    /**
+     * 查询向量与已存向量的内积
+     */
+    float dot(int id, float[] query) {
+        ByteBuffer buffer = chunks[id / vectorsPerChunk];
+        int base = (id % vectorsPerChunk) * dimensions * Float.BYTES;
+        return Vectors.dot(query, buffer, base);
+    }
+
+    /**
+     * 读取已存向量
+     */
+    float[] read(int id) {
+        ByteBuffer buffer = chunks[id / vectorsPerChunk];
+        int base = (id % vectorsPerChunk) * dimensions * Float.BYTES;
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = buffer.getFloat(base + d * Float.BYTES);
+        }
+        return vector;
+    }
+
+    /** 已分配的堆外内存（字节） */
+    long allocatedBytes() {
+        return (long) chunks.length * vectorsPerChunk * dimensions * Float.BYTES;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.springaichat.vectorstore;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 乘积量化（PQ）
+ * 向量切分为若干连续子空间，每个子空间用k-means训练最多256个中心，向量按子空间存最近中心的序号（每个子空间1字节）。
+ * 检索时先为查询向量计算各子空间与所有中心的内积表，编码向量的近似内积就是按编码查表求和
+ */
+final class ProductQuantizer {
+
+    /** 每个子空间的中心数上限（编码为1字节） */
+    static final int MAX_CENTROIDS = 256;
+
+    private final int dimensions;
+    private final int subspaces;
+    private final int centroids;
+
+    /** 子空间边界，第s个子空间为[bounds[s], bounds[s + 1]) */
+    private final int[] bounds;
+
+    /** 各子空间的中心，按中心序号连续存放 */
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int dimensions, int subspaces, int centroids, int[] bounds, float[][] codebooks) {
+        this.dimensions = dimensions;
+        this.subspaces = subspaces;
+        this.centroids = centroids;
+        this.bounds = bounds;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * 训练码本
+     * @param samples 训练向量（前count个有效）
+     * @param count 训练向量数
+     * @param subspaces 子空间数，即每个向量的编码字节数
+     * @param iterations k-means迭代次数
+     * @param seed 随机种子，相同输入得到相同码本
+     */
+    static ProductQuantizer train(float[][] samples, int count, int subspaces, int iterations, long seed) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("训练向量不能为空");
+        }
+        int dimensions = samples[0].length;
+        if (subspaces <= 0 || subspaces > dimensions) {
+            throw new IllegalArgumentException("子空间数必须在1到维度之间: " + subspaces);
+        }
+        int centroids = Math.min(MAX_CENTROIDS, count);
+        int[] bounds = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            bounds[s] = (int) ((long) s * dimensions / subspaces);
+        }
+        float[][] codebooks = new float[subspaces][];
+        Random random = new Random(seed);
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = kMeans(samples, count, bounds[s], bounds[s + 1] - bounds[s], centroids, iterations, random);
+        }
+        return new ProductQuantizer(dimensions, subspaces, centroids, bounds, codebooks);
+    }
+
+    /**
+     * 编码向量
+     * @param vector 向量
+     * @param codes 输出编码
+     * @param offset 编码起始位置，写入subspaces个字节
+     */
+    void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[offset + s] = (byte) nearest(vector, bounds[s], bounds[s + 1] - bounds[s], codebooks[s], centroids);
+        }
+    }
+
+    /**
+     * 计算查询向量在各子空间与所有中心的内积表
+     * @return 第s个子空间第c个中心的内积位于 s * MAX_CENTROIDS + c
+     */
+    float[] lookupTable(float[] query) {
+        float[] table = new float[subspaces * MAX_CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int from = bounds[s];
+            int width = bounds[s + 1] - from;
+            float[] codebook = codebooks[s];
+            for (int c = 0; c < centroids; c++) {
+                table[s * MAX_CENTROIDS + c] = Vectors.dot(query, from, codebook, c * width, width);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 按内积表计算编码向量的近似内积
+     */
+    float score(float[] table, byte[] codes, int offset) {
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            sum += table[s * MAX_CENTROIDS + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    int getSubspaces() { return subspaces; }
+
+    /** 码本占用的堆内存（字节） */
+    long codebookBytes() {
+        return (long) centroids * dimensions * Float.BYTES;
+    }
+
+    private static float[] kMeans(float[][] samples, int count, int from, int width, int k, int iterations,
+                                  Random random) {
+        // 随机选取不重复的样本作为初始中心
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        float[] centers = new float[k * width];
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(samples[order[c]], from, centers, c * width, width);
+        }
+
+        double[] sums = new double[k * width];
+        int[] sizes = new int[k];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(sizes, 0);
+            for (int i = 0; i < count; i++) {
+                float[] sample = samples[i];
+                int c = nearest(sample, from, width, centers, k);
+                sizes[c]++;
+                int base = c * width;
+                for (int d = 0; d < width; d++) {
+                    sums[base + d] += sample[from + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                int base = c * width;
+                if (sizes[c] == 0) {
+                    // 空簇重新取一个随机样本，避免中心浪费
+                    System.arraycopy(samples[random.nextInt(count)], from, centers, base, width);
+                    continue;
+                }
+                for (int d = 0; d < width; d++) {
+                    centers[base + d] = (float) (sums[base + d] / sizes[c]);
+                }
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * 子空间内欧氏距离最近的中心
+     */
+    private static int nearest(float[] vector, int from, int width, float[] centers, int k) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = Vectors.l2Squared(vector, from, centers, c * width, width);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.springaichat.vectorstore;
+
+import com.example.springaichat.search.TopKSelector;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
+/**
+ * 量化向量索引
+ * 堆上只保存压缩编码（int8标量量化每维1字节，乘积量化每个子空间1字节），归一化后的原始向量存放在堆外。
+ * 检索时先用压缩编码为所有节点计算近似相似度，取 k × 重排倍数 个候选，再按原始向量计算精确相似度重排取前k个。
+ * 乘积量化需要先用前trainingSize个向量训练码本，训练前按原始向量精确扫描；码本在写锁外训练，训练期间写入照常进行，
+ * 训练失败时继续精确扫描，等向量数翻倍后再训练。写入、删除标记和扩容串行化，检索不加锁，可与写入并发
+ */
+@Slf4j
+public final class QuantizedVectorIndex implements VectorIndex {
+
+    /** 默认重排倍数 */
+    public static final int DEFAULT_RERANK_FACTOR = 4;
+
+    /** 乘积量化默认的码本训练向量数 */
+    public static final int DEFAULT_TRAINING_SIZE = 4096;
+
+    private static final int TRAINING_ITERATIONS = 10;
+    private static final long TRAINING_SEED = 42L;
+
+    /**
+     * 量化方式
+     */
+    public enum Quantization {
+        /** int8标量量化，每维1字节 */
+        INT8,
+        /** 乘积量化，每个子空间1字节 */
+        PQ;
+
+        public static Quantization parse(String value) {
+            if (value == null || value.isBlank()) {
+                return INT8;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final int dimensions;
+    private final Quantization quantization;
+    private final int codeSize;
+    private final int rerankFactor;
+    private final int trainingSize;
+
+    /** 原始向量（已归一化），用于重排 */
+    private final OffHeapVectorStorage exact;
+
+    /** 保护写入、删除标记、扩容和码本发布 */
+    private final Object writeLock = new Object();
+
+    /** 压缩编码，扩容时整体替换（持有写锁） */
+    private volatile Codes codes;
+
+    /** 乘积量化码本，训练前为null */
+    private volatile ProductQuantizer productQuantizer;
+
+    /** 已发布的节点数，检索只读取此数量以内的节点 */
+    private volatile int count;
+
+    private volatile int deletedCount;
+
+    /** 码本是否正在训练（持有写锁读写） */
+    private boolean training;
+
+    /** 向量数达到此值时开始训练码本，训练失败后翻倍（持有写锁读写） */
+    private int nextTrainingSize;
+
+    /**
+     * 压缩编码、缩放系数和删除标记
+     */
+    private static final class Codes {
+        final byte[] codes;
+        final float[] scales;
+        final boolean[] deleted;
+
+        Codes(int capacity, int codeSize, boolean scaled) {
+            this.codes = new byte[capacity * codeSize];
+            this.scales = scaled ? new float[capacity] : null;
+            this.deleted = new boolean[capacity];
+        }
+
+        Codes(Codes previous, int capacity, int codeSize) {
+            this.codes = Arrays.copyOf(previous.codes, capacity * codeSize);
+            this.scales = previous.scales == null ? null : Arrays.copyOf(previous.scales, capacity);
+            this.deleted = Arrays.copyOf(previous.deleted, capacity);
+        }
+
+        int capacity() {
+            return deleted.length;
+        }
+    }
+
+    /**
+     * int8标量量化索引
+     */
+    public QuantizedVectorIndex(int dimensions) {
+        this(dimensions, Quantization.INT8, 0, DEFAULT_RERANK_FACTOR, DEFAULT_TRAINING_SIZE);
+    }
+
+    /**
+     * @param dimensions 向量维度
+     * @param quantization 量化方式
+     * @param pqSubspaces 乘积量化的子空间数（每个向量的编码字节数），0表示取维度的1/8
+     * @param rerankFactor 重排倍数，0表示不重排，直接返回压缩编码的近似相似度
+     * @param trainingSize 乘积量化的码本训练向量数
+     */
+    public QuantizedVectorIndex(int dimensions, Quantization quantization, int pqSubspaces, int rerankFactor,
+                                int trainingSize) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("向量维度必须大于0: " + dimensions);
+        }
+        if (rerankFactor < 0) {
+            throw new IllegalArgumentException("重排倍数不能小于0: " + rerankFactor);
+        }
+        if (quantization == Quantization.PQ) {
+            pqSubspaces = pqSubspaces == 0 ? Math.max(1, dimensions / 8) : pqSubspaces;
+            if (pqSubspaces < 0 || pqSubspaces > dimensions) {
+                throw new IllegalArgumentException("子空间数必须在1到维度之间: " + pqSubspaces);
+            }
+            if (trainingSize <= 0) {
+                throw new IllegalArgumentException("训练向量数必须大于0: " + trainingSize);
+            }
+        }
+        this.dimensions = dimensions;
+        this.quantization = quantization;
+        this.codeSize = quantization == Quantization.PQ ? pqSubspaces : dimensions;
+        this.rerankFactor = rerankFactor;
+        this.trainingSize = trainingSize;
+        this.nextTrainingSize = trainingSize;
+        this.exact = new OffHeapVectorStorage(dimensions);
+        this.codes = new Codes(0, codeSize, quantization == Quantization.INT8);
+    }
+
+    @Override
+    public int add(float[] vector) {
+        float[] normalized = Vectors.normalize(vector, dimensions);
+        int id;
+        boolean startTraining = false;
+        synchronized (writeLock) {
+            id = count;
+            Codes current = codes;
+            if (id >= current.capacity()) {
+                current = new Codes(current, Math.max(16, current.capacity() + (current.capacity() >> 1)), codeSize);
+                codes = current;
+            }
+            exact.write(id, normalized);
+            if (quantization == Quantization.INT8) {
+                current.scales[id] = ScalarQuantizer.encode(normalized, current.codes, id * codeSize);
+            } else if (productQuantizer != null) {
+                productQuantizer.encode(normalized, current.codes, id * codeSize);
+            } else if (!training && id + 1 >= nextTrainingSize) {
+                training = true;
+                startTraining = true;
+            }
+            count = id + 1;
+        }
+        if (startTraining) {
+            train(id + 1);
+        }
+        return id;
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k, IntPredicate accept) {
+        return search(query, k, rerankFactor, accept);
+    }
+
+    /**
+     * 使用指定的重排倍数检索
+     * @param rerankFactor 重排倍数，0表示不重排
+     */
+    public SearchResult search(float[] query, int k, int rerankFactor, IntPredicate accept) {
+        // 先读码本再读节点数：读到码本时，此后读到的节点都已有编码
+        ProductQuantizer quantizer = productQuantizer;
+        int size = count;
+        Codes current = codes;
+        if (size == 0 || k <= 0) {
+            return new SearchResult(new int[0], new float[0], 0);
+        }
+        float[] normalized = Vectors.normalize(query, dimensions);
+        boolean approximate = quantization == Quantization.INT8 || quantizer != null;
+        float[] table = quantizer == null ? null : quantizer.lookupTable(normalized);
+        int candidates = approximate && rerankFactor > 0 ? (int) Math.min((long) k * rerankFactor, size) : k;
+
+        TopKSelector selector = new TopKSelector(candidates);
+        for (int id = 0; id < size; id++) {
+            if (current.deleted[id] || (accept != null && !accept.test(id))) {
+                continue;
+            }
+            float score;
+            if (!approximate) {
+                score = exact.dot(id, normalized);
+            } else if (table != null) {
+                score = quantizer.score(table, current.codes, id * codeSize);
+            } else {
+                score = ScalarQuantizer.dot(normalized, current.codes, id * codeSize, current.scales[id]);
+            }
+            selector.offer(id, score);
+        }
+        int[] ids = new int[selector.size()];
+        double[] scores = new double[ids.length];
+        int found = selector.drainDescending(ids, scores);
+
+        if (approximate && rerankFactor > 0) {
+            // 候选按原始向量重排
+            TopKSelector reranked = new TopKSelector(k);
+            for (int i = 0; i < found; i++) {
+                reranked.offer(ids[i], exact.dot(ids[i], normalized));
+            }
+            found = reranked.drainDescending(ids, scores);
+        }
+        float[] similarities = new float[found];
+        for (int i = 0; i < found; i++) {
+            similarities[i] = (float) scores[i];
+        }
+        return new SearchResult(ids, similarities, found);
+    }
+
+    @Override
+    public boolean markDeleted(int id) {
+        synchronized (writeLock) {
+            if (id < 0 || id >= count) {
+                throw new IllegalArgumentException("节点不存在: " + id);
+            }
+            // 扩容同样持有写锁，删除标记不会写进即将被替换的旧编码
+            Codes current = codes;
+            if (current.deleted[id]) {
+                return false;
+            }
+            current.deleted[id] = true;
+            deletedCount++;
+            // 重新发布，使之后读取编码的检索看到删除标记
+            codes = current;
+            return true;
+        }
+    }
+
+    @Override
+    public float[] vector(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("节点不存在: " + id);
+        }
+        return exact.read(id);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int liveSize() {
+        return count - deletedCount;
+    }
+
+    @Override
+    public int getDimensions() { return dimensions; }
+
+    public Quantization getQuantization() { return quantization; }
+
+    /** 每个向量的压缩编码字节数 */
+    public int getCodeSize() { return codeSize; }
+
+    public int getRerankFactor() { return rerankFactor; }
+
+    /** 乘积量化码本是否已训练（int8量化始终为true） */
+    public boolean isTrained() {
+        return quantization == Quantization.INT8 || productQuantizer != null;
+    }
+
+    /**
+     * 每个向量占用的堆内存：压缩编码 + 缩放系数（int8）+ 删除标记
+     */
+    public int heapBytesPerVector() {
+        return codeSize + (quantization == Quantization.INT8 ? Float.BYTES : 0) + 1;
+    }
+
+    /**
+     * 每个向量占用的堆外内存：重排用的原始向量
+     */
+    public int offHeapBytesPerVector() {
+        return dimensions * Float.BYTES;
+    }
+
+    /** 乘积量化码本占用的堆内存（字节），与向量数无关 */
+    public long codebookBytes() {
+        ProductQuantizer quantizer = productQuantizer;
+        return quantizer == null ? 0 : quantizer.codebookBytes();
+    }
+
+    /** 已分配的堆外内存（字节） */
+    public long offHeapAllocatedBytes() {
+        return exact.allocatedBytes();
+    }
+
+    /**
+     * 用前size个向量训练码本并为它们编码（不持有写锁），
+     * 再在写锁内把编码写入当前的压缩编码、补齐训练期间写入的向量后发布码本。
+     * 训练失败不影响已写入的向量，只记录日志并继续精确扫描，向量数达到本次的两倍时再训练
+     */
+    private void train(int size) {
+        try {
+            float[][] samples = new float[size][];
+            for (int id = 0; id < size; id++) {
+                samples[id] = exact.read(id);
+            }
+            ProductQuantizer quantizer = ProductQuantizer.train(samples, size, codeSize, TRAINING_ITERATIONS,
+                TRAINING_SEED);
+            byte[] encoded = new byte[size * codeSize];
+            for (int id = 0; id < size; id++) {
+                quantizer.encode(samples[id], encoded, id * codeSize);
+            }
+            synchronized (writeLock) {
+                // 训练期间可能已扩容，写入此时发布的编码
+                Codes current = codes;
+                System.arraycopy(encoded, 0, current.codes, 0, encoded.length);
+                for (int id = size; id < count; id++) {
+                    quantizer.encode(exact.read(id), current.codes, id * codeSize);
+                }
+                // 编码全部写入后再发布码本
+                productQuantizer = quantizer;
+            }
+        } catch (RuntimeException e) {
+            int retryAt = (int) Math.min(Integer.MAX_VALUE, 2L * size);
+            synchronized (writeLock) {
+                nextTrainingSize = retryAt;
+            }
+            log.warn("乘积量化码本训练失败，继续精确扫描，向量数达到 {} 时重新训练: {}", retryAt, e.toString());
+        } finally {
+            synchronized (writeLock) {
+                training = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.springaichat.vectorstore;
+
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+
+import java.util.Map;
+
+/**
+ * 基于量化索引的向量库，可直接替换SimpleVectorStore
+ * 堆上只保存压缩编码，检索按压缩编码粗排后用原始向量重排，适合向量数多、堆内存受限的场景。
+ * 写入与检索可并发进行；相同ID的文档再次写入时覆盖旧文档。支持相似度阈值和元数据过滤表达式
+ */
+public class QuantizedVectorStore extends IndexedVectorStore {
+
+    private final QuantizedVectorIndex.Quantization quantization;
+    private final int pqSubspaces;
+    private final int rerankFactor;
+    private final int trainingSize;
+
+    protected QuantizedVectorStore(Builder builder) {
+        super(builder.embeddingModel, builder.batchingStrategy);
+        this.quantization = builder.quantization;
+        this.pqSubspaces = builder.pqSubspaces;
+        this.rerankFactor = builder.rerankFactor;
+        this.trainingSize = builder.trainingSize;
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+        private final EmbeddingModel embeddingModel;
+        private BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+        private QuantizedVectorIndex.Quantization quantization = QuantizedVectorIndex.Quantization.INT8;
+        private int pqSubspaces;
+        private int rerankFactor = QuantizedVectorIndex.DEFAULT_RERANK_FACTOR;
+        private int trainingSize = QuantizedVectorIndex.DEFAULT_TRAINING_SIZE;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            if (embeddingModel == null) {
+                throw new IllegalArgumentException("embeddingModel不能为空");
+            }
+            this.embeddingModel = embeddingModel;
+        }
+
+        /** 写入时把文档分批生成向量的策略，默认按token数分批（与SimpleVectorStore一致） */
+        public Builder batchingStrategy(BatchingStrategy batchingStrategy) {
+            this.batchingStrategy = batchingStrategy;
+            return this;
+        }
+
+        /** 量化方式，默认int8 */
+        public Builder quantization(QuantizedVectorIndex.Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /** 乘积量化的子空间数（每个向量的编码字节数），0表示取维度的1/8 */
+        public Builder pqSubspaces(int pqSubspaces) {
+            this.pqSubspaces = pqSubspaces;
+            return this;
+        }
+
+        /** 重排倍数，0表示不重排 */
+        public Builder rerankFactor(int rerankFactor) {
+            this.rerankFactor = rerankFactor;
+            return this;
+        }
+
+        /** 乘积量化的码本训练向量数 */
+        public Builder trainingSize(int trainingSize) {
+            this.trainingSize = trainingSize;
+            return this;
+        }
+
+        public QuantizedVectorStore build() {
+            if (quantization == null) {
+                throw new IllegalArgumentException("quantization不能为空");
+            }
+            if (rerankFactor < 0) {
+                throw new IllegalArgumentException("重排倍数不能小于0: " + rerankFactor);
+            }
+            // 子空间数与维度的关系在第一次写入、知道维度时校验
+            if (quantization == QuantizedVectorIndex.Quantization.PQ) {
+                if (pqSubspaces < 0) {
+                    throw new IllegalArgumentException("子空间数不能小于0: " + pqSubspaces);
+                }
+                if (trainingSize <= 0) {
+                    throw new IllegalArgumentException("训练向量数必须大于0: " + trainingSize);
+                }
+            }
+            return new QuantizedVectorStore(this);
+        }
+    }
+
+    @Override
+    protected VectorIndex createIndex(int dimensions) {
+        if (quantization == QuantizedVectorIndex.Quantization.PQ && pqSubspaces > dimensions) {
+            throw new IllegalArgumentException("乘积量化的子空间数不能大于向量维度: 子空间数 " + pqSubspaces
+                + "，向量维度 " + dimensions);
+        }
+        return new QuantizedVectorIndex(dimensions, quantization, pqSubspaces, rerankFactor, trainingSize);
+    }
+
+    @Override
+    protected void addIndexStats(VectorIndex index, Map<String, Object> stats) {
+        stats.put("quantization", quantization.name());
+        stats.put("rerankFactor", rerankFactor);
+        if (index instanceof QuantizedVectorIndex quantized) {
+            stats.put("codeBytes", quantized.getCodeSize());
+            stats.put("trained", quantized.isTrained());
+            stats.put("heapBytesPerVector", quantized.heapBytesPerVector());
+            stats.put("offHeapBytesPerVector", quantized.offHeapBytesPerVector());
+            stats.put("codebookBytes", quantized.codebookBytes());
+        }
+    }
+}
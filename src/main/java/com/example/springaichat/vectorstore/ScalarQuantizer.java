@@ -0,0 +1,46 @@
+package com.example.springaichat.vectorstore;
+
+/**
+ * int8标量量化
+ * 每个向量单独计算缩放系数（分量绝对值的最大值 / 127），分量对称映射到[-127, 127]，
+ * 每维1字节，内积由int8编码乘缩放系数近似
+ */
+final class ScalarQuantizer {
+
+    private static final float LEVELS = 127f;
+
+    private ScalarQuantizer() {
+    }
+
+    /**
+     * 编码向量
+     * @param vector 向量
+     * @param codes 输出编码
+     * @param offset 编码起始位置
+     * @return 缩放系数，解码值 = 编码 × 缩放系数
+     */
+    static float encode(float[] vector, byte[] codes, int offset) {
+        float max = 0f;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        if (max == 0f) {
+            for (int i = 0; i < vector.length; i++) {
+                codes[offset + i] = 0;
+            }
+            return 0f;
+        }
+        float inverse = LEVELS / max;
+        for (int i = 0; i < vector.length; i++) {
+            codes[offset + i] = (byte) Math.round(vector[i] * inverse);
+        }
+        return max / LEVELS;
+    }
+
+    /**
+     * 查询向量与编码向量的近似内积
+     */
+    static float dot(float[] query, byte[] codes, int offset, float scale) {
+        return Vectors.dot(query, codes, offset) * scale;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.springaichat.vectorstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量相似度计算内核
+ * 有标量实现和基于JDK Vector API的SIMD实现，运行时由Vectors选择
+ */
+interface SimilarityKernel {
+
+    /** 内核名称，用于日志和基准测试 */
+    String name();
+
+    /**
+     * a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的内积
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的欧氏距离平方
+     */
+    float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 余弦相似度，任一向量为零向量时返回0
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * 查询向量与int8编码 codes[offset, offset + query.length) 的内积（未乘缩放系数）
+     */
+    float dot(float[] query, byte[] codes, int offset);
+
+    /**
+     * 查询向量与堆外缓冲区中从byteOffset开始、按本机字节序存放的向量的内积
+     */
+    float dot(float[] query, ByteBuffer vectors, int byteOffset);
+}
@@ -0,0 +1,68 @@
+package com.example.springaichat.vectorstore;
+
+import java.util.function.IntPredicate;
+
+/**
+ * 向量索引
+ * 向量按余弦相似度检索，节点ID从0开始按写入顺序分配；删除只做标记，
+ * 被删除的节点由{@link IndexedVectorStore}在占比过高时用存活节点的向量重建索引回收
+ */
+public interface VectorIndex {
+
+    /**
+     * 写入向量（可与其他写入和检索并发调用）
+     * @param vector 向量，不会被修改
+     * @return 节点ID
+     */
+    int add(float[] vector);
+
+    /**
+     * 检索最相似的向量
+     * @param query 查询向量
+     * @param k 返回数量
+     * @param accept 节点过滤条件，为null时不过滤
+     * @return 检索结果，被删除或不满足条件的节点不会出现
+     */
+    SearchResult search(float[] query, int k, IntPredicate accept);
+
+    /**
+     * 标记删除
+     * @param id 节点ID
+     * @return 节点此前未被删除时返回true
+     */
+    boolean markDeleted(int id);
+
+    /**
+     * 节点的向量（已归一化），用于重建索引
+     * @param id 节点ID
+     * @return 向量，调用方不能修改
+     */
+    float[] vector(int id);
+
+    /** 节点总数（含已删除） */
+    int size();
+
+    /** 未删除的节点数 */
+    int liveSize();
+
+    int getDimensions();
+
+    /**
+     * 检索结果，按相似度降序
+     */
+    final class SearchResult {
+        private final int[] ids;
+        private final float[] similarities;
+        private final int size;
+
+        SearchResult(int[] ids, float[] similarities, int size) {
+            this.ids = ids;
+            this.similarities = similarities;
+            this.size = size;
+        }
+
+        public int size() { return size; }
+        public int id(int index) { return ids[index]; }
+        public float similarity(int index) { return similarities[index]; }
+    }
+}
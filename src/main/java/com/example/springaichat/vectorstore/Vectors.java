@@ -0,0 +1,113 @@
+package com.example.springaichat.vectorstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量运算
+ * 相似度计算委托给运行时选择的内核：以simd配置构建（mvn -Psimd，SIMD内核位于src/main/java-simd）、
+ * JVM加载了jdk.incubator.vector模块（--add-modules jdk.incubator.vector）且本机支持至少4通道的浮点向量时
+ * 使用SIMD实现，否则使用标量实现。指定 -Dvector.simd.enabled=false 时强制使用标量实现
+ */
+final class Vectors {
+
+    private static final String SIMD_KERNEL = "com.example.springaichat.vectorstore.SimdSimilarityKernel";
+
+    private static final SimilarityKernel KERNEL = selectKernel();
+
+    private Vectors() {
+    }
+
+    /**
+     * 当前使用的内核名称
+     */
+    static String kernelName() {
+        return KERNEL.name();
+    }
+
+    static SimilarityKernel kernel() {
+        return KERNEL;
+    }
+
+    /**
+     * 创建SIMD内核
+     * @return SIMD内核，未编译SIMD内核、模块不可用或本机不支持时返回null
+     */
+    static SimilarityKernel simdKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName(SIMD_KERNEL);
+            // 通道数太少时SIMD没有收益
+            if ((int) type.getDeclaredMethod("lanes").invoke(null) < 4) {
+                return null;
+            }
+            return (SimilarityKernel) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * 归一化为单位向量（零向量保持为零）
+     * @param vector 向量，不会被修改
+     * @param dimensions 期望的维度
+     * @return 新的单位向量
+     */
+    static float[] normalize(float[] vector, int dimensions) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不一致: 期望 " + dimensions + "，实际 " + vector.length);
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[dimensions];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, 0, b, 0, a.length);
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    static float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.l2Squared(a, aOffset, b, bOffset, length);
+    }
+
+    static float cosine(float[] a, float[] b) {
+        return KERNEL.cosine(a, b);
+    }
+
+    /**
+     * 查询向量与int8编码的内积（未乘缩放系数）
+     */
+    static float dot(float[] query, byte[] codes, int offset) {
+        return KERNEL.dot(query, codes, offset);
+    }
+
+    /**
+     * 查询向量与堆外向量的内积
+     */
+    static float dot(float[] query, ByteBuffer vectors, int byteOffset) {
+        return KERNEL.dot(query, vectors, byteOffset);
+    }
+
+    private static SimilarityKernel selectKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("vector.simd.enabled", "true"))) {
+            return ScalarSimilarityKernel.INSTANCE;
+        }
+        SimilarityKernel simd = simdKernel();
+        return simd == null ? ScalarSimilarityKernel.INSTANCE : simd;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.springaichat.embedding;
+
+import com.example.springaichat.vectorstore.HnswVectorStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingEmbeddingModelTests {
+
+    @Test
+    void reingestingTheSameCorpusNeedsNoEmbeddingCalls() throws IOException {
+        Path file = Files.createTempDirectory("embedding-cache").resolve("embeddings.bin");
+        List<Document> corpus = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            corpus.add(Document.builder().id("p" + i).text("第" + i + "页 内容").build());
+        }
+
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            HnswVectorStore store = HnswVectorStore.builder(new CachingEmbeddingModel(model, cache, "test", 0)).build();
+            store.add(corpus);
+            assertEquals(30, model.texts);
+            // 同一批内重复的文本只生成一次
+            new CachingEmbeddingModel(model, cache, "test", 0).embed(documents("新文本", "新文本", "第1页 内容"),
+                null, new TokenCountBatchingStrategy());
+            assertEquals(31, model.texts);
+        }
+
+        // 重启后重新入库同一批文档
+        model = new CountingEmbeddingModel();
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            HnswVectorStore store = HnswVectorStore.builder(new CachingEmbeddingModel(model, cache, "test", 0)).build();
+            store.add(corpus);
+            assertEquals(0, model.calls);
+
+            // 换了模型时缓存不命中
+            CachingEmbeddingModel other = new CachingEmbeddingModel(model, cache, "other", 0);
+            assertArrayEquals(CountingEmbeddingModel.vector("第1页 内容"),
+                other.embed(documents("第1页 内容"), null, new TokenCountBatchingStrategy()).get(0));
+            assertEquals(1, model.calls);
+        }
+    }
+
+    @Test
+    void queriesBypassTheCache() throws IOException {
+        Path file = Files.createTempDirectory("embedding-cache").resolve("embeddings.bin");
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            CachingEmbeddingModel caching = new CachingEmbeddingModel(model, cache, "test", 0);
+            assertArrayEquals(CountingEmbeddingModel.vector("轿车多久保养一次"), caching.embed("轿车多久保养一次"));
+            caching.embed("轿车多久保养一次");
+            assertEquals(2, model.calls);
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    void missesAreBatchedWithTheGivenStrategy() throws IOException {
+        Path file = Files.createTempDirectory("embedding-cache").resolve("embeddings.bin");
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        BatchingStrategy pairs = documents -> {
+            List<List<Document>> batches = new ArrayList<>();
+            for (int i = 0; i < documents.size(); i += 2) {
+                batches.add(documents.subList(i, Math.min(documents.size(), i + 2)));
+            }
+            return batches;
+        };
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            CachingEmbeddingModel caching = new CachingEmbeddingModel(model, cache, "test", 0);
+            caching.embed(documents("a", "b"), null, pairs);
+            assertEquals(1, model.calls);
+
+            // 已缓存a、b，其余5个未命中的文本按每批2条分3批
+            List<float[]> vectors = caching.embed(documents("a", "c", "d", "b", "e", "f", "g"), null, pairs);
+            assertEquals(4, model.calls);
+            assertEquals(7, model.texts);
+            assertArrayEquals(CountingEmbeddingModel.vector("e"), vectors.get(4));
+        }
+    }
+
+    private static List<Document> documents(String... texts) {
+        List<Document> documents = new ArrayList<>();
+        for (String text : texts) {
+            documents.add(new Document(text));
+        }
+        return documents;
+    }
+
+    /**
+     * 记录调用次数的确定性模型：按字符的码点散列到固定维度
+     */
+    private static final class CountingEmbeddingModel implements EmbeddingModel {
+        private int calls;
+        private int texts;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls++;
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                texts++;
+                embeddings.add(new Embedding(vector(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getText());
+        }
+
+        static float[] vector(String text) {
+            float[] vector = new float[16];
+            for (int i = 0; i < text.length(); i++) {
+                vector[(text.charAt(i) * 31 + i) % vector.length] += 1f;
+            }
+            return vector;
+        }
+    }
+}
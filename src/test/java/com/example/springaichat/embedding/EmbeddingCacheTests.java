@@ -0,0 +1,66 @@
+package com.example.springaichat.embedding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmbeddingCacheTests {
+
+    @Test
+    void vectorsSurviveReopenAndKeysIncludeModelAndDimensions() throws IOException {
+        Path file = Files.createTempDirectory("embedding-cache").resolve("cache/embeddings.bin");
+        byte[] hello = EmbeddingCache.sha256("你好");
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            cache.put("model-a", 0, hello, new float[]{1f, 2f, 3f});
+            cache.put("model-a", 2, hello, new float[]{4f, 5f});
+            assertArrayEquals(new float[]{1f, 2f, 3f}, cache.get("model-a", 0, hello));
+            assertNull(cache.get("model-b", 0, hello));
+            assertNull(cache.get("model-a", 0, EmbeddingCache.sha256("再见")));
+            // 同一个键再次写入时以最后一条为准
+            cache.put("model-a", 0, hello, new float[]{7f, 8f, 9f});
+            assertEquals(2, cache.size());
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(new float[]{7f, 8f, 9f}, cache.get("model-a", 0, hello));
+            assertArrayEquals(new float[]{4f, 5f}, cache.get("model-a", 2, hello));
+            assertEquals(0L, cache.getStats().get("discardedBytes"));
+        }
+    }
+
+    @Test
+    void truncatedTailIsDiscardedOnOpen() throws IOException {
+        Path file = Files.createTempFile("embedding-cache", ".bin");
+        byte[] first = EmbeddingCache.sha256("第一段");
+        byte[] second = EmbeddingCache.sha256("第二段");
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            cache.put("model", 0, first, new float[]{1f, 1f});
+            cache.put("model", 0, second, new float[]{2f, 2f});
+        }
+        // 模拟写到一半时进程退出
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(new float[]{1f, 1f}, cache.get("model", 0, first));
+            assertNull(cache.get("model", 0, second));
+            assertEquals(size - 3 - Files.size(file), cache.getStats().get("discardedBytes"));
+            // 截掉后继续追加
+            cache.put("model", 0, second, new float[]{3f, 3f});
+            assertArrayEquals(new float[]{3f, 3f}, cache.get("model", 0, second));
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(file)) {
+            assertEquals(2, cache.size());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.springaichat.embedding;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingPipelineTests {
+
+    @Test
+    void chunksArePackedIntoTokenBoundedBatchesInOrder() throws Exception {
+        try (StubEmbeddingServer server = new StubEmbeddingServer();
+             EmbeddingPipeline pipeline = EmbeddingPipeline.builder(openAi(server))
+                 .maxBatchTokens(30).maxBatchSize(10).maxInFlight(2).build()) {
+            // 20个汉字估算为30个token，独占一批；其余每段2个token，每批受条数上限限制
+            List<String> texts = new ArrayList<>();
+            texts.add("向量".repeat(10));
+            for (int i = 0; i < 24; i++) {
+                texts.add("chunk " + i);
+            }
+            assertEquals(30, EmbeddingPipeline.estimateTokens(texts.get(0)));
+
+            EmbeddingResponse response = pipeline.call(new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+            assertEquals(texts.size(), response.getResults().size());
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(StubEmbeddingServer.vector(texts.get(i)), response.getResults().get(i).getOutput());
+            }
+            // 批次按完成顺序记录
+            List<Integer> batchSizes = new ArrayList<>(server.batchSizes());
+            batchSizes.sort(null);
+            assertEquals(List.of(1, 4, 10, 10), batchSizes);
+            assertEquals(4L, pipeline.getStats().get("batches"));
+            assertTrue((double) pipeline.getStats().get("chunksPerSecond") > 0);
+        }
+    }
+
+    @Test
+    void inFlightBatchesAreBounded() throws Exception {
+        try (StubEmbeddingServer server = new StubEmbeddingServer();
+             EmbeddingPipeline pipeline = EmbeddingPipeline.builder(openAi(server))
+                 .maxBatchSize(2).maxInFlight(3).build()) {
+            server.setLatencyMillis(50);
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                texts.add("段落 " + i);
+            }
+            assertEquals(24, pipeline.embed(texts).size());
+            assertEquals(12, server.requests());
+            assertTrue(server.maxConcurrent() <= 3, "最大并发 " + server.maxConcurrent());
+            assertTrue(server.maxConcurrent() >= 2, "最大并发 " + server.maxConcurrent());
+        }
+    }
+
+    @Test
+    void rateLimitedBatchesBackOffAndRetry() throws Exception {
+        try (StubEmbeddingServer server = new StubEmbeddingServer();
+             EmbeddingPipeline pipeline = EmbeddingPipeline.builder(openAi(server))
+                 .maxBatchSize(1).maxInFlight(4).backoff(20, 100).maxRetries(3).build()) {
+            server.rateLimitNext(2);
+            List<String> texts = List.of("甲", "乙", "丙", "丁", "戊", "己");
+            List<float[]> vectors = pipeline.embed(texts);
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(StubEmbeddingServer.vector(texts.get(i)), vectors.get(i));
+            }
+            assertEquals(2L, pipeline.getStats().get("rateLimited"));
+            assertEquals(8, server.requests());
+
+            // 超过重试次数后抛出限流错误
+            server.rateLimitNext(10);
+            RuntimeException error = assertThrows(RuntimeException.class, () -> pipeline.embed(List.of("庚")));
+            assertTrue(EmbeddingPipeline.isRateLimited(error));
+        }
+    }
+
+    private static OpenAiEmbeddingModel openAi(StubEmbeddingServer server) {
+        return new OpenAiEmbeddingModel(OpenAiApi.builder().baseUrl(server.baseUrl())
+            .apiKey(new SimpleApiKey("test")).build());
+    }
+}
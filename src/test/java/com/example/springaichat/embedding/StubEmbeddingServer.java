@@ -0,0 +1,122 @@
+package com.example.springaichat.embedding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地的OpenAI兼容向量接口（POST /v1/embeddings）
+ * 向量由文本确定性生成；可设置响应延迟和接下来若干次请求返回429，记录批次大小和最大并发请求数
+ */
+final class StubEmbeddingServer implements AutoCloseable {
+
+    static final int DIMENSIONS = 8;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    private volatile long latencyMillis;
+    private final AtomicInteger rateLimitedRequests = new AtomicInteger();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    StubEmbeddingServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/embeddings", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** 接下来的count次请求返回429 */
+    void rateLimitNext(int count) {
+        rateLimitedRequests.set(count);
+    }
+
+    int requests() { return requests.get(); }
+    int maxConcurrent() { return maxConcurrent.get(); }
+    List<Integer> batchSizes() { return batchSizes; }
+
+    static float[] vector(String text) {
+        float[] vector = new float[DIMENSIONS];
+        vector[0] = 1f;
+        for (int i = 0; i < text.length(); i++) {
+            vector[1 + (text.charAt(i) * 31 + i) % (DIMENSIONS - 1)] += 1f;
+        }
+        return vector;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        try {
+            JsonNode input = mapper.readTree(exchange.getRequestBody()).get("input");
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (rateLimitedRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                respond(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached for requests\","
+                    + "\"type\":\"requests\",\"code\":\"rate_limit_exceeded\"}}");
+                return;
+            }
+            ObjectNode response = mapper.createObjectNode().put("object", "list").put("model", "stub-embedding");
+            ArrayNode data = response.putArray("data");
+            int index = 0;
+            for (JsonNode text : input.isArray() ? input : mapper.createArrayNode().add(input)) {
+                ObjectNode item = data.addObject().put("object", "embedding").put("index", index++);
+                ArrayNode embedding = item.putArray("embedding");
+                for (float value : vector(text.asText())) {
+                    embedding.add(value);
+                }
+            }
+            batchSizes.add(index);
+            response.putObject("usage").put("prompt_tokens", index).put("total_tokens", index);
+            respond(exchange, 200, mapper.writeValueAsString(response));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 500, "{}");
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTextStoreTests {
+
+    @Test
+    void textRoundTripsThroughCompressedChunks() {
+        CompressedTextStore store = new CompressedTextStore(256, 1);
+        List<String> texts = new ArrayList<>();
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String text = "第" + i + "页：数据库事务的隔离级别，" + "MVCC ".repeat(i);
+            texts.add(text);
+            handles.add(store.put(text));
+        }
+        handles.add(store.put(""));
+        texts.add("");
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), store.get(handles.get(i)));
+        }
+        assertEquals(texts.size(), store.size());
+    }
+
+    @Test
+    void repetitiveTextIsSmallerThanRaw() {
+        CompressedTextStore store = new CompressedTextStore();
+        String text = "数据库事务的隔离级别包括读未提交、读已提交、可重复读和串行化。".repeat(20);
+        store.put(text);
+        assertTrue(store.storedBytes() * 4 < store.rawBytes(),
+            "压缩后 " + store.storedBytes() + " 字节，原始 " + store.rawBytes() + " 字节");
+    }
+
+    @Test
+    void chunkIsReturnedWhenAllOfItsTextIsRemoved() {
+        CompressedTextStore store = new CompressedTextStore(64, 1);
+        long first = store.put("第一块中的文本，足够长以占满整个分块的大部分空间");
+        long second = store.put("第二块中的文本，足够长以占满整个分块的大部分空间");
+        long allocated = store.allocatedBytes();
+
+        store.remove(first);
+        assertTrue(store.allocatedBytes() < allocated);
+        assertThrows(IllegalStateException.class, () -> store.get(first));
+        assertEquals("第二块中的文本，足够长以占满整个分块的大部分空间", store.get(second));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void removeIsIdempotentAndReleasedTextCannotBeRead() {
+        CompressedTextStore store = new CompressedTextStore();
+        long first = store.put("第一段文本");
+        long second = store.put("第二段文本");
+        long stored = store.storedBytes();
+        long raw = store.rawBytes();
+
+        store.remove(first);
+        store.remove(first);
+        assertEquals(1, store.size());
+        assertTrue(store.storedBytes() < stored && store.storedBytes() > 0);
+        assertTrue(store.rawBytes() < raw && store.rawBytes() > 0);
+        // 分块仍存活时已释放的文本同样读取失败
+        assertThrows(IllegalStateException.class, () -> store.get(first));
+
+        // 槽位被新文本复用后，旧句柄仍然无效
+        long third = store.put("第三段文本");
+        assertThrows(IllegalStateException.class, () -> store.get(first));
+        store.remove(first);
+        assertEquals("第三段文本", store.get(third));
+        assertEquals("第二段文本", store.get(second));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void mostlyReleasedChunksAreCompacted() {
+        CompressedTextStore store = new CompressedTextStore(1024, 1);
+        List<String> texts = new ArrayList<>();
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String text = "第" + i + "段：" + Integer.toHexString(i * 7919);
+            texts.add(text);
+            handles.add(store.put(text));
+        }
+        long allocated = store.allocatedBytes();
+        // 每块只留下约四分之一的文本
+        for (int i = 0; i < handles.size(); i++) {
+            if (i % 4 != 0) {
+                store.remove(handles.get(i));
+            }
+        }
+        assertTrue(store.compactions() > 0);
+        assertTrue(store.allocatedBytes() <= allocated / 2,
+            "压缩后分配 " + store.allocatedBytes() + " 字节，压缩前 " + allocated + " 字节");
+        for (int i = 0; i < handles.size(); i += 4) {
+            assertEquals(texts.get(i), store.get(handles.get(i)));
+        }
+        assertEquals(50, store.size());
+    }
+}
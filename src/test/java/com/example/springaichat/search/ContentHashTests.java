@@ -0,0 +1,31 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentHashTests {
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    void streamHashMatchesKnownDigest() throws Exception {
+        String hash = ContentHash.sha256(new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(ABC_SHA256, hash);
+    }
+
+    @Test
+    void onlyContentAddressedNamesYieldAHash() {
+        assertTrue(ContentHash.isContentAddressedName(ABC_SHA256 + ".pdf"));
+        assertEquals(ABC_SHA256, ContentHash.fromFileName(ABC_SHA256 + ".pdf"));
+        assertFalse(ContentHash.isContentAddressedName("shujuku.pdf"));
+        assertNull(ContentHash.fromFileName("shujuku.pdf"));
+        assertNull(ContentHash.fromFileName(ABC_SHA256.toUpperCase() + ".pdf"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeferredReclaimerTests {
+
+    @Test
+    void releaseRunsImmediatelyWithoutReaders() {
+        DeferredReclaimer reclaimer = new DeferredReclaimer();
+        List<String> released = new ArrayList<>();
+        reclaimer.retire(() -> released.add("a"));
+        assertEquals(List.of("a"), released);
+        assertEquals(0, reclaimer.pendingCount());
+    }
+
+    @Test
+    void releaseWaitsForReadersThatEnteredBeforeIt() {
+        DeferredReclaimer reclaimer = new DeferredReclaimer();
+        List<String> released = new ArrayList<>();
+        DeferredReclaimer.Lease first = reclaimer.enter();
+        reclaimer.retire(() -> released.add("a"));
+        DeferredReclaimer.Lease second = reclaimer.enter();
+        reclaimer.retire(() -> released.add("b"));
+
+        assertEquals(List.of(), released);
+        assertEquals(2, reclaimer.pendingCount());
+
+        // 第二个读者在a之后进入，a只等第一个读者
+        first.close();
+        assertEquals(List.of("a"), released);
+
+        second.close();
+        second.close();
+        assertEquals(List.of("a", "b"), released);
+        assertEquals(0, reclaimer.activeReaders());
+    }
+
+    @Test
+    void readersEnteringAfterARetireDoNotDelayIt() {
+        DeferredReclaimer reclaimer = new DeferredReclaimer();
+        List<String> released = new ArrayList<>();
+        DeferredReclaimer.Lease early = reclaimer.enter();
+        reclaimer.retire(() -> released.add("a"));
+        try (DeferredReclaimer.Lease late = reclaimer.enter()) {
+            early.close();
+            assertEquals(List.of("a"), released);
+        }
+    }
+}
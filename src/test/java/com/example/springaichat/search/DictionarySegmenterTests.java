@@ -0,0 +1,83 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictionarySegmenterTests {
+
+    @Test
+    void doubleArrayTrieFindsEveryKey() {
+        List<String> keys = List.of("事务", "事务管理", "数据", "数据库", "数据库系统", "索引");
+        DoubleArrayTrie trie = new DoubleArrayTrie(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i, trie.find(keys.get(i)));
+        }
+        assertEquals(-1, trie.find("数"));
+        assertEquals(-1, trie.find("数据库管理"));
+        assertEquals(-1, trie.find("隔离"));
+    }
+
+    @Test
+    void viterbiPrefersDictionaryWordsAndDropsFunctionCharacters() throws Exception {
+        DictionarySegmenter segmenter = load("的 100000\n是 100000\n数据库 3000\n数据 2000\n库 500\n"
+            + "事务 3000\n隔离级别 3000\n隔离 1000\n级别 1000\n什么 5000\n");
+
+        TermBuffer terms = new TermBuffer();
+        segmenter.queryTerms("数据库事务的隔离级别是什么", terms);
+        // 数据库 事务 隔离级别 什么，以及长词内部的 数据 隔离 级别
+        assertEquals(7, terms.size());
+        assertTrue(contains(terms, "数据库"));
+        assertTrue(contains(terms, "隔离级别"));
+        assertTrue(contains(terms, "隔离"));
+        assertFalse(contains(terms, "的"));
+        assertFalse(contains(terms, "库事"));
+    }
+
+    @Test
+    void unknownCharactersFallBackToBigrams() throws Exception {
+        DictionarySegmenter segmenter = load("的 100000\n数据库 3000\n");
+        TermBuffer terms = new TermBuffer();
+        segmenter.queryTerms("张三丰的数据库 MySQL", terms);
+        assertTrue(contains(terms, "张三"));
+        assertTrue(contains(terms, "三丰"));
+        assertTrue(contains(terms, "数据库"));
+        assertTrue(contains(terms, "mysql"));
+        assertEquals(4, terms.size());
+    }
+
+    @Test
+    void bundledDictionaryIsLoadedAndIdentifiesItsContent() throws Exception {
+        DictionarySegmenter segmenter = DictionarySegmenter.loadDefault();
+        assertTrue(segmenter.dictionarySize() > 500);
+        assertNotEquals(segmenter.id(), load("数据库 1\n").id());
+
+        TermBuffer ngrams = new TermBuffer();
+        TermBuffer words = new TermBuffer();
+        String query = "请问数据库事务的隔离级别有哪些，可重复读和串行化有什么区别";
+        NgramTokenizer.INSTANCE.queryTerms(query, ngrams);
+        segmenter.queryTerms(query, words);
+        assertTrue(words.size() * 5 < ngrams.size(), words.size() + " vs " + ngrams.size());
+    }
+
+    private static DictionarySegmenter load(String dictionary) throws Exception {
+        return DictionarySegmenter.load(new ByteArrayInputStream(dictionary.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean contains(TermBuffer terms, String term) {
+        long hash = NgramTokenizer.hash(term);
+        for (int i = 0; i < terms.size(); i++) {
+            if (terms.get(i) == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
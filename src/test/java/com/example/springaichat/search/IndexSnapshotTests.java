@@ -0,0 +1,124 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSnapshotTests {
+
+    private final Bm25Scorer scorer = new Bm25Scorer();
+
+    @Test
+    void snapshotIsUnaffectedByLaterWrites() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.pdf", new int[]{0, 1}, List.of("数据库事务", "mysql index"), NgramTokenizer.INSTANCE);
+        IndexSnapshot before = index.snapshot();
+
+        index.addDocument("b.pdf", new int[]{2}, List.of("数据库 redis"), NgramTokenizer.INSTANCE);
+        index.removeDocument("a.pdf");
+
+        assertEquals(2, before.pageCount());
+        assertEquals(Map.of(0, true), matches(before, "数据库事务"));
+        assertEquals(1, index.pageCount());
+        assertEquals(Map.of(2, true), matches(index.snapshot(), "数据库"));
+    }
+
+    @Test
+    void mergeDropsDeletedPagesWithoutChangingResults() {
+        InvertedIndex index = new InvertedIndex(null, 2, 2);
+        int pageId = 0;
+        for (int doc = 0; doc < 6; doc++) {
+            List<String> texts = new ArrayList<>();
+            int[] ids = new int[3];
+            for (int page = 0; page < ids.length; page++) {
+                ids[page] = pageId++;
+                texts.add("数据库 事务 " + (doc % 2 == 0 ? "隔离级别" : "mysql") + " 第" + doc + "篇");
+            }
+            index.addDocument("doc" + doc + ".pdf", ids, texts, NgramTokenizer.INSTANCE);
+        }
+        index.removeDocument("doc2.pdf");
+        assertEquals(6, index.segmentCount());
+        Map<Integer, Double> expected = scores(index.snapshot(), "隔离级别");
+
+        while (index.merge()) {
+            // 合并到段数不超过上限
+        }
+        assertTrue(index.segmentCount() <= 2);
+        index.compact();
+        assertEquals(1, index.segmentCount());
+        assertEquals(0, index.snapshot().deletedPageCount());
+        assertEquals(15, index.pageCount());
+        assertEquals(expected.keySet(), scores(index.snapshot(), "隔离级别").keySet());
+        assertNull(scores(index.snapshot(), "隔离级别").get(6));
+    }
+
+    @Test
+    void deletedPostingsAwaitingMergeDoNotMakeScoresNegative() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.pdf", new int[]{0, 1, 2}, List.of("数据库 一", "数据库 二", "数据库 三"),
+            NgramTokenizer.INSTANCE);
+        // 替换后旧的3页只在删除位图中标记，词项的倒排项总数大于未删除的页面数
+        index.addDocument("a.pdf", new int[]{3, 4}, List.of("数据库 四", "数据库 五"), NgramTokenizer.INSTANCE);
+
+        Map<Integer, Double> scores = scores(index.snapshot(), "数据库");
+        assertEquals(2, scores.size());
+        assertTrue(scores.values().stream().allMatch(score -> score > 0), scores.toString());
+    }
+
+    @Test
+    void readersNeverSeeHalfAppliedDocuments() throws Exception {
+        InvertedIndex index = new InvertedIndex(null, 4, 2);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            started.countDown();
+            while (!done.get()) {
+                IndexSnapshot snapshot = index.snapshot();
+                // 每个文档4页都包含同一个词，快照中命中的页面数必须是4的倍数
+                int hits = scores(snapshot, "事务").size();
+                if (hits % 4 != 0 || hits != snapshot.pageCount()) {
+                    failure.set("命中 " + hits + " 页，快照共 " + snapshot.pageCount() + " 页");
+                }
+            }
+        });
+        reader.start();
+        started.await();
+        int pageId = 0;
+        for (int doc = 0; doc < 200; doc++) {
+            int[] ids = {pageId++, pageId++, pageId++, pageId++};
+            index.addDocument("doc" + doc, ids, List.of("事务 a", "事务 b", "事务 c", "事务 d"), NgramTokenizer.INSTANCE);
+            if (doc % 3 == 0) {
+                index.removeDocument("doc" + (doc / 2));
+            }
+            index.merge();
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+    }
+
+    private Map<Integer, Double> scores(IndexSnapshot snapshot, String query) {
+        TermBuffer terms = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms(query, terms);
+        Map<Integer, Double> scores = new HashMap<>();
+        snapshot.search(terms, scorer, 0, Integer.MAX_VALUE, (id, score) -> scores.merge(id, score, Double::sum));
+        return scores;
+    }
+
+    private Map<Integer, Boolean> matches(IndexSnapshot snapshot, String query) {
+        Map<Integer, Boolean> result = new HashMap<>();
+        scores(snapshot, query).keySet().forEach(id -> result.put(id, true));
+        return result;
+    }
+}
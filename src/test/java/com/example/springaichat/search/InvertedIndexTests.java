@@ -0,0 +1,53 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvertedIndexTests {
+
+    private final Bm25Scorer scorer = new Bm25Scorer();
+
+    @Test
+    void statisticsAreMaintainedOnAddAndRemove() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.pdf", new int[]{0, 1}, List.of("数据库事务", "mysql index"), NgramTokenizer.INSTANCE);
+        index.addDocument("b.pdf", new int[]{2}, List.of("redis cache"), NgramTokenizer.INSTANCE);
+        assertEquals(3, index.pageCount());
+
+        assertTrue(index.removeDocument("a.pdf"));
+        assertFalse(index.removeDocument("a.pdf"));
+        assertEquals(1, index.pageCount());
+        assertEquals(2.0, index.averagePageLength(), 1e-9);
+        assertTrue(search(index, "数据库").isEmpty());
+    }
+
+    @Test
+    void rareTermsOutweighCommonTerms() {
+        InvertedIndex index = new InvertedIndex();
+        // "数据" 出现在所有页面，"隔离级别" 只出现在第2页
+        index.addDocument("a.pdf", new int[]{0, 1, 2},
+            List.of("数据 数据 数据", "数据 隔离级别", "数据 数据"), NgramTokenizer.INSTANCE);
+
+        Map<Integer, Double> scores = search(index, "数据 隔离级别");
+        int best = scores.entrySet().stream()
+            .max(Map.Entry.comparingByValue())
+            .orElseThrow()
+            .getKey();
+        assertEquals(1, best);
+    }
+
+    private Map<Integer, Double> search(InvertedIndex index, String query) {
+        TermBuffer terms = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms(query, terms);
+        Map<Integer, Double> scores = new HashMap<>();
+        index.search(terms, scorer, (pageId, score) -> scores.merge(pageId, score, Double::sum));
+        return scores;
+    }
+}
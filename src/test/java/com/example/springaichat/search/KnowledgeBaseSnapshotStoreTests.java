@@ -0,0 +1,62 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class KnowledgeBaseSnapshotStoreTests {
+
+    @Test
+    void snapshotRoundTripsAndIsFoundByNameOrContent() throws Exception {
+        Path dir = Files.createTempDirectory("kb-snapshot");
+        Path pdf = Files.writeString(dir.resolve("a.pdf"), "pretend this is a pdf");
+        KnowledgeBaseSnapshotStore store = new KnowledgeBaseSnapshotStore(dir.resolve("snap"), NgramTokenizer.ID);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_name", "a.pdf");
+        metadata.put("page_number", 1);
+        metadata.put("processed_time", new Date(1_000L));
+        TermCounter counter = new TermCounter();
+        List<KnowledgeBaseSnapshotStore.Passage> passages = List.of(
+            new KnowledgeBaseSnapshotStore.Passage(1, 0, 6, "数据库事务", metadata,
+                TokenizedPage.of("数据库事务", NgramTokenizer.INSTANCE, counter)),
+            new KnowledgeBaseSnapshotStore.Passage(1, 4, 10, "事务隔离级别", metadata,
+                TokenizedPage.of("事务隔离级别", NgramTokenizer.INSTANCE, counter)));
+        store.write(new KnowledgeBaseSnapshotStore.DocumentSnapshot(
+            KnowledgeBaseSnapshotStore.headerOf("a.pdf", pdf), passages));
+
+        // 文件名、大小、修改时间一致
+        KnowledgeBaseSnapshotStore.DocumentSnapshot loaded = store.find("a.pdf", pdf, store.loadHeaders());
+        assertNotNull(loaded);
+        assertEquals(2, loaded.getPassages().size());
+        KnowledgeBaseSnapshotStore.Passage first = loaded.getPassages().get(0);
+        assertEquals("数据库事务", first.getText());
+        assertEquals(new Date(1_000L), first.getMetadata().get("processed_time"));
+        assertEquals(1, first.getMetadata().get("page_number"));
+        // 同一页的段落共享元数据
+        assertSame(first.getMetadata(), loaded.getPassages().get(1).getMetadata());
+        assertEquals(passages.get(1).getTokens().termCount(), loaded.getPassages().get(1).getTokens().termCount());
+
+        // 重命名后按内容哈希找到
+        Path renamed = Files.copy(pdf, dir.resolve("b.pdf"));
+        assertNotNull(store.find("b.pdf", renamed, store.loadHeaders()));
+
+        // 内容变化后不再命中
+        Files.writeString(pdf, "changed content");
+        assertNull(store.find("c.pdf", pdf, store.loadHeaders()));
+
+        // 分词器变化后旧快照失效
+        KnowledgeBaseSnapshotStore otherTokenizer = new KnowledgeBaseSnapshotStore(dir.resolve("snap"), "other");
+        assertEquals(0, otherTokenizer.loadHeaders().size());
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PassageSplitterTests {
+
+    @Test
+    void shortTextIsASinglePassage() {
+        List<PassageSplitter.Passage> passages = new PassageSplitter(100, 20).split("短文本。");
+        assertEquals(1, passages.size());
+        assertEquals(0, passages.get(0).getStart());
+        assertEquals(4, passages.get(0).getEnd());
+    }
+
+    @Test
+    void passagesOverlapAndCoverWholeText() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.append("第").append(i).append("句话讲的是数据库事务。");
+        }
+        String text = builder.toString();
+        PassageSplitter splitter = new PassageSplitter(80, 20);
+        List<PassageSplitter.Passage> passages = splitter.split(text);
+
+        assertEquals(0, passages.get(0).getStart());
+        assertEquals(text.length(), passages.get(passages.size() - 1).getEnd());
+        for (int i = 0; i < passages.size(); i++) {
+            PassageSplitter.Passage passage = passages.get(i);
+            assertTrue(passage.getEnd() - passage.getStart() <= 80);
+            if (i > 0) {
+                // 与前一段重叠，且不会留下空隙
+                assertTrue(passage.getStart() < passages.get(i - 1).getEnd());
+                assertTrue(passage.getStart() > passages.get(i - 1).getStart());
+            }
+            if (passage.getEnd() < text.length()) {
+                // 在句末断开
+                assertEquals('。', text.charAt(passage.getEnd() - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingListTests {
+
+    @Test
+    void postingsRoundTripAcrossBlocks() {
+        PostingList list = new PostingList();
+        int count = PostingList.BLOCK_SIZE * 3 + 17;
+        for (int i = 0; i < count; i++) {
+            list.add(i * 7 + 3, i % 5 + 1);
+        }
+        assertEquals(count, list.size());
+        // 差值都小于128，每项2字节
+        assertEquals(count * 2, list.encodedBytes());
+
+        PostingList.Cursor cursor = list.cursor();
+        for (int i = 0; i < count; i++) {
+            assertTrue(cursor.next());
+            assertEquals(i * 7 + 3, cursor.pageId());
+            assertEquals(i % 5 + 1, cursor.frequency());
+        }
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    void advanceUsesSkipPointersAndNeverMovesBackwards() {
+        PostingList list = new PostingList();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i * 10, 1);
+        }
+        PostingList.Cursor cursor = list.cursor();
+        assertTrue(cursor.advance(0));
+        assertEquals(0, cursor.pageId());
+        assertTrue(cursor.advance(5_001));
+        assertEquals(5_010, cursor.pageId());
+        assertTrue(cursor.advance(100));
+        assertEquals(5_010, cursor.pageId());
+        assertTrue(cursor.next());
+        assertEquals(5_020, cursor.pageId());
+        assertTrue(cursor.advance(9_990));
+        assertEquals(9_990, cursor.pageId());
+        assertFalse(cursor.advance(9_991));
+    }
+
+    @Test
+    void positionsAreReadLazilyAfterSkipping() {
+        PostingList list = new PostingList();
+        // 前10项没有位置，之后的项带位置
+        for (int i = 0; i < 10; i++) {
+            list.add(i, 1);
+        }
+        for (int i = 10; i < 600; i++) {
+            list.add(i, 3, new int[]{i, i + 7, i + 300}, 0, 3);
+        }
+        int[] positions = new int[3];
+        PostingList.Cursor cursor = list.cursor();
+        assertTrue(cursor.advance(5));
+        assertEquals(0, cursor.readPositions(positions));
+        // 跳到后面的块，只解码目标块
+        assertTrue(cursor.advance(400));
+        assertEquals(3, cursor.readPositions(positions));
+        assertArrayEquals(new int[]{400, 407, 700}, positions);
+        // 同一块内跳过未读取位置的项
+        assertTrue(cursor.advance(410));
+        assertEquals(3, cursor.readPositions(positions));
+        assertArrayEquals(new int[]{410, 417, 710}, positions);
+        assertTrue(list.positionBytes() > 0);
+    }
+}
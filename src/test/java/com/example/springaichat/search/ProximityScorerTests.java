@@ -0,0 +1,76 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProximityScorerTests {
+
+    private final ProximityScorer scorer = new ProximityScorer();
+
+    @Test
+    void queryOffsetsSurviveDeduplication() {
+        TermBuffer terms = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms("mysql redis mysql", terms);
+        assertEquals(2, terms.size());
+        for (int t = 0; t < terms.size(); t++) {
+            int expected = terms.get(t) == NgramTokenizer.hash("mysql") ? 0 : 6;
+            assertEquals(expected, terms.offset(t));
+        }
+    }
+
+    @Test
+    void adjacentTermsOutrankScatteredTerms() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.pdf", new int[]{0, 1, 2}, List.of(
+            "mysql 的文档很长 这里讲了很多别的内容 最后才提到 mvcc",
+            "关于 mysql mvcc 的实现",
+            "只提到了 mysql"), NgramTokenizer.INSTANCE);
+        TermBuffer terms = query("mysql mvcc");
+        IndexSnapshot snapshot = index.snapshot();
+
+        double scattered = scorer.boost(snapshot, terms, 0);
+        double adjacent = scorer.boost(snapshot, terms, 1);
+        assertTrue(adjacent > scattered, adjacent + " <= " + scattered);
+        assertTrue(scattered > 1.0);
+        assertEquals(1.0, scorer.boost(snapshot, terms, 2), 1e-9);
+        // 紧挨着出现：邻近度满分且构成短语
+        assertEquals((1 + ProximityScorer.DEFAULT_PROXIMITY_WEIGHT) * ProximityScorer.DEFAULT_PHRASE_BOOST,
+            adjacent, 1e-9);
+    }
+
+    @Test
+    void rerankPromotesPhraseMatches() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.pdf", new int[]{0, 1}, List.of(
+            "数据库 数据库 数据库 事务 事务 隔离 级别",
+            "数据库事务的隔离级别"), NgramTokenizer.INSTANCE);
+        TermBuffer terms = query("数据库事务");
+        int[] pageIds = {0, 1};
+        double[] scores = {2.0, 1.5};
+        assertEquals(1, scorer.rerank(index.snapshot(), terms, pageIds, scores, 2, 1));
+        assertArrayEquals(new int[]{1, 0}, pageIds);
+    }
+
+    @Test
+    void positionsSurviveSegmentMerge() {
+        InvertedIndex index = new InvertedIndex(null, 1, 2);
+        index.addDocument("a.pdf", new int[]{0}, List.of("关于 mysql mvcc 的实现"), NgramTokenizer.INSTANCE);
+        index.addDocument("b.pdf", new int[]{1}, List.of("mysql 很长的一段话 mvcc"), NgramTokenizer.INSTANCE);
+        TermBuffer terms = query("mysql mvcc");
+        double before = scorer.boost(index.snapshot(), terms, 0);
+        index.compact();
+        assertEquals(1, index.segmentCount());
+        assertEquals(before, scorer.boost(index.snapshot(), terms, 0), 1e-9);
+    }
+
+    private static TermBuffer query(String text) {
+        TermBuffer terms = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms(text, terms);
+        return terms;
+    }
+}
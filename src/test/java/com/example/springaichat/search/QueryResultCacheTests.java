@@ -0,0 +1,54 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryResultCacheTests {
+
+    @Test
+    void normalizationIgnoresSeparatorsCaseAndWidth() {
+        assertEquals("mysql的 索引", QueryResultCache.normalize("  MySQL的，索引？"));
+        assertEquals("abc 123", QueryResultCache.normalize("ＡＢＣ，１２３！"));
+        assertEquals("", QueryResultCache.normalize("？！ "));
+    }
+
+    @Test
+    void entriesAreKeyedByMaxResultsAndInvalidatedByVersion() {
+        QueryResultCache<String> cache = new QueryResultCache<>(8);
+        cache.put("索引", 5, 1, "five");
+        cache.put("索引", 3, 1, "three");
+
+        assertEquals("five", cache.get("索引", 5, 1));
+        assertEquals("three", cache.get("索引", 3, 1));
+        assertNull(cache.get("索引", 5, 2));
+        // 失效的条目在读取时被移除
+        assertNull(cache.get("索引", 5, 1));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getStaleMisses());
+    }
+
+    @Test
+    void olderVersionDoesNotOverwriteNewerResult() {
+        QueryResultCache<String> cache = new QueryResultCache<>(8);
+        cache.put("事务", 5, 3, "new");
+        cache.put("事务", 5, 2, "old");
+        assertEquals("new", cache.get("事务", 5, 3));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        QueryResultCache<String> cache = new QueryResultCache<>(2);
+        cache.put("a", 5, 0, "a");
+        cache.put("b", 5, 0, "b");
+        cache.get("a", 5, 0);
+        cache.put("c", 5, 0, "c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("b", 5, 0));
+        assertEquals("a", cache.get("a", 5, 0));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReciprocalRankFusionTests {
+
+    @Test
+    void itemsRankedByBothListsComeFirst() {
+        ReciprocalRankFusion fusion = new ReciprocalRankFusion(60);
+        List<String> keyword = List.of("a", "b", "c");
+        List<String> vector = List.of("d", "c", "a");
+
+        // a: 1/61 + 1/63, c: 1/63 + 1/62, d: 1/61, b: 1/62
+        assertEquals(List.of("a", "c", "d", "b"), fusion.fuse(List.of(keyword, vector), 10));
+        assertEquals(List.of("a", "c"), fusion.fuse(List.of(keyword, vector), 2));
+    }
+
+    @Test
+    void tiesKeepTheEarlierListFirst() {
+        ReciprocalRankFusion fusion = new ReciprocalRankFusion();
+        // 两路的第一名得分相同，先出现的路优先
+        assertEquals(List.of("x", "y"), fusion.fuse(List.of(List.of("x"), List.of("y")), 10));
+        assertEquals(List.of("y", "x"), fusion.fuse(List.of(List.of("y"), List.of("x")), 10));
+    }
+
+    @Test
+    void duplicatesAreMergedByIdentity() {
+        String first = new String("same");
+        String second = new String("same");
+        List<String> fused = new ReciprocalRankFusion().fuse(List.of(List.of(first), List.of(second, first)), 10);
+        assertEquals(2, fused.size());
+        assertSame(first, fused.get(0));
+        assertSame(second, fused.get(1));
+        assertEquals(List.of(), new ReciprocalRankFusion().fuse(List.of(), 5));
+        assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(-1));
+    }
+}
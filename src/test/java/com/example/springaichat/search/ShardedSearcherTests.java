@@ -0,0 +1,52 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedSearcherTests {
+
+    private static final String[] WORDS = {"数据库", "事务", "索引", "隔离级别", "mysql", "redis", "日志", "缓存"};
+
+    @Test
+    void shardedSearchMatchesSequentialSearch() {
+        InvertedIndex index = new InvertedIndex();
+        Random random = new Random(3);
+        int pageId = 0;
+        for (int doc = 0; doc < 20; doc++) {
+            List<String> texts = new ArrayList<>();
+            int[] ids = new int[50];
+            for (int page = 0; page < ids.length; page++) {
+                ids[page] = pageId++;
+                StringBuilder text = new StringBuilder();
+                for (int w = 0; w < 30; w++) {
+                    text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                texts.add(text.toString());
+            }
+            index.addDocument("doc" + doc + ".pdf", ids, texts, NgramTokenizer.INSTANCE);
+        }
+
+        TermBuffer terms = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms("数据库事务的隔离级别", terms);
+        Bm25Scorer scorer = new Bm25Scorer();
+        try (ShardedSearcher sequential = new ShardedSearcher(index, scorer, 1, 1, Long.MAX_VALUE);
+             ShardedSearcher sharded = new ShardedSearcher(index, scorer, 4, 4, 0)) {
+            int[] expected = drain(sequential.search(terms, 10, pageId));
+            assertEquals(10, expected.length);
+            assertArrayEquals(expected, drain(sharded.search(terms, 10, pageId)));
+        }
+    }
+
+    private static int[] drain(TopKSelector selector) {
+        int[] ids = new int[selector.size()];
+        double[] scores = new double[selector.size()];
+        return Arrays.copyOf(ids, selector.drainDescending(ids, scores));
+    }
+}
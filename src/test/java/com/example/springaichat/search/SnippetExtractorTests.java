@@ -0,0 +1,85 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnippetExtractorTests {
+
+    private static final String FILLER = "数据库事务的隔离级别与锁机制。";
+
+    private static final String ANSWER = "汽车每行驶五千公里需要更换机油和机油滤芯。";
+
+    private final SnippetExtractor extractor = new SnippetExtractor(NgramTokenizer.INSTANCE, 60);
+
+    @Test
+    void textWithinTheBudgetIsKeptWhole() {
+        String text = FILLER + ANSWER;
+        List<SnippetExtractor.Snippet> snippets = extractor.extract(text, query("更换机油"), 100);
+        assertEquals(1, snippets.size());
+        assertEquals(text, SnippetExtractor.format(text, snippets));
+    }
+
+    @Test
+    void theDensestSentenceIsSelectedWithinTheBudget() {
+        String text = FILLER.repeat(20) + ANSWER + FILLER.repeat(20);
+        List<SnippetExtractor.Snippet> snippets = extractor.extract(text, query("更换机油滤芯"), 80);
+        assertEquals(1, snippets.size());
+        SnippetExtractor.Snippet snippet = snippets.get(0);
+        assertTrue(snippet.length() <= 80);
+        // 片段从命中所在句子的开头开始，在句末结束
+        assertEquals(ANSWER, text.substring(snippet.getStart(), snippet.getEnd()));
+        assertEquals(SnippetExtractor.ELLIPSIS + ANSWER + SnippetExtractor.ELLIPSIS,
+            SnippetExtractor.format(text, snippets));
+    }
+
+    @Test
+    void separateMatchesAreKeptInOrderAndAdjacentOnesMerged() {
+        String second = "发动机冷却液每两年更换一次。";
+        String text = FILLER.repeat(10) + ANSWER + FILLER.repeat(10) + second + FILLER.repeat(10);
+        List<SnippetExtractor.Snippet> snippets = extractor.extract(text, query("更换机油 冷却液"), 200);
+        assertEquals(2, snippets.size());
+        assertTrue(snippets.get(0).getEnd() < snippets.get(1).getStart());
+        String formatted = SnippetExtractor.format(text, snippets);
+        assertTrue(formatted.indexOf(ANSWER) < formatted.indexOf(second));
+        assertTrue(formatted.length() < text.length() / 2);
+
+        // 两句相邻时合并为一个片段
+        String adjacent = FILLER.repeat(10) + ANSWER + second + FILLER.repeat(10);
+        List<SnippetExtractor.Snippet> merged = extractor.extract(adjacent, query("更换机油 冷却液"), 200);
+        assertEquals(1, merged.size());
+        String mergedText = SnippetExtractor.format(adjacent, merged);
+        assertTrue(mergedText.contains(ANSWER + second));
+    }
+
+    @Test
+    void budgetLimitsTheNumberOfWindows() {
+        String text = (ANSWER + FILLER.repeat(6)).repeat(5);
+        int total = 0;
+        for (SnippetExtractor.Snippet snippet : extractor.extract(text, query("更换机油"), 70)) {
+            total += snippet.length();
+        }
+        assertTrue(total > 0 && total <= 70, "片段总长 " + total);
+    }
+
+    @Test
+    void withoutMatchesTheLeadingSentenceIsReturned() {
+        String text = FILLER.repeat(20);
+        List<SnippetExtractor.Snippet> snippets = extractor.extract(text, query("发动机"), 50);
+        assertEquals(1, snippets.size());
+        assertEquals(0, snippets.get(0).getStart());
+        assertEquals(FILLER, text.substring(0, snippets.get(0).getEnd()));
+        assertFalse(SnippetExtractor.format(text, snippets).startsWith(SnippetExtractor.ELLIPSIS));
+        assertTrue(extractor.extract(text, query("发动机"), 0).isEmpty());
+    }
+
+    private static TermBuffer query(String text) {
+        TermBuffer buffer = new TermBuffer();
+        NgramTokenizer.INSTANCE.queryTerms(text, buffer);
+        return buffer;
+    }
+}
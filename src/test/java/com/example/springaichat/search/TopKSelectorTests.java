@@ -0,0 +1,57 @@
+package com.example.springaichat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopKSelectorTests {
+
+    @Test
+    void selectsSameResultsAsFullSort() {
+        Random random = new Random(7);
+        int n = 100_000;
+        int[] ids = new int[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            // 约1/4为空槽，得分取整制造大量并列
+            ids[i] = random.nextInt(4) == 0 ? -1 : i;
+            scores[i] = random.nextInt(1_000);
+        }
+        int[] expected = IntStream.range(0, n)
+            .filter(i -> ids[i] >= 0)
+            .boxed()
+            .sorted(Comparator.<Integer>comparingDouble(i -> -scores[i]).thenComparingInt(i -> i))
+            .limit(5)
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+        assertArrayEquals(expected, drain(TopKSelector.select(ids, scores, 0, n, 5)));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(expected, drain(TopKSelector.parallelSelect(ids, scores, n, 5, pool)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void returnsFewerThanKWhenCandidatesAreScarce() {
+        TopKSelector selector = TopKSelector.select(new int[]{3, -1, 1}, new double[]{1.0, 9.0, 2.0}, 0, 3, 5);
+        assertEquals(2, selector.size());
+        assertArrayEquals(new int[]{1, 3}, drain(selector));
+    }
+
+    private static int[] drain(TopKSelector selector) {
+        int[] ids = new int[selector.size()];
+        double[] scores = new double[selector.size()];
+        int count = selector.drainDescending(ids, scores);
+        return Arrays.copyOf(ids, count);
+    }
+}
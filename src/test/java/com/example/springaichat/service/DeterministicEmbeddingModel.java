@@ -0,0 +1,98 @@
+package com.example.springaichat.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的确定性嵌入模型，不访问网络
+ * 前几维按近义词组计数（同组的词映射到同一维，模拟语义相近），其余维为字符二元组的哈希计数，结果归一化
+ */
+class DeterministicEmbeddingModel implements EmbeddingModel {
+
+    static final int DIMENSIONS = 64;
+
+    /** 近义词组，每组占一维 */
+    private static final String[][] SYNONYMS = {
+        {"汽车", "轿车", "车辆"},
+        {"保养", "维护", "检修"},
+        {"发动机", "引擎"},
+        {"价格", "费用", "报价"}
+    };
+
+    private final AtomicInteger embeddedTexts = new AtomicInteger();
+
+    /** 每次生成向量前的等待时间，模拟慢速的嵌入服务 */
+    private volatile long delayMillis;
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(embed(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        embeddedTexts.incrementAndGet();
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        float[] vector = new float[DIMENSIONS];
+        for (int group = 0; group < SYNONYMS.length; group++) {
+            for (String word : SYNONYMS[group]) {
+                for (int index = text.indexOf(word); index >= 0; index = text.indexOf(word, index + word.length())) {
+                    vector[group] += 4;
+                }
+            }
+        }
+        int buckets = DIMENSIONS - SYNONYMS.length;
+        for (int i = 0; i + 1 < text.length(); i++) {
+            int hash = text.charAt(i) * 31 + text.charAt(i + 1);
+            vector[SYNONYMS.length + Math.floorMod(hash, buckets)] += 1;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /** 已生成向量的文本数 */
+    int embeddedTexts() {
+        return embeddedTexts.get();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.vectorstore.HnswVectorStore;
+import com.example.springaichat.vectorstore.QuantizedVectorIndex;
+import com.example.springaichat.vectorstore.QuantizedVectorStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 关键词 + 向量混合检索
+ * 使用确定性的本地嵌入模型，不访问网络
+ */
+class HybridRetrievalTests {
+
+    /** 只有近义词与问题相同，关键词检索找不到 */
+    private static final String SYNONYM_PAGE = "汽车维护周期：每行驶五千公里更换机油和机滤，并检查刹车片磨损情况。";
+
+    /** 与问题字面相同 */
+    private static final String LITERAL_PAGE = "轿车保养套餐说明，包含工时和配件明细。";
+
+    private static final String QUERY = "轿车保养";
+
+    @Test
+    void hybridSearchFindsPagesThatKeywordSearchMisses() {
+        PdfContentService keywordOnly = buildService(null);
+        List<String> keywordTexts = texts(keywordOnly.searchGlobalKnowledgeBase(QUERY, 3));
+        assertTrue(keywordTexts.contains(LITERAL_PAGE));
+        assertFalse(keywordTexts.contains(SYNONYM_PAGE));
+
+        DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel();
+        PdfContentService hybrid = buildService(SimpleVectorStore.builder(embeddingModel).build());
+        List<String> hybridTexts = texts(hybrid.searchGlobalKnowledgeBase(QUERY, 3));
+        assertTrue(hybridTexts.contains(LITERAL_PAGE));
+        assertTrue(hybridTexts.contains(SYNONYM_PAGE));
+        // 两路都排在第一的段落融合后仍排在第一
+        assertEquals(LITERAL_PAGE, hybridTexts.get(0));
+        assertEquals(1L, hybrid.getHybridSearchStats().get("vectorSearches"));
+    }
+
+    @Test
+    void hnswVectorStoreIsADropInReplacement() {
+        assertDropInReplacement(HnswVectorStore.builder(new DeterministicEmbeddingModel()).build());
+    }
+
+    @Test
+    void quantizedVectorStoreIsADropInReplacement() {
+        assertDropInReplacement(QuantizedVectorStore.builder(new DeterministicEmbeddingModel()).build());
+        // 训练向量数很小，入库过程中即完成码本训练
+        assertDropInReplacement(QuantizedVectorStore.builder(new DeterministicEmbeddingModel())
+            .quantization(QuantizedVectorIndex.Quantization.PQ).trainingSize(8).build());
+    }
+
+    private void assertDropInReplacement(VectorStore vectorStore) {
+        PdfContentService hybrid = buildService(vectorStore);
+        List<String> hybridTexts = texts(hybrid.searchGlobalKnowledgeBase(QUERY, 3));
+        assertEquals(LITERAL_PAGE, hybridTexts.get(0));
+        assertTrue(hybridTexts.contains(SYNONYM_PAGE));
+        assertTrue(hybrid.removeDocumentFromGlobalKnowledgeBase("cars.pdf"));
+        assertFalse(texts(hybrid.searchGlobalKnowledgeBase(QUERY, 3)).contains(SYNONYM_PAGE));
+    }
+
+    @Test
+    void ingestionFeedsTheVectorStoreAndRemovalDeletesVectors() {
+        DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel();
+        VectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        PdfContentService service = buildService(vectorStore);
+        assertEquals(2, service.getHybridSearchStats().get("vectorizedDocuments"));
+        assertEquals(22, embeddingModel.embeddedTexts());
+
+        List<Document> hits = vectorStore.similaritySearch(SearchRequest.builder().query("汽车维护周期").topK(1).build());
+        assertEquals("cars.pdf", hits.get(0).getMetadata().get("file_name"));
+        assertEquals(SYNONYM_PAGE, hits.get(0).getText());
+
+        // 同一文档再次入库不重复生成向量
+        TestDocuments.add(service, "cars.pdf", carPages());
+        service.awaitVectorStoreUpdates();
+        assertEquals(23, embeddingModel.embeddedTexts());
+
+        assertTrue(service.removeDocumentFromGlobalKnowledgeBase("cars.pdf"));
+        service.awaitVectorStoreUpdates();
+        assertEquals(1, service.getHybridSearchStats().get("vectorizedDocuments"));
+        assertEquals(0, service.getHybridSearchStats().get("pendingUpdates"));
+        assertTrue(vectorStore.similaritySearch(SearchRequest.builder().query("汽车维护周期").topK(30).build()).stream()
+            .noneMatch(hit -> "cars.pdf".equals(hit.getMetadata().get("file_name"))));
+        assertTrue(texts(service.searchGlobalKnowledgeBase(QUERY, 3)).stream()
+            .noneMatch(text -> text.equals(SYNONYM_PAGE) || text.equals(LITERAL_PAGE)));
+    }
+
+    @Test
+    void resultsCachedBeforeVectorizationFinishesAreNotServedAfterwards() {
+        DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel();
+        PdfProperties properties = new PdfProperties();
+        properties.getSearch().getCache().setMaxEntries(16);
+        PdfContentService service = new PdfContentService(properties, SimpleVectorStore.builder(embeddingModel).build());
+        embeddingModel.setDelayMillis(300);
+        TestDocuments.add(service, "cars.pdf", carPages());
+
+        // 向量尚未写入，只能走关键词检索
+        assertFalse(texts(service.searchGlobalKnowledgeBase(QUERY, 3)).contains(SYNONYM_PAGE));
+        service.awaitVectorStoreUpdates();
+        embeddingModel.setDelayMillis(0);
+
+        List<String> fused = texts(service.searchGlobalKnowledgeBase(QUERY, 3));
+        assertEquals(LITERAL_PAGE, fused.get(0));
+        assertTrue(fused.contains(SYNONYM_PAGE));
+        assertEquals(1L, service.getHybridSearchStats().get("vectorSearches"));
+    }
+
+    @Test
+    void removalDuringVectorizationLeavesNoOrphanVectors() {
+        DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel();
+        VectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        PdfContentService service = buildService(vectorStore);
+        embeddingModel.setDelayMillis(200);
+
+        // 入库立即返回，生成向量在后台进行，期间删除文档
+        long start = System.nanoTime();
+        TestDocuments.add(service, "manual.pdf", List.of(new PdfContentService.PdfPageContent(
+            "汽车维护手册：定期检查轮胎气压。", 1, Map.of("file_name", "manual.pdf"))));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 200);
+        assertTrue(service.removeDocumentFromGlobalKnowledgeBase("manual.pdf"));
+        service.awaitVectorStoreUpdates();
+
+        embeddingModel.setDelayMillis(0);
+        assertEquals(2, service.getHybridSearchStats().get("vectorizedDocuments"));
+        assertTrue(vectorStore.similaritySearch(SearchRequest.builder().query("轮胎气压").topK(30).build()).stream()
+            .noneMatch(hit -> "manual.pdf".equals(hit.getMetadata().get("file_name"))));
+    }
+
+    @Test
+    void slowVectorSearchFallsBackToKeywordResultsWithinTheTimeout() {
+        DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel();
+        PdfProperties properties = new PdfProperties();
+        PdfContentService service = buildService(SimpleVectorStore.builder(embeddingModel).build(), properties);
+        properties.getSearch().getHybrid().setTimeoutMs(100);
+        embeddingModel.setDelayMillis(2_000);
+
+        long start = System.nanoTime();
+        List<String> results = texts(service.searchGlobalKnowledgeBase(QUERY, 3));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis < 1_000, "检索耗时 " + elapsedMillis + " ms");
+        assertEquals(LITERAL_PAGE, results.get(0));
+        assertEquals(1L, service.getHybridSearchStats().get("timeouts"));
+
+        // 降级结果不缓存，向量检索恢复后得到融合结果
+        embeddingModel.setDelayMillis(0);
+        properties.getSearch().getHybrid().setTimeoutMs(2_000);
+        assertTrue(texts(service.searchGlobalKnowledgeBase(QUERY, 3)).contains(SYNONYM_PAGE));
+    }
+
+    private static PdfContentService buildService(VectorStore vectorStore) {
+        return buildService(vectorStore, new PdfProperties());
+    }
+
+    private static PdfContentService buildService(VectorStore vectorStore, PdfProperties properties) {
+        properties.getSearch().getCache().setMaxEntries(16);
+        PdfContentService service = new PdfContentService(properties, vectorStore);
+        TestDocuments.add(service, "cars.pdf", carPages());
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_name", "database.pdf");
+        List<PdfContentService.PdfPageContent> pages = new ArrayList<>();
+        for (int page = 1; page <= 20; page++) {
+            pages.add(new PdfContentService.PdfPageContent(
+                "第" + page + "章 数据库事务的隔离级别与锁机制，索引设计和查询优化。", page, metadata));
+        }
+        TestDocuments.add(service, "database.pdf", pages);
+        service.awaitVectorStoreUpdates();
+        return service;
+    }
+
+    private static List<PdfContentService.PdfPageContent> carPages() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_name", "cars.pdf");
+        return List.of(
+            new PdfContentService.PdfPageContent(SYNONYM_PAGE, 1, metadata),
+            new PdfContentService.PdfPageContent(LITERAL_PAGE, 2, metadata));
+    }
+
+    private static List<String> texts(List<PdfContentService.PdfPageContent> contents) {
+        List<String> texts = new ArrayList<>();
+        for (PdfContentService.PdfPageContent content : contents) {
+            texts.add(content.getContent());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import com.example.springaichat.search.DeferredReclaimer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfContentServiceTests {
+
+    private static final String QUERY = "数据库事务的隔离级别";
+
+    @Test
+    void reAddingTheSameContentKeepsOneCopyAndReleasesTheOldPassages() {
+        PdfContentService service = offHeapService();
+        String first = TestDocuments.add(service, "manual.pdf", passages(service, "manual.pdf", "旧版", 3));
+        String second = TestDocuments.add(service, "manual.pdf", passages(service, "manual.pdf", "旧版", 3));
+        assertEquals(first, second);
+
+        List<PdfContentService.PdfPageContent> hits = service.searchGlobalKnowledgeBase(QUERY, 5);
+        assertEquals(3, hits.size());
+
+        // 被替换的段落的堆外文本已归还，新文档只被全局知识库引用一次
+        assertEquals(3, service.getPageTextStats().get("passages"));
+        assertEquals(1, service.getAllDocuments().get(0).get("references"));
+        assertEquals(1, service.getGlobalKnowledgeBaseStats().get("sharedDocuments"));
+
+        // 内容不同的文档即使文件名相同也是另一个文档
+        assertNotEquals(first, TestDocuments.add(service, "manual.pdf", passages(service, "manual.pdf", "新版", 2)));
+        assertEquals(2, service.getGlobalKnowledgeBaseStats().get("sharedDocuments"));
+        assertEquals(5, service.getPageTextStats().get("passages"));
+    }
+
+    @Test
+    void removingADocumentReleasesOnlyItsOwnText() {
+        PdfContentService service = offHeapService();
+        TestDocuments.add(service, "a.pdf", passages(service, "a.pdf", "甲", 2));
+        TestDocuments.add(service, "b.pdf", passages(service, "b.pdf", "乙", 2));
+
+        assertTrue(service.removeDocumentFromGlobalKnowledgeBase("b.pdf"));
+        assertEquals(2, service.getPageTextStats().get("passages"));
+        assertTrue(service.searchGlobalKnowledgeBase(QUERY, 5).stream()
+            .allMatch(hit -> hit.getContent().startsWith("甲")));
+    }
+
+    @Test
+    void passagesFoundUnderALeaseStayReadableWhenTheirDocumentIsRemoved() {
+        PdfContentService service = offHeapService();
+        TestDocuments.add(service, "manual.pdf", passages(service, "manual.pdf", "旧版", 2));
+
+        List<PdfContentService.PdfPageContent> hits;
+        try (DeferredReclaimer.Lease lease = service.beginRead()) {
+            hits = service.searchGlobalKnowledgeBase(QUERY, 5);
+            assertTrue(service.removeDocumentFromGlobalKnowledgeBase("manual.pdf"));
+            // 文本要等读者结束才归还
+            assertEquals(2, service.getPageTextStats().get("passages"));
+            assertEquals(1, service.getPageTextStats().get("pendingReleases"));
+            List<String> snippets = service.extractSnippets(QUERY, hits, 200);
+            assertTrue(snippets.stream().allMatch(snippet -> snippet.contains("旧版")));
+        }
+        assertEquals(0, service.getPageTextStats().get("passages"));
+        assertEquals(0, service.getPageTextStats().get("pendingReleases"));
+        assertThrows(IllegalStateException.class, () -> hits.get(0).getContent());
+    }
+
+    @Test
+    void cachedResultsAreInvalidatedWhenKnowledgeBaseChanges() {
+        PdfContentService service = SyntheticCorpus.buildService(200, new ArrayList<>(), 16, false);
+        List<PdfContentService.PdfPageContent> first = service.searchGlobalKnowledgeBase("数据库事务的隔离级别？", 5);
+        // 只在标点和大小写上不同的问题命中同一条目
+        assertSame(first, service.searchGlobalKnowledgeBase("  数据库事务的隔离级别 ", 5));
+        assertNotSame(first, service.searchGlobalKnowledgeBase("数据库事务的隔离级别", 3));
+
+        long version = service.getKnowledgeBaseVersion();
+        assertTrue(service.removeDocumentFromGlobalKnowledgeBase("bench_0.pdf"));
+        assertTrue(service.getKnowledgeBaseVersion() > version);
+        List<PdfContentService.PdfPageContent> after = service.searchGlobalKnowledgeBase("数据库事务的隔离级别", 5);
+        assertNotSame(first, after);
+        assertTrue(after.stream().noneMatch(content -> "bench_0.pdf".equals(content.getMetadata().get("file_name"))));
+    }
+
+    @Test
+    void proximityRankingPutsPhrasePagesFirst() {
+        PdfContentService service = SyntheticCorpus.buildService(1_000, new ArrayList<>(), 0, false);
+        // 10页包含完整短语，10页包含相同的词但相距很远且词频更高
+        Random random = new Random(7);
+        String[] fillers = SyntheticCorpus.fillerWords(random);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_name", "planted.pdf");
+        List<PdfContentService.PdfPageContent> contents = new ArrayList<>();
+        for (int page = 1; page <= 20; page++) {
+            StringBuilder text = new StringBuilder(SyntheticCorpus.randomPage(random, fillers, 60));
+            if (page <= 10) {
+                text.append("数据库事务的隔离级别");
+            } else {
+                text.insert(0, "数据库 事务 数据库 事务 ").append("隔离级别 ")
+                    .append(SyntheticCorpus.randomPage(random, fillers, 60));
+            }
+            contents.add(new PdfContentService.PdfPageContent(text.toString(), page, metadata));
+        }
+        TestDocuments.add(service, "planted.pdf", contents);
+
+        assertTrue(service.searchGlobalKnowledgeBase("数据库事务的隔离级别", 3).stream()
+            .allMatch(content -> content.getContent().contains("数据库事务的隔离级别")));
+    }
+
+    @Test
+    void offHeapPassagesReturnTheSameResultsAsHeapPassages() {
+        PdfContentService heap = SyntheticCorpus.buildService(300, new ArrayList<>(), 0, false);
+        PdfContentService offHeap = SyntheticCorpus.buildService(300, new ArrayList<>(), 0, true);
+        for (String query : SyntheticCorpus.QUERIES) {
+            List<PdfContentService.PdfPageContent> expected = heap.searchGlobalKnowledgeBase(query, 5);
+            List<PdfContentService.PdfPageContent> actual = offHeap.searchGlobalKnowledgeBase(query, 5);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTrue(actual.get(i).isOffHeap());
+                assertEquals(expected.get(i).getContent(), actual.get(i).getContent());
+            }
+        }
+        Map<String, Object> report = offHeap.getPageTextStats();
+        assertEquals(300, report.get("passages"));
+        assertTrue((Long) report.get("compressedBytes") < (Long) report.get("rawBytes"));
+    }
+
+    @Test
+    void offHeapTextIsReleasedWithTheDocument() {
+        PdfContentService service = SyntheticCorpus.buildService(300, new ArrayList<>(), 0, true);
+        Map<String, Object> before = service.getPageTextStats();
+        assertTrue(service.removeDocumentFromGlobalKnowledgeBase("bench_0.pdf"));
+        Map<String, Object> after = service.getPageTextStats();
+        assertEquals(200, after.get("passages"));
+        assertTrue((Long) after.get("rawBytes") < (Long) before.get("rawBytes"));
+    }
+
+    private static PdfContentService offHeapService() {
+        PdfProperties properties = new PdfProperties();
+        properties.getPageText().setStore("off-heap");
+        return new PdfContentService(properties, null);
+    }
+
+    static List<PdfContentService.PdfPageContent> passages(PdfContentService service, String fileName,
+                                                           String prefix, int count) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_name", fileName);
+        List<PdfContentService.PdfPageContent> passages = new ArrayList<>();
+        for (int page = 1; page <= count; page++) {
+            String text = prefix + "手册第" + page + "页：" + QUERY + "与锁机制";
+            passages.add(new PdfContentService.PdfPageContent(service.getPageTextStore(), text, page, 0,
+                text.length(), metadata));
+        }
+        return passages;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PDF解析任务队列
+ */
+class PdfIngestionServiceTests {
+
+    @Test
+    void submitReturnsBeforeTheJobRunsAndJobsRunByPriority() throws Exception {
+        PdfIngestionService service = newService(1, 10);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            long start = System.nanoTime();
+            PdfIngestionService.IngestionJob blocker = service.submit("blocker.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    started.countDown();
+                    release.await();
+                });
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 100);
+            assertFalse(blocker.isFinished());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            List<PdfIngestionService.IngestionJob> queued = new ArrayList<>();
+            for (PdfIngestionService.Priority priority : new PdfIngestionService.Priority[]{
+                PdfIngestionService.Priority.LOW, PdfIngestionService.Priority.NORMAL,
+                PdfIngestionService.Priority.HIGH, PdfIngestionService.Priority.NORMAL}) {
+                int index = queued.size();
+                queued.add(service.submit(priority + ".pdf", null, null, priority,
+                    () -> order.add(priority + "#" + index)));
+            }
+            assertEquals("QUEUED", service.getJobStatus(queued.get(0).getJobId()).get("state"));
+            assertEquals("RUNNING", service.getJobStatus(blocker.getJobId()).get("state"));
+
+            release.countDown();
+            for (PdfIngestionService.IngestionJob job : queued) {
+                job.completion().get(5, TimeUnit.SECONDS);
+            }
+            // 高优先级先执行，同一优先级按提交顺序
+            assertEquals(List.of("HIGH#2", "NORMAL#1", "NORMAL#3", "LOW#0"), order);
+            assertEquals("SUCCEEDED", blocker.completion().get(5, TimeUnit.SECONDS).getState());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void transientFailuresAreRetriedWithExponentialBackoff() throws Exception {
+        PdfIngestionService service = newService(2, 10, retry(3, 50, 2.0, 1_000));
+        try {
+            List<Long> attemptTimes = Collections.synchronizedList(new ArrayList<>());
+            PdfIngestionService.IngestionJob job = service.submit("flaky.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    attemptTimes.add(System.nanoTime());
+                    if (attemptTimes.size() < 3) {
+                        throw new IOException("第" + attemptTimes.size() + "次失败");
+                    }
+                });
+            assertEquals("SUCCEEDED", job.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals(3, job.getAttempts());
+            assertEquals("第2次失败", job.getError());
+            // 两次重试分别等待约50ms和100ms
+            assertTrue((attemptTimes.get(1) - attemptTimes.get(0)) / 1_000_000 >= 45);
+            assertTrue((attemptTimes.get(2) - attemptTimes.get(1)) / 1_000_000 >= 95);
+
+            AtomicInteger attempts = new AtomicInteger();
+            PdfIngestionService.IngestionJob unavailable = service.submit("unavailable.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    attempts.incrementAndGet();
+                    throw new Exception("PDF文档处理失败", new IOException("磁盘不可用"));
+                });
+            assertEquals("FAILED", unavailable.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals(3, attempts.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void deterministicFailuresFailWithoutRetrying() throws Exception {
+        PdfIngestionService service = newService(1, 10, retry(3, 50, 2.0, 1_000));
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            PdfIngestionService.IngestionJob broken = service.submit("broken.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    attempts.incrementAndGet();
+                    throw new Exception("PDF文档处理失败: 无法解析PDF",
+                        new PdfPageStream.InvalidPdfException("无法解析PDF", new IOException("End-of-File")));
+                });
+            assertEquals("FAILED", broken.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals(1, attempts.get());
+            assertEquals("PDF文档处理失败: 无法解析PDF", service.getJobStatus(broken.getJobId()).get("error"));
+
+            PdfIngestionService.IngestionJob invalid = service.submit("invalid.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalArgumentException("不是有效的PDF");
+                });
+            assertEquals("FAILED", invalid.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals(2, attempts.get());
+            assertEquals(1, invalid.getAttempts());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void errorsThrownByTheTaskFailTheJob() throws Exception {
+        PdfIngestionService service = newService(1, 10, retry(3, 50, 2.0, 1_000));
+        try {
+            PdfIngestionService.IngestionJob assertion = service.submit("assertion.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    throw new AssertionError("页面索引越界");
+                });
+            assertEquals("FAILED", assertion.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals("页面索引越界", assertion.getError());
+            assertEquals(1, assertion.getAttempts());
+
+            // 虚拟机错误重新抛出，解析线程被替换，后续任务照常执行
+            PdfIngestionService.IngestionJob overflow = service.submit("overflow.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> {
+                    throw new StackOverflowError();
+                });
+            assertEquals("FAILED", overflow.completion().get(5, TimeUnit.SECONDS).getState());
+            assertEquals("StackOverflowError", overflow.getError());
+            PdfIngestionService.IngestionJob next = service.submit("next.pdf", null, null,
+                PdfIngestionService.Priority.NORMAL, () -> { });
+            assertEquals("SUCCEEDED", next.completion().get(5, TimeUnit.SECONDS).getState());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void jobsWaitingToRetryFailWhenTheServiceShutsDown() throws Exception {
+        PdfIngestionService service = newService(1, 10, retry(3, 60_000, 2.0, 60_000));
+        PdfIngestionService.IngestionJob job = service.submit("flaky.pdf", null, null,
+            PdfIngestionService.Priority.NORMAL, () -> {
+                throw new IOException("磁盘不可用");
+            });
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"RETRY_WAIT".equals(job.getState()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("RETRY_WAIT", job.getState());
+
+        service.shutdown();
+        assertEquals("FAILED", job.completion().get(5, TimeUnit.SECONDS).getState());
+        assertEquals("服务关闭，未能重试: 磁盘不可用", job.getError());
+        assertEquals(1, job.getAttempts());
+    }
+
+    @Test
+    void backoffGrowsUpToTheLimitAndTheQueueIsBounded() throws Exception {
+        PdfIngestionService service = newService(1, 2, retry(5, 100, 3.0, 500));
+        assertEquals(100, service.backoffMillis(1));
+        assertEquals(300, service.backoffMillis(2));
+        assertEquals(500, service.backoffMillis(3));
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            service.submit("running.pdf", null, null, PdfIngestionService.Priority.NORMAL, () -> {
+                started.countDown();
+                release.await();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            service.submit("a.pdf", null, null, PdfIngestionService.Priority.NORMAL, () -> { });
+            service.submit("b.pdf", null, null, PdfIngestionService.Priority.NORMAL, () -> { });
+            assertThrows(RejectedExecutionException.class, () -> service.submit("c.pdf", null, null,
+                PdfIngestionService.Priority.HIGH, () -> { }));
+            assertEquals(2, service.getQueueStats().get("queued"));
+            release.countDown();
+
+            assertNull(service.getJobStatus("missing"));
+            assertNotNull(service.getQueueStats().get("jobs"));
+            assertEquals(PdfIngestionService.Priority.HIGH, PdfIngestionService.Priority.parse(" high "));
+            assertEquals(PdfIngestionService.Priority.NORMAL, PdfIngestionService.Priority.parse("urgent"));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static PdfIngestionService newService(int threads, int capacity) {
+        return newService(threads, capacity, new PdfProperties.Retry());
+    }
+
+    private static PdfIngestionService newService(int threads, int capacity, PdfProperties.Retry retry) {
+        PdfProperties properties = new PdfProperties();
+        properties.getIngest().setThreads(threads);
+        properties.getIngest().setQueueCapacity(capacity);
+        properties.getIngest().setRetry(retry);
+        return new PdfIngestionService(null, properties);
+    }
+
+    private static PdfProperties.Retry retry(int maxAttempts, long initialBackoffMs, double multiplier,
+                                             long maxBackoffMs) {
+        PdfProperties.Retry retry = new PdfProperties.Retry();
+        retry.setMaxAttempts(maxAttempts);
+        retry.setInitialBackoffMs(initialBackoffMs);
+        retry.setMultiplier(multiplier);
+        retry.setMaxBackoffMs(maxBackoffMs);
+        return retry;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.springaichat.service.SyntheticCorpus.QUERIES;
+import static com.example.springaichat.service.SyntheticCorpus.VOCABULARY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 全局知识库检索基准测试
+ * 使用合成语料，观察查询延迟、分配量和内存随语料规模的增长情况，结果输出到日志。
+ * 标记为benchmark，默认不随单元测试运行：mvn test -Pbenchmark
+ */
+@Slf4j
+@Tag("benchmark")
+class PdfKnowledgeBaseBenchmarkTests {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 100;
+
+    @Test
+    void queryLatencyGrowsWithCorpusSize() {
+        log.info("页面数\t索引检索(μs/次)\t缓存命中(μs/次)\t全文扫描(μs/次)");
+        for (int pages : new int[]{1_000, 2_000, 4_000, 8_000}) {
+            List<String> allTexts = new ArrayList<>();
+            PdfContentService service = buildService(pages, allTexts, 0);
+            PdfContentService cachedService = buildService(pages, new ArrayList<>(), 1024);
+
+            for (String query : QUERIES) {
+                assertFalse(service.searchGlobalKnowledgeBase(query, 5).isEmpty());
+            }
+            double indexed = measure(() -> service.searchGlobalKnowledgeBase(QUERIES[0], 5), MEASURE_ROUNDS);
+            double cached = measure(() -> cachedService.searchGlobalKnowledgeBase(QUERIES[0], 5), MEASURE_ROUNDS);
+            double scanned = measure(() -> linearScan(allTexts, QUERIES[0]), MEASURE_ROUNDS / 10);
+            log.info(String.format("%d\t%.1f\t%.1f\t%.1f", pages, indexed, cached, scanned));
+        }
+    }
+
+    @Test
+    void queryAllocationDoesNotGrowWithCorpusSize() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        log.info("页面数\t每次查询分配字节数");
+        for (int pages : new int[]{1_000, 4_000, 16_000}) {
+            PdfContentService service = buildService(pages, new ArrayList<>(), 0);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                service.searchGlobalKnowledgeBase(QUERIES[0], 5);
+            }
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                service.searchGlobalKnowledgeBase(QUERIES[0], 5);
+            }
+            long perQuery = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURE_ROUNDS;
+            log.info("{}\t{}", pages, perQuery);
+            // 分配量只与查询和K有关，不随候选页面数增长
+            assertTrue(perQuery < 4096, "每次查询分配 " + perQuery + " 字节");
+        }
+    }
+
+    @Test
+    void indexMemoryPerPageStaysFlatAsCorpusGrows() {
+        log.info("页面数\t倒排项\t压缩后(字节/项)\t索引总计(字节/页)\t不压缩倒排项(字节/页)");
+        for (int pages : new int[]{1_000, 4_000, 16_000}) {
+            PdfContentService service = buildService(pages, new ArrayList<>(), 0);
+            Map<String, Object> report = service.getIndexMemoryFootprint();
+            long postings = (Long) report.get("postings");
+            long encoded = (Long) report.get("encodedPostingBytes");
+            long uncompressed = (Long) report.get("uncompressedPostingBytes");
+            log.info(String.format("%d\t%d\t%.2f\t%.0f\t%.0f", pages, postings, (Double) report.get("bytesPerPosting"),
+                (Double) report.get("bytesPerPage"), (double) uncompressed / pages));
+            assertTrue(encoded * 2 < uncompressed, "压缩后 " + encoded + " 字节，不压缩 " + uncompressed + " 字节");
+        }
+    }
+
+    @Test
+    void positionalQueryCostComparedToBagOfWords() {
+        log.info("页面数\t词频检索(μs/次)\t位置重排(μs/次)\t位置流(字节/页)");
+        for (int pages : new int[]{1_000, 4_000, 16_000}) {
+            PdfProperties properties = new PdfProperties();
+            properties.getSearch().getCache().setMaxEntries(0);
+            PdfContentService service = SyntheticCorpus.buildService(pages, new ArrayList<>(), properties);
+            double[] costs = new double[2];
+            for (int mode = 0; mode < 2; mode++) {
+                properties.getSearch().getProximity().setEnabled(mode == 1);
+                costs[mode] = measure(() -> {
+                    for (String query : QUERIES) {
+                        service.searchGlobalKnowledgeBase(query, 3);
+                    }
+                }, MEASURE_ROUNDS) / QUERIES.length;
+            }
+            long positionBytes = (Long) service.getIndexMemoryFootprint().get("positionBytes");
+            log.info(String.format("%d\t%.1f\t%.1f\t%.0f", pages, costs[0], costs[1], (double) positionBytes / pages));
+        }
+    }
+
+    @Test
+    void offHeapPageTextShrinksTextAtACostInLatency() {
+        log.info("页面数\t原始文本(字节)\t压缩后(字节)\t压缩率\t堆上检索(μs/次)\t堆外检索+解压(μs/次)");
+        for (int pages : new int[]{1_000, 4_000}) {
+            PdfContentService heap = SyntheticCorpus.buildService(pages, new ArrayList<>(), 0, false);
+            PdfContentService offHeap = SyntheticCorpus.buildService(pages, new ArrayList<>(), 0, true);
+            Map<String, Object> report = offHeap.getPageTextStats();
+            long raw = (Long) report.get("rawBytes");
+            long compressed = (Long) report.get("compressedBytes");
+            double heapLatency = measure(() -> heap.searchGlobalKnowledgeBase(QUERIES[0], 5)
+                .forEach(PdfContentService.PdfPageContent::getContent), MEASURE_ROUNDS);
+            double offHeapLatency = measure(() -> offHeap.searchGlobalKnowledgeBase(QUERIES[0], 5)
+                .forEach(PdfContentService.PdfPageContent::getContent), MEASURE_ROUNDS);
+            log.info(String.format("%d\t%d\t%d\t%.2f\t%.1f\t%.1f", pages, raw, compressed,
+                (Double) report.get("compressionRatio"), heapLatency, offHeapLatency));
+            assertEquals(pages, report.get("passages"));
+            assertTrue(compressed < raw, "压缩后 " + compressed + " 字节，原始 " + raw + " 字节");
+        }
+    }
+
+    private static PdfContentService buildService(int pages, List<String> allTexts, int cacheEntries) {
+        return SyntheticCorpus.buildService(pages, allTexts, cacheEntries, false);
+    }
+
+    /**
+     * 旧实现的等价开销：对每页全文逐个关键词做indexOf计数
+     */
+    private static int linearScan(List<String> texts, String query) {
+        int hits = 0;
+        for (String text : texts) {
+            String lower = text.toLowerCase();
+            for (String keyword : VOCABULARY) {
+                if (query.contains(keyword)) {
+                    int index = 0;
+                    while ((index = lower.indexOf(keyword, index)) != -1) {
+                        hits++;
+                        index += keyword.length();
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static double measure(Runnable task, int rounds) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / rounds;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式PDF解析
+ * 用PDFBox生成多页PDF，每页带一个只在该页出现的关键词；两种解析方式的耗时和堆占用峰值输出到日志
+ */
+@Slf4j
+class StreamingPdfIngestionTests {
+
+    private static final int PAGES = 300;
+
+    @Test
+    void streamingModeIndexesEveryPage() throws Exception {
+        Path dir = Files.createTempDirectory("pdf-stream-");
+        try {
+            Path pdf = writePdf(dir.resolve("manual.pdf"), PAGES);
+            PdfContentService service = newService("streaming", 4);
+            service.processPdfDocument(null, new FileSystemResource(pdf), "manual.pdf", null);
+
+            Map<String, Object> stats = service.getGlobalKnowledgeBaseStats();
+            assertEquals(PAGES, stats.get("totalPages"));
+            for (int page : new int[]{1, 77, PAGES}) {
+                List<PdfContentService.PdfPageContent> results = service.searchGlobalKnowledgeBase(keyword(page), 1);
+                assertEquals(page, results.get(0).getPageNumber());
+            }
+            assertTrue(service.getActiveIngestions().isEmpty());
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    void streamingAndReaderModesProduceTheSamePages() throws Exception {
+        Path dir = Files.createTempDirectory("pdf-stream-");
+        try {
+            Path pdf = writePdf(dir.resolve("manual.pdf"), PAGES);
+            log.info("解析方式\t耗时(ms)\t段落数\t解析期间堆占用峰值(MB)");
+            int[] passages = new int[2];
+            String[] modes = {"reader", "streaming"};
+            for (int i = 0; i < modes.length; i++) {
+                PdfContentService service = newService(modes[i], 8);
+                HeapSampler sampler = new HeapSampler();
+                long start = System.nanoTime();
+                sampler.start();
+                service.processPdfDocument(null, new FileSystemResource(pdf), "manual.pdf", null);
+                long peak = sampler.stop();
+                passages[i] = (Integer) service.getGlobalKnowledgeBaseStats().get("totalPassages");
+                log.info(String.format("%s\t%d\t%d\t%.1f", modes[i], (System.nanoTime() - start) / 1_000_000,
+                    passages[i], peak / 1024.0 / 1024.0));
+                assertEquals(PAGES, service.getGlobalKnowledgeBaseStats().get("totalPages"));
+            }
+            assertEquals(passages[0], passages[1]);
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    void progressIsVisibleWhileIngestionRuns() throws Exception {
+        Path dir = Files.createTempDirectory("pdf-stream-");
+        try {
+            Path pdf = writePdf(dir.resolve("manual.pdf"), PAGES);
+            PdfContentService service = newService("streaming", 1);
+            AtomicInteger partialObservations = new AtomicInteger();
+            AtomicBoolean done = new AtomicBoolean();
+            Thread poller = new Thread(() -> {
+                while (!done.get()) {
+                    for (Map<String, Object> progress : service.getActiveIngestions()) {
+                        int processed = (Integer) progress.get("processedPages");
+                        if (processed > 0 && processed < PAGES && (Integer) progress.get("totalPages") == PAGES) {
+                            partialObservations.incrementAndGet();
+                        }
+                    }
+                    Thread.onSpinWait();
+                }
+            });
+            poller.start();
+            try {
+                service.processPdfDocument(null, new FileSystemResource(pdf), "manual.pdf", null);
+            } finally {
+                done.set(true);
+                poller.join();
+            }
+            assertTrue(partialObservations.get() > 0);
+            assertTrue(service.getActiveIngestions().isEmpty());
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    void failureMidDocumentReleasesTheStoredPassages() throws Exception {
+        Path dir = Files.createTempDirectory("pdf-stream-");
+        try {
+            Path pdf = writePdfWithBrokenLastPage(dir.resolve("broken.pdf"), 20);
+            PdfProperties properties = newProperties("streaming", 4);
+            properties.getPageText().setStore("off-heap");
+            PdfContentService service = new PdfContentService(properties, null);
+            assertThrows(Exception.class,
+                () -> service.processPdfDocument(null, new FileSystemResource(pdf), "broken.pdf", null));
+
+            // 前几批页面的段落已写入堆外存储，失败后全部归还
+            assertEquals(0, service.getPageTextStats().get("passages"));
+            assertEquals(0, service.getGlobalKnowledgeBaseStats().get("documentCount"));
+            assertTrue(service.getActiveIngestions().isEmpty());
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    void contentThatIsNotAPdfIsReportedAsInvalid() throws Exception {
+        Path dir = Files.createTempDirectory("pdf-stream-");
+        try {
+            Path notPdf = Files.writeString(dir.resolve("broken.pdf"), "这不是PDF文件");
+            PdfPageStream.InvalidPdfException e = assertThrows(PdfPageStream.InvalidPdfException.class,
+                () -> PdfPageStream.open(new FileSystemResource(notPdf), ExtractedTextFormatter.defaults()));
+            // 解析任务据此直接失败，不再重试
+            assertFalse(PdfIngestionService.isRetryable(new Exception("PDF文档处理失败", e)));
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    private static PdfContentService newService(String mode, int batchPages) {
+        return new PdfContentService(newProperties(mode, batchPages), null);
+    }
+
+    private static PdfProperties newProperties(String mode, int batchPages) {
+        PdfProperties properties = new PdfProperties();
+        properties.getSnapshot().setEnabled(false);
+        properties.getIngest().setMode(mode);
+        properties.getIngest().setBatchPages(batchPages);
+        return properties;
+    }
+
+    /**
+     * 页码对应的关键词：数字映射为字母，例如第77页为 pagehh
+     */
+    private static String keyword(int page) {
+        StringBuilder builder = new StringBuilder("page");
+        for (char digit : Integer.toString(page).toCharArray()) {
+            builder.append((char) ('a' + digit - '0'));
+        }
+        return builder.toString();
+    }
+
+    private static Path writePdf(Path file, int pages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int page = 1; page <= pages; page++) {
+                PDPage pdPage = new PDPage();
+                document.addPage(pdPage);
+                try (PDPageContentStream stream = new PDPageContentStream(document, pdPage)) {
+                    stream.beginText();
+                    stream.setFont(font, 12);
+                    stream.newLineAtOffset(50, 700);
+                    stream.showText("Chapter " + page + " covers " + keyword(page) + " and the maintenance schedule.");
+                    stream.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    /**
+     * 前 pages 页正常，最后一页的内容流使用无法识别的过滤器，解析到该页时失败
+     */
+    private static Path writePdfWithBrokenLastPage(Path file, int pages) throws IOException {
+        Path valid = writePdf(file.resolveSibling("valid-" + file.getFileName()), pages);
+        try (PDDocument document = Loader.loadPDF(valid.toFile())) {
+            PDPage broken = new PDPage();
+            COSStream contents = document.getDocument().createCOSStream();
+            try (OutputStream out = contents.createRawOutputStream()) {
+                out.write("BT /F1 12 Tf (broken) Tj ET".getBytes(StandardCharsets.US_ASCII));
+            }
+            contents.setItem(COSName.FILTER, COSName.getPDFName("NoSuchDecode"));
+            broken.setContents(new PDStream(contents));
+            document.addPage(broken);
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * 后台采样堆占用，记录峰值
+     */
+    private static final class HeapSampler {
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile long peak;
+        private Thread thread;
+
+        void start() {
+            System.gc();
+            running.set(true);
+            thread = new Thread(() -> {
+                Runtime runtime = Runtime.getRuntime();
+                while (running.get()) {
+                    peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        long stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+            return peak;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.PdfProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 合成语料：每个文档100页，约5%的词来自数据库主题词表，其余为随机汉字填充词
+ * 供知识库检索测试和基准共用，相同参数生成的语料相同
+ */
+final class SyntheticCorpus {
+
+    static final String[] VOCABULARY = {
+        "数据库", "事务", "索引", "隔离级别", "主键", "外键", "查询优化", "存储引擎", "锁机制", "日志",
+        "备份", "恢复", "范式", "视图", "触发器", "存储过程", "分区", "复制", "集群", "缓存",
+        "mysql", "redis", "btree", "hash", "join", "select", "commit", "rollback", "mvcc", "sql"
+    };
+
+    static final String[] QUERIES = {
+        "数据库事务的隔离级别有哪些",
+        "mysql的存储引擎和锁机制",
+        "如何做查询优化和索引设计",
+        "mvcc 与 rollback 日志"
+    };
+
+    /** 填充词数量，模拟与查询无关的正文 */
+    private static final int FILLER_WORDS = 2_000;
+
+    private static final int PAGES_PER_DOCUMENT = 100;
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * 构建包含合成语料的知识库，文档依次命名为 bench_0.pdf、bench_1.pdf ……
+     * @param pages 总页数（按每个文档100页取整）
+     * @param allTexts 追加所有页面文本
+     * @param cacheEntries 查询缓存条目数，0表示不缓存
+     * @param offHeap 页面文本是否压缩存储到堆外
+     */
+    static PdfContentService buildService(int pages, List<String> allTexts, int cacheEntries, boolean offHeap) {
+        PdfProperties properties = new PdfProperties();
+        properties.getSearch().getCache().setMaxEntries(cacheEntries);
+        properties.getPageText().setStore(offHeap ? "off-heap" : "heap");
+        return buildService(pages, allTexts, properties);
+    }
+
+    /**
+     * 按给定配置构建包含合成语料的知识库，配置对象在检索时读取，构建后修改检索相关的配置即时生效
+     * @param pages 总页数（按每个文档100页取整）
+     * @param allTexts 追加所有页面文本
+     * @param properties 知识库配置
+     */
+    static PdfContentService buildService(int pages, List<String> allTexts, PdfProperties properties) {
+        PdfContentService service = new PdfContentService(properties, null);
+        boolean offHeap = properties.getPageText().isOffHeap();
+        Random random = new Random(42);
+        String[] fillers = fillerWords(random);
+        for (int doc = 0; doc < pages / PAGES_PER_DOCUMENT; doc++) {
+            String fileName = "bench_" + doc + ".pdf";
+            List<PdfContentService.PdfPageContent> contents = new ArrayList<>();
+            for (int page = 1; page <= PAGES_PER_DOCUMENT; page++) {
+                String text = randomPage(random, fillers, 400);
+                allTexts.add(text);
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("file_name", fileName);
+                contents.add(offHeap
+                    ? new PdfContentService.PdfPageContent(service.getPageTextStore(), text, page, 0, text.length(),
+                        metadata)
+                    : new PdfContentService.PdfPageContent(text, page, metadata));
+            }
+            TestDocuments.add(service, fileName, contents);
+        }
+        return service;
+    }
+
+    static String[] fillerWords(Random random) {
+        String[] fillers = new String[FILLER_WORDS];
+        for (int i = 0; i < fillers.length; i++) {
+            char[] chars = new char[2 + random.nextInt(2)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('\u4e00' + random.nextInt(3_000));
+            }
+            fillers[i] = new String(chars);
+        }
+        return fillers;
+    }
+
+    /**
+     * 生成一页文本：约5%的词来自主题词表，其余为填充词
+     */
+    static String randomPage(Random random, String[] fillers, int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (random.nextInt(20) == 0) {
+                builder.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            } else {
+                builder.append(fillers[random.nextInt(fillers.length)]);
+            }
+            builder.append(random.nextInt(5) == 0 ? "，" : " ");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.search.ContentHash;
+import com.example.springaichat.search.InvertedIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 不经过PDF解析直接把段落加入全局知识库，文档ID与正式入库一样按内容寻址（段落文本的SHA-256）
+ */
+final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * 把段落作为一个文档加入全局知识库
+     * @param service 知识库
+     * @param fileName 文件名
+     * @param passages 段落
+     * @return 文档ID
+     */
+    static String add(PdfContentService service, String fileName, List<PdfContentService.PdfPageContent> passages) {
+        List<String> texts = new ArrayList<>(passages.size());
+        MessageDigest digest = ContentHash.newDigest();
+        for (PdfContentService.PdfPageContent passage : passages) {
+            String text = passage.getContent();
+            texts.add(text);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            // 段落分隔，避免不同的切分得到相同的摘要
+            digest.update((byte) 0);
+        }
+        String documentId = ContentHash.toHex(digest.digest());
+        PdfContentService.KnowledgeDocument document = new PdfContentService.KnowledgeDocument(documentId, fileName,
+            passages, passages.isEmpty() ? Collections.emptyMap() : passages.get(0).getMetadata(), null);
+        service.addToGlobalKnowledgeBase(document, InvertedIndex.tokenize(texts, service.getTokenizer()));
+        return documentId;
+    }
+}
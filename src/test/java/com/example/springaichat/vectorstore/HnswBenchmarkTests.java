@@ -0,0 +1,115 @@
+package com.example.springaichat.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HNSW与暴力检索的召回率和延迟对比，结果输出到日志
+ * 标记为benchmark，默认不随单元测试运行：mvn test -Pbenchmark；
+ * 默认规模为2万个向量，指定 -Dvector.benchmark.sizes=100000,1000000 时按给定规模运行
+ * （1M个128维向量需要约2GB堆，-Xmx3g）
+ */
+@Slf4j
+@Tag("benchmark")
+class HnswBenchmarkTests {
+
+    private static final int K = 10;
+    private static final int QUERIES = 200;
+    private static final int BRUTE_FORCE_QUERIES = 20;
+    private static final int[] EF_SEARCH = {16, 64, 128};
+
+    @Test
+    void recallAndLatencyAgainstBruteForce() throws Exception {
+        int dimensions = Integer.getInteger("vector.benchmark.dimensions", 128);
+        log.info("向量数\t构建(s)\tefSearch\tHNSW(μs/次)\t暴力检索(μs/次)\trecall@" + K);
+        for (String size : System.getProperty("vector.benchmark.sizes", "20000").split(",")) {
+            int count = Integer.parseInt(size.trim());
+            Random random = new Random(42);
+            float[][] vectors = VectorFixtures.clustered(random, count, dimensions, Math.max(16, count / 500));
+            float[][] queries = VectorFixtures.queries(random, vectors, QUERIES);
+
+            HnswIndex index = new HnswIndex(dimensions, 16, 200, 64);
+            long start = System.nanoTime();
+            int[] ids = buildConcurrently(index, vectors);
+            double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+            // 暴力检索的结果作为标准答案，只用前几次计时
+            int[][] expected = new int[QUERIES][];
+            long bruteForceElapsed = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                expected[q] = VectorFixtures.bruteForce(vectors, queries[q], K);
+                if (q + 1 == BRUTE_FORCE_QUERIES) {
+                    bruteForceElapsed = System.nanoTime() - start;
+                }
+            }
+            double bruteForceMicros = bruteForceElapsed / 1_000.0 / BRUTE_FORCE_QUERIES;
+
+            for (int ef : EF_SEARCH) {
+                // 预热
+                for (float[] query : queries) {
+                    index.search(query, K, ef, null);
+                }
+                long hits = 0;
+                long elapsed = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long queryStart = System.nanoTime();
+                    VectorIndex.SearchResult result = index.search(queries[q], K, ef, null);
+                    elapsed += System.nanoTime() - queryStart;
+                    for (int i = 0; i < result.size(); i++) {
+                        int vectorIndex = ids[result.id(i)];
+                        for (int id : expected[q]) {
+                            if (id == vectorIndex) {
+                                hits++;
+                                break;
+                            }
+                        }
+                    }
+                }
+                double recall = (double) hits / (QUERIES * K);
+                log.info(String.format("%d\t%.1f\t%d\t%.1f\t%.1f\t%.3f", count, buildSeconds, ef,
+                    elapsed / 1_000.0 / QUERIES, bruteForceMicros, recall));
+                if (ef == 64) {
+                    assertTrue(recall >= 0.9, "recall@" + K + " = " + recall);
+                }
+            }
+        }
+    }
+
+    /**
+     * 多线程并发构建
+     * @return 节点ID到向量下标的映射
+     */
+    private static int[] buildConcurrently(HnswIndex index, float[][] vectors) throws Exception {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int[] ids = new int[vectors.length];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = offset; i < vectors.length; i += threads) {
+                        ids[index.add(vectors[i])] = i;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return ids;
+    }
+}
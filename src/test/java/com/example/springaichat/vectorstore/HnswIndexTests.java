@@ -0,0 +1,174 @@
+package com.example.springaichat.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTests {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void recallAgainstBruteForceIsHigh() {
+        Random random = new Random(7);
+        float[][] vectors = VectorFixtures.clustered(random, 5_000, DIMENSIONS, 50);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 64);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        double recall = VectorFixtures.recall(index, vectors, VectorFixtures.queries(random, vectors, 100), 10);
+        assertTrue(recall >= 0.95, "recall@10 = " + recall);
+    }
+
+    @Test
+    void exactMatchComesFirstWithCosineSimilarity() {
+        HnswIndex index = new HnswIndex(3);
+        int a = index.add(new float[]{1, 0, 0});
+        int b = index.add(new float[]{0, 1, 0});
+        index.add(new float[]{0, 0, 1});
+        // 长度不影响余弦相似度
+        VectorIndex.SearchResult result = index.search(new float[]{0, 5, 0.1f}, 2, null);
+        assertEquals(2, result.size());
+        assertEquals(b, result.id(0));
+        assertTrue(result.similarity(0) > 0.99f);
+        assertTrue(result.similarity(0) >= result.similarity(1));
+
+        assertTrue(index.markDeleted(b));
+        assertFalse(index.markDeleted(b));
+        assertEquals(2, index.liveSize());
+        VectorIndex.SearchResult afterDelete = index.search(new float[]{0, 5, 0.1f}, 3, null);
+        assertEquals(2, afterDelete.size());
+        for (int i = 0; i < afterDelete.size(); i++) {
+            assertTrue(afterDelete.id(i) != b);
+        }
+        // 过滤条件排除了大部分节点时仍能找到满足条件的节点
+        VectorIndex.SearchResult filtered = index.search(new float[]{0, 1, 0}, 1, 1, id -> id == a);
+        assertEquals(a, filtered.id(0));
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1, 2}));
+    }
+
+    @Test
+    void concurrentInsertsAndSearchesKeepTheGraphConsistent() throws Exception {
+        Random random = new Random(11);
+        float[][] vectors = VectorFixtures.clustered(random, 8_000, DIMENSIONS, 40);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 12, 80, 64);
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        AtomicBoolean inserting = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = offset; i < vectors.length; i += 4) {
+                        index.add(vectors[i]);
+                    }
+                }));
+            }
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                readers.add(pool.submit(() -> {
+                    int searches = 0;
+                    Random queryRandom = new Random();
+                    while (inserting.get()) {
+                        VectorIndex.SearchResult result =
+                            index.search(vectors[queryRandom.nextInt(vectors.length)], 5, null);
+                        for (int i = 1; i < result.size(); i++) {
+                            assertTrue(result.similarity(i - 1) >= result.similarity(i));
+                        }
+                        searches++;
+                    }
+                    return searches;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            inserting.set(false);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(vectors.length, index.size());
+
+        // 每个向量都能从入口点到达：用自身检索时排在第一
+        Set<Integer> reached = new HashSet<>();
+        for (int id = 0; id < index.size(); id += 7) {
+            VectorIndex.SearchResult result = index.search(index.vector(id), 1, null);
+            if (result.size() == 1 && result.similarity(0) > 0.9999f) {
+                reached.add(id);
+            }
+        }
+        assertTrue(reached.size() >= (index.size() / 7) * 0.99, "可达 " + reached.size());
+        // 并发插入时节点ID与数组下标不对应，按索引中保存的向量计算标准答案
+        float[][] stored = new float[index.size()][];
+        for (int id = 0; id < stored.length; id++) {
+            stored[id] = index.vector(id);
+        }
+        assertTrue(VectorFixtures.recall(index, stored, VectorFixtures.queries(random, vectors, 100), 10) >= 0.9);
+    }
+
+    @Test
+    void concurrentInsertsKeepEveryNodeLinkedIntoTheGraph() throws Exception {
+        Random random = new Random(5);
+        float[][] vectors = VectorFixtures.clustered(random, 4_000, DIMENSIONS, 20);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 12, 40, 32);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = offset; i < vectors.length; i += 8) {
+                        index.add(vectors[i]);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 邻居表没有重复和自环，且从入口点沿各层邻居能到达所有节点
+        boolean[] reached = new boolean[index.size()];
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        reached[index.entryPoint()] = true;
+        pending.add(index.entryPoint());
+        int count = 1;
+        while (!pending.isEmpty()) {
+            int id = pending.poll();
+            for (int level = 0; level <= index.maxLevel(); level++) {
+                int[] neighbors = index.neighbors(id, level);
+                assertEquals(neighbors.length, Arrays.stream(neighbors).distinct().count());
+                for (int neighbor : neighbors) {
+                    assertTrue(neighbor != id);
+                    if (!reached[neighbor]) {
+                        reached[neighbor] = true;
+                        pending.add(neighbor);
+                        count++;
+                    }
+                }
+            }
+        }
+        assertEquals(index.size(), count);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.springaichat.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswVectorStoreTests {
+
+    @Test
+    void documentsAreFoundByMeaningAndCanBeReplacedOrDeleted() {
+        HnswVectorStore store = HnswVectorStore.builder(new KeywordEmbeddingModel()).m(8).efSearch(32).build();
+        store.add(List.of(
+            document("1", "苹果 香蕉", "fruit", 2023),
+            document("2", "汽车 轮胎", "car", 2024),
+            document("3", "香蕉 橙子", "fruit", 2024)));
+
+        List<Document> hits = store.similaritySearch(SearchRequest.builder().query("香蕉").topK(2).build());
+        assertEquals(2, hits.size());
+        assertTrue(hits.stream().allMatch(hit -> "fruit".equals(hit.getMetadata().get("category"))));
+        assertTrue(hits.get(0).getScore() >= hits.get(1).getScore());
+
+        // 相似度阈值
+        List<Document> strict = store.similaritySearch(
+            SearchRequest.builder().query("汽车").topK(3).similarityThreshold(0.5).build());
+        assertEquals(List.of("2"), ids(strict));
+
+        // 相同ID再次写入时覆盖
+        store.add(List.of(document("2", "橙子", "fruit", 2024)));
+        assertEquals(0, store.similaritySearch(
+            SearchRequest.builder().query("汽车").topK(3).similarityThreshold(0.5).build()).size());
+        assertEquals(3, store.getIndexStats().get("documents"));
+
+        store.delete(List.of("1"));
+        assertEquals(List.of("3"), ids(store.similaritySearch(SearchRequest.builder().query("苹果 香蕉").topK(1).build())));
+    }
+
+    @Test
+    void metadataFiltersApplyToSearchAndDelete() {
+        HnswVectorStore store = HnswVectorStore.builder(new KeywordEmbeddingModel()).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            documents.add(document("d" + i, "香蕉 " + (i % 2 == 0 ? "苹果" : "橙子"), i < 10 ? "old" : "new", 2000 + i));
+        }
+        store.add(documents);
+
+        Filter.Expression oldOnly = new Filter.Expression(Filter.ExpressionType.EQ,
+            new Filter.Key("category"), new Filter.Value("old"));
+        List<Document> hits = store.similaritySearch(
+            SearchRequest.builder().query("香蕉").topK(20).filterExpression(oldOnly).build());
+        assertEquals(10, hits.size());
+
+        Filter.Expression recentApples = new Filter.Expression(Filter.ExpressionType.AND,
+            new Filter.Expression(Filter.ExpressionType.GTE, new Filter.Key("year"), new Filter.Value(2040)),
+            new Filter.Group(new Filter.Expression(Filter.ExpressionType.IN, new Filter.Key("'category'"),
+                new Filter.Value(List.of("new", "other")))));
+        assertEquals(10, store.similaritySearch(
+            SearchRequest.builder().query("香蕉").topK(50).filterExpression(recentApples).build()).size());
+
+        store.delete(new Filter.Expression(Filter.ExpressionType.LT, new Filter.Key("year"), new Filter.Value(2010)));
+        assertEquals(40, store.getIndexStats().get("documents"));
+        assertEquals(0, store.similaritySearch(
+            SearchRequest.builder().query("香蕉").topK(20).filterExpression(oldOnly).build()).size());
+    }
+
+    @Test
+    void overwrittenDocumentsAreCompactedInsteadOfGrowingTheGraph() {
+        HnswVectorStore store = HnswVectorStore.builder(new KeywordEmbeddingModel()).m(8).build();
+        // 最后一轮写入后节点数超过重建下限，且被覆盖的节点超过一半
+        int rounds = IndexedVectorStore.MIN_COMPACT_NODES / 200 + 1;
+        for (int round = 0; round < rounds; round++) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                documents.add(document("d" + i, round % 2 == 0 ? "香蕉 苹果" : "汽车 轮胎", "fruit", round));
+            }
+            store.add(documents);
+        }
+
+        Map<String, Object> stats = store.getIndexStats();
+        assertEquals(200, stats.get("documents"));
+        assertEquals(200, stats.get("nodes"));
+        assertEquals(1L, stats.get("rebuilds"));
+        // 重建后的索引只包含最后写入的版本
+        String query = (rounds - 1) % 2 == 0 ? "香蕉" : "汽车";
+        List<Document> hits = store.similaritySearch(SearchRequest.builder().query(query).topK(10).build());
+        assertEquals(10, hits.size());
+        assertTrue(hits.stream().allMatch(hit -> Integer.valueOf(rounds - 1).equals(hit.getMetadata().get("year"))));
+
+        store.delete(List.of("d0", "d1"));
+        assertEquals(198, store.getIndexStats().get("documents"));
+    }
+
+    @Test
+    void quantizedStoreRejectsInvalidSettings() {
+        EmbeddingModel model = new KeywordEmbeddingModel();
+        assertThrows(IllegalArgumentException.class, () -> QuantizedVectorStore.builder(model).rerankFactor(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> QuantizedVectorStore.builder(model)
+            .quantization(QuantizedVectorIndex.Quantization.PQ).pqSubspaces(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> QuantizedVectorStore.builder(model)
+            .quantization(QuantizedVectorIndex.Quantization.PQ).trainingSize(0).build());
+
+        // 子空间数超过维度在第一次写入、知道维度时报错
+        QuantizedVectorStore store = QuantizedVectorStore.builder(model)
+            .quantization(QuantizedVectorIndex.Quantization.PQ).pqSubspaces(16).build();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> store.add(List.of(document("1", "苹果", "水果", 2023))));
+        assertTrue(e.getMessage().contains("子空间数 16，向量维度 6"), e.getMessage());
+    }
+
+    private static Document document(String id, String text, String category, int year) {
+        return Document.builder().id(id).text(text).metadata(Map.of("category", category, "year", year)).build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        List<String> ids = new ArrayList<>();
+        for (Document document : documents) {
+            ids.add(document.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 按空格分词，每个词占一维
+     */
+    private static final class KeywordEmbeddingModel implements EmbeddingModel {
+        private static final List<String> WORDS = List.of("苹果", "香蕉", "橙子", "汽车", "轮胎");
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> texts = request.getInstructions();
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings.add(new Embedding(vector(texts.get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getText());
+        }
+
+        private static float[] vector(String text) {
+            float[] vector = new float[WORDS.size() + 1];
+            // 常数维避免零向量
+            vector[WORDS.size()] = 0.1f;
+            for (String word : text.split(" ")) {
+                int index = WORDS.indexOf(word);
+                if (index >= 0) {
+                    vector[index] += 1f;
+                }
+            }
+            return vector;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.springaichat.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 量化方案的内存和召回率对比，用于选择量化参数，结果输出到日志
+ * 标准答案为原始向量的暴力检索结果。标记为benchmark，默认不随单元测试运行：mvn test -Pbenchmark；
+ * 可通过 -Dvector.benchmark.sizes 和 -Dvector.benchmark.dimensions 指定规模
+ */
+@Slf4j
+@Tag("benchmark")
+class QuantizationBenchmarkTests {
+
+    private static final int K = 10;
+    private static final int QUERIES = 100;
+    private static final int[] RERANK_FACTORS = {0, 4, 10};
+
+    @Test
+    void memoryPerVectorAndRecall() {
+        int dimensions = Integer.getInteger("vector.benchmark.dimensions", 128);
+        log.info("向量数\t量化方式\t编码字节\t重排倍数\t堆(字节/向量)\t堆外(字节/向量)\t检索(μs/次)\trecall@" + K);
+        for (String size : System.getProperty("vector.benchmark.sizes", "20000").split(",")) {
+            int count = Integer.parseInt(size.trim());
+            Random random = new Random(42);
+            float[][] vectors = VectorFixtures.clustered(random, count, dimensions, Math.max(16, count / 500));
+            float[][] queries = VectorFixtures.queries(random, vectors, QUERIES);
+            int[][] expected = new int[QUERIES][];
+            for (int q = 0; q < QUERIES; q++) {
+                expected[q] = VectorFixtures.bruteForce(vectors, queries[q], K);
+            }
+            log.info(String.format("%d\tfloat32\t%d\t-\t%d\t0\t-\t1.000", count, dimensions * 4, dimensions * 4));
+
+            // 合成数据的簇内噪声各向同性，对乘积量化最不利，真实文本嵌入的召回率更高；只对较细的设置设下限
+            run(count, vectors, queries, expected, QuantizedVectorIndex.Quantization.INT8, 0, 0.95);
+            run(count, vectors, queries, expected, QuantizedVectorIndex.Quantization.PQ, dimensions / 4, 0.85);
+            run(count, vectors, queries, expected, QuantizedVectorIndex.Quantization.PQ, dimensions / 8, 0);
+            run(count, vectors, queries, expected, QuantizedVectorIndex.Quantization.PQ, dimensions / 16, 0);
+        }
+    }
+
+    private static void run(int count, float[][] vectors, float[][] queries, int[][] expected,
+                            QuantizedVectorIndex.Quantization quantization, int subspaces, double minimumRecall) {
+        QuantizedVectorIndex index = new QuantizedVectorIndex(vectors[0].length, quantization, subspaces,
+            QuantizedVectorIndex.DEFAULT_RERANK_FACTOR, QuantizedVectorIndex.DEFAULT_TRAINING_SIZE);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        for (int rerankFactor : RERANK_FACTORS) {
+            for (float[] query : queries) {
+                index.search(query, K, rerankFactor, null);
+            }
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                VectorIndex.SearchResult result = index.search(queries[q], K, rerankFactor, null);
+                for (int i = 0; i < result.size(); i++) {
+                    for (int id : expected[q]) {
+                        if (id == result.id(i)) {
+                            hits++;
+                            break;
+                        }
+                    }
+                }
+            }
+            double micros = (System.nanoTime() - start) / 1_000.0 / QUERIES;
+            double recall = (double) hits / (QUERIES * K);
+            log.info(String.format("%d\t%s\t%d\t%d\t%d\t%d\t%.1f\t%.3f", count, quantization, index.getCodeSize(),
+                rerankFactor, index.heapBytesPerVector(), index.offHeapBytesPerVector(), micros, recall));
+            if (rerankFactor == RERANK_FACTORS[RERANK_FACTORS.length - 1]) {
+                assertTrue(recall >= minimumRecall, quantization + " recall@" + K + " = " + recall);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.springaichat.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizedVectorIndexTests {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void int8CodesWithRerankKeepRecallHigh() {
+        Random random = new Random(3);
+        float[][] vectors = VectorFixtures.clustered(random, 3_000, DIMENSIONS, 30);
+        QuantizedVectorIndex index = new QuantizedVectorIndex(DIMENSIONS);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        assertTrue(VectorFixtures.recall(index, vectors, VectorFixtures.queries(random, vectors, 50), 10) >= 0.95);
+        assertEquals(DIMENSIONS + 5, index.heapBytesPerVector());
+        assertEquals(DIMENSIONS * 4, index.offHeapBytesPerVector());
+
+        // 重排后的相似度是精确值
+        VectorIndex.SearchResult result = index.search(vectors[5], 1, null);
+        assertEquals(5, result.id(0));
+        assertEquals(1f, result.similarity(0), 1e-5f);
+    }
+
+    @Test
+    void productQuantizationTrainsOnceEnoughVectorsArrive() {
+        Random random = new Random(5);
+        float[][] vectors = VectorFixtures.clustered(random, 2_000, DIMENSIONS, 20);
+        QuantizedVectorIndex index = new QuantizedVectorIndex(DIMENSIONS, QuantizedVectorIndex.Quantization.PQ, 8,
+            10, 1_000);
+        for (int i = 0; i < 999; i++) {
+            index.add(vectors[i]);
+        }
+        // 训练前精确扫描
+        assertFalse(index.isTrained());
+        assertEquals(0, index.search(vectors[0], 1, null).id(0));
+        for (int i = 999; i < vectors.length; i++) {
+            index.add(vectors[i]);
+        }
+        assertTrue(index.isTrained());
+        assertEquals(9, index.heapBytesPerVector());
+        assertTrue(index.codebookBytes() > 0);
+        assertTrue(VectorFixtures.recall(index, vectors, VectorFixtures.queries(random, vectors, 50), 10) >= 0.9);
+    }
+
+    @Test
+    void deletedAndFilteredNodesAreSkipped() {
+        QuantizedVectorIndex index = new QuantizedVectorIndex(3);
+        int a = index.add(new float[]{1, 0, 0});
+        int b = index.add(new float[]{0, 1, 0});
+        index.add(new float[]{0, 0, 1});
+        assertEquals(b, index.search(new float[]{0, 5, 0.1f}, 1, null).id(0));
+
+        assertTrue(index.markDeleted(b));
+        assertFalse(index.markDeleted(b));
+        assertEquals(2, index.liveSize());
+        VectorIndex.SearchResult afterDelete = index.search(new float[]{0, 5, 0.1f}, 3, null);
+        assertEquals(2, afterDelete.size());
+        assertTrue(afterDelete.id(0) != b && afterDelete.id(1) != b);
+
+        VectorIndex.SearchResult filtered = index.search(new float[]{0, 0, 1}, 3, id -> id == a);
+        assertEquals(1, filtered.size());
+        assertEquals(a, filtered.id(0));
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1, 2}));
+        assertThrows(IllegalArgumentException.class,
+            () -> new QuantizedVectorIndex(4, QuantizedVectorIndex.Quantization.PQ, 5, 4, 100));
+    }
+
+    @Test
+    void deletionsAndWritesDuringTrainingAndGrowthAreKept() throws Exception {
+        Random random = new Random(9);
+        float[][] vectors = VectorFixtures.clustered(random, 4_000, DIMENSIONS, 20);
+        QuantizedVectorIndex index = new QuantizedVectorIndex(DIMENSIONS, QuantizedVectorIndex.Quantization.PQ, 8,
+            10, 1_000);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                int offset = t;
+                tasks.add(pool.submit(() -> {
+                    for (int i = offset; i < vectors.length; i += 3) {
+                        index.add(vectors[i]);
+                    }
+                }));
+            }
+            // 写入和码本训练进行期间删除偶数节点
+            tasks.add(pool.submit(() -> {
+                int next = 0;
+                while (next < vectors.length) {
+                    for (int size = index.size(); next < size; next++) {
+                        if (next % 2 == 0) {
+                            assertTrue(index.markDeleted(next));
+                        }
+                    }
+                }
+            }));
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(index.isTrained());
+        assertEquals(vectors.length / 2, index.liveSize());
+        int found = 0;
+        for (int id = 1; id < vectors.length; id += 20) {
+            VectorIndex.SearchResult result = index.search(index.vector(id), 10, null);
+            for (int i = 0; i < result.size(); i++) {
+                assertTrue(result.id(i) % 2 == 1, "已删除的节点出现在结果中: " + result.id(i));
+            }
+            if (result.id(0) == id) {
+                found++;
+            }
+        }
+        // 训练期间写入的向量也已编码
+        assertTrue(found >= vectors.length / 20 * 0.95, "命中 " + found);
+    }
+}
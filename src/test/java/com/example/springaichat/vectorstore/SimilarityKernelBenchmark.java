@@ -0,0 +1,77 @@
+package com.example.springaichat.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标量与SIMD相似度内核在常见嵌入维度下的JMH基准
+ * 不随单元测试运行，以simd配置构建（mvn -Psimd test-compile）后通过main方法（测试类路径）启动，例如：
+ * java -cp target/test-classes:target/classes:&lt;测试依赖&gt; com.example.springaichat.vectorstore.SimilarityKernelBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SimilarityKernelBenchmark {
+
+    @Param({"768", "1024", "1536"})
+    public int dimensions;
+
+    @Param({"scalar", "simd"})
+    public String kernel;
+
+    private SimilarityKernel similarityKernel;
+    private float[] a;
+    private float[] b;
+
+    @Setup
+    public void setUp() {
+        similarityKernel = "simd".equals(kernel) ? Vectors.simdKernel() : ScalarSimilarityKernel.INSTANCE;
+        if (similarityKernel == null) {
+            throw new IllegalStateException("当前JVM不支持SIMD内核，请以 mvn -Psimd 构建并以 --add-modules jdk.incubator.vector 启动");
+        }
+        Random random = new Random(42);
+        a = new float[dimensions];
+        b = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public float dot() {
+        return similarityKernel.dot(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float cosine() {
+        return similarityKernel.cosine(a, b);
+    }
+
+    @Benchmark
+    public float l2() {
+        return similarityKernel.l2Squared(a, 0, b, 0, dimensions);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SimilarityKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.springaichat.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimilarityKernelTests {
+
+    /** 覆盖不足一个向量宽度、非整数倍的尾部和常见的嵌入维度 */
+    private static final int[] DIMENSIONS = {1, 3, 7, 16, 17, 33, 100, 768, 1024, 1536};
+
+    private final SimilarityKernel scalar = ScalarSimilarityKernel.INSTANCE;
+
+    @Test
+    void scalarKernelComputesExactValues() {
+        float[] a = {1f, 2f, 3f};
+        float[] b = {4f, -5f, 6f};
+        assertEquals(12.0, scalar.dot(a, 0, b, 0, 3), 1e-6);
+        assertEquals(9.0 + 49.0 + 9.0, scalar.l2Squared(a, 0, b, 0, 3), 1e-6);
+        assertEquals(12.0 / Math.sqrt(14.0 * 77.0), scalar.cosine(a, b), 1e-6);
+        assertEquals(0.0, scalar.cosine(a, new float[3]), 0);
+        assertEquals(-10.0, scalar.dot(a, 1, b, 1, 1), 1e-6);
+        assertEquals(1f * 2 + 2f * -1 + 3f * 4, scalar.dot(a, new byte[] {9, 2, -1, 4}, 1), 1e-6);
+    }
+
+    @Test
+    void simdKernelMatchesScalarKernel() {
+        SimilarityKernel simd = Vectors.simdKernel();
+        if (simd == null) {
+            // 默认构建不包含SIMD内核，或未加载jdk.incubator.vector模块时只能使用标量实现
+            assertEquals("scalar", Vectors.kernelName());
+            return;
+        }
+        Random random = new Random(7);
+        for (int dimensions : DIMENSIONS) {
+            float[] a = random(random, dimensions + 5);
+            float[] b = random(random, dimensions + 3);
+            double tolerance = 1e-4 * dimensions;
+            assertEquals(scalar.dot(a, 0, b, 0, dimensions), simd.dot(a, 0, b, 0, dimensions), tolerance);
+            assertEquals(scalar.dot(a, 5, b, 3, dimensions), simd.dot(a, 5, b, 3, dimensions), tolerance);
+            assertEquals(scalar.l2Squared(a, 2, b, 1, dimensions), simd.l2Squared(a, 2, b, 1, dimensions), tolerance);
+
+            float[] x = random(random, dimensions);
+            float[] y = random(random, dimensions);
+            assertEquals(scalar.cosine(x, y), simd.cosine(x, y), 1e-5);
+
+            byte[] codes = new byte[dimensions + 2];
+            random.nextBytes(codes);
+            assertEquals(scalar.dot(x, codes, 2), simd.dot(x, codes, 2), 1e-2 * dimensions);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect((dimensions + 4) * Float.BYTES).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < dimensions + 4; i++) {
+                buffer.putFloat(i * Float.BYTES, random.nextFloat() - 0.5f);
+            }
+            assertEquals(scalar.dot(x, buffer, 4 * Float.BYTES), simd.dot(x, buffer, 4 * Float.BYTES), tolerance);
+        }
+        assertTrue(Vectors.kernelName().startsWith("simd-"));
+    }
+
+    private static float[] random(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
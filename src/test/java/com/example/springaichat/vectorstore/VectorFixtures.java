@@ -0,0 +1,101 @@
+package com.example.springaichat.vectorstore;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 向量检索测试数据：带聚类结构的合成向量（与真实文本嵌入类似）和暴力检索的标准答案
+ */
+final class VectorFixtures {
+
+    private VectorFixtures() {
+    }
+
+    /**
+     * 生成围绕若干中心分布的向量
+     */
+    static float[][] clustered(Random random, int count, int dimensions, int clusters) {
+        float[][] centers = new float[clusters][dimensions];
+        for (float[] center : centers) {
+            for (int d = 0; d < dimensions; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][dimensions];
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[random.nextInt(clusters)];
+            for (int d = 0; d < dimensions; d++) {
+                vectors[i][d] = center[d] + (float) random.nextGaussian() * 0.6f;
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * 在已有向量附近生成查询向量
+     */
+    static float[][] queries(Random random, float[][] vectors, int count) {
+        int dimensions = vectors[0].length;
+        float[][] queries = new float[count][dimensions];
+        for (int i = 0; i < count; i++) {
+            float[] base = vectors[random.nextInt(vectors.length)];
+            for (int d = 0; d < dimensions; d++) {
+                queries[i][d] = base[d] + (float) random.nextGaussian() * 0.3f;
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * 暴力计算余弦相似度最高的k个向量
+     */
+    static int[] bruteForce(float[][] vectors, float[] query, int k) {
+        int[] ids = new int[k];
+        double[] scores = new double[k];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        double queryNorm = Math.sqrt(dot(query, query));
+        for (int i = 0; i < vectors.length; i++) {
+            double score = dot(query, vectors[i]) / (queryNorm * Math.sqrt(dot(vectors[i], vectors[i])));
+            if (score <= scores[k - 1]) {
+                continue;
+            }
+            int j = k - 1;
+            while (j > 0 && scores[j - 1] < score) {
+                scores[j] = scores[j - 1];
+                ids[j] = ids[j - 1];
+                j--;
+            }
+            scores[j] = score;
+            ids[j] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * 索引检索结果与暴力检索结果的平均重合比例（节点ID与插入顺序一致）
+     */
+    static double recall(VectorIndex index, float[][] vectors, float[][] queries, int k) {
+        long hits = 0;
+        for (float[] query : queries) {
+            int[] expected = bruteForce(vectors, query, k);
+            VectorIndex.SearchResult result = index.search(query, k, null);
+            for (int i = 0; i < result.size(); i++) {
+                for (int id : expected) {
+                    if (id == result.id(i)) {
+                        hits++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (double) hits / ((long) queries.length * k);
+    }
+
+    static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}